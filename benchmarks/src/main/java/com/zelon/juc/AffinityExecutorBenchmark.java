@@ -0,0 +1,118 @@
+package com.zelon.juc;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+计数器更新：BATCH 个任务，每个任务给一个 key 的计数器加一（key 在 keys 个 key 中轮流），提交完之后等它们全部执行完
+① lockPerKey: 4 个线程共用一个 LinkedBlockingQueue，每个 key 一个 ReentrantLock 保护的计数器（ConcurrentHashMap 中查找）
+② affinity: AffinityExecutor，4 个 lane，TIMED 等待策略，计数器在 lane 本地的 HashMap 中，不加锁
+③ affinityBlocking: 同上，默认的 BLOCKING 等待策略
+keys = 16 时每个 key 的锁竞争激烈，keys = 4096 时几乎没有竞争，只剩下共享队列和加锁本身的开销。
+单核机器上的一次结果（us/op，每个更新）：
+keys = 16:   lockPerKey 0.145、affinity 0.075、affinityBlocking 0.348
+keys = 4096: lockPerKey 0.157、affinity 0.076、affinityBlocking 0.357
+affinity 没有锁，lane 一次取出一批任务；BLOCKING 策略下 lane 空闲时在 Condition 上等待，
+生产者每次放入都要加锁 signalAll()，单核上这个唤醒的开销超过了省下的锁，所以吞吐量优先时用 TIMED。
+单核上没有真正的并行，多核上 lockPerKey 的差距会随 key 的竞争变大（同一个 key 的锁在线程之间来回传递）。
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AffinityExecutorBenchmark {
+
+    static final int BATCH = 10_000;
+
+    static final class Counter {
+        final ReentrantLock lock = new ReentrantLock();
+        long value;
+    }
+
+    @Param({"16", "4096"})
+    int keys;
+
+    Integer[] keyObjects;
+    ThreadPoolExecutor pool;
+    ConcurrentHashMap<Integer, Counter> counters;
+    AffinityExecutor affinity;
+    AffinityExecutor affinityBlocking;
+    final LongAdder done = new LongAdder();
+
+    @Setup
+    public void setup() {
+        keyObjects = new Integer[keys];
+        for (int i = 0; i < keys; i++) keyObjects[i] = i;
+        pool = new ThreadPoolExecutor(4, 4, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+        pool.prestartAllCoreThreads();
+        counters = new ConcurrentHashMap<>();
+        affinity = new AffinityExecutor(AffinityExecutor.Options.builder().lanes(4)
+                .waitStrategy(MpmcRingBuffer.WaitStrategy.TIMED).build());
+        affinityBlocking = new AffinityExecutor(AffinityExecutor.Options.builder().lanes(4).build());
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        pool.shutdown();
+        affinity.close();
+        affinityBlocking.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void lockPerKey() {
+        long target = done.sum() + BATCH;
+        for (int i = 0; i < BATCH; i++) {
+            Integer key = keyObjects[i % keys];
+            pool.execute(() -> {
+                Counter c = counters.computeIfAbsent(key, k -> new Counter());
+                c.lock.lock();
+                try {
+                    c.value++;
+                } finally {
+                    c.lock.unlock();
+                }
+                done.increment();
+            });
+        }
+        await(target);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void affinity() throws InterruptedException {
+        updates(affinity);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void affinityBlocking() throws InterruptedException {
+        updates(affinityBlocking);
+    }
+
+    private void updates(AffinityExecutor executor) throws InterruptedException {
+        long target = done.sum() + BATCH;
+        for (int i = 0; i < BATCH; i++) {
+            Integer key = keyObjects[i % keys];
+            executor.execute(key, () -> {
+                long[] c = AffinityExecutor.localState(key, () -> new long[1]);
+                c[0]++;
+                done.increment();
+            });
+        }
+        await(target);
+    }
+
+    private void await(long target) {
+        while (done.sum() < target) Thread.yield();
+    }
+}
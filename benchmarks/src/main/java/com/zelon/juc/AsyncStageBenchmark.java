@@ -0,0 +1,95 @@
+package com.zelon.juc;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/*
+每个请求扇出 fanOut 个子调用（模拟下游 IO，延迟 ioMillis 后由 IO 线程完成），汇总后请求结束；
+请求由 handlerThreads 个处理线程执行，每次调用处理 requests 个请求，单位是处理完一批的耗时：
+① blockingGet: ThreadPool.main 的写法，处理线程提交子调用后 future.get() 逐个等待，
+   每个请求占住一个处理线程约 ioMillis，吞吐量上限约为 handlerThreads / ioMillis
+② asyncStage: 处理线程只负责发起子调用并注册回调，由完成子调用的线程驱动汇总，处理线程不等待
+每个处理线程的吞吐量 = requests / 耗时 / handlerThreads
+ */
+
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AsyncStageBenchmark {
+
+    @Param({"4"})
+    int handlerThreads;
+
+    @Param({"2000"})
+    int requests;
+
+    @Param({"3"})
+    int fanOut;
+
+    @Param({"1"})
+    long ioMillis;
+
+    ExecutorService handlers;
+    ScheduledExecutorService io;
+
+    @Setup
+    public void setup() {
+        handlers = Executors.newFixedThreadPool(handlerThreads);
+        io = Executors.newScheduledThreadPool(2);
+    }
+
+    @TearDown
+    public void tearDown() {
+        handlers.shutdownNow();
+        io.shutdownNow();
+    }
+
+    // 异步 IO：ioMillis 之后完成，等待期间不占用任何线程
+    private CompletableFuture<Integer> call(int i) {
+        CompletableFuture<Integer> f = new CompletableFuture<>();
+        io.schedule(() -> f.complete(i), ioMillis, TimeUnit.MILLISECONDS);
+        return f;
+    }
+
+    @Benchmark
+    public void blockingGet() throws Exception {
+        CountDownLatch done = new CountDownLatch(requests);
+        for (int r = 0; r < requests; r++) {
+            handlers.execute(() -> {
+                try {
+                    List<Future<Integer>> futures = new ArrayList<>(fanOut);
+                    for (int i = 0; i < fanOut; i++) futures.add(call(i));
+                    int sum = 0;
+                    for (Future<Integer> f : futures) sum += f.get(); // 处理线程阻塞
+                    if (sum < 0) throw new IllegalStateException();
+                } catch (InterruptedException | ExecutionException e) {
+                    throw new RuntimeException(e);
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+    }
+
+    @Benchmark
+    public void asyncStage() throws Exception {
+        CountDownLatch done = new CountDownLatch(requests);
+        for (int r = 0; r < requests; r++) {
+            handlers.execute(() -> {
+                List<AsyncStage<Integer>> calls = new ArrayList<>(fanOut);
+                for (int i = 0; i < fanOut; i++) calls.add(AsyncStage.of(call(i)));
+                AsyncStage.allOf(calls)
+                        .then(values -> values.stream().mapToInt(Integer::intValue).sum())
+                        .onComplete((sum, e) -> done.countDown());
+            });
+        }
+        done.await();
+    }
+}
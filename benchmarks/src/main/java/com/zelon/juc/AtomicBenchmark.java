@@ -0,0 +1,78 @@
+package com.zelon.juc;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+AtomicInteger、LongAdder、LongAccumulator 的累加吞吐量，对应 AtomicTestCase.atomicIntegerTest 中
+"简单累加建议使用性能更高的 LongAdder" 的结论。
+① contended*: 所有线程累加同一个计数器，AtomicInteger 在 CAS 失败后不断重试，LongAdder 把冲突分散到多个 Cell
+② uncontended*: 每个线程各自一个计数器，LongAdder 只操作 base，和 AtomicInteger 差别不大
+③ *Read: 读取总数，LongAdder.sum() 需要遍历所有 Cell，读多的场景反而更慢
+ */
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AtomicBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Shared {
+        final AtomicInteger atomicInt = new AtomicInteger();
+        final LongAdder longAdder = new LongAdder();
+        final LongAccumulator longAccumulator = new LongAccumulator(Long::sum, 0);
+    }
+
+    @State(Scope.Thread)
+    public static class Local {
+        final AtomicInteger atomicInt = new AtomicInteger();
+        final LongAdder longAdder = new LongAdder();
+        final LongAccumulator longAccumulator = new LongAccumulator(Long::sum, 0);
+    }
+
+    @Benchmark
+    public int contendedAtomicInteger(Shared s) {
+        return s.atomicInt.incrementAndGet();
+    }
+
+    @Benchmark
+    public void contendedLongAdder(Shared s) {
+        s.longAdder.increment();
+    }
+
+    @Benchmark
+    public void contendedLongAccumulator(Shared s) {
+        s.longAccumulator.accumulate(1);
+    }
+
+    @Benchmark
+    public int uncontendedAtomicInteger(Local s) {
+        return s.atomicInt.incrementAndGet();
+    }
+
+    @Benchmark
+    public void uncontendedLongAdder(Local s) {
+        s.longAdder.increment();
+    }
+
+    @Benchmark
+    public void uncontendedLongAccumulator(Local s) {
+        s.longAccumulator.accumulate(1);
+    }
+
+    @Benchmark
+    public int atomicIntegerRead(Shared s) {
+        return s.atomicInt.get();
+    }
+
+    @Benchmark
+    public long longAdderRead(Shared s) {
+        return s.longAdder.sum();
+    }
+}
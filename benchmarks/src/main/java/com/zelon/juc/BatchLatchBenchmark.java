@@ -0,0 +1,97 @@
+package com.zelon.juc;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+/*
+3 个生产者线程不停地记录事件，1 个消费者线程等待每一批放行（攒够 batchSize 个事件或者超过 maxDelayMillis）：
+① batchLatch: BatchLatch，countDown() 一次 CAS，超时由等待线程自己放行
+② countDownLatch: 每一批 new 一个 CountDownLatch，通过 AtomicReference 发布，
+   计数到 0 的生产者负责换上新的 latch，另外用一个定时线程在截止时间到了之后强制放行（把剩余的计数减完）
+produce 是生产者记录事件的吞吐量，consume 是消费者每秒等到的批次数。
+单核机器上的一次结果：produce 两者接近（42 vs 41 ops/us），consume 为 0.057 vs 0.001 ops/us：
+换 latch 的方案中消费者只能等 AtomicReference 里当前的那个 latch，放行和换 latch 之间的批次都错过了，
+而 BatchLatch 放行之后自动进入下一批，消费者醒来之后马上等待下一批。
+ */
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Group)
+public class BatchLatchBenchmark {
+
+    @Param({"64"})
+    int batchSize;
+
+    @Param({"1"})
+    int maxDelayMillis;
+
+    BatchLatch batchLatch;
+    AtomicReference<CountDownLatch> current;
+    ScheduledExecutorService deadlineTimer;
+    // 消费者上一次等待的 latch，计数到 0 之后、换上新的 latch 之前不能重复计算
+    CountDownLatch consumed;
+
+    @Setup
+    public void setup() {
+        batchLatch = new BatchLatch(batchSize, maxDelayMillis, TimeUnit.MILLISECONDS);
+        current = new AtomicReference<>(new CountDownLatch(batchSize));
+        deadlineTimer = Executors.newSingleThreadScheduledExecutor();
+        deadlineTimer.scheduleAtFixedRate(() -> {
+            CountDownLatch latch = current.get();
+            if (current.compareAndSet(latch, new CountDownLatch(batchSize))) {
+                while (latch.getCount() > 0) latch.countDown();
+            }
+        }, maxDelayMillis, maxDelayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @TearDown
+    public void tearDown() {
+        deadlineTimer.shutdownNow();
+        batchLatch.reset();
+    }
+
+    @Benchmark
+    @Group("batchLatch")
+    @GroupThreads(3)
+    public boolean produce() {
+        return batchLatch.countDown();
+    }
+
+    @Benchmark
+    @Group("batchLatch")
+    @GroupThreads(1)
+    public int consume() throws InterruptedException {
+        batchLatch.await();
+        return batchLatch.getGeneration();
+    }
+
+    @Benchmark
+    @Group("countDownLatch")
+    @GroupThreads(3)
+    public long produceCountDownLatch() {
+        CountDownLatch latch = current.get();
+        latch.countDown();
+        if (latch.getCount() == 0) {
+            current.compareAndSet(latch, new CountDownLatch(batchSize));
+        }
+        return latch.getCount();
+    }
+
+    @Benchmark
+    @Group("countDownLatch")
+    @GroupThreads(1)
+    public long consumeCountDownLatch() throws InterruptedException {
+        CountDownLatch latch;
+        while ((latch = current.get()) == consumed) {
+            Thread.onSpinWait();
+        }
+        latch.await();
+        consumed = latch;
+        return latch.getCount();
+    }
+}
@@ -0,0 +1,62 @@
+package com.zelon.juc;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+基准测试入口：同一组基准按 1..N 个线程分别跑一遍，每个线程数输出一份 JSON 结果，
+方便对比无竞争（1 线程）和竞争（多线程）场景下各种同步原语的吞吐量。
+
+参数：
+① include 正则，默认跑全部基准，例如 "AtomicBenchmark"、"ReentrantLockBenchmark.contended.*"
+② 线程数列表，逗号分隔，默认 1, 2, 4 ... 直到 CPU 核数
+③ 结果目录，默认 target/jmh-results，文件名为 threads-{n}.json
+
+JMH 自带的命令行同样可用（java -cp target/benchmarks.jar org.openjdk.jmh.Main -t 4 -rf json），
+这里只是把 "按线程数扫一遍并落盘 JSON" 固定下来。
+ */
+
+public class BenchmarkRunner {
+    public static void main(String[] args) throws RunnerException {
+        String include = args.length > 0 ? args[0] : ".*Benchmark.*";
+        List<Integer> threads = args.length > 1 ? parseThreads(args[1]) : defaultThreads();
+        File resultDir = new File(args.length > 2 ? args[2] : "target/jmh-results");
+        if (!resultDir.isDirectory() && !resultDir.mkdirs()) {
+            throw new IllegalStateException("cannot create " + resultDir);
+        }
+
+        for (int t : threads) {
+            ChainedOptionsBuilder options = new OptionsBuilder()
+                    .include(include)
+                    .threads(t)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result(new File(resultDir, "threads-" + t + ".json").getPath());
+            new Runner(options.build()).run();
+        }
+    }
+
+    private static List<Integer> defaultThreads() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        List<Integer> threads = new ArrayList<>();
+        for (int t = 1; t < cores; t <<= 1) {
+            threads.add(t);
+        }
+        threads.add(cores);
+        return threads;
+    }
+
+    private static List<Integer> parseThreads(String arg) {
+        List<Integer> threads = new ArrayList<>();
+        for (String s : arg.split(",")) {
+            threads.add(Integer.parseInt(s.trim()));
+        }
+        return threads;
+    }
+}
@@ -0,0 +1,100 @@
+package com.zelon.juc;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+随机给 keys 个计数器中的一个加 1（increment）或者读一个（get），key 已经全部预先插入：
+① intLongMap: ConcurrentIntLongMap，堆上的 long[]
+② intLongMapOffHeap: ConcurrentIntLongMap，堆外的 ByteBuffer
+③ chmAtomicLong: ConcurrentHashMap<Integer, AtomicLong>，get(key).incrementAndGet()，key 不存在时 computeIfAbsent
+④ chmMerge: ConcurrentHashMap<Integer, Long>，merge(key, 1L, Long::sum)，每次分配一个新的 Long 并锁住桶
+默认单线程：单核机器上多个线程只是轮流执行，随机 key 几乎没有冲突，多线程只会让结果的误差变大；多核上可以加 -t 4。
+用 -prof gc 看分配，例如：
+java -cp target/benchmarks.jar org.openjdk.jmh.Main ConcurrentIntLongMapBenchmark -prof gc
+单核机器上的一次结果（ns/op，increment / get，误差 10% ~ 30%）：
+keys = 1024：intLongMap 17.6 / 12.8；intLongMapOffHeap 35.7 / 15.3；chmAtomicLong 15.5 / 11.0；chmMerge 42.5 / 9.9
+keys = 1048576：intLongMap 82.7 / 38.3；intLongMapOffHeap 80.0 / 67.3；chmAtomicLong 173.5 / 92.7；chmMerge 245.4 / 98.1
+分配（B/op）：ConcurrentIntLongMap 0；ConcurrentHashMap 的 get 和 increment 都是 14 ~ 16 B（key 装箱成 Integer），chmMerge 的 increment 再加一个 Long。
+key 少的时候数据都在缓存中，ConcurrentHashMap 的 key 是连续整数时完全没有哈希冲突，两者差不多，ConcurrentHashMap 略快；
+key 多的时候数据超出缓存，ConcurrentIntLongMap 一次访问通常只碰一个缓存行（key 和 value 在同一个槽位中），
+ConcurrentHashMap 要依次访问 table、Node、Integer、AtomicLong，多次缓存未命中，差距拉大到 2 ~ 3 倍。
+堆外存储多了 ByteBuffer 的边界检查，缓存内的小表上慢一些，它的收益是表不占 Java 堆，GC 不需要标记和复制它；
+内存占用对比见 ConcurrentIntLongMapTestCase.footprintTest。
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(1)
+@State(Scope.Benchmark)
+public class ConcurrentIntLongMapBenchmark {
+
+    interface Counters {
+        long increment(int key);
+
+        long get(int key);
+    }
+
+    @Param({"intLongMap", "intLongMapOffHeap", "chmAtomicLong", "chmMerge"})
+    String impl;
+
+    @Param({"1024", "1048576"})
+    int keys;
+
+    Counters counters;
+
+    @Setup
+    public void setup() {
+        counters = switch (impl) {
+            case "intLongMap", "intLongMapOffHeap" -> {
+                ConcurrentIntLongMap map = new ConcurrentIntLongMap(ConcurrentIntLongMap.Options.builder()
+                        .initialCapacity(keys).offHeap(impl.equals("intLongMapOffHeap")).build());
+                yield new Counters() {
+                    public long increment(int key) { return map.incrementAndGet(key); }
+                    public long get(int key) { return map.get(key); }
+                };
+            }
+            case "chmAtomicLong" -> {
+                ConcurrentHashMap<Integer, AtomicLong> map = new ConcurrentHashMap<>(keys);
+                yield new Counters() {
+                    public long increment(int key) {
+                        AtomicLong counter = map.get(key);
+                        if (counter == null) counter = map.computeIfAbsent(key, k -> new AtomicLong());
+                        return counter.incrementAndGet();
+                    }
+
+                    public long get(int key) {
+                        AtomicLong counter = map.get(key);
+                        return counter == null ? 0 : counter.get();
+                    }
+                };
+            }
+            case "chmMerge" -> {
+                ConcurrentHashMap<Integer, Long> map = new ConcurrentHashMap<>(keys);
+                yield new Counters() {
+                    public long increment(int key) { return map.merge(key, 1L, Long::sum); }
+                    public long get(int key) { return map.getOrDefault(key, 0L); }
+                };
+            }
+            default -> throw new IllegalArgumentException(impl);
+        };
+        for (int k = 0; k < keys; k++) counters.increment(k);
+    }
+
+    @Benchmark
+    public long increment() {
+        return counters.increment(ThreadLocalRandom.current().nextInt(keys));
+    }
+
+    @Benchmark
+    public long get() {
+        return counters.get(ThreadLocalRandom.current().nextInt(keys));
+    }
+}
@@ -0,0 +1,93 @@
+package com.zelon.juc;
+
+import jdk.jfr.Recording;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+JfrEvents 在快速路径上的开销：recording = off 不录制，on 时在进程内开始一个只收集 com.zelon.juc 事件的录制（默认阈值）
+① profiledLock: 没有竞争的 ProfiledLock lock / unlock，录制中每次加锁要为 LockHold 创建事件对象、begin / end 各读一次时钟
+② rawLock: 没有包装的 ReentrantLock，作为基准
+③ ringPutTake: MpmcRingBuffer 不满不空时的 put + take，快速路径不碰事件
+④ poolBatch: InstrumentedThreadPoolExecutor 一次提交 100 个空任务并等待完成（每个任务创建 TaskQueueWait、TaskExecution 两个事件对象）
+java -cp target/benchmarks.jar org.openjdk.jmh.Main JfrEventsBenchmark -prof gc
+单核机器上的一次结果（off / on，分配量来自 -prof gc）：
+profiledLock 153 / 246 ns，0 / 32 B；rawLock 23.8 / 23.9 ns；ringPutTake 41.8 / 39.6 ns，都不分配；
+poolBatch 34.2 / 52.1 us（每 100 个任务），8114 / 16913 B
+不录制时各个快速路径只多一次探针读取，不分配事件对象（poolBatch 的 8 KB 是 TimedTask、队列节点和 lambda 本身）；
+录制中 ProfiledLock 每次加锁多一个 32 B 的 LockHold 对象和两次时钟读取，约 90 ns，
+线程池每个任务多两个事件对象，约 180 ns；低于阈值的事件在 shouldCommit() 中被丢弃，不写入录制文件。
+JFR 的事件 API 不能指定开始时间，持有时间、排队时间只能在开始时就创建事件对象，这是录制中这部分开销的来源；
+队列只有真正等待时才创建事件，录制与否没有差别。
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JfrEventsBenchmark {
+
+    @Param({"off", "on"})
+    String recording;
+
+    Recording jfr;
+    ProfiledLock profiledLock;
+    ReentrantLock rawLock;
+    MpmcRingBuffer<Integer> ring;
+    InstrumentedThreadPoolExecutor pool;
+    static final Integer VALUE = 42;
+
+    @Setup
+    public void setup() {
+        if (recording.equals("on")) {
+            jfr = new Recording();
+            for (String name : new String[]{"LockAcquire", "LockHold", "TaskQueueWait", "TaskExecution", "TaskRejected", "QueueStall"}) {
+                jfr.enable("com.zelon.juc." + name);
+            }
+            jfr.start();
+        }
+        profiledLock = new LockProfiler().lock("benchmark", new ReentrantLock());
+        rawLock = new ReentrantLock();
+        ring = new MpmcRingBuffer<>(16);
+        pool = new InstrumentedThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+        pool.prestartAllCoreThreads();
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+        if (jfr != null) jfr.close();
+    }
+
+    @Benchmark
+    public void profiledLock() {
+        profiledLock.lock();
+        profiledLock.unlock();
+    }
+
+    @Benchmark
+    public void rawLock() {
+        rawLock.lock();
+        rawLock.unlock();
+    }
+
+    @Benchmark
+    public Integer ringPutTake() throws InterruptedException {
+        ring.put(VALUE);
+        return ring.take();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void poolBatch() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(100);
+        for (int i = 0; i < 100; i++) pool.execute(done::countDown);
+        done.await();
+    }
+}
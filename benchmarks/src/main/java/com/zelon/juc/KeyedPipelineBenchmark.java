@@ -0,0 +1,53 @@
+package com.zelon.juc;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+KeyedPipeline 的吞吐量随每个阶段的工作线程数的变化：两个阶段（parse → store），每条消息在每个阶段消耗 work 个 CPU 单位，
+生产者一直 submit()，稳定状态下 submit() 的速度被背压限制为流水线的处理速度。
+workers = 1 相当于 ProducerConsumerModelCase 的单消费者模型，吞吐量上限是一个核；
+有 N 个核时，workers 从 1 增加到 N，吞吐量应当接近线性增长，直到生产者本身成为瓶颈。
+单核机器上的一次结果：workers = 1 / 2 / 4 为 0.87 / 0.98 / 0.91 ops/us（误差很大），只有一个核时增加线程不会更快，
+差别都在误差范围内；需要在多核机器上运行才能看到扩展性。
+ */
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class KeyedPipelineBenchmark {
+
+    @Param({"1", "2", "4"})
+    int workers;
+
+    @Param({"200"})
+    int work;
+
+    KeyedPipeline<Integer> pipeline;
+    int next;
+
+    @Setup
+    public void setup() {
+        pipeline = KeyedPipeline.<Integer>builder(i -> i)
+                .stage("parse", workers, i -> {
+                    Blackhole.consumeCPU(work);
+                    return i;
+                })
+                .sink("store", workers, i -> Blackhole.consumeCPU(work));
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        pipeline.close();
+    }
+
+    @Benchmark
+    public void submit() throws InterruptedException {
+        pipeline.submit(next++ & 1023);
+    }
+}
@@ -0,0 +1,151 @@
+package com.zelon.juc;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/*
+LazyRegistry 的冷启动和读取开销
+1. ColdStart（SingleShotTime）：callers 个线程同时启动，每个线程按随机顺序请求全部 keys 个 key，初始化一个 key 需要 initMillis，
+   factoryCalls 是实际调用初始化的次数（EVENTS 计数器，按迭代累加）：
+   ① singleFlight: LazyRegistry，每个 key 只初始化一次，factoryCalls = keys
+   ② checkThenPut: get() == null 时初始化再 putIfAbsent()，冷启动时所有线程一起初始化同一个 key（惊群），
+      factoryCalls 明显大于 keys，初始化越慢、同时启动的线程越多越严重（最多 callers × keys）
+   ③ computeIfAbsent: 每个 key 也只初始化一次，但是初始化期间锁住所在的桶，同一个桶中的其他 key 也要等
+2. HotRead（Throughput）：初始化之后的读取
+   ① handleGet: 保存 Holder 之后每次读取只有一次 volatile 读；singletonGetInstance 作为对照，
+      VolatileTestCase 中的双重检查锁（DoubleCheckedSingleton 是它的拷贝）判断和返回各读一次，共两次
+   ② registryGet: 每次都要查找 ConcurrentHashMap
+ */
+
+public class LazyRegistryBenchmark {
+
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    @Fork(1)
+    @State(Scope.Benchmark)
+    public static class ColdStart {
+
+        @Param({"64"})
+        int callers;
+
+        @Param({"100"})
+        int keys;
+
+        @Param({"1"})
+        long initMillis;
+
+        ExecutorService pool;
+        final AtomicInteger calls = new AtomicInteger();
+
+        @AuxCounters(AuxCounters.Type.EVENTS)
+        @State(Scope.Thread)
+        public static class Counters {
+            public long factoryCalls;
+        }
+
+        @Setup(Level.Trial)
+        public void start() {
+            pool = Executors.newFixedThreadPool(callers);
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() {
+            pool.shutdownNow();
+        }
+
+        private String create(Integer key) {
+            calls.incrementAndGet();
+            try {
+                Thread.sleep(initMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "resource-" + key;
+        }
+
+        @Benchmark
+        public void singleFlight(Counters counters) throws Exception {
+            LazyRegistry<Integer, String> registry = new LazyRegistry<>(this::create);
+            run(registry::get, counters);
+        }
+
+        @Benchmark
+        public void checkThenPut(Counters counters) throws Exception {
+            ConcurrentHashMap<Integer, String> map = new ConcurrentHashMap<>();
+            run(key -> {
+                String v = map.get(key);
+                if (v != null) return v;
+                v = create(key);
+                String prev = map.putIfAbsent(key, v);
+                return prev != null ? prev : v;
+            }, counters);
+        }
+
+        @Benchmark
+        public void computeIfAbsent(Counters counters) throws Exception {
+            ConcurrentHashMap<Integer, String> map = new ConcurrentHashMap<>();
+            run(key -> map.computeIfAbsent(key, this::create), counters);
+        }
+
+        private void run(Function<Integer, String> lookup, Counters counters) throws Exception {
+            calls.set(0);
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int c = 0; c < callers; c++) {
+                futures.add(pool.submit(() -> {
+                    List<Integer> order = new ArrayList<>();
+                    for (int k = 0; k < keys; k++) order.add(k);
+                    Collections.shuffle(order);
+                    start.await();
+                    for (Integer key : order) lookup.apply(key);
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> f : futures) f.get();
+            counters.factoryCalls += calls.get();
+        }
+    }
+
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Warmup(iterations = 3, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    @Fork(1)
+    @State(Scope.Benchmark)
+    public static class HotRead {
+
+        LazyRegistry<Integer, String> registry;
+        LazyRegistry.Holder<Integer, String> holder;
+
+        @Setup
+        public void setup() {
+            registry = new LazyRegistry<>(key -> "resource-" + key);
+            for (int i = 0; i < 1000; i++) registry.get(i);
+            holder = registry.handle(42);
+        }
+
+        @Benchmark
+        public String handleGet() {
+            return holder.get();
+        }
+
+        @Benchmark
+        public String registryGet() {
+            return registry.get(42);
+        }
+
+        @Benchmark
+        public Object singletonGetInstance() {
+            return DoubleCheckedSingleton.getInstance();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.zelon.juc;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.StampedLock;
+
+/*
+读多写少场景：ReentrantReadWriteLock 与 StampedLock（悲观读 / 乐观读）的对比，对应 ReentrantLockTestCase.testReadWriteLock。
+① read*: 纯读
+② mixed*: 每 100 次操作中有 writePercent 次写
+ReentrantReadWriteLock 的读锁也要 CAS 修改 state，读线程之间会争抢同一个缓存行；
+StampedLock 乐观读只读一次版本号，数据没被修改时完全不写共享内存。
+ */
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReadWriteLockBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Mix {
+        @Param({"1", "10"})
+        int writePercent;
+    }
+
+    final ReentrantReadWriteLock rwLock = new ReentrantReadWriteLock();
+    final StampedLock stampedLock = new StampedLock();
+    long x, y;
+
+    @Benchmark
+    public long readWriteLockRead() {
+        rwLock.readLock().lock();
+        try {
+            return x + y;
+        } finally {
+            rwLock.readLock().unlock();
+        }
+    }
+
+    @Benchmark
+    public long stampedLockRead() {
+        long stamp = stampedLock.readLock();
+        try {
+            return x + y;
+        } finally {
+            stampedLock.unlockRead(stamp);
+        }
+    }
+
+    @Benchmark
+    public long stampedLockOptimisticRead() {
+        return optimisticRead();
+    }
+
+    @Benchmark
+    public long readWriteLockMixed(Mix mix) {
+        if (ThreadLocalRandom.current().nextInt(100) < mix.writePercent) {
+            rwLock.writeLock().lock();
+            try {
+                x++;
+                return --y;
+            } finally {
+                rwLock.writeLock().unlock();
+            }
+        }
+        return readWriteLockRead();
+    }
+
+    @Benchmark
+    public long stampedLockMixed(Mix mix) {
+        if (ThreadLocalRandom.current().nextInt(100) < mix.writePercent) {
+            long stamp = stampedLock.writeLock();
+            try {
+                x++;
+                return --y;
+            } finally {
+                stampedLock.unlockWrite(stamp);
+            }
+        }
+        return optimisticRead();
+    }
+
+    private long optimisticRead() {
+        long stamp = stampedLock.tryOptimisticRead();
+        long cx = x, cy = y;
+        if (!stampedLock.validate(stamp)) {
+            // 乐观读期间有写入，退化为悲观读
+            stamp = stampedLock.readLock();
+            try {
+                cx = x;
+                cy = y;
+            } finally {
+                stampedLock.unlockRead(stamp);
+            }
+        }
+        return cx + cy;
+    }
+}
@@ -0,0 +1,65 @@
+package com.zelon.juc;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+公平锁与非公平锁的吞吐量对比，对应 ReentrantLockTestCase.testFairLock。
+非公平锁允许刚释放锁的线程直接插队，减少线程切换；公平锁每次都要排队交接，多线程竞争时吞吐量明显更低。
+ */
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReentrantLockBenchmark {
+
+    @State(Scope.Thread)
+    public static class ThreadLock {
+        @Param({"false", "true"})
+        boolean fair;
+        ReentrantLock lock;
+        long counter;
+
+        @Setup
+        public void setup() {
+            lock = new ReentrantLock(fair);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class SharedLock {
+        @Param({"false", "true"})
+        boolean fair;
+        ReentrantLock lock;
+        long counter;
+
+        @Setup
+        public void setup() {
+            lock = new ReentrantLock(fair);
+        }
+    }
+
+    @Benchmark
+    public long uncontended(ThreadLock state) {
+        state.lock.lock();
+        try {
+            return ++state.counter;
+        } finally {
+            state.lock.unlock();
+        }
+    }
+
+    @Benchmark
+    public long contended(SharedLock state) {
+        state.lock.lock();
+        try {
+            return ++state.counter;
+        } finally {
+            state.lock.unlock();
+        }
+    }
+}
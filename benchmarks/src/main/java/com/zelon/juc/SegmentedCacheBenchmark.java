@@ -0,0 +1,93 @@
+package com.zelon.juc;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/*
+读多写少的缓存查询：SegmentedCache 与 ReentrantReadWriteLock + HashMap、ConcurrentHashMap 的对比。
+每 100 次操作中有 writePercent 次写（覆盖已有 key），其余为读；key 在 keyCount 个中均匀随机。
+① rwLockHashMap: 所有读线程 CAS 同一个读锁 state，写入时阻塞全部读线程
+② segmented: 乐观读不写共享内存，写入只影响一个 Segment；比 ConcurrentHashMap 多了淘汰、TTL 和统计
+③ concurrentHashMap: 没有容量淘汰和 TTL，作为上限参考
+读锁的开销主要来自多核之间争抢 state 所在的缓存行，需要用 BenchmarkRunner 按线程数扫一遍对比；
+单核机器上线程轮流执行，没有缓存行争抢，读写锁的单次开销和 SegmentedCache 的统计、访问时钟开销相近。
+ */
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SegmentedCacheBenchmark {
+
+    @Param({"1", "10"})
+    int writePercent;
+
+    @Param({"10000"})
+    int keyCount;
+
+    SegmentedCache<Integer, Integer> segmented;
+    ConcurrentHashMap<Integer, Integer> concurrentHashMap;
+    Map<Integer, Integer> hashMap;
+    final ReentrantReadWriteLock rwLock = new ReentrantReadWriteLock();
+
+    @Setup
+    public void setup() {
+        // 容量是 key 数的 2 倍，只测查询和覆盖写，不触发淘汰
+        segmented = new SegmentedCache<>(keyCount * 2);
+        concurrentHashMap = new ConcurrentHashMap<>();
+        hashMap = new HashMap<>();
+        for (int i = 0; i < keyCount; i++) {
+            segmented.put(i, i);
+            concurrentHashMap.put(i, i);
+            hashMap.put(i, i);
+        }
+    }
+
+    @Benchmark
+    public Integer segmented() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Integer key = random.nextInt(keyCount);
+        if (random.nextInt(100) < writePercent) {
+            return segmented.put(key, key);
+        }
+        return segmented.get(key);
+    }
+
+    @Benchmark
+    public Integer concurrentHashMap() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Integer key = random.nextInt(keyCount);
+        if (random.nextInt(100) < writePercent) {
+            return concurrentHashMap.put(key, key);
+        }
+        return concurrentHashMap.get(key);
+    }
+
+    @Benchmark
+    public Integer rwLockHashMap() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Integer key = random.nextInt(keyCount);
+        if (random.nextInt(100) < writePercent) {
+            rwLock.writeLock().lock();
+            try {
+                return hashMap.put(key, key);
+            } finally {
+                rwLock.writeLock().unlock();
+            }
+        }
+        rwLock.readLock().lock();
+        try {
+            return hashMap.get(key);
+        } finally {
+            rwLock.readLock().unlock();
+        }
+    }
+}
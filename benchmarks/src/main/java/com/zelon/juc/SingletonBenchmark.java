@@ -0,0 +1,48 @@
+package com.zelon.juc;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+双重检查锁 DoubleCheckedSingleton.getInstance()（VolatileTestCase 中 Singleton 的逐字拷贝）的读取开销。
+实例创建之后，每次 getInstance() 不会进入 synchronized，只有两次 volatile 读（判断一次、返回一次）；
+作为对照：
+① synchronizedGetInstance: 整个方法加锁的懒汉式，每次读取都要加锁，多线程时竞争同一个 monitor
+② holderGetInstance: 静态内部类方式，由类加载保证线程安全，读取就是一次普通的静态字段读
+ */
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SingletonBenchmark {
+
+    private static Object lazyInstance;
+
+    @Benchmark
+    public Object doubleCheckedGetInstance() {
+        return DoubleCheckedSingleton.getInstance();
+    }
+
+    @Benchmark
+    public Object synchronizedGetInstance() {
+        synchronized (SingletonBenchmark.class) {
+            if (lazyInstance == null) {
+                lazyInstance = new Object();
+            }
+            return lazyInstance;
+        }
+    }
+
+    @Benchmark
+    public Object holderGetInstance() {
+        return Holder.INSTANCE;
+    }
+
+    private static class Holder {
+        static final Object INSTANCE = new Object();
+    }
+}
@@ -0,0 +1,80 @@
+package com.zelon.juc;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+synchronized 的无竞争与竞争路径，对应 SyncLockUpgrade 中的几种锁状态：
+① uncontended: 每个线程各自持有一个锁对象，只有一个线程加锁，对象头一直是轻量级锁（thin lock）
+② contended: 所有线程竞争同一个锁对象，多线程时会膨胀为重量级锁（fat lock）
+③ inflatedUncontended: 锁对象提前被两个线程竞争过（已膨胀），之后只有一个线程使用，
+   对应 SyncLockUpgrade 最后"重量级锁无法降级"的场景（新版 JDK 会在安全点异步降级）
+ */
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SynchronizedBenchmark {
+
+    @State(Scope.Thread)
+    public static class ThreadLock {
+        final Object lock = new Object();
+        long counter;
+    }
+
+    @State(Scope.Benchmark)
+    public static class SharedLock {
+        final Object lock = new Object();
+        long counter;
+    }
+
+    @State(Scope.Thread)
+    public static class InflatedLock {
+        final Object lock = new Object();
+        long counter;
+
+        @Setup(Level.Trial)
+        public void inflate() throws InterruptedException {
+            // 制造一次真实竞争，让锁膨胀为 monitor
+            Thread holder = new Thread(() -> {
+                synchronized (lock) {
+                    try {
+                        Thread.sleep(50);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            holder.start();
+            Thread.sleep(10);
+            synchronized (lock) {
+                counter++;
+            }
+            holder.join();
+        }
+    }
+
+    @Benchmark
+    public long uncontended(ThreadLock state) {
+        synchronized (state.lock) {
+            return ++state.counter;
+        }
+    }
+
+    @Benchmark
+    public long contended(SharedLock state) {
+        synchronized (state.lock) {
+            return ++state.counter;
+        }
+    }
+
+    @Benchmark
+    public long inflatedUncontended(InflatedLock state) {
+        synchronized (state.lock) {
+            return ++state.counter;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.zelon.juc;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+TaskContext 与直接使用 ThreadLocal 的查找开销对比
+① *Get: 上下文中有 4 个值，读取最后一个；ThreadLocal 版本每个值一个 ThreadLocal
+   contextGet 是业务代码的写法 K4.get()：上下文在 @Setup 中绑定到基准线程，每次读取 = 一次 ThreadLocal.get() + 数组线性查找；
+   contextInstanceGet 是已经拿到 TaskContext 对象时的 context.get(K4)，只有数组查找，两者之差就是线程槽位的开销
+② *Bind: 一个任务的完整生命周期，ThreadLocal 版本 set + get + remove，TaskContext 版本 with + run + get
+staleEntries: 线程的 ThreadLocalMap 中残留的 entry 数（ThreadLocal 对象已被回收、value 没有 remove），
+   模拟线程池中长期运行的线程，它们会让 ThreadLocalMap 扩容、冲突变多，查找未命中时需要扫描更多槽位。
+   TaskContext 只使用一个槽位，不受影响。
+残留的堆内存见 TaskContextTestCase.testRetainedHeap。
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TaskContextBenchmark {
+
+    private static final TaskContext.Key<String> K1 = TaskContext.Key.named("k1");
+    private static final TaskContext.Key<String> K2 = TaskContext.Key.named("k2");
+    private static final TaskContext.Key<String> K3 = TaskContext.Key.named("k3");
+    private static final TaskContext.Key<String> K4 = TaskContext.Key.named("k4");
+
+    private static final ThreadLocal<String> L1 = new ThreadLocal<>();
+    private static final ThreadLocal<String> L2 = new ThreadLocal<>();
+    private static final ThreadLocal<String> L3 = new ThreadLocal<>();
+    private static final ThreadLocal<String> L4 = new ThreadLocal<>();
+
+    @Param({"0", "1000"})
+    int staleEntries;
+
+    private TaskContext context;
+    private TaskContext previous;
+
+    @Setup
+    public void setup() {
+        for (int i = 0; i < staleEntries; i++) {
+            new ThreadLocal<>().set(new Object());
+        }
+        System.gc(); // 回收 ThreadLocal 对象，entry 的 key 变为 null
+        L1.set("v1");
+        L2.set("v2");
+        L3.set("v3");
+        L4.set("v4");
+        context = TaskContext.empty().with(K1, "v1").with(K2, "v2").with(K3, "v3").with(K4, "v4");
+        previous = context.attach(); // Scope.Thread 的 @Setup 在基准线程上执行
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.detach(previous);
+    }
+
+    @Benchmark
+    public String threadLocalGet() {
+        return L4.get();
+    }
+
+    @Benchmark
+    public String contextGet() {
+        return K4.get();
+    }
+
+    @Benchmark
+    public String contextInstanceGet() {
+        return context.get(K4);
+    }
+
+    @Benchmark
+    public String threadLocalBind() {
+        L4.set("task");
+        try {
+            return L4.get();
+        } finally {
+            L4.remove();
+        }
+    }
+
+    @Benchmark
+    public void contextBind() {
+        // K4.get() 通过线程槽位查找：一次 ThreadLocal.get() + 数组线性查找
+        context.with(K4, "task").run(K4::get);
+    }
+}
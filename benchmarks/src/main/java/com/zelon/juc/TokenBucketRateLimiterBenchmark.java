@@ -0,0 +1,84 @@
+package com.zelon.juc;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/*
+多线程竞争 tryAcquire() 的开销和限流精度：
+① tokenBucket: TokenBucketRateLimiter，一次 CAS，按经过的时间懒补充
+② semaphoreRefill: Semaphore + 定时线程每 refillMillis 补充一次（补到 burst 为止），
+   补充线程自己也要和获取线程竞争同一个 state，补充的粒度受定时器限制
+granted / denied 是获取成功 / 失败的次数（OPERATIONS 计数器，按秒计算），granted 应该接近 rate，
+semaphoreRefill 在每次补充之后一下子放出一批，然后整段时间都失败，实际速率随定时器抖动。
+单核机器上的一次结果：granted 为 0.101 vs 0.094 ops/us（目标 0.1），tokenBucket 准确；
+失败路径上 tokenBucket 要读一次 System.nanoTime()（这台机器约 45ns），所以总吞吐量低于只读一次 volatile 的 Semaphore，
+限流器被大量超额请求打满时，调用方应当在失败之后退避，而不是立即重试。
+ */
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class TokenBucketRateLimiterBenchmark {
+
+    // 每秒的令牌数
+    @Param({"100000"})
+    int rate;
+
+    @Param({"100"})
+    int burst;
+
+    @Param({"1"})
+    int refillMillis;
+
+    TokenBucketRateLimiter limiter;
+    Semaphore semaphore;
+    ScheduledExecutorService refiller;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Counters {
+        public long granted;
+        public long denied;
+    }
+
+    @Setup
+    public void setup() {
+        limiter = new TokenBucketRateLimiter(rate, burst);
+        semaphore = new Semaphore(burst);
+        int perRefill = Math.max(1, (int) ((long) rate * refillMillis / 1000));
+        refiller = Executors.newSingleThreadScheduledExecutor();
+        refiller.scheduleAtFixedRate(() -> {
+            int missing = burst - semaphore.availablePermits();
+            if (missing > 0) semaphore.release(Math.min(missing, perRefill));
+        }, refillMillis, refillMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @TearDown
+    public void tearDown() {
+        refiller.shutdownNow();
+    }
+
+    @Benchmark
+    public boolean tokenBucket(Counters counters) {
+        boolean ok = limiter.tryAcquire();
+        if (ok) counters.granted++;
+        else counters.denied++;
+        return ok;
+    }
+
+    @Benchmark
+    public boolean semaphoreRefill(Counters counters) {
+        boolean ok = semaphore.tryAcquire();
+        if (ok) counters.granted++;
+        else counters.denied++;
+        return ok;
+    }
+}
@@ -0,0 +1,72 @@
+package com.zelon.juc;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/*
+大量并发阻塞任务（10k ~ 1M）在平台线程池和虚拟线程上的完成时间，每次调用提交 taskCount 个任务并等待全部完成。
+任务只是 sleep，虚拟线程阻塞时卸载，耗时接近单个任务的阻塞时间；
+平台线程池固定 platformThreads 个线程，1M 个任务时单次耗时较长，可以用 -p taskCount=10000 缩小范围。
+平台线程池的队列容量按 taskCount 设置，所有任务都能入队：默认容量 TaskExecutors.DEFAULT_QUEUE_CAPACITY 小于任务数时，
+提交线程会按 CallerRunsPolicy 自己执行任务，测到的就不只是线程池本身了；run() 结束后检查没有任务在提交线程中执行过。
+synchronized 内阻塞（pinning）的情况见 VirtualThreadPinnedBenchmark。
+ */
+
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@State(Scope.Benchmark)
+public class VirtualThreadBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    int taskCount;
+
+    @Param({"PLATFORM_POOL", "VIRTUAL_PER_TASK"})
+    TaskExecutors.ExecutionMode mode;
+
+    @Param({"1000"})
+    int platformThreads;
+
+    @Param({"10"})
+    long blockMillis;
+
+    @Benchmark
+    public void blocking() throws InterruptedException {
+        run(mode, platformThreads, taskCount, () -> sleep(blockMillis));
+    }
+
+    static void run(TaskExecutors.ExecutionMode mode, int platformThreads, int taskCount, Runnable task)
+            throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(taskCount);
+        ExecutorService executor = TaskExecutors.create(mode, "bench", platformThreads, taskCount);
+        try (executor) {
+            for (int i = 0; i < taskCount; i++) {
+                executor.execute(() -> {
+                    try {
+                        task.run();
+                    } finally {
+                        done.countDown();
+                    }
+                });
+            }
+            done.await();
+        }
+        if (executor instanceof InstrumentedThreadPoolExecutor pool) {
+            long callerRuns = pool.snapshot().getRejections().getOrDefault("CallerRunsPolicy", 0L);
+            if (callerRuns > 0) throw new IllegalStateException(callerRuns + " tasks ran in the submitting thread");
+        }
+    }
+
+    static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.zelon.juc;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+任务在 synchronized 内 sleep（每个任务各自的锁，没有竞争）：虚拟线程会钉住载体线程，
+退化为只有 CPU 核数个线程的线程池，比平台线程池还慢得多。
+耗时约为 taskCount × blockMillis / CPU 核数，所以任务数比 VirtualThreadBenchmark 少两个数量级。
+ */
+
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VirtualThreadPinnedBenchmark {
+
+    @Param({"1000", "10000"})
+    int taskCount;
+
+    @Param({"PLATFORM_POOL", "VIRTUAL_PER_TASK"})
+    TaskExecutors.ExecutionMode mode;
+
+    @Param({"1000"})
+    int platformThreads;
+
+    @Param({"10"})
+    long blockMillis;
+
+    @Benchmark
+    public void pinned() throws InterruptedException {
+        VirtualThreadBenchmark.run(mode, platformThreads, taskCount, () -> {
+            Object monitor = new Object();
+            synchronized (monitor) {
+                VirtualThreadBenchmark.sleep(blockMillis);
+            }
+        });
+    }
+}
@@ -0,0 +1,100 @@
+package com.zelon.juc;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.IntToLongFunction;
+
+/*
+同一个分治任务（[0, size) 上的 f(i) 求和）分别交给 WorkStealingEngine 和 ThreadPool 中那样的 ThreadPoolExecutor：
+① workStealing: ForkJoinPool 工作窃取，自适应拆分
+② threadPoolFineGrained: 按相同的叶子粒度（chunk）切分后全部提交到一个共享的 LinkedBlockingQueue，
+   调用线程逐个 future.get() 汇总，所有工作线程争抢同一个队列
+③ threadPoolCoarse: 按线程数平均切分，每个线程一块，没有队列竞争，但是块之间计算量不均匀时无法互相分担
+threads 为并行度（1..N 个核），默认只列出常见核数，实际运行时用 -p threads=1,2,4,... 按机器核数调整。
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WorkStealingEngineBenchmark {
+
+    @Param({"1", "2", "4", "8"})
+    int threads;
+
+    @Param({"10000000"})
+    int size;
+
+    @Param({"1000"})
+    int chunk;
+
+    WorkStealingEngine engine;
+    ThreadPoolExecutor executor;
+
+    @Setup
+    public void setup() {
+        engine = new WorkStealingEngine(WorkStealingEngine.Options.builder().parallelism(threads).minChunk(chunk).build());
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+        executor.prestartAllCoreThreads();
+    }
+
+    @TearDown
+    public void tearDown() {
+        engine.shutdown();
+        executor.shutdown();
+    }
+
+    // 计算量随 i 变化，后半段的元素更重，平均切分时各块负载不均匀
+    static long work(int i) {
+        long x = i;
+        int rounds = (i & 0xFFFF) < 0x8000 ? 1 : 8;
+        for (int r = 0; r < rounds; r++) {
+            x = x * 6364136223846793005L + 1442695040888963407L;
+        }
+        return x >>> 60;
+    }
+
+    // 三种方式都通过同一个函数接口调用 work，排除内联差异
+    static final IntToLongFunction WORK = WorkStealingEngineBenchmark::work;
+
+    static long sum(int from, int to) {
+        long s = 0;
+        for (int i = from; i < to; i++) s += WORK.applyAsLong(i);
+        return s;
+    }
+
+    @Benchmark
+    public long workStealing() {
+        return engine.sumLong(size, WORK);
+    }
+
+    @Benchmark
+    public long threadPoolFineGrained() throws Exception {
+        List<Future<Long>> futures = new ArrayList<>(size / chunk + 1);
+        for (int from = 0; from < size; from += chunk) {
+            int f = from, t = Math.min(size, from + chunk);
+            futures.add(executor.submit(() -> sum(f, t)));
+        }
+        long total = 0;
+        for (Future<Long> future : futures) total += future.get();
+        return total;
+    }
+
+    @Benchmark
+    public long threadPoolCoarse() throws Exception {
+        List<Future<Long>> futures = new ArrayList<>(threads);
+        int block = (size + threads - 1) / threads;
+        for (int from = 0; from < size; from += block) {
+            int f = from, t = Math.min(size, from + block);
+            futures.add(executor.submit(() -> sum(f, t)));
+        }
+        long total = 0;
+        for (Future<Long> future : futures) total += future.get();
+        return total;
+    }
+}
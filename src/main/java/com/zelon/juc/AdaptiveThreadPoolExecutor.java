@@ -0,0 +1,233 @@
+package com.zelon.juc;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.concurrent.*;
+
+/*
+自适应线程池：根据观测到的排队延迟、吞吐量和 CPU 使用率，运行时调整 corePoolSize / maximumPoolSize
+1. 为什么需要？
+   ThreadPool 中的 new ThreadPoolExecutor(5, 10, 60, MINUTES, new LinkedBlockingQueue<>(500))，
+   只有 500 个槽位的队列满了之后才会创建非核心线程，这时排在队尾的任务已经等了很久，对延迟敏感的业务来说太晚了。
+
+2. 控制器（每个采样周期执行一次 adjust()）：
+   ① Little's law: 需要的并发线程数 L = 到达率 λ × 平均执行时间 S / 目标利用率
+   ② 队列积压：把当前积压的任务在一个采样周期内消化掉需要的额外线程数
+   ③ 排队延迟梯度：窗口内排队时间 p99 超过目标值时，按 p99 / 目标值 的比例放大（最多翻倍）
+   ④ CPU 保护：进程 CPU 使用率超过上限时不再扩容，此时加线程只会加剧争抢
+   ⑤ 阻尼：期望值和当前值之间做指数平滑；扩容最多翻倍，缩容每次最多缩 25%，
+      并且要连续多个周期都需要缩容才执行，避免来回抖动
+
+3. 两种排队模式：
+   ① QUEUE_FIRST: ThreadPoolExecutor 默认行为，线程数达到 core 之后先排队，队列满了再扩容到 max，
+      控制器主要通过调整 corePoolSize 来扩缩容
+   ② GROW_FIRST: 先扩容再排队（类似 Tomcat 的 TaskQueue），没有空闲线程且线程数没到 max 时，
+      队列的 offer() 直接返回 false，迫使线程池创建新线程；线程数到达 max 后才真正排队，
+      控制器调整 max 限制突发扩容的上限，core 决定保留多少常驻线程
+ */
+
+public class AdaptiveThreadPoolExecutor extends InstrumentedThreadPoolExecutor {
+
+    public enum QueueMode {
+        QUEUE_FIRST, GROW_FIRST
+    }
+
+    @Value
+    @Builder
+    public static class Options {
+        @Builder.Default int minThreads = 2;
+        @Builder.Default int maxThreads = 64;
+        @Builder.Default int queueCapacity = 500;
+        @Builder.Default QueueMode queueMode = QueueMode.GROW_FIRST;
+        // 排队时间 p99 的目标值
+        @Builder.Default long targetQueueWaitMillis = 20;
+        @Builder.Default long sampleIntervalMillis = 200;
+        @Builder.Default double targetUtilization = 0.75;
+        @Builder.Default double cpuCeiling = 0.9;
+        // 平滑系数，越大响应越快，越小越稳定
+        @Builder.Default double smoothing = 0.5;
+        // 连续多少个周期都需要缩容才真正缩容
+        @Builder.Default int shrinkAfterSamples = 5;
+    }
+
+    @Value
+    public static class Sample {
+        double arrivalPerSecond;
+        double serviceMillis;
+        double queueWaitP99Millis;
+        int backlog;
+        double cpuLoad;
+        int desiredThreads;
+        int corePoolSize;
+        int maximumPoolSize;
+    }
+
+    private static final ScheduledExecutorService SAMPLER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "adaptive-pool-sampler");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final Options options;
+    private final ScheduledFuture<?> sampling;
+
+    // 以下字段只在采样线程中读写
+    private LatencyHistogram.Snapshot lastQueueWait;
+    private LatencyHistogram.Snapshot lastExecution;
+    private long lastSubmitted;
+    private long lastSampleNanos;
+    private double serviceNanosEwma;
+    private int shrinkVotes;
+    private volatile Sample lastSample;
+
+    public AdaptiveThreadPoolExecutor(Options options) {
+        this(options, Executors.defaultThreadFactory(), new AbortPolicy());
+    }
+
+    public AdaptiveThreadPoolExecutor(Options options, ThreadFactory threadFactory, RejectedExecutionHandler handler) {
+        super(options.getMinThreads(), initialMax(options), 60, TimeUnit.SECONDS,
+                options.getQueueMode() == QueueMode.GROW_FIRST
+                        ? new EagerTaskQueue(options.getQueueCapacity())
+                        : new LinkedBlockingQueue<>(options.getQueueCapacity()),
+                threadFactory, handler);
+        if (getQueue() instanceof EagerTaskQueue eager) {
+            eager.executor = this;
+        }
+        this.options = options;
+        PoolMetricsSnapshot snapshot = snapshot();
+        this.lastQueueWait = snapshot.getQueueWait();
+        this.lastExecution = snapshot.getExecution();
+        this.lastSampleNanos = System.nanoTime();
+        this.sampling = SAMPLER.scheduleWithFixedDelay(this::adjust,
+                options.getSampleIntervalMillis(), options.getSampleIntervalMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private static int initialMax(Options options) {
+        return options.getQueueMode() == QueueMode.GROW_FIRST
+                ? Math.min(options.getMaxThreads(), options.getMinThreads() * 2)
+                : options.getMaxThreads();
+    }
+
+    public Sample getLastSample() {
+        return lastSample;
+    }
+
+    // 采样并调整线程数，由采样线程周期性调用
+    void adjust() {
+        if (isShutdown()) return;
+        long now = System.nanoTime();
+        double intervalSeconds = Math.max(1, now - lastSampleNanos) / 1e9;
+        PoolMetricsSnapshot snapshot = snapshot();
+        LatencyHistogram.Snapshot queueWait = snapshot.getQueueWait().minus(lastQueueWait);
+        LatencyHistogram.Snapshot execution = snapshot.getExecution().minus(lastExecution);
+        double arrivalRate = (snapshot.getSubmittedTasks() - lastSubmitted) / intervalSeconds;
+        lastQueueWait = snapshot.getQueueWait();
+        lastExecution = snapshot.getExecution();
+        lastSubmitted = snapshot.getSubmittedTasks();
+        lastSampleNanos = now;
+
+        if (execution.count() > 0) {
+            serviceNanosEwma = serviceNanosEwma == 0
+                    ? execution.meanNanos()
+                    : 0.7 * serviceNanosEwma + 0.3 * execution.meanNanos();
+        }
+        double serviceSeconds = serviceNanosEwma / 1e9;
+        int current = getCorePoolSize();
+        int backlog = snapshot.getQueueDepth();
+
+        // ① Little's law + ② 积压
+        double desired = arrivalRate * serviceSeconds / options.getTargetUtilization()
+                + backlog * serviceSeconds / intervalSeconds;
+        // ③ 排队延迟梯度
+        long p99 = queueWait.percentileNanos(0.99);
+        long target = TimeUnit.MILLISECONDS.toNanos(options.getTargetQueueWaitMillis());
+        if (p99 > target) {
+            desired = Math.max(desired, current * Math.min(2.0, (double) p99 / target));
+        }
+        // ④ CPU 保护
+        double cpu = processCpuLoad();
+        if (cpu >= options.getCpuCeiling() && desired > current) {
+            desired = current;
+        }
+        // ⑤ 阻尼
+        double smoothed = current + options.getSmoothing() * (desired - current);
+        int next;
+        if (smoothed > current) {
+            shrinkVotes = 0;
+            next = (int) Math.min(Math.ceil(smoothed), current * 2L);
+        } else if (smoothed < current - 1 && ++shrinkVotes >= options.getShrinkAfterSamples()) {
+            shrinkVotes = 0;
+            next = Math.max((int) Math.ceil(smoothed), current - Math.max(1, current / 4));
+        } else {
+            next = current;
+        }
+        next = Math.max(options.getMinThreads(), Math.min(options.getMaxThreads(), next));
+
+        int max = options.getQueueMode() == QueueMode.GROW_FIRST
+                ? Math.min(options.getMaxThreads(), Math.max(next + 2, next * 2)) // 给两次采样之间的突发流量留出余量
+                : options.getMaxThreads();
+        resize(next, max);
+        lastSample = new Sample(arrivalRate, serviceSeconds * 1000, p99 / 1e6, backlog, cpu,
+                (int) Math.ceil(desired), next, max);
+    }
+
+    private void resize(int core, int max) {
+        // 始终保证 core <= max，否则 setCorePoolSize / setMaximumPoolSize 会抛异常
+        if (max >= getMaximumPoolSize()) {
+            if (max != getMaximumPoolSize()) setMaximumPoolSize(max);
+            if (core != getCorePoolSize()) setCorePoolSize(core);
+        } else {
+            if (core != getCorePoolSize()) setCorePoolSize(core);
+            setMaximumPoolSize(max);
+        }
+    }
+
+    private static double processCpuLoad() {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean sunOs) {
+            double load = sunOs.getProcessCpuLoad();
+            return load < 0 ? 0 : load;
+        }
+        return 0;
+    }
+
+    @Override
+    protected boolean requeueRejected(Runnable task) {
+        // GROW_FIRST 模式下 offer() 返回 false 只是为了触发扩容，扩容失败（线程数已到 max）时重新放回队列
+        return getQueue() instanceof EagerTaskQueue eager && eager.force(task);
+    }
+
+    @Override
+    protected void terminated() {
+        sampling.cancel(false);
+        super.terminated();
+    }
+
+    // 先扩容再排队的队列
+    static final class EagerTaskQueue extends LinkedBlockingQueue<Runnable> {
+        volatile AdaptiveThreadPoolExecutor executor;
+
+        EagerTaskQueue(int capacity) {
+            super(capacity);
+        }
+
+        @Override
+        public boolean offer(Runnable r) {
+            AdaptiveThreadPoolExecutor e = executor;
+            if (e == null) return super.offer(r);
+            int poolSize = e.getPoolSize();
+            // 有空闲线程，直接排队等空闲线程来取（inFlightTasks() 不包括 r 本身）
+            if (e.inFlightTasks() < poolSize) return super.offer(r);
+            // 没有空闲线程并且还能扩容，返回 false 让线程池创建新线程
+            if (poolSize < e.getMaximumPoolSize()) return false;
+            return super.offer(r);
+        }
+
+        boolean force(Runnable r) {
+            return super.offer(r);
+        }
+    }
+}
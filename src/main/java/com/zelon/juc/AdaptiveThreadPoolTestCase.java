@@ -0,0 +1,116 @@
+package com.zelon.juc;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.*;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+负载回放：同一段流量分别交给 ThreadPool 中的静态配置和自适应线程池，对比端到端延迟（提交 -> 执行完成）。
+流量：每个任务阻塞 5ms（模拟 IO），
+① 前 1 秒 每秒 400 个（5 个核心线程足够）
+② 接下来 1.5 秒 每秒 3000 个突发（需要 15 个以上线程）
+③ 最后 1 秒 每秒 400 个
+ */
+
+public class AdaptiveThreadPoolTestCase {
+
+    private static final long TASK_MILLIS = 5;
+    private static final int[][] TRACE = {
+            // {持续毫秒, 每秒任务数}
+            {1000, 400},
+            {1500, 3000},
+            {1000, 400},
+    };
+
+    @Test
+    public void testLoadReplay() throws InterruptedException {
+        // ThreadPool.main 中的静态配置
+        ThreadPoolExecutor fixed = new ThreadPoolExecutor(5, 10, 60, TimeUnit.MINUTES, new LinkedBlockingQueue<>(500));
+        Result fixedResult = replay(fixed);
+
+        AdaptiveThreadPoolExecutor adaptive = new AdaptiveThreadPoolExecutor(AdaptiveThreadPoolExecutor.Options.builder()
+                .minThreads(5)
+                .maxThreads(64)
+                .targetQueueWaitMillis(10)
+                .sampleIntervalMillis(100)
+                .build());
+        Result adaptiveResult = replay(adaptive);
+
+        System.out.println("static   (5, 10, LinkedBlockingQueue(500)): " + fixedResult);
+        System.out.println("adaptive (GROW_FIRST)                     : " + adaptiveResult);
+        System.out.println(adaptive.getLastSample());
+        /*
+        static 配置在突发期间队列先堆到 500 才扩容到 10 个线程，仍然处理不过来，
+        p99 达到数百毫秒并且有大量任务被拒绝；自适应线程池先扩容再排队，p99 接近任务本身的 5ms
+         */
+    }
+
+    @Test
+    public void testQueueFirstMode() throws InterruptedException {
+        AdaptiveThreadPoolExecutor adaptive = new AdaptiveThreadPoolExecutor(AdaptiveThreadPoolExecutor.Options.builder()
+                .minThreads(5)
+                .maxThreads(64)
+                .queueMode(AdaptiveThreadPoolExecutor.QueueMode.QUEUE_FIRST)
+                .targetQueueWaitMillis(10)
+                .sampleIntervalMillis(100)
+                .build());
+        // QUEUE_FIRST 模式下只能等控制器采样后调大 corePoolSize，比 GROW_FIRST 慢一个采样周期
+        System.out.println("adaptive (QUEUE_FIRST): " + replay(adaptive));
+    }
+
+    private static Result replay(ThreadPoolExecutor executor) throws InterruptedException {
+        LatencyHistogram latency = new LatencyHistogram();
+        int total = 0;
+        for (int[] phase : TRACE) {
+            total += phase[0] * phase[1] / 1000;
+        }
+        CountDownLatch done = new CountDownLatch(total);
+        int rejected = 0;
+        int peakThreads = 0;
+
+        long next = System.nanoTime();
+        for (int[] phase : TRACE) {
+            long gap = TimeUnit.SECONDS.toNanos(1) / phase[1];
+            int count = phase[0] * phase[1] / 1000;
+            for (int i = 0; i < count; i++) {
+                // 按计划的时间点提交，不受前面任务执行快慢的影响
+                long wait = next - System.nanoTime();
+                if (wait > 0) LockSupport.parkNanos(wait);
+                long submitAt = next;
+                next += gap;
+                try {
+                    executor.execute(() -> {
+                        sleep(TASK_MILLIS);
+                        latency.record(System.nanoTime() - submitAt);
+                        done.countDown();
+                    });
+                } catch (RejectedExecutionException e) {
+                    rejected++;
+                    done.countDown();
+                }
+                peakThreads = Math.max(peakThreads, executor.getPoolSize());
+            }
+        }
+        done.await(30, TimeUnit.SECONDS);
+        executor.shutdown();
+        return new Result(latency.snapshot(), rejected, peakThreads);
+    }
+
+    private record Result(LatencyHistogram.Snapshot latency, int rejected, int peakThreads) {
+        @Override
+        public String toString() {
+            return String.format("p50=%.1fms, p99=%.1fms, max=%.1fms, rejected=%d, peakThreads=%d",
+                    latency.percentile(0.5, TimeUnit.MILLISECONDS), latency.percentile(0.99, TimeUnit.MILLISECONDS),
+                    latency.maxNanos() / 1e6, rejected, peakThreads);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,369 @@
+package com.zelon.juc;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/*
+按 key 亲和的执行器：同一个 key 的任务总是在同一个单线程的 lane 中执行
+1. 为什么需要？
+   ThreadLocalTestCase 用 1 个线程的线程池，任务修改状态不需要任何同步；但是只有一个线程。
+   多个线程共用一个线程池时，同一个 key 的任务可能同时在两个线程上执行，每个 key 的状态都要加锁，执行顺序也不确定。
+   AffinityExecutor 有 N 个 lane，每个 lane 一个线程、一个有界队列（MpmcRingBuffer），key 的哈希值决定 lane：
+   ① 同一个 key 的任务按提交顺序在同一个线程中执行，key 的状态不需要加锁
+   ② lane 本地的状态表（HashMap，只由 lane 线程访问）：update(key, init, fn) 或者在任务中调用 localState(key, init)
+   ③ lane 线程一次从队列中批量取出任务（drainTo），减少唤醒和队列的竞争
+
+2. 路由：key 先哈希到 lanes × slotsPerLane 个槽（slot），槽再对应到 lane（owner），初始时均匀分配。
+   迁移的单位是槽，不是单个 key，也不是整个 lane。
+
+3. 热点迁移（rebalance = true 时打开）：
+   lane 线程每隔 rebalanceIntervalMillis 检查一次自己的队列，积压超过最空闲的 lane 的 imbalanceRatio 倍时，
+   把自己负责的一个热的槽（这段时间执行任务最多的，但不超过一半：只有一个热 key 的槽迁走也只是把热点换个地方）迁给最空闲的 lane：
+   ① owner[slot] 标记为 MOVING，等已经读到旧 owner 还没放入队列的提交线程（inFlight[slot]）完成，新的提交线程等待
+   ② 在自己的队列末尾放入交接标记，目标 lane 标记为等待交接（handoff[slot]），再把 owner[slot] 改为目标 lane
+   ③ 目标 lane 收到这个槽的任务时先暂存，不执行
+   ④ 原来的 lane 执行到交接标记时，这个槽之前的任务都已经执行完，把这个槽的 key 的状态交给目标 lane，
+      目标 lane 装入状态之后按顺序执行暂存的任务
+   所以迁移前后同一个 key 的任务仍然按提交顺序执行，状态也不会同时被两个线程访问。
+   迁移过程中不会阻塞 lane 线程：等待 inFlight 超时或者自己的队列已满时放弃这次迁移。
+
+4. 关闭：close() 不再接受新任务，等提交中的线程完成后向每个 lane 发送结束标记，已提交的任务都执行完才返回。
+ */
+
+public final class AffinityExecutor implements AutoCloseable {
+
+    @Value
+    @Builder
+    public static class Options {
+        @Builder.Default int lanes = Runtime.getRuntime().availableProcessors();
+        // 每个 lane 的队列容量，满时 execute() 阻塞（背压）
+        @Builder.Default int queueCapacity = 1024;
+        // lane 线程一次最多取出的任务数
+        @Builder.Default int batchSize = 64;
+        @Builder.Default MpmcRingBuffer.WaitStrategy waitStrategy = MpmcRingBuffer.WaitStrategy.BLOCKING;
+        @Builder.Default boolean rebalance = false;
+        @Builder.Default int slotsPerLane = 64;
+        @Builder.Default long rebalanceIntervalMillis = 100;
+        @Builder.Default double imbalanceRatio = 2.0;
+    }
+
+    @Value
+    public static class LaneMetrics {
+        int lane;
+        long executed;
+        long failed;
+        int queueDepth;
+        int slots;
+        int keys;
+    }
+
+    private static final int MOVING = -1;
+
+    private static final class Task {
+        final Object key;
+        final int slot; // 控制消息（交接、唤醒、结束）为 -1
+        final Runnable command;
+
+        Task(Object key, int slot, Runnable command) {
+            this.key = key;
+            this.slot = slot;
+            this.command = command;
+        }
+    }
+
+    private record Handoff(int slot, Map<Object, Object> states) {
+    }
+
+    private static final Task WAKE = new Task(null, -1, () -> { });
+    private static final Task POISON = new Task(null, -1, () -> { });
+
+    private final Options options;
+    private final Lane[] lanes;
+    private final AtomicIntegerArray owner;
+    // 已经读到 owner 还没有放入队列的提交线程数，按槽分开计数，迁移和关闭时等它归零
+    private final AtomicLongArray inFlight;
+    // 非 0 表示这个槽正在交接给第 handoff - 1 个 lane，这个 lane 暂存它的任务；
+    // 原来的 lane 在交接标记之前的任务照常执行
+    private final AtomicIntegerArray handoff;
+    private final LongAdder migrations = new LongAdder();
+    private volatile boolean closed;
+
+    public AffinityExecutor(Options options) {
+        if (options.getLanes() < 1) throw new IllegalArgumentException("lanes: " + options.getLanes());
+        if (options.getQueueCapacity() < 2) throw new IllegalArgumentException("queueCapacity: " + options.getQueueCapacity());
+        if (options.getBatchSize() < 1) throw new IllegalArgumentException("batchSize: " + options.getBatchSize());
+        if (options.getSlotsPerLane() < 1) throw new IllegalArgumentException("slotsPerLane: " + options.getSlotsPerLane());
+        this.options = options;
+        int slots = options.getLanes() * options.getSlotsPerLane();
+        this.owner = new AtomicIntegerArray(slots);
+        this.inFlight = new AtomicLongArray(slots);
+        this.handoff = new AtomicIntegerArray(slots);
+        for (int s = 0; s < slots; s++) {
+            owner.set(s, s % options.getLanes());
+        }
+        this.lanes = new Lane[options.getLanes()];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new Lane(i);
+        }
+        for (Lane lane : lanes) lane.start();
+    }
+
+    public void execute(Object key, Runnable command) throws InterruptedException {
+        Objects.requireNonNull(command);
+        int slot = slot(key);
+        Task task = new Task(key, slot, command);
+        for (;;) {
+            inFlight.incrementAndGet(slot);
+            try {
+                if (closed) throw new IllegalStateException("executor is closed");
+                int o = owner.get(slot);
+                if (o != MOVING) {
+                    lanes[o].queue.put(task);
+                    return;
+                }
+            } finally {
+                inFlight.decrementAndGet(slot);
+            }
+            // 正在迁移，很快就会结束
+            Thread.yield();
+        }
+    }
+
+    // 在 key 所在的 lane 中更新 key 的状态，不需要加锁
+    public <S> void update(Object key, Supplier<? extends S> init, Consumer<? super S> fn) throws InterruptedException {
+        execute(key, () -> fn.accept(localState(key, init)));
+    }
+
+    // 在 key 所在的 lane 中读取 key 的状态，排在这个 key 之前提交的任务之后
+    public <S, R> CompletableFuture<R> query(Object key, Function<? super S, ? extends R> fn) throws InterruptedException {
+        CompletableFuture<R> future = new CompletableFuture<>();
+        execute(key, () -> {
+            try {
+                @SuppressWarnings("unchecked") S state = (S) currentLane().state.get(key);
+                future.complete(fn.apply(state));
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    // 只能在 lane 线程中调用，key 应该是当前任务的 key：迁移时按 key 所在的槽交接状态
+    @SuppressWarnings("unchecked")
+    public static <S> S localState(Object key, Supplier<? extends S> init) {
+        Lane lane = currentLane();
+        S state = (S) lane.state.get(key);
+        if (state == null) {
+            state = init.get();
+            lane.state.put(key, state);
+            lane.keys = lane.state.size();
+        }
+        return state;
+    }
+
+    private static Lane currentLane() {
+        if (Thread.currentThread() instanceof Lane lane) return lane;
+        throw new IllegalStateException("not called from an affinity lane");
+    }
+
+    public List<LaneMetrics> metrics() {
+        List<LaneMetrics> result = new ArrayList<>(lanes.length);
+        int[] slots = new int[lanes.length];
+        for (int s = 0; s < owner.length(); s++) {
+            int o = owner.get(s);
+            if (o != MOVING) slots[o]++;
+        }
+        for (Lane lane : lanes) {
+            result.add(new LaneMetrics(lane.id, lane.executed.sum(), lane.failed.sum(), lane.queue.size(), slots[lane.id], lane.keys));
+        }
+        return result;
+    }
+
+    public long migrations() {
+        return migrations.sum();
+    }
+
+    // 不再接受新任务，等所有已提交的任务执行完，所有 lane 线程退出
+    @Override
+    public void close() throws InterruptedException {
+        if (!closed) {
+            closed = true;
+            for (int s = 0; s < inFlight.length(); s++) {
+                while (inFlight.get(s) > 0) Thread.yield();
+            }
+            for (Lane lane : lanes) lane.queue.put(POISON);
+        }
+        for (Lane lane : lanes) lane.join();
+    }
+
+    private int slot(Object key) {
+        int h = Objects.hashCode(key);
+        return Math.floorMod(h ^ (h >>> 16), owner.length());
+    }
+
+    private final class Lane extends Thread {
+        final int id;
+        final MpmcRingBuffer<Task> queue;
+        // 以下字段只由 lane 线程访问
+        final HashMap<Object, Object> state = new HashMap<>();
+        final Map<Integer, ArrayDeque<Task>> held = new HashMap<>();
+        final int[] hits;
+        // 这个周期内刚交接过来的槽，不马上迁走，避免两个 lane 来回迁移同一个槽
+        final BitSet received = new BitSet();
+        long nextCheck;
+        // 其他 lane 交接过来的状态
+        final ConcurrentLinkedQueue<Handoff> inbox = new ConcurrentLinkedQueue<>();
+        final LongAdder executed = new LongAdder();
+        final LongAdder failed = new LongAdder();
+        volatile int keys;
+
+        Lane(int id) {
+            super("affinity-lane-" + id);
+            setDaemon(true);
+            this.id = id;
+            this.queue = new MpmcRingBuffer<>(options.getQueueCapacity(), options.getWaitStrategy());
+            this.hits = options.isRebalance() ? new int[owner.length()] : null;
+        }
+
+        @Override
+        public void run() {
+            List<Task> batch = new ArrayList<>(options.getBatchSize());
+            nextCheck = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(options.getRebalanceIntervalMillis());
+            try {
+                for (;;) {
+                    batch.add(queue.take());
+                    queue.drainTo(batch, options.getBatchSize() - 1);
+                    receive();
+                    for (Task task : batch) {
+                        if (task == POISON) {
+                            finish();
+                            return;
+                        }
+                        if (task.slot >= 0 && handoff.get(task.slot) == id + 1) {
+                            held.computeIfAbsent(task.slot, s -> new ArrayDeque<>()).add(task);
+                        } else {
+                            run(task);
+                        }
+                    }
+                    batch.clear();
+                    if (hits != null && System.nanoTime() - nextCheck >= 0) rebalance();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void run(Task task) {
+            try {
+                task.command.run();
+            } catch (RuntimeException e) {
+                failed.increment();
+            }
+            if (task.slot >= 0) {
+                executed.increment();
+                if (hits != null) hits[task.slot]++;
+            }
+        }
+
+        // 装入交接过来的状态，按顺序执行暂存的任务
+        private void receive() {
+            Handoff h;
+            while ((h = inbox.poll()) != null) {
+                state.putAll(h.states());
+                keys = state.size();
+                handoff.set(h.slot(), 0);
+                received.set(h.slot());
+                ArrayDeque<Task> tasks = held.remove(h.slot());
+                if (tasks != null) {
+                    for (Task task : tasks) run(task);
+                }
+            }
+        }
+
+        // 结束标记之前还有暂存的任务时，等交接完成（原来的 lane 在它的结束标记之前一定会执行到交接标记）
+        private void finish() {
+            while (!held.isEmpty()) {
+                receive();
+                Thread.yield();
+            }
+        }
+
+        private void rebalance() {
+            nextCheck = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(options.getRebalanceIntervalMillis());
+            Lane target = null;
+            for (Lane lane : lanes) {
+                if (lane != this && (target == null || lane.queue.size() < target.queue.size())) target = lane;
+            }
+            int depth = queue.size();
+            if (target != null && depth >= options.getBatchSize() && depth > options.getImbalanceRatio() * (target.queue.size() + 1)) {
+                long total = 0;
+                for (int h : hits) total += h;
+                int hottest = -1;
+                for (int s = 0; s < hits.length; s++) {
+                    if (hits[s] > 0 && hits[s] * 2L <= total && owner.get(s) == id && handoff.get(s) == 0 && !received.get(s)
+                            && (hottest < 0 || hits[s] > hits[hottest])) {
+                        hottest = s;
+                    }
+                }
+                if (hottest >= 0) migrate(hottest, target);
+            }
+            Arrays.fill(hits, 0);
+            received.clear();
+        }
+
+        private void migrate(int slot, Lane target) {
+            if (closed || !owner.compareAndSet(slot, id, MOVING)) return;
+            for (int i = 0; inFlight.get(slot) != 0; i++) {
+                // 提交线程可能正阻塞在这个 lane 的 put() 上，不能一直等
+                if (i == 1000) {
+                    owner.set(slot, id);
+                    return;
+                }
+                Thread.yield();
+            }
+            Task marker = new Task(null, -1, () -> handOff(slot, target));
+            if (!queue.offer(marker)) {
+                owner.set(slot, id);
+                return;
+            }
+            handoff.set(slot, target.id + 1);
+            owner.set(slot, target.id);
+            migrations.increment();
+        }
+
+        // 这个槽在交接标记之前的任务都已经执行完，把它的 key 的状态交给目标 lane
+        private void handOff(int slot, Lane target) {
+            Map<Object, Object> moved = new HashMap<>();
+            for (Iterator<Map.Entry<Object, Object>> it = state.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<Object, Object> e = it.next();
+                if (slot(e.getKey()) == slot) {
+                    moved.put(e.getKey(), e.getValue());
+                    it.remove();
+                }
+            }
+            keys = state.size();
+            target.inbox.add(new Handoff(slot, moved));
+            // 目标 lane 可能阻塞在 take() 上；队列满说明它很忙，处理完这一批就会检查 inbox
+            target.queue.offer(WAKE);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.zelon.juc;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+AffinityExecutor：同一个 key 的任务在同一个 lane 中按顺序执行，状态不加锁；热点槽迁移前后顺序和状态都不变。
+ */
+
+public class AffinityExecutorTestCase {
+
+    // 每个 key 的状态：执行过的任务数、上一个任务的序号、乱序的次数，只由一个 lane 线程访问，不需要 volatile 或者锁
+    static final class Counter {
+        long count;
+        long lastSeq = -1;
+        long outOfOrder;
+        String lane;
+
+        void apply(long seq) {
+            if (seq <= lastSeq) outOfOrder++;
+            lastSeq = seq;
+            count++;
+            lane = Thread.currentThread().getName();
+        }
+    }
+
+    @Test
+    public void testOrderAndLocalState() throws Exception {
+        AffinityExecutor executor = new AffinityExecutor(AffinityExecutor.Options.builder().lanes(4).build());
+        int keys = 100, perKey = 10_000;
+        Thread[] producers = new Thread[2];
+        for (int p = 0; p < producers.length; p++) {
+            int from = p * keys / 2;
+            producers[p] = new Thread(() -> {
+                try {
+                    for (int seq = 0; seq < perKey; seq++) {
+                        for (int key = from; key < from + keys / 2; key++) {
+                            long s = seq;
+                            executor.update(key, Counter::new, (Counter c) -> c.apply(s));
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            producers[p].start();
+        }
+        for (Thread t : producers) t.join();
+
+        long total = 0, outOfOrder = 0;
+        for (int key = 0; key < keys; key++) {
+            Counter c = executor.<Counter, Counter>query(key, state -> state).get();
+            total += c.count;
+            outOfOrder += c.outOfOrder;
+        }
+        System.out.println(total); // 1000000, 没有丢失的更新
+        System.out.println(outOfOrder); // 0, 同一个 key 按提交顺序执行
+        System.out.println(executor.<Counter, String>query(7, c -> c.lane).get()
+                .equals(executor.<Counter, String>query(7, c -> c.lane).get())); // true, 同一个 key 总是在同一个 lane
+        executor.metrics().forEach(System.out::println);
+        // AffinityExecutor.LaneMetrics(lane=0, executed=250006, failed=0, queueDepth=0, slots=64, keys=25) ...
+        executor.close();
+    }
+
+    @Test
+    public void testLocalStateOutsideLane() {
+        try {
+            AffinityExecutor.localState("key", Counter::new);
+        } catch (IllegalStateException e) {
+            System.out.println(e.getMessage()); // not called from an affinity lane
+        }
+    }
+
+    @Test
+    public void testRebalance() throws Exception {
+        AffinityExecutor executor = new AffinityExecutor(AffinityExecutor.Options.builder()
+                .lanes(2).slotsPerLane(8).rebalance(true).rebalanceIntervalMillis(20).build());
+        // 小的 Integer 的哈希值就是它本身，偶数 key 都在 lane 0 的槽上，lane 1 空闲
+        List<Integer> hotKeys = new ArrayList<>();
+        for (int key = 0; key < 64; key += 2) hotKeys.add(key);
+        AtomicLong spin = new AtomicLong();
+        long perKey = 2_000;
+        for (int seq = 0; seq < perKey; seq++) {
+            for (int key : hotKeys) {
+                long s = seq;
+                executor.update(key, Counter::new, (Counter c) -> {
+                    long begin = System.nanoTime();
+                    while (System.nanoTime() - begin < 2_000) spin.incrementAndGet();
+                    c.apply(s);
+                });
+            }
+        }
+        List<CompletableFuture<Counter>> states = new ArrayList<>();
+        for (int key : hotKeys) states.add(executor.query(key, (Counter c) -> c));
+        long total = 0, outOfOrder = 0;
+        for (CompletableFuture<Counter> f : states) {
+            total += f.get().count;
+            outOfOrder += f.get().outOfOrder;
+        }
+        System.out.println(executor.migrations() > 0); // true
+        System.out.println(total == hotKeys.size() * perKey); // true, 迁移时状态随槽一起交接，没有丢失的更新
+        System.out.println(outOfOrder); // 0, 迁移前后仍然按提交顺序执行
+        executor.metrics().forEach(System.out::println);
+        // AffinityExecutor.LaneMetrics(lane=0, executed=36986, failed=0, queueDepth=0, slots=3, keys=12)
+        // AffinityExecutor.LaneMetrics(lane=1, executed=27046, failed=0, queueDepth=0, slots=13, keys=20), lane 0 的热槽迁到了 lane 1
+        executor.close();
+    }
+}
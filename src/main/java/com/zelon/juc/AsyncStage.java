@@ -0,0 +1,250 @@
+package com.zelon.juc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/*
+非阻塞的异步任务组合，基于 CompletableFuture，运行在现有的线程池上
+1. 为什么需要？
+   ThreadCreateAndJoin、ThreadPool.main 中用 futureTask.get() / t1.join() 等待结果，等待期间调用线程被阻塞（park），
+   一个请求拆成多个子任务并行执行时，请求线程什么都不做，只是在等，并发请求数受限于线程数。
+
+2. 思路：每一步都注册回调，由完成的那个线程触发下一步，没有任何线程阻塞在 get()/join() 上
+   ① supply(task, executor): 在线程池中执行任务，返回 AsyncStage
+   ② then / thenAsync: 串联下一步（同步转换 / 返回另一个 AsyncStage）
+   ③ allOf: 扇出之后汇总（fan-out / fan-in），全部成功才成功，任意一个失败立即失败并取消其他子任务
+   ④ firstSuccess: 第一个成功的结果，其余取消；全部失败才失败，其余的异常作为 suppressed 附加
+   ⑤ timeout: 每一步单独设置超时，超时后以 TimeoutException 失败，并取消（中断）还在执行的任务
+   ⑥ recover: 失败时给出兜底值
+   ⑦ 取消沿着组合链向上游传播：then / recover 的 stage 被取消（或者超时）时取消上一步，thenAsync 还会取消已经开始的下一步，
+     allOf / firstSuccess 取消全部子任务，最终中断链条起点 supply 中正在执行的任务。
+     注意：同一个 stage 被多个下游共享时，任意一个下游的取消都会让它失败，需要独立超时的下游应该各自 supply
+
+3. 异常传播与 future.get() 一致：
+   回调中看到的、recover 收到的都是任务抛出的原始异常（去掉 CompletionException 包装），
+   在最外层确实需要同步等待时（例如 main 方法），get() 同样抛出 ExecutionException，getCause() 是原始异常。
+ */
+
+public final class AsyncStage<T> {
+
+    private final CompletableFuture<T> future;
+    // 取消产生这个结果的工作：supply 中断任务，组合出来的 stage 取消上游；已经完成的值没有对应的工作，为 null
+    private final Runnable upstream;
+
+    private AsyncStage(CompletableFuture<T> future, Runnable upstream) {
+        this.future = future;
+        this.upstream = upstream;
+    }
+
+    // 在 executor 中执行 task
+    public static <T> AsyncStage<T> supply(Callable<T> task, ExecutorService executor) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Future<?> submitted;
+        try {
+            submitted = executor.submit(() -> {
+                if (future.isDone()) return; // 已经超时或者被取消，不再执行
+                try {
+                    future.complete(task.call());
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+            return new AsyncStage<>(future, null);
+        }
+        return new AsyncStage<>(future, () -> submitted.cancel(true));
+    }
+
+    public static <T> AsyncStage<T> completed(T value) {
+        return new AsyncStage<>(CompletableFuture.completedFuture(value), null);
+    }
+
+    public static <T> AsyncStage<T> failed(Throwable error) {
+        return new AsyncStage<>(CompletableFuture.failedFuture(error), null);
+    }
+
+    public static <T> AsyncStage<T> of(CompletableFuture<T> future) {
+        return new AsyncStage<>(future, null);
+    }
+
+    // 同步转换，在完成上一步的线程中执行，适合很快的计算
+    public <R> AsyncStage<R> then(Function<? super T, ? extends R> fn) {
+        return new AsyncStage<>(future.thenApply(fn), this::cancel);
+    }
+
+    // 转换放到 executor 中执行，适合比较慢的计算，不占用完成上一步的线程（例如 IO 线程）
+    public <R> AsyncStage<R> then(Function<? super T, ? extends R> fn, Executor executor) {
+        return new AsyncStage<>(future.thenApplyAsync(fn, executor), this::cancel);
+    }
+
+    // 下一步本身也是异步的
+    public <R> AsyncStage<R> thenAsync(Function<? super T, AsyncStage<R>> fn) {
+        // 下一步开始之后，取消要传给它；取消发生在下一步开始之前时，下一步一开始就取消
+        AtomicReference<AsyncStage<R>> next = new AtomicReference<>();
+        CompletableFuture<R> result = new CompletableFuture<>();
+        future.thenCompose(v -> {
+            AsyncStage<R> stage = fn.apply(v);
+            next.set(stage);
+            if (result.isDone()) stage.cancel();
+            return stage.future;
+        }).whenComplete((v, e) -> {
+            if (e == null) result.complete(v);
+            else result.completeExceptionally(unwrap(e));
+        });
+        result.whenComplete((v, e) -> {
+            AsyncStage<R> stage = next.get();
+            if (e instanceof CancellationException && stage != null) stage.cancel();
+        });
+        return new AsyncStage<>(result, this::cancel);
+    }
+
+    // 超时后以 TimeoutException 失败，并沿着组合链取消上游，中断还没有完成的任务
+    public AsyncStage<T> timeout(long timeout, TimeUnit unit) {
+        CompletableFuture<T> result = future.copy().orTimeout(timeout, unit);
+        result.whenComplete((v, e) -> {
+            if (unwrap(e) instanceof TimeoutException) cancel();
+        });
+        return new AsyncStage<>(result, this::cancel);
+    }
+
+    // 失败时用 fn 的返回值代替，fn 收到的是原始异常
+    public AsyncStage<T> recover(Function<Throwable, ? extends T> fn) {
+        return new AsyncStage<>(future.exceptionally(e -> fn.apply(unwrap(e))), this::cancel);
+    }
+
+    // 完成时回调，error 是原始异常，成功时为 null
+    public AsyncStage<T> onComplete(BiConsumer<? super T, Throwable> callback) {
+        future.whenComplete((v, e) -> callback.accept(v, unwrap(e)));
+        return this;
+    }
+
+    // 取消：结果以 CancellationException 失败，沿着组合链取消上游，正在执行的任务被中断
+    public boolean cancel() {
+        boolean cancelled = future.cancel(false);
+        if (upstream != null) upstream.run();
+        return cancelled;
+    }
+
+    public boolean isDone() {
+        return future.isDone();
+    }
+
+    // 只用于最外层（例如 main 方法、测试）必须同步等待的地方，异常与 future.get() 相同
+    public T get() throws InterruptedException, ExecutionException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw rethrow(e);
+        }
+    }
+
+    public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        try {
+            return future.get(timeout, unit);
+        } catch (ExecutionException e) {
+            throw rethrow(e);
+        }
+    }
+
+    public CompletableFuture<T> toCompletableFuture() {
+        return future;
+    }
+
+    // 全部成功时按原顺序返回结果；任意一个失败立即以它的异常失败，并取消其他还没完成的子任务
+    public static <T> AsyncStage<List<T>> allOf(List<AsyncStage<T>> stages) {
+        CompletableFuture<List<T>> result = new CompletableFuture<>();
+        int n = stages.size();
+        if (n == 0) {
+            result.complete(new ArrayList<>());
+            return new AsyncStage<>(result, null);
+        }
+        AtomicReferenceArray<T> values = new AtomicReferenceArray<>(n);
+        AtomicInteger remaining = new AtomicInteger(n);
+        for (int i = 0; i < n; i++) {
+            int index = i;
+            stages.get(i).future.whenComplete((v, e) -> {
+                if (e != null) {
+                    if (result.completeExceptionally(unwrap(e))) cancelAll(stages);
+                    return;
+                }
+                values.set(index, v);
+                if (remaining.decrementAndGet() == 0) {
+                    List<T> list = new ArrayList<>(n);
+                    for (int j = 0; j < n; j++) list.add(values.get(j));
+                    result.complete(list);
+                }
+            });
+        }
+        result.whenComplete((v, e) -> {
+            if (e instanceof CancellationException) cancelAll(stages);
+        });
+        return new AsyncStage<>(result, () -> cancelAll(stages));
+    }
+
+    // 扇出：对每个输入启动一个异步任务，然后汇总
+    public static <I, T> AsyncStage<List<T>> fanOut(List<I> inputs, Function<? super I, AsyncStage<T>> fn) {
+        List<AsyncStage<T>> stages = new ArrayList<>(inputs.size());
+        for (I input : inputs) {
+            stages.add(fn.apply(input));
+        }
+        return allOf(stages);
+    }
+
+    // 第一个成功的结果，其余取消；全部失败时以第一个异常失败，其余异常作为 suppressed 附加
+    public static <T> AsyncStage<T> firstSuccess(List<AsyncStage<T>> stages) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        int n = stages.size();
+        if (n == 0) {
+            result.completeExceptionally(new IllegalArgumentException("no stages"));
+            return new AsyncStage<>(result, null);
+        }
+        AtomicInteger remaining = new AtomicInteger(n);
+        Throwable[] errors = new Throwable[n];
+        for (int i = 0; i < n; i++) {
+            int index = i;
+            stages.get(i).future.whenComplete((v, e) -> {
+                if (e == null) {
+                    if (result.complete(v)) cancelAll(stages);
+                    return;
+                }
+                errors[index] = unwrap(e);
+                // remaining 的递减保证了 errors 数组的写入对最后一个线程可见
+                if (remaining.decrementAndGet() == 0) {
+                    Throwable first = null;
+                    for (Throwable error : errors) {
+                        if (first == null) first = error;
+                        else if (error != first) first.addSuppressed(error);
+                    }
+                    result.completeExceptionally(first);
+                }
+            });
+        }
+        return new AsyncStage<>(result, () -> cancelAll(stages));
+    }
+
+    private static void cancelAll(List<? extends AsyncStage<?>> stages) {
+        for (AsyncStage<?> stage : stages) {
+            if (!stage.isDone()) stage.cancel();
+        }
+    }
+
+    // 去掉 CompletableFuture 加上的 CompletionException 包装
+    static Throwable unwrap(Throwable e) {
+        while (e instanceof CompletionException && e.getCause() != null) {
+            e = e.getCause();
+        }
+        return e;
+    }
+
+    private static ExecutionException rethrow(ExecutionException e) {
+        Throwable cause = unwrap(e.getCause());
+        return cause == e.getCause() ? e : new ExecutionException(cause);
+    }
+}
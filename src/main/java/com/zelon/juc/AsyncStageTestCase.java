@@ -0,0 +1,131 @@
+package com.zelon.juc;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/*
+AsyncStage 的用法：扇出 / 汇总、超时、firstSuccess、异常传播。
+除了最后取结果打印的 get()，中间没有任何线程阻塞等待子任务。
+ */
+
+public class AsyncStageTestCase {
+
+    private final ExecutorService io = Executors.newFixedThreadPool(8);
+
+    @Test
+    public void testFanOutFanIn() throws Exception {
+        // 一个请求拆成 3 个子任务并行查询，再汇总
+        AsyncStage<Integer> total = AsyncStage.fanOut(List.of("price", "stock", "coupon"), name -> AsyncStage.supply(() -> {
+                    Thread.sleep(100);
+                    return name.length();
+                }, io))
+                .then(values -> values.stream().mapToInt(Integer::intValue).sum());
+
+        total.onComplete((v, e) -> System.out.println(Thread.currentThread().getName() + " 汇总结果: " + v)); // 由最后完成的 io 线程回调, 16
+        System.out.println("提交后立即返回, isDone = " + total.isDone()); // false
+        System.out.println(total.get()); // 16, 约 100ms 而不是 300ms
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        AtomicBoolean interrupted = new AtomicBoolean();
+        AsyncStage<String> slow = AsyncStage.supply(() -> {
+            try {
+                Thread.sleep(5000);
+            } catch (InterruptedException e) {
+                interrupted.set(true);
+                throw e;
+            }
+            return "slow";
+        }, io).timeout(100, TimeUnit.MILLISECONDS);
+
+        String result = slow.recover(e -> "fallback(" + e.getClass().getSimpleName() + ")").get();
+        System.out.println(result); // fallback(TimeoutException)
+        Thread.sleep(50);
+        System.out.println("慢任务被中断: " + interrupted.get()); // true, 超时后不再占用线程
+    }
+
+    @Test
+    public void testTimeoutOnChain() throws Exception {
+        // 超时设在组合出来的 stage 上：取消沿着 thenAsync、then 向上游传播，中断正在执行的第二步
+        AtomicBoolean interrupted = new AtomicBoolean();
+        AsyncStage<Integer> chain = AsyncStage.supply(() -> "id", io)
+                .thenAsync(id -> AsyncStage.supply(() -> {
+                    try {
+                        Thread.sleep(5000);
+                    } catch (InterruptedException e) {
+                        interrupted.set(true);
+                        throw e;
+                    }
+                    return id + "-detail";
+                }, io))
+                .then(String::length)
+                .timeout(100, TimeUnit.MILLISECONDS);
+        try {
+            chain.get();
+        } catch (ExecutionException e) {
+            System.out.println(e.getCause().getClass().getSimpleName()); // TimeoutException
+        }
+        Thread.sleep(50);
+        System.out.println("第二步被中断: " + interrupted.get()); // true
+    }
+
+    @Test
+    public void testFirstSuccess() throws Exception {
+        // 同时查询三个副本，取最快成功的那个
+        AsyncStage<String> fastest = AsyncStage.firstSuccess(List.of(
+                AsyncStage.supply(() -> {
+                    throw new IllegalStateException("replica-1 down");
+                }, io),
+                AsyncStage.supply(() -> {
+                    Thread.sleep(300);
+                    return "replica-2";
+                }, io),
+                AsyncStage.supply(() -> {
+                    Thread.sleep(50);
+                    return "replica-3";
+                }, io)));
+        System.out.println(fastest.get()); // replica-3, replica-1 的失败被忽略, replica-2 被取消
+
+        AsyncStage<String> allFailed = AsyncStage.firstSuccess(List.of(
+                AsyncStage.<String>failed(new IllegalStateException("a")),
+                AsyncStage.<String>failed(new IllegalStateException("b"))));
+        try {
+            allFailed.get();
+        } catch (ExecutionException e) {
+            System.out.println(e.getCause().getMessage() + ", suppressed = " + e.getCause().getSuppressed().length); // a, suppressed = 1
+        }
+    }
+
+    @Test
+    public void testErrorPropagation() throws InterruptedException {
+        // 与 ThreadPool.main 中 future.get() 的 1 / 0 相同
+        AsyncStage<Integer> stage = AsyncStage.supply(() -> 1 / 0, io).then(v -> v + 1);
+        stage.onComplete((v, e) -> System.out.println("回调收到: " + e)); // java.lang.ArithmeticException: / by zero
+        try {
+            stage.get();
+        } catch (ExecutionException e) {
+            System.out.println("get() 抛出: " + e.getCause()); // java.lang.ArithmeticException: / by zero, 与 future.get() 相同
+        }
+
+        // allOf 中一个失败，其他子任务被取消
+        AtomicBoolean finished = new AtomicBoolean();
+        AsyncStage<List<Integer>> all = AsyncStage.allOf(List.of(
+                AsyncStage.supply(() -> 1 / 0, io),
+                AsyncStage.supply(() -> {
+                    Thread.sleep(1000);
+                    finished.set(true);
+                    return 1;
+                }, io)));
+        try {
+            all.get();
+        } catch (ExecutionException e) {
+            System.out.println("allOf: " + e.getCause()); // java.lang.ArithmeticException: / by zero
+        }
+        Thread.sleep(50);
+        System.out.println("另一个子任务执行完: " + finished.get()); // false, 已被取消
+    }
+}
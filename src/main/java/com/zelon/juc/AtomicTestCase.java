@@ -7,11 +7,13 @@ package com.zelon.juc;
 3. 原子引用：AtomicReference、AtomicStampedReference
 4. 字段更新类：将引用对象中的成员变量原子化，比如 AtomicIntegerFieldUpdater、AtomicReferenceFieldUpdater
 5. 累加器类：LongAdder、LongAccumulator
+6. 按 int key 分组的大量计数器：ConcurrentHashMap<Integer, AtomicLong> 每个 key 要 80 字节左右，可以用 ConcurrentIntLongMap
  */
 
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import org.junit.jupiter.api.Test;
+import org.openjdk.jol.info.ClassLayout;
 
 import java.util.concurrent.atomic.*;
 
@@ -75,10 +77,127 @@ public class AtomicTestCase {
         System.out.println(productReference.get()); // Product(name=小米17promax, stock=91)
     }
 
+    @Test
+    public void atomicStampedReferenceTest() {
+        // ABA：值从 A 变成 B 又变回 A，只比较引用的 CAS 认为它没有变过
+        String a = "A", b = "B";
+        AtomicReference<String> reference = new AtomicReference<>(a);
+        String seen = reference.get(); // 线程 1 读到 A，然后被挂起
+        reference.set(b); // 线程 2: A -> B
+        reference.set(a); // 线程 2: B -> A
+        System.out.println(reference.compareAndSet(seen, "C")); // true, 线程 1 没有发现中间的修改
+
+        // AtomicStampedReference 同时比较引用和版本号，每次修改版本号加一
+        AtomicStampedReference<String> stamped = new AtomicStampedReference<>(a, 0);
+        int[] stampHolder = new int[1];
+        String seenRef = stamped.get(stampHolder); // 线程 1 读到 (A, 0)
+        stamped.compareAndSet(a, b, 0, 1); // 线程 2: A -> B
+        stamped.compareAndSet(b, a, 1, 2); // 线程 2: B -> A
+        System.out.println(stamped.compareAndSet(seenRef, "C", stampHolder[0], stampHolder[0] + 1)); // false, 版本号已经是 2
+        System.out.println(stamped.getReference() + ", " + stamped.getStamp()); // A, 2
+        // 链表中节点被复用时 ABA 会破坏结构，TreiberStack、MichaelScottQueue 用它保护栈顶、队头和队尾
+    }
+
+    @Test
+    public void stripedStockTest() throws InterruptedException {
+        // 所有线程 CAS 同一个 stock 字段时，竞争会非常激烈，秒杀时把库存拆分到多个 Cell 中
+        Product product = new Product("小米17promax", 1000);
+        StripedStock stock = product.openFlashSale(8);
+        System.out.println(product.getStock() + ", " + stock.available()); // 0, 1000
+
+        AtomicInteger sold = new AtomicInteger();
+        Thread[] buyers = new Thread[16];
+        for (int i = 0; i < buyers.length; i++) {
+            buyers[i] = new Thread(() -> {
+                // 每个线程抢购 100 次，总共 1600 次，只有 1000 次能成功
+                for (int j = 0; j < 100; j++) {
+                    if (stock.tryReserve(1)) sold.incrementAndGet();
+                }
+            });
+            buyers[i].start();
+        }
+        for (Thread buyer : buyers) {
+            buyer.join();
+        }
+        System.out.println(sold.get() + ", " + stock.availableExact()); // 1000, 0 不会超卖
+
+        stock.release(3); // 3 个订单取消，库存归还
+        System.out.println(stock.tryReserve(4)); // false
+        System.out.println(stock.tryReserve(3)); // true
+
+        // 售罄后失败的请求直接返回 false，不再加锁冻结所有 Cell
+        long start = System.nanoTime();
+        for (int i = 0; i < 1_000_000; i++) {
+            stock.tryReserve(1);
+        }
+        System.out.println("sold out tryReserve: " + (System.nanoTime() - start) / 1_000_000 + "ns/op"); // 约几十纳秒
+        stock.release(1);
+        System.out.println(stock.tryReserve(1) + ", " + stock.tryReserve(1)); // true, false
+
+        stock.release(10);
+        product.closeFlashSale(stock); // 秒杀结束，剩余库存写回 stock 字段
+        System.out.println(product); // Product(name=小米17promax, stock=10)
+
+        // 每个 Cell 的 value 前后都有 64 字节填充
+        System.out.println(ClassLayout.parseClass(StripedStock.Cell.class).toPrintable());
+    }
+
+    @Test
+    public void stripedStockThroughputTest() throws InterruptedException {
+        int threads = 8;
+        int perThread = 1_000_000;
+        for (int round = 0; round < 2; round++) { // 第一轮预热
+            Product product = new Product("小米17promax", threads * perThread);
+            AtomicIntegerFieldUpdater<Product> stockUpdater = AtomicIntegerFieldUpdater.newUpdater(Product.class, "stock");
+            long updaterCost = race(threads, () -> {
+                for (int i = 0; i < perThread; i++) {
+                    int v;
+                    do {
+                        v = stockUpdater.get(product);
+                    } while (v > 0 && !stockUpdater.compareAndSet(product, v, v - 1));
+                }
+            });
+
+            StripedStock stock = new StripedStock(threads * perThread);
+            long stripedCost = race(threads, () -> {
+                for (int i = 0; i < perThread; i++) {
+                    stock.tryReserve(1);
+                }
+            });
+            System.out.println("AtomicIntegerFieldUpdater: " + updaterCost + "ms, StripedStock: " + stripedCost + "ms");
+        }
+        // 多核下 StripedStock 明显更快，核数越多差距越大；单核时没有真正的并行，两者差别不大
+    }
+
+    private static long race(int threads, Runnable task) throws InterruptedException {
+        Thread[] workers = new Thread[threads];
+        long start = System.nanoTime();
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(task);
+            workers[i].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
 }
 @Data
 @AllArgsConstructor
 class Product{
     private String name;
     public volatile int stock;
+
+    private static final AtomicIntegerFieldUpdater<Product> STOCK = AtomicIntegerFieldUpdater.newUpdater(Product.class, "stock");
+
+    // 秒杀开始：把 stock 全部转移到分段计数器中，秒杀期间由 StripedStock 扣减库存
+    public StripedStock openFlashSale(int cells) {
+        return new StripedStock(STOCK.getAndSet(this, 0), cells);
+    }
+
+    // 秒杀结束：把剩余库存写回 stock
+    public void closeFlashSale(StripedStock stripedStock) {
+        STOCK.addAndGet(this, stripedStock.drain());
+    }
 }
\ No newline at end of file
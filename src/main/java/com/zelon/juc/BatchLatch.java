@@ -0,0 +1,160 @@
+package com.zelon.juc;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.AbstractQueuedLongSynchronizer;
+
+/*
+可重复使用的批量门闩：攒够 batchSize 个事件，或者距离这一批开始超过 maxDelay，就放行所有等待的线程
+1. 为什么不用 CountDownLatch？
+   ① CountDownLatch 计数到 0 之后不能重置，每一批都要 new 一个新的，还要想办法把新的 latch 发布给所有线程
+   ② 没有超时放行：事件不够时，等待线程只能自己 await(timeout)，超时之后这一批的其他线程并不知道
+   CyclicBarrier 可以重复使用，但它要求到达的线程都阻塞等待，产生事件的线程不应该被阻塞。
+
+2. 基于 AQS（AbstractQueuedLongSynchronizer），state 的高 32 位是批次号（generation），低 32 位是这一批的事件数：
+   ① countDown(): CAS 事件数 + 1，达到 batchSize 时 CAS 为（批次号 + 1，0），然后 releaseShared() 唤醒所有等待线程，
+      下一批自动开始，不需要调用方重置
+   ② await(): 记下当前批次号 g，tryAcquireShared(g) 在批次号变化之后成功（这一批已经放行）
+   ③ 超时放行：等待线程用 tryAcquireSharedNanos() 定时 park 到这一批的截止时间，
+      第一个醒来的线程负责 CAS 切换批次并唤醒其他线程，不需要后台定时线程
+   ④ reset(): 立即放行当前批次并开始新的一批
+
+3. 每一批的开始时间和批次号一起保存在一个不可变对象中，只有 CAS 切换批次成功的线程才写入，
+   多个线程同时尝试切换时，失败的线程不会覆盖成功的线程写入的时间。
+   CAS 成功到写入开始时间之间，等待线程可能读到新的批次号和上一批的开始时间：批次号对不上时让出 CPU 再读一次，
+   不会拿上一批的开始时间计算截止时间而提前放行。
+ */
+
+public class BatchLatch {
+
+    private final int batchSize;
+    private final long maxDelayNanos;
+    private final Sync sync = new Sync();
+    // 当前批次开始的时间
+    private volatile Opened opened;
+
+    public BatchLatch(int batchSize, long maxDelay, TimeUnit unit) {
+        if (batchSize < 1) throw new IllegalArgumentException("batchSize: " + batchSize);
+        if (maxDelay <= 0) throw new IllegalArgumentException("maxDelay: " + maxDelay);
+        this.batchSize = batchSize;
+        this.maxDelayNanos = unit.toNanos(maxDelay);
+        this.opened = new Opened(0, System.nanoTime());
+    }
+
+    // 记录一个事件，不会阻塞；返回 true 表示这个事件凑满了一批并放行了等待线程
+    public boolean countDown() {
+        for (;;) {
+            long s = sync.state();
+            int generation = generation(s);
+            if (count(s) + 1 < batchSize) {
+                if (sync.cas(s, s + 1)) return false;
+            } else if (advance(s, generation)) {
+                return true;
+            }
+        }
+    }
+
+    // 等待当前这一批放行（事件数达到 batchSize 或者超过 maxDelay）
+    public void await() throws InterruptedException {
+        awaitGeneration(generation(sync.state()), false, 0);
+    }
+
+    // 最多等待 timeout，返回 false 表示自己的 timeout 先到，这一批还没有放行
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        return awaitGeneration(generation(sync.state()), true, System.nanoTime() + unit.toNanos(timeout));
+    }
+
+    // 立即放行当前这一批，开始新的一批
+    public void reset() {
+        for (;;) {
+            long s = sync.state();
+            if (advance(s, generation(s))) return;
+        }
+    }
+
+    // 当前批次号，每放行一批加 1
+    public int getGeneration() {
+        return generation(sync.state());
+    }
+
+    // 当前这一批已经记录的事件数
+    public int getCount() {
+        return count(sync.state());
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public int getQueueLength() {
+        return sync.getQueueLength();
+    }
+
+    private boolean awaitGeneration(int generation, boolean timed, long deadline) throws InterruptedException {
+        for (;;) {
+            long s = sync.state();
+            if (generation(s) != generation) return true;
+            Opened o = opened;
+            if (o.generation() != generation) {
+                // 切换到这一批的线程还没有写入开始时间
+                Thread.yield();
+                continue;
+            }
+            long now = System.nanoTime();
+            long batchDeadline = o.nanos() + maxDelayNanos;
+            if (batchDeadline - now <= 0) {
+                // 这一批超时，由当前线程放行；CAS 失败说明已经被其他线程放行或者有新事件，重新检查
+                advance(s, generation);
+                continue;
+            }
+            long wait = batchDeadline - now;
+            if (timed) {
+                if (deadline - now <= 0) return false;
+                wait = Math.min(wait, deadline - now);
+            }
+            if (sync.tryAcquireSharedNanos(generation, wait)) return true;
+        }
+    }
+
+    // 从状态 s 切换到下一批并唤醒等待线程
+    private boolean advance(long s, int generation) {
+        int next = generation + 1;
+        if (!sync.cas(s, (long) next << 32)) return false;
+        opened = new Opened(next, System.nanoTime());
+        sync.releaseShared(0);
+        return true;
+    }
+
+    private record Opened(int generation, long nanos) {
+    }
+
+    private static int generation(long s) {
+        return (int) (s >>> 32);
+    }
+
+    private static int count(long s) {
+        return (int) s;
+    }
+
+    private static final class Sync extends AbstractQueuedLongSynchronizer {
+
+        long state() {
+            return getState();
+        }
+
+        boolean cas(long expect, long update) {
+            return compareAndSetState(expect, update);
+        }
+
+        // arg 是等待的批次号，批次号变化说明已经放行
+        @Override
+        protected long tryAcquireShared(long generation) {
+            return (int) (getState() >>> 32) != (int) generation ? 1 : -1;
+        }
+
+        // 放行条件已经由 CAS 切换批次完成，这里只负责让 AQS 唤醒所有共享模式的等待线程
+        @Override
+        protected boolean tryReleaseShared(long ignored) {
+            return true;
+        }
+    }
+}
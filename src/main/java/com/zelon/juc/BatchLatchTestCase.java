@@ -0,0 +1,65 @@
+package com.zelon.juc;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+BatchLatch 的用法：攒够一批放行、超时放行、自动进入下一批、手动 reset。
+ */
+
+public class BatchLatchTestCase {
+
+    @Test
+    public void testReleaseOnBatchSize() throws InterruptedException {
+        BatchLatch latch = new BatchLatch(3, 10, TimeUnit.SECONDS);
+        Thread flusher = new Thread(() -> {
+            try {
+                long begin = System.nanoTime();
+                latch.await();
+                System.out.println("放行, 等待 " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin) + "ms"); // 放行, 等待 300ms 左右（0 + 100 + 200）
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        flusher.start();
+
+        for (int i = 0; i < 3; i++) {
+            Thread.sleep(100 * i);
+            System.out.println(latch.countDown()); // false false true, 第 3 个事件凑满一批
+        }
+        flusher.join();
+        System.out.println("generation = " + latch.getGeneration() + ", count = " + latch.getCount()); // generation = 1, count = 0, 自动开始下一批
+    }
+
+    @Test
+    public void testReleaseOnDeadline() throws InterruptedException {
+        BatchLatch latch = new BatchLatch(100, 200, TimeUnit.MILLISECONDS);
+        latch.countDown();
+        latch.countDown();
+
+        long begin = System.nanoTime();
+        latch.await(); // 事件不够，等到这一批的截止时间由等待线程自己放行
+        System.out.println("等待 " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin) + "ms"); // 200ms 左右
+        System.out.println("generation = " + latch.getGeneration() + ", count = " + latch.getCount()); // generation = 1, count = 0
+    }
+
+    @Test
+    public void testAwaitTimeoutAndReset() throws InterruptedException {
+        BatchLatch latch = new BatchLatch(100, 10, TimeUnit.SECONDS);
+        System.out.println(latch.await(100, TimeUnit.MILLISECONDS)); // false, 自己的超时先到
+
+        Thread waiter = new Thread(() -> {
+            try {
+                System.out.println("被 reset 放行: " + latch.await(5, TimeUnit.SECONDS)); // 被 reset 放行: true
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        waiter.start();
+        Thread.sleep(100);
+        latch.reset();
+        waiter.join();
+        System.out.println("generation = " + latch.getGeneration()); // generation = 1
+    }
+}
@@ -0,0 +1,398 @@
+package com.zelon.juc;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+
+/*
+取消令牌：一个请求被放弃（客户端断开、超时）时，取消它提交到线程池中的所有子任务，尽快把工作线程还给线程池
+1. ThreadSleepInterrupt 中手写的打断处理的问题：
+   ① 要记得检查 isInterrupted()、捕获 InterruptedException 之后重新 interrupt()，漏掉一处打断就丢了
+   ② 只能打断 "某个线程"，而请求的子任务分散在线程池的多个线程中，队列中还没开始的任务也打断不了，
+      请求放弃之后，这些任务照样排队、执行，白白占用工作线程
+   ③ 直接 interrupt 线程池中的线程，如果任务刚好执行完，打断标记会留给这个线程执行的下一个任务
+
+2. 令牌（token）代表 "一次请求的生命周期"：
+   ① cancel() 取消，withTimeout() / child(timeout) 设置截止时间，到期自动取消（共用一个定时线程，不是每个令牌一个）
+   ② child(): 子令牌，父令牌取消时子令牌一起取消，子令牌的截止时间不会晚于父令牌；子令牌取消不影响父令牌
+   ③ bind(executor): 通过返回的 ExecutorService 提交的任务都归这个令牌管，取消时：
+      - 还在队列中的任务：直接从 ThreadPoolExecutor 的队列中删除（purge），Future 以 CancellationException 结束
+        （InstrumentedThreadPoolExecutor 的队列中是包装后的 TimedTask，按其中的原始任务识别）
+      - 正在执行的任务：打断执行它的线程，任务结束后清除打断标记，不会影响这个线程执行的下一个任务
+      返回的视图可以单独 shutdown()（不再接受新任务，已提交的任务继续执行）/ shutdownNow()（取消这个视图的任务），
+      不会关闭底层的线程池；视图的任务全部结束后视图 terminated，并从令牌中注销
+   ④ 任务执行期间，令牌通过 TaskContext 绑定到执行线程，CancellationToken.current() 可以拿到，
+      任务中再提交的子任务用 current().bind(executor)，取消会一层层传递下去
+   ⑤ checkpoint(): CPU 密集的循环中调用，只有一次 volatile 读，已取消时抛出 CancellationException，
+      不依赖打断标记（打断对不阻塞的代码不起作用）；循环中先把 current() 取出来，不要每次都查 TaskContext
+
+3. close(): 请求处理结束时关闭（try-with-resources），剩下的任务一律取消，并从父令牌中注销，避免父令牌越积越多。
+ */
+
+public final class CancellationToken implements AutoCloseable {
+
+    private static final TaskContext.Key<CancellationToken> CURRENT = TaskContext.Key.named("cancellationToken");
+    // 永远不会取消的令牌，没有绑定令牌时 current() 返回它，调用方不需要判断 null
+    private static final CancellationToken NONE = new CancellationToken(null, 0, false);
+
+    // 所有令牌共用的截止时间定时器，取消的定时任务立即从队列中删除
+    private static final ScheduledThreadPoolExecutor TIMER;
+
+    static {
+        TIMER = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "cancellation-timer");
+            t.setDaemon(true);
+            return t;
+        });
+        TIMER.setRemoveOnCancelPolicy(true);
+    }
+
+    // 取消时需要执行的动作：取消子令牌、删除或打断任务
+    public interface Registration {
+        void unregister();
+    }
+
+    private final CancellationToken parent;
+    private final long deadline;
+    private final boolean hasDeadline;
+    // null 表示还没有取消，否则是取消的原因
+    private volatile String reason;
+    // 以下字段都在 synchronized(this) 中访问，取消之后清空
+    private Set<Runnable> actions = new LinkedHashSet<>();
+    private Registration parentRegistration;
+    private ScheduledFuture<?> timer;
+
+    private CancellationToken(CancellationToken parent, long deadline, boolean hasDeadline) {
+        this.parent = parent;
+        this.deadline = deadline;
+        this.hasDeadline = hasDeadline;
+    }
+
+    public static CancellationToken create() {
+        return new CancellationToken(null, 0, false);
+    }
+
+    public static CancellationToken withTimeout(long timeout, TimeUnit unit) {
+        CancellationToken token = new CancellationToken(null, System.nanoTime() + unit.toNanos(timeout), true);
+        token.start();
+        return token;
+    }
+
+    // 当前任务绑定的令牌，没有绑定时返回一个永远不会取消的令牌
+    public static CancellationToken current() {
+        return CURRENT.orElse(NONE);
+    }
+
+    public CancellationToken child() {
+        if (this == NONE) return create();
+        CancellationToken child = new CancellationToken(this, deadline, hasDeadline);
+        child.start();
+        return child;
+    }
+
+    // 子令牌的截止时间取 "现在 + timeout" 和父令牌截止时间中较早的一个
+    public CancellationToken child(long timeout, TimeUnit unit) {
+        if (this == NONE) return withTimeout(timeout, unit);
+        long d = System.nanoTime() + unit.toNanos(timeout);
+        if (hasDeadline && deadline - d < 0) d = deadline;
+        CancellationToken child = new CancellationToken(this, d, true);
+        child.start();
+        return child;
+    }
+
+    private void start() {
+        if (parent != null) {
+            Registration r = parent.onCancel(() -> cancel(parent.reason));
+            synchronized (this) {
+                if (reason == null) parentRegistration = r;
+            }
+            if (reason != null) r.unregister();
+        }
+        if (hasDeadline) {
+            long delay = deadline - System.nanoTime();
+            if (delay <= 0) {
+                cancel("deadline exceeded");
+                return;
+            }
+            ScheduledFuture<?> f = TIMER.schedule(() -> cancel("deadline exceeded"), delay, TimeUnit.NANOSECONDS);
+            synchronized (this) {
+                if (reason == null) timer = f;
+            }
+            if (reason != null) f.cancel(false);
+        }
+    }
+
+    public boolean isCancelled() {
+        return reason != null;
+    }
+
+    // 取消的原因：cancelled、deadline exceeded、closed，没有取消时返回 null
+    public String reason() {
+        return reason;
+    }
+
+    // 距离截止时间还有多少纳秒，没有截止时间返回 Long.MAX_VALUE
+    public long remainingNanos() {
+        return hasDeadline ? Math.max(0, deadline - System.nanoTime()) : Long.MAX_VALUE;
+    }
+
+    // 协作式取消点：已取消时抛出 CancellationException
+    public void checkpoint() {
+        String r = reason;
+        if (r != null) throw new CancellationException(r);
+    }
+
+    public boolean cancel() {
+        return cancel("cancelled");
+    }
+
+    // 结束这个令牌的生命周期：剩下的任务全部取消，并从父令牌中注销
+    @Override
+    public void close() {
+        cancel("closed");
+    }
+
+    private boolean cancel(String why) {
+        if (this == NONE) return false;
+        Set<Runnable> toRun;
+        Registration fromParent;
+        ScheduledFuture<?> f;
+        synchronized (this) {
+            if (reason != null) return false;
+            reason = why;
+            toRun = actions;
+            fromParent = parentRegistration;
+            f = timer;
+            actions = null;
+            parentRegistration = null;
+            timer = null;
+        }
+        if (fromParent != null) fromParent.unregister();
+        if (f != null) f.cancel(false);
+        for (Runnable action : toRun) {
+            try {
+                action.run();
+            } catch (RuntimeException e) {
+                // 一个动作失败不影响其他任务的取消
+                Thread t = Thread.currentThread();
+                t.getUncaughtExceptionHandler().uncaughtException(t, e);
+            }
+        }
+        return true;
+    }
+
+    // 取消时执行 action，已经取消则立即执行；返回的 Registration 用于任务结束后注销
+    public Registration onCancel(Runnable action) {
+        if (this == NONE) return () -> { };
+        synchronized (this) {
+            if (reason == null) {
+                actions.add(action);
+                return () -> {
+                    synchronized (this) {
+                        if (actions != null) actions.remove(action);
+                    }
+                };
+            }
+        }
+        action.run();
+        return () -> { };
+    }
+
+    // 通过返回的 ExecutorService 提交的任务都受这个令牌控制，shutdown() / shutdownNow() 只作用于这个视图，不会关闭底层的线程池
+    public ExecutorService bind(ExecutorService executor) {
+        return new BoundExecutorService(this, executor);
+    }
+
+    @Override
+    public String toString() {
+        String r = reason;
+        return "CancellationToken[" + (r == null ? "active" : r)
+                + (hasDeadline ? ", remaining=" + TimeUnit.NANOSECONDS.toMillis(remainingNanos()) + "ms" : "") + "]";
+    }
+
+    private static final class BoundExecutorService extends AbstractExecutorService {
+        private final CancellationToken token;
+        private final ExecutorService delegate;
+        // 通过这个视图提交、还没有结束的任务
+        private final Set<TrackedTask> tasks = ConcurrentHashMap.newKeySet();
+        private final CountDownLatch terminated = new CountDownLatch(1);
+        private final Registration registration;
+        private volatile boolean shutdown;
+
+        BoundExecutorService(CancellationToken token, ExecutorService delegate) {
+            this.token = token;
+            this.delegate = delegate;
+            // 整个视图只注册一次，而不是每个任务注册一次；视图 terminated 时注销
+            this.registration = token.onCancel(() -> cancelTasks(true));
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            // 捕获提交线程的上下文，并绑定令牌
+            TrackedTask task = new TrackedTask(command, token, TaskContext.current().with(CURRENT, token), this);
+            tasks.add(task);
+            // 先加入 tasks 再检查：检查通过说明取消（或者 shutdown）还没开始，cancelTasks() / tryTerminate() 一定能看到这个任务
+            if (shutdown || token.isCancelled()) {
+                finished(task);
+                throw new RejectedExecutionException(shutdown ? "bound executor shut down" : "token " + token.reason());
+            }
+            try {
+                delegate.execute(task);
+            } catch (RejectedExecutionException e) {
+                finished(task);
+                throw e;
+            }
+        }
+
+        // 顺序很重要：先把所有排队的任务标记为取消并删除，再打断正在执行的任务；
+        // 否则被打断的工作线程会马上从队列中取出下一个还没标记的任务开始执行，又要再打断一次。
+        // 返回还没开始就被取消的原始任务
+        private List<Runnable> cancelTasks(boolean cancelFutures) {
+            List<Runnable> notStarted = new ArrayList<>();
+            for (TrackedTask task : tasks) {
+                if (task.cancelIfNotStarted(cancelFutures)) {
+                    notStarted.add(task.command);
+                    tasks.remove(task); // 不会再执行，也就不会自己从 tasks 中删除
+                }
+            }
+            // 一次性从队列中删除，立即腾出队列容量；逐个 remove() 每次都要从头查找并加锁
+            if (!notStarted.isEmpty() && delegate instanceof ThreadPoolExecutor tpe) {
+                tpe.getQueue().removeIf(r -> unwrap(r) instanceof TrackedTask t && t.isCancelled());
+            }
+            for (TrackedTask task : tasks) {
+                task.interruptIfRunning();
+            }
+            tryTerminate();
+            return notStarted;
+        }
+
+        private static Runnable unwrap(Runnable r) {
+            return r instanceof InstrumentedThreadPoolExecutor.TimedTask timed ? timed.delegate : r;
+        }
+
+        // 任务执行结束，或者没能提交
+        void finished(TrackedTask task) {
+            tasks.remove(task);
+            tryTerminate();
+        }
+
+        private void tryTerminate() {
+            if (shutdown && tasks.isEmpty() && terminated.getCount() > 0) {
+                registration.unregister();
+                terminated.countDown();
+            }
+        }
+
+        // 只关闭这个视图：不再接受新任务，已经提交的任务继续执行；线程池由创建它的地方负责关闭
+        @Override
+        public void shutdown() {
+            shutdown = true;
+            tryTerminate();
+        }
+
+        // 取消这个视图提交的任务：排队的从队列中删除并返回，执行中的打断；令牌和底层的线程池都不受影响
+        @Override
+        public List<Runnable> shutdownNow() {
+            shutdown = true;
+            return cancelTasks(false);
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return shutdown || delegate.isShutdown();
+        }
+
+        // 底层的线程池已经 terminated 时，被它丢弃的任务不会再结束，视图也算 terminated
+        @Override
+        public boolean isTerminated() {
+            return terminated.getCount() == 0 || delegate.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return terminated.await(timeout, unit) || delegate.isTerminated();
+        }
+    }
+
+    // 包装提交到线程池的任务，状态切换和 FutureTask 的取消类似
+    private static final class TrackedTask implements Runnable {
+        private static final int NEW = 0, RUNNING = 1, INTERRUPTING = 2, INTERRUPTED = 3, DONE = 4, CANCELLED = 5;
+        private static final VarHandle STATE;
+
+        static {
+            try {
+                STATE = MethodHandles.lookup().findVarHandle(TrackedTask.class, "state", int.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        private final Runnable command;
+        private final CancellationToken token;
+        private final TaskContext context;
+        private final BoundExecutorService owner;
+        private volatile int state;
+        private volatile Thread runner;
+
+        TrackedTask(Runnable command, CancellationToken token, TaskContext context, BoundExecutorService owner) {
+            this.command = command;
+            this.token = token;
+            this.context = context;
+            this.owner = owner;
+        }
+
+        @Override
+        public void run() {
+            runner = Thread.currentThread();
+            if (!STATE.compareAndSet(this, NEW, RUNNING)) {
+                runner = null;
+                owner.finished(this);
+                return; // 已经取消，但是没能从队列中删除（例如不是 ThreadPoolExecutor），直接跳过
+            }
+            try {
+                context.run(command);
+            } catch (CancellationException e) {
+                // checkpoint() 抛出的是正常的取消，不能让它传到线程池，否则工作线程会被销毁再重新创建
+                if (!token.isCancelled()) throw e;
+            } finally {
+                runner = null;
+                if (!STATE.compareAndSet(this, RUNNING, DONE)) {
+                    // 取消线程正在打断：等它打断完，再清除打断标记，不能留给线程池中的下一个任务；
+                    // 和 FutureTask 一样用 yield() 而不是自旋，取消线程可能刚好被这个线程抢占了 CPU
+                    while (state == INTERRUPTING) {
+                        Thread.yield();
+                    }
+                    Thread.interrupted();
+                }
+                owner.finished(this);
+            }
+        }
+
+        boolean isCancelled() {
+            return state == CANCELLED;
+        }
+
+        // 返回 true 表示任务还没开始（还在队列中），由调用方从队列中删除
+        boolean cancelIfNotStarted(boolean cancelFuture) {
+            // 令牌取消时 FutureTask（submit 提交的任务）先取消，get() 立即抛出 CancellationException；
+            // shutdownNow() 和 ThreadPoolExecutor 一样，原样返回没有开始的任务，由调用方决定怎么处理
+            if (cancelFuture && command instanceof Future<?> f) f.cancel(false);
+            return STATE.compareAndSet(this, NEW, CANCELLED);
+        }
+
+        void interruptIfRunning() {
+            if (STATE.compareAndSet(this, RUNNING, INTERRUPTING)) {
+                Thread t = runner;
+                try {
+                    if (t != null) t.interrupt();
+                } finally {
+                    state = INTERRUPTED;
+                }
+            }
+        }
+    }
+}
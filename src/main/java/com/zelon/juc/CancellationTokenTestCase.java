@@ -0,0 +1,221 @@
+package com.zelon.juc;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+CancellationToken 的用法：截止时间、父子令牌、取消线程池中的任务，以及取消之后线程池多久能恢复处理能力。
+ */
+
+public class CancellationTokenTestCase {
+
+    @Test
+    public void testCheckpointWithDeadline() {
+        CancellationToken token = CancellationToken.withTimeout(100, TimeUnit.MILLISECONDS);
+        long begin = System.nanoTime();
+        long iterations = 0;
+        try {
+            while (true) {
+                token.checkpoint(); // 不阻塞的 CPU 循环，打断标记对它没有作用
+                iterations++;
+            }
+        } catch (CancellationException e) {
+            System.out.println(e.getMessage()); // deadline exceeded
+        }
+        System.out.println("耗时: " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin) + "ms"); // 100ms 左右
+        System.out.println(iterations > 0); // true
+    }
+
+    @Test
+    public void testChildTokens() throws InterruptedException {
+        CancellationToken request = CancellationToken.withTimeout(200, TimeUnit.MILLISECONDS);
+        CancellationToken db = request.child(10, TimeUnit.SECONDS);
+        CancellationToken cache = request.child();
+        // 先读父令牌再读子令牌：截止时间相同时后读的剩余时间只会更少，先读子令牌会因为两次读取之间的时间差得到 false
+        long requestRemaining = request.remainingNanos();
+        System.out.println(db.remainingNanos() <= requestRemaining); // true, 子令牌的截止时间不会晚于父令牌（10 秒被截断为 200ms）
+
+        try (CancellationToken rpc = request.child()) {
+            System.out.println(rpc.isCancelled()); // false
+        }
+        System.out.println(request.isCancelled()); // false, 子令牌关闭不影响父令牌
+
+        Thread.sleep(300);
+        System.out.println(request.reason() + ", " + db.reason() + ", " + cache.reason()); // deadline exceeded, deadline exceeded, deadline exceeded
+    }
+
+    @Test
+    public void testPropagationIntoSubTasks() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        CancellationToken request = CancellationToken.create();
+        CountDownLatch started = new CountDownLatch(2);
+        AtomicInteger stopped = new AtomicInteger();
+
+        Future<?> parent = request.bind(pool).submit(() -> {
+            // 子任务从 current() 拿到同一个令牌，再提交的任务同样受控
+            CancellationToken token = CancellationToken.current();
+            Future<?> child = token.bind(pool).submit(() -> {
+                started.countDown();
+                try {
+                    Thread.sleep(10_000);
+                } catch (InterruptedException e) {
+                    stopped.incrementAndGet();
+                }
+            });
+            started.countDown();
+            try {
+                child.get();
+            } catch (InterruptedException | CancellationException e) {
+                // 被打断，或者 child 已经被取消
+                stopped.incrementAndGet();
+            }
+            return null;
+        });
+
+        started.await();
+        request.cancel();
+        Thread.sleep(50);
+        System.out.println("停止的任务: " + stopped.get()); // 停止的任务: 2
+        System.out.println(parent.isCancelled()); // true
+
+        // 打断标记已清除，不会影响线程池中的下一个任务
+        List<Future<Boolean>> next = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            next.add(pool.submit(() -> Thread.currentThread().isInterrupted()));
+        }
+        for (Future<Boolean> f : next) System.out.print(f.get() + " "); // false false false false
+        System.out.println();
+
+        try {
+            request.bind(pool).submit(() -> { });
+        } catch (RejectedExecutionException e) {
+            System.out.println(e.getMessage()); // token cancelled
+        }
+        pool.shutdown();
+    }
+
+    @Test
+    public void testBoundShutdown() throws Exception {
+        // InstrumentedThreadPoolExecutor 的队列中是包装后的 TimedTask，取消时同样要从队列中删除
+        InstrumentedThreadPoolExecutor pool = new InstrumentedThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+        CancellationToken request = CancellationToken.create();
+        ExecutorService bound = request.bind(pool);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        bound.execute(() -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        for (int i = 0; i < 10; i++) bound.submit(() -> { });
+        started.await();
+        System.out.println(pool.getQueue().size()); // 10
+
+        // shutdown(): 视图不再接受新任务，已提交的任务照常执行，底层线程池不受影响
+        bound.shutdown();
+        try {
+            bound.execute(() -> { });
+        } catch (RejectedExecutionException e) {
+            System.out.println(e.getMessage()); // bound executor shut down
+        }
+        System.out.println(bound.isShutdown() + ", " + bound.isTerminated() + ", " + pool.isShutdown()); // true, false, false
+
+        // shutdownNow(): 排队的 10 个任务从 InstrumentedThreadPoolExecutor 的队列中删除并返回，执行中的任务被打断
+        List<Runnable> notStarted = bound.shutdownNow();
+        System.out.println(notStarted.size() + ", " + pool.getQueue().size()); // 10, 0
+        System.out.println(bound.awaitTermination(1, TimeUnit.SECONDS) + ", " + request.isCancelled()); // true, false 令牌不受影响
+
+        // 令牌取消时同样按 TimedTask 中的原始任务从队列中删除
+        CancellationToken other = CancellationToken.create();
+        ExecutorService view = other.bind(pool);
+        CountDownLatch blocked = new CountDownLatch(1);
+        pool.execute(() -> {
+            blocked.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        blocked.await();
+        for (int i = 0; i < 10; i++) view.submit(() -> { });
+        other.cancel();
+        System.out.println(pool.getQueue().size()); // 0
+        release.countDown();
+        pool.shutdown();
+        pool.awaitTermination(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testCapacityRecovery() throws Exception {
+        int threads = 4;
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+        recoveryRound(pool, threads, false); // 预热，第一次执行包含类加载和解释执行的时间
+        recoveryRound(pool, threads, true);
+        pool.shutdown();
+    }
+
+    private static void recoveryRound(ThreadPoolExecutor pool, int threads, boolean print) throws Exception {
+        CancellationToken request = CancellationToken.create();
+        ExecutorService bound = request.bind(pool);
+
+        CountDownLatch started = new CountDownLatch(threads);
+        // 一半阻塞任务（打断生效），一半 CPU 任务（checkpoint 生效），每个都要跑 10 秒
+        for (int i = 0; i < threads; i++) {
+            boolean blocking = i % 2 == 0;
+            bound.execute(() -> {
+                started.countDown();
+                if (blocking) {
+                    try {
+                        Thread.sleep(10_000);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                } else {
+                    CancellationToken token = CancellationToken.current();
+                    long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+                    while (System.nanoTime() < end) {
+                        token.checkpoint();
+                    }
+                }
+            });
+        }
+        // 再排队 1000 个同样的任务
+        for (int i = 0; i < 1000; i++) {
+            bound.submit(() -> {
+                Thread.sleep(10_000);
+                return null;
+            });
+        }
+        started.await();
+        int active = pool.getActiveCount();
+        int queued = pool.getQueue().size();
+
+        long begin = System.nanoTime();
+        request.cancel();
+        long cancelled = System.nanoTime() - begin;
+        int queuedAfterCancel = pool.getQueue().size();
+        while (pool.getActiveCount() > 0) {
+            Thread.onSpinWait();
+        }
+        long recovered = System.nanoTime() - begin;
+        // 新请求的任务马上就能执行，不用等 10 秒
+        long probeBegin = System.nanoTime();
+        pool.submit(() -> { }).get();
+        long probe = System.nanoTime() - probeBegin;
+        if (!print) return;
+
+        System.out.println("取消前: active = " + active + ", queued = " + queued); // 取消前: active = 4, queued = 1000
+        System.out.println("取消后: queued = " + queuedAfterCancel); // 取消后: queued = 0, 排队的任务已经删除
+        System.out.println("cancel() 耗时: " + TimeUnit.NANOSECONDS.toMicros(cancelled) + "us"); // cancel() 耗时: 几 ms
+        System.out.println("恢复全部工作线程: " + TimeUnit.NANOSECONDS.toMicros(recovered) + "us"); // 恢复全部工作线程: 10 ms 左右, 单核机器上 CPU 任务要等分到时间片才能执行到 checkpoint()
+        System.out.println("新任务等待: " + TimeUnit.NANOSECONDS.toMicros(probe) + "us"); // 新任务等待: 1 ms 以内
+    }
+}
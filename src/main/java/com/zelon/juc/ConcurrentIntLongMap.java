@@ -0,0 +1,451 @@
+package com.zelon.juc;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+int → long 的并发哈希表，给热点计数器用
+1. 为什么需要？
+   ConcurrentHashMap<Integer, AtomicLong> 每个 entry 有一个 Node、一个 Integer（-128 ~ 127 以外）、一个 AtomicLong，
+   每次 incrementAndGet 要 hash → Node → AtomicLong 三次指针跳转，每个 entry 占 80 字节左右。
+   这里 key 和 value 直接放在一个 long 数组中（开放寻址、线性探测），每个槽位 16 字节：key 字 + value 字。
+
+2. 槽位状态（key 字）：
+   ① 0：空
+   ② USED | key：已被占用，占用之后 key 不会再变（不支持删除，计数器的 key 只增不减，需要清零用 put(key, 0)）
+   ③ MOVED | 0：空槽位在扩容时被封住，插入的线程转到新表
+   ④ MOVED | USED | key：已经复制到新表
+   value 字的修改都是 CAS，addAndGet 不加锁。
+
+3. 扩容（不停顿整个表）：已占用的槽位超过容量的 3/4 时创建两倍大小的新表，槽位按 STRIDE 个一段，
+   由触发扩容的线程和碰到正在迁移的槽位的线程一起领取（transferIndex）、迁移；其他线程照常读写还没迁移的槽位。
+   迁移一个槽位：
+   ① 空槽位 CAS 为 MOVED，之后想插入这里的线程转到新表
+   ② 已占用的槽位把 value getAndSet 为 RESERVED（Long.MIN_VALUE），拿到最终的值：
+      之后任何线程基于旧值的 CAS 都会失败，读到 RESERVED 的线程等这个槽位迁移完再到新表重试
+   ③ 把 key 和值写入新表，再把旧槽位的 key 字标记为 MOVED
+   所有槽位都迁移完之后新表替换旧表。所以 Long.MIN_VALUE 不能作为值，addAndGet 溢出到它时抛出 ArithmeticException。
+
+4. 存储：默认是堆上的 long[]，offHeap = true 时使用 ByteBuffer.allocateDirect，
+   两种都通过 VarHandle 做 volatile 读写和 CAS（byteBufferViewVarHandle 在直接内存上同样支持 CAS），
+   堆外的表不占 Java 堆，GC 不扫描它，由 Cleaner 在 ByteBuffer 被回收时释放。
+ */
+
+public class ConcurrentIntLongMap {
+
+    @Value
+    @Builder
+    public static class Options {
+        @Builder.Default int initialCapacity = 16;
+        @Builder.Default boolean offHeap = false;
+    }
+
+    public interface EntryConsumer {
+        void accept(int key, long value);
+    }
+
+    private static final long USED = 1L << 32;
+    private static final long MOVED = 1L << 33;
+    private static final long KEY_BITS = 0xFFFF_FFFFL;
+    // 迁移中的槽位的值
+    private static final long RESERVED = Long.MIN_VALUE;
+    private static final int STRIDE = 64;
+    // locate() 的返回值：key 不在这个表中 / 要到下一个表中找
+    private static final int ABSENT = -1;
+    private static final int NEXT = -2;
+
+    private static final VarHandle TABLE;
+
+    static {
+        try {
+            TABLE = MethodHandles.lookup().findVarHandle(ConcurrentIntLongMap.class, "table", Table.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // 一张表：capacity 个槽位，每个槽位 key 字在 2i，value 字在 2i + 1
+    private abstract static class Table {
+        final int capacity;
+        final int mask;
+        final int threshold;
+        final AtomicInteger used = new AtomicInteger();
+        final AtomicInteger transferIndex = new AtomicInteger();
+        final AtomicInteger transferred = new AtomicInteger();
+        volatile Table next;
+
+        Table(int capacity) {
+            this.capacity = capacity;
+            this.mask = capacity - 1;
+            this.threshold = capacity - (capacity >>> 2);
+        }
+
+        abstract long key(int i);
+
+        abstract boolean casKey(int i, long expect, long update);
+
+        abstract void setKey(int i, long value);
+
+        abstract long value(int i);
+
+        abstract boolean casValue(int i, long expect, long update);
+
+        abstract long getAndSetValue(int i, long value);
+
+        abstract void setValue(int i, long value);
+
+        abstract Table create(int capacity);
+
+        abstract long bytes();
+    }
+
+    private static final class HeapTable extends Table {
+        private static final VarHandle LONGS = MethodHandles.arrayElementVarHandle(long[].class);
+        final long[] slots;
+
+        HeapTable(int capacity) {
+            super(capacity);
+            this.slots = new long[capacity << 1];
+        }
+
+        long key(int i) { return (long) LONGS.getVolatile(slots, i << 1); }
+
+        boolean casKey(int i, long expect, long update) { return LONGS.compareAndSet(slots, i << 1, expect, update); }
+
+        void setKey(int i, long value) { LONGS.setVolatile(slots, i << 1, value); }
+
+        long value(int i) { return (long) LONGS.getVolatile(slots, (i << 1) + 1); }
+
+        boolean casValue(int i, long expect, long update) { return LONGS.compareAndSet(slots, (i << 1) + 1, expect, update); }
+
+        long getAndSetValue(int i, long value) { return (long) LONGS.getAndSet(slots, (i << 1) + 1, value); }
+
+        void setValue(int i, long value) { LONGS.setVolatile(slots, (i << 1) + 1, value); }
+
+        Table create(int capacity) { return new HeapTable(capacity); }
+
+        long bytes() { return (long) slots.length * Long.BYTES; }
+    }
+
+    private static final class DirectTable extends Table {
+        private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+        final ByteBuffer slots;
+
+        DirectTable(int capacity) {
+            super(capacity);
+            // allocateDirect 的起始地址按页对齐，每个 long 都是 8 字节对齐的，可以 CAS
+            this.slots = ByteBuffer.allocateDirect(capacity << 4).order(ByteOrder.nativeOrder());
+        }
+
+        long key(int i) { return (long) LONGS.getVolatile(slots, i << 4); }
+
+        boolean casKey(int i, long expect, long update) { return LONGS.compareAndSet(slots, i << 4, expect, update); }
+
+        void setKey(int i, long value) { LONGS.setVolatile(slots, i << 4, value); }
+
+        long value(int i) { return (long) LONGS.getVolatile(slots, (i << 4) + 8); }
+
+        boolean casValue(int i, long expect, long update) { return LONGS.compareAndSet(slots, (i << 4) + 8, expect, update); }
+
+        long getAndSetValue(int i, long value) { return (long) LONGS.getAndSet(slots, (i << 4) + 8, value); }
+
+        void setValue(int i, long value) { LONGS.setVolatile(slots, (i << 4) + 8, value); }
+
+        Table create(int capacity) { return new DirectTable(capacity); }
+
+        long bytes() { return (long) capacity << 4; }
+    }
+
+    private volatile Table table;
+    private final LongAdder size = new LongAdder();
+
+    public ConcurrentIntLongMap() {
+        this(Options.builder().build());
+    }
+
+    public ConcurrentIntLongMap(Options options) {
+        if (options.getInitialCapacity() < 1) throw new IllegalArgumentException("initialCapacity: " + options.getInitialCapacity());
+        int capacity = Math.max(STRIDE, Integer.highestOneBit(options.getInitialCapacity() * 4 / 3 + 1) << 1);
+        this.table = options.isOffHeap() ? new DirectTable(capacity) : new HeapTable(capacity);
+    }
+
+    // 不存在时返回 0
+    public long get(int key) {
+        return getOrDefault(key, 0);
+    }
+
+    public long getOrDefault(int key, long defaultValue) {
+        Table t = table;
+        int i = find(t, key);
+        if (i >= 0) {
+            long v = t.value(i);
+            if (v != RESERVED) return v;
+        }
+        return getSlow(t, key, defaultValue);
+    }
+
+    private long getSlow(Table t, int key, long defaultValue) {
+        for (;;) {
+            int i = locate(t, key, false);
+            if (i == ABSENT) return defaultValue;
+            if (i == NEXT) {
+                t = next(t);
+                continue;
+            }
+            long v = t.value(i);
+            if (v != RESERVED) return v;
+            t = awaitMoved(t, i);
+        }
+    }
+
+    public boolean containsKey(int key) {
+        Table t = table;
+        for (;;) {
+            int i = locate(t, key, false);
+            if (i == ABSENT) return false;
+            if (i != NEXT) return true;
+            t = next(t);
+        }
+    }
+
+    // key 不存在时从 0 开始加
+    public long addAndGet(int key, long delta) {
+        Table t = table;
+        int i = find(t, key);
+        if (i >= 0) {
+            long v = t.value(i);
+            if (v != RESERVED && t.casValue(i, v, checked(v + delta))) return v + delta;
+        }
+        return addAndGetSlow(t, key, delta);
+    }
+
+    private long addAndGetSlow(Table t, int key, long delta) {
+        for (;;) {
+            // 不存在的 key 加完就是 delta：delta 本身不合法时不能插入，否则抛出异常之后留下一个值为 0 的 key
+            int i = locate(t, key, delta != RESERVED);
+            if (i == ABSENT) return checked(delta);
+            if (i == NEXT) {
+                t = next(t);
+                continue;
+            }
+            long v;
+            while ((v = t.value(i)) != RESERVED) {
+                long r = checked(v + delta);
+                if (t.casValue(i, v, r)) return r;
+            }
+            t = awaitMoved(t, i);
+        }
+    }
+
+    public long incrementAndGet(int key) {
+        return addAndGet(key, 1);
+    }
+
+    // key 不存在时当作 0：compareAndSet(key, 0, x) 会插入 key
+    public boolean compareAndSet(int key, long expect, long update) {
+        checked(update);
+        Table t = table;
+        for (;;) {
+            int i = locate(t, key, expect == 0);
+            if (i == ABSENT) return false;
+            if (i == NEXT) {
+                t = next(t);
+                continue;
+            }
+            long v;
+            while ((v = t.value(i)) != RESERVED) {
+                if (v != expect) return false;
+                if (t.casValue(i, v, update)) return true;
+            }
+            t = awaitMoved(t, i);
+        }
+    }
+
+    public void put(int key, long value) {
+        checked(value);
+        Table t = table;
+        for (;;) {
+            int i = locate(t, key, true);
+            if (i == NEXT) {
+                t = next(t);
+                continue;
+            }
+            long v;
+            while ((v = t.value(i)) != RESERVED) {
+                if (t.casValue(i, v, value)) return;
+            }
+            t = awaitMoved(t, i);
+        }
+    }
+
+    public int size() {
+        return (int) size.sum();
+    }
+
+    public int capacity() {
+        return table.capacity;
+    }
+
+    // 当前表（迁移中还包括新表）占用的字节数，堆外存储时这部分不在 Java 堆中
+    public long tableBytes() {
+        Table t = table;
+        Table n = t.next;
+        return t.bytes() + (n == null ? 0 : n.bytes());
+    }
+
+    // 弱一致的遍历：和并发修改同时进行时，可能看到也可能看不到遍历开始之后的修改，但每个 key 只出现一次
+    public void forEach(EntryConsumer consumer) {
+        Table t = table;
+        for (int i = 0; i < t.capacity; i++) {
+            long kw = t.key(i);
+            if ((kw & USED) == 0) continue;
+            int key = (int) (kw & KEY_BITS);
+            long v = t.value(i);
+            consumer.accept(key, v != RESERVED ? v : get(key));
+        }
+        // 迁移过程中直接插入新表的 key（在旧表中找不到）
+        Table n = t.next;
+        if (n == null) return;
+        for (int i = 0; i < n.capacity; i++) {
+            long kw = n.key(i);
+            if ((kw & USED) == 0) continue;
+            int key = (int) (kw & KEY_BITS);
+            if (locate(t, key, false) == NEXT) consumer.accept(key, get(key));
+        }
+    }
+
+    private static long checked(long value) {
+        if (value == RESERVED) throw new ArithmeticException("Long.MIN_VALUE is reserved");
+        return value;
+    }
+
+    private static int spread(int key) {
+        int h = key * 0x9E3779B9; // 斐波那契哈希，连续的 key 分散到不同的槽位
+        return h ^ (h >>> 16);
+    }
+
+    // 快速路径：key 已经存在、所在的槽位没有在迁移，返回槽位下标，否则返回 -1 交给 locate() 处理
+    private static int find(Table t, int key) {
+        long want = USED | (key & KEY_BITS);
+        int i = spread(key) & t.mask;
+        for (;;) {
+            long kw = t.key(i);
+            if (kw == want) return i;
+            // 装载因子不超过 3/4，一定会碰到空槽位或者已迁移的槽位
+            if (kw == 0 || (kw & MOVED) != 0) return -1;
+            i = (i + 1) & t.mask;
+        }
+    }
+
+    // 在表 t 中找 key 所在的槽位，insert 为 true 时不存在就占用一个空槽位
+    private int locate(Table t, int key, boolean insert) {
+        long want = USED | (key & KEY_BITS);
+        int i = spread(key) & t.mask;
+        for (int probes = 0; probes < t.capacity; probes++, i = (i + 1) & t.mask) {
+            long kw = t.key(i);
+            if (kw == 0) {
+                if (!insert) return ABSENT;
+                if (t.next != null) {
+                    // 正在扩容：替迁移线程封住这个空槽位，新 key 插入新表，旧表的占用不再增长
+                    if (t.casKey(i, 0, MOVED)) return NEXT;
+                } else if (table != t && t.used.get() >= t.capacity >>> 1) {
+                    // t 是还在接收迁移的新表，直接插入的 key 太多会让迁移过来的 key 放不下
+                    return NEXT;
+                } else if (t.casKey(i, 0, want)) {
+                    size.increment();
+                    if (t.used.incrementAndGet() >= t.threshold) resize(t);
+                    return i;
+                }
+                kw = t.key(i);
+            }
+            if ((kw & (USED | KEY_BITS)) == want) return i;
+            if (kw == MOVED) return NEXT; // 空槽位已被封住，key 只可能在新表中
+        }
+        return NEXT;
+    }
+
+    // 转到下一个表：还没有下一个表说明 t 满了，先扩容
+    private Table next(Table t) {
+        Table n = t.next;
+        if (n == null) {
+            resize(t);
+            return table;
+        }
+        helpTransfer(t);
+        return n;
+    }
+
+    // 槽位正在被迁移，等迁移它的线程写入新表
+    private Table awaitMoved(Table t, int i) {
+        while ((t.key(i) & MOVED) == 0) Thread.yield();
+        return t.next;
+    }
+
+    private void resize(Table t) {
+        if (t.next == null) {
+            if (table != t) {
+                // t 是正在迁移的新表，旧表迁移完之前不再套一层扩容，先帮忙把旧表迁移完
+                Table root = table;
+                if (root.next != null) helpTransfer(root);
+                Thread.yield(); // 剩下的段已被其他线程领走，让它们先迁移完
+                return;
+            }
+            synchronized (t) {
+                if (t.next == null) t.next = t.create(t.capacity << 1);
+            }
+        }
+        helpTransfer(t);
+    }
+
+    // 领取 STRIDE 个槽位迁移，直到没有可以领取的；最后一段迁移完的线程把新表设为当前表
+    private void helpTransfer(Table t) {
+        Table n = t.next;
+        // 先读一次再领取，迁移完之后还拿着旧表的线程不会一直把 transferIndex 加下去（溢出）
+        while (t.transferIndex.get() < t.capacity) {
+            int start = t.transferIndex.getAndAdd(STRIDE);
+            if (start >= t.capacity) return;
+            int end = Math.min(start + STRIDE, t.capacity);
+            for (int i = start; i < end; i++) migrate(t, n, i);
+            if (t.transferred.addAndGet(end - start) == t.capacity) {
+                TABLE.compareAndSet(this, t, n);
+            }
+        }
+    }
+
+    private static void migrate(Table t, Table n, int i) {
+        for (;;) {
+            long kw = t.key(i);
+            if (kw == 0) {
+                if (t.casKey(i, 0, MOVED)) return;
+                continue; // 刚被占用，按已占用的槽位迁移
+            }
+            if (kw == MOVED) return; // 已经被插入的线程封住
+            long v = t.getAndSetValue(i, RESERVED);
+            copy(n, (int) (kw & KEY_BITS), v);
+            t.setKey(i, kw | MOVED);
+            return;
+        }
+    }
+
+    // 写入新表；新表中这个 key 的槽位只会由迁移它的线程创建（其他线程要等旧槽位标记为 MOVED 才会到新表中找它）
+    private static void copy(Table n, int key, long value) {
+        long want = USED | (key & KEY_BITS);
+        int i = spread(key) & n.mask;
+        for (;;) {
+            long kw = n.key(i);
+            if (kw == 0 && n.casKey(i, 0, want)) {
+                n.setValue(i, value);
+                n.used.incrementAndGet();
+                return;
+            }
+            i = (i + 1) & n.mask;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.zelon.juc;
+
+import org.junit.jupiter.api.Test;
+import org.openjdk.jol.info.GraphLayout;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ConcurrentIntLongMap 的功能、并发扩容下的正确性和内存占用
+1. 并发扩容：初始容量很小，多个线程同时插入新 key 和累加，中途会扩容很多次，每个 key 的计数都不能丢
+2. 内存占用：用 jol 的 GraphLayout 统计从 map 出发能到达的所有对象的大小，
+   和 ConcurrentHashMap<Integer, AtomicLong>、ConcurrentHashMap<Integer, Long> 对比
+ */
+
+public class ConcurrentIntLongMapTestCase {
+
+    @Test
+    public void basicTest() {
+        ConcurrentIntLongMap map = new ConcurrentIntLongMap();
+        System.out.println(map.get(1) + ", " + map.containsKey(1)); // 0, false 不存在时当作 0
+        System.out.println(map.addAndGet(1, 5) + ", " + map.incrementAndGet(1)); // 5, 6
+        System.out.println(map.compareAndSet(1, 5, 100) + ", " + map.get(1)); // false, 6
+        System.out.println(map.compareAndSet(1, 6, 100) + ", " + map.get(1)); // true, 100
+        System.out.println(map.compareAndSet(2, 1, 7) + ", " + map.containsKey(2)); // false, false
+        System.out.println(map.compareAndSet(2, 0, 7) + ", " + map.get(2)); // true, 7 期望值为 0 时会插入
+        map.put(-3, Long.MAX_VALUE);
+        System.out.println(map.getOrDefault(-3, -1) + ", " + map.getOrDefault(4, -1)); // 9223372036854775807, -1
+        System.out.println(map.size() + ", " + map.capacity()); // 3, 64
+
+        try {
+            map.addAndGet(5, Long.MIN_VALUE); // Long.MIN_VALUE 留给迁移中的槽位
+        } catch (ArithmeticException e) {
+            System.out.println(e.getMessage()); // Long.MIN_VALUE is reserved
+        }
+        System.out.println(map.containsKey(5) + ", " + map.size()); // false, 3 先检查再插入，失败时不会留下 key
+
+        StringBuilder entries = new StringBuilder();
+        map.forEach((k, v) -> entries.append(k).append('=').append(v).append(' '));
+        System.out.println(entries); // -3=9223372036854775807 1=100 2=7 顺序取决于哈希
+    }
+
+    @Test
+    public void concurrentResizeTest() throws InterruptedException {
+        System.out.println("heap: " + resizeRace(false)); // heap: size 200000, 错误的计数 0, 总和 1600000, 容量 524288
+        System.out.println("offHeap: " + resizeRace(true)); // offHeap: size 200000, 错误的计数 0, 总和 1600000, 容量 524288
+    }
+
+    // 8 个线程从不同的位置开始，把 0 ~ 199999 每个 key 加 1，每个 key 最后应该是 8
+    private static String resizeRace(boolean offHeap) throws InterruptedException {
+        int threads = 8, keys = 200_000;
+        ConcurrentIntLongMap map = new ConcurrentIntLongMap(ConcurrentIntLongMap.Options.builder()
+                .initialCapacity(16).offHeap(offHeap).build());
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int offset = t * (keys / threads);
+            workers[t] = new Thread(() -> {
+                for (int i = 0; i < keys; i++) map.incrementAndGet((offset + i) % keys);
+            });
+            workers[t].start();
+        }
+        for (Thread worker : workers) worker.join();
+        int wrong = 0;
+        for (int k = 0; k < keys; k++) {
+            if (map.get(k) != threads) wrong++;
+        }
+        LongAdder sum = new LongAdder();
+        map.forEach((k, v) -> sum.add(v));
+        return "size " + map.size() + ", 错误的计数 " + wrong + ", 总和 " + sum.sum() + ", 容量 " + map.capacity();
+    }
+
+    @Test
+    public void compareAndSetRaceTest() throws InterruptedException {
+        // 4 个线程用 compareAndSet 循环给 0 ~ 99 加 1，另外 2 个线程不断插入新 key 触发扩容
+        ConcurrentIntLongMap map = new ConcurrentIntLongMap();
+        int casThreads = 4, rounds = 20_000;
+        Thread[] workers = new Thread[casThreads + 2];
+        for (int t = 0; t < casThreads; t++) {
+            workers[t] = new Thread(() -> {
+                for (int i = 0; i < rounds; i++) {
+                    int key = i % 100;
+                    long v;
+                    do {
+                        v = map.get(key);
+                    } while (!map.compareAndSet(key, v, v + 1));
+                }
+            });
+        }
+        for (int t = casThreads; t < workers.length; t++) {
+            int base = 1_000 + (t - casThreads) * 100_000;
+            workers[t] = new Thread(() -> {
+                for (int i = 0; i < 100_000; i++) map.put(base + i, i);
+            });
+        }
+        for (Thread worker : workers) worker.start();
+        for (Thread worker : workers) worker.join();
+        long total = 0;
+        for (int k = 0; k < 100; k++) total += map.get(k);
+        System.out.println(total + ", " + map.size() + ", " + map.get(1_000 + 100_000 + 99_999)); // 80000, 200100, 99999
+    }
+
+    @Test
+    public void footprintTest() {
+        int n = 100_000;
+        ConcurrentIntLongMap heap = new ConcurrentIntLongMap(ConcurrentIntLongMap.Options.builder().initialCapacity(n).build());
+        ConcurrentIntLongMap offHeap = new ConcurrentIntLongMap(ConcurrentIntLongMap.Options.builder().initialCapacity(n).offHeap(true).build());
+        ConcurrentHashMap<Integer, AtomicLong> atomics = new ConcurrentHashMap<>(n);
+        ConcurrentHashMap<Integer, Long> boxed = new ConcurrentHashMap<>(n);
+        for (int k = 0; k < n; k++) {
+            heap.addAndGet(k, 1_000);
+            offHeap.addAndGet(k, 1_000);
+            atomics.computeIfAbsent(k, x -> new AtomicLong()).addAndGet(1_000);
+            boxed.merge(k, 1_000L, Long::sum);
+        }
+        System.out.println("ConcurrentIntLongMap: " + bytesPerEntry(GraphLayout.parseInstance(heap).totalSize(), n)
+                + ", 容量 " + heap.capacity());
+        System.out.println("ConcurrentIntLongMap offHeap: 堆上 " + GraphLayout.parseInstance(offHeap).totalSize()
+                + " B, 堆外 " + bytesPerEntry(offHeap.tableBytes(), n));
+        System.out.println("ConcurrentHashMap<Integer, AtomicLong>: " + bytesPerEntry(GraphLayout.parseInstance(atomics).totalSize(), n));
+        System.out.println("ConcurrentHashMap<Integer, Long>: " + bytesPerEntry(GraphLayout.parseInstance(boxed).totalSize(), n));
+        // ConcurrentIntLongMap: 4194472 B, 每个 key 41.9 B, 容量 262144
+        // ConcurrentIntLongMap offHeap: 堆上 528 B, 堆外 4194304 B, 每个 key 41.9 B
+        // ConcurrentHashMap<Integer, AtomicLong>: 8248656 B, 每个 key 82.5 B
+        // ConcurrentHashMap<Integer, Long>: 8248656 B, 每个 key 82.5 B
+        // 每个槽位固定 16 字节，装载因子不超过 3/4，每个 key 的实际占用在 21 ~ 43 字节之间，取决于离下一次扩容有多远；
+        // ConcurrentHashMap 每个 key 一个 32 字节的 Node + 16 字节的 Integer + 24 字节的 AtomicLong（Long 也是 24 字节）再加 table 中的 4 字节引用。
+        // 堆外存储时 Java 堆上只剩几个对象，不增加 GC 的标记工作量
+    }
+
+    private static String bytesPerEntry(long bytes, int n) {
+        return bytes + " B, 每个 key " + String.format("%.1f", (double) bytes / n) + " B";
+    }
+}
@@ -0,0 +1,24 @@
+package com.zelon.juc;
+
+/*
+VolatileTestCase 中 Singleton 的逐字拷贝（只改了类名），单独放在一个文件中供 benchmarks 模块使用
+（其他编译单元引用另一个源文件中的非公共辅助类，javac 会给出 auxiliary class 警告）。
+实例创建之后，getInstance() 不会进入 synchronized，但要读两次 volatile 的 instance：判断一次、返回一次。
+volatile 的作用见 Singleton.getInstance() 中的注释。
+ */
+
+public class DoubleCheckedSingleton {
+    private volatile static DoubleCheckedSingleton instance;
+    private DoubleCheckedSingleton(){}
+
+    public static DoubleCheckedSingleton getInstance(){
+        if(instance == null){
+            synchronized(DoubleCheckedSingleton.class){
+                if(instance == null){
+                    instance = new DoubleCheckedSingleton();
+                }
+            }
+        }
+        return instance;
+    }
+}
@@ -0,0 +1,137 @@
+package com.zelon.juc;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+带消除（elimination）和退避的无锁栈（Hendler、Shavit、Yerushalmi）
+1. 不用版本号：TreiberStack 用 AtomicStampedReference 防止 ABA，每次修改分配一个 Pair。
+   这里每次 push 都是新节点、节点从不复用，一个线程只要还拿着节点的引用，GC 就不会回收它，
+   它也就不可能以同一个身份再次回到栈顶，所以只比较引用的 CAS 就够了（top 是普通的 VarHandle 字段），
+   每次 push 只分配节点本身，pop 不分配对象。
+
+2. 竞争时所有线程都在 CAS 同一个 top，失败率随线程数上升。消除：
+   ① CAS top 失败的 push 把节点放到消除数组的一个随机槽位上，等一小会儿
+   ② CAS top 失败的 pop 看一个随机槽位，里面有节点就 CAS 为 TAKEN 拿走
+   一对 push / pop 在槽位上直接交换，不碰 top：相当于 push 之后紧接着 pop，栈没有变化，
+   线性化点是 pop 的 CAS，这时 push 还没有返回，二者在时间上重叠，这个顺序是合法的。
+   没有等到的 push 把节点撤回（CAS 节点 → null），撤回失败说明刚好被 pop 拿走了。
+
+3. 退避：消除也没成功时自旋等待一段指数增长的时间，再重试 top，减少 top 所在缓存行的争抢。
+
+4. 栈为空时 pop 直接返回 null，不在消除数组上等待 push。
+ */
+
+public class EliminationBackoffStack<E> {
+
+    private static final class Node<E> {
+        final E item;
+        Node<E> next; // 在 CAS 发布之前写入，发布之后不再修改
+
+        Node(E item) {
+            this.item = item;
+        }
+    }
+
+    private static final VarHandle TOP;
+
+    static {
+        try {
+            TOP = MethodHandles.lookup().findVarHandle(EliminationBackoffStack.class, "top", Node.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // 槽位上的节点已经被 pop 拿走，等 push 线程看到之后清空
+    private static final Object TAKEN = new Object();
+
+    private static final int WAIT_SPINS = 64;
+    private static final int MAX_BACKOFF_SPINS = 1 << 10;
+
+    private volatile Node<E> top;
+    private final AtomicReferenceArray<Object> arena;
+    private final LongAdder eliminations = new LongAdder();
+
+    public EliminationBackoffStack() {
+        this(Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    }
+
+    public EliminationBackoffStack(int arenaSize) {
+        if (arenaSize < 1) throw new IllegalArgumentException("arenaSize: " + arenaSize);
+        this.arena = new AtomicReferenceArray<>(arenaSize);
+    }
+
+    public void push(E item) {
+        if (item == null) throw new NullPointerException();
+        Node<E> node = new Node<>(item);
+        for (int backoff = 1; ; backoff = Math.min(backoff << 1, MAX_BACKOFF_SPINS)) {
+            Node<E> current = top;
+            node.next = current;
+            if (TOP.compareAndSet(this, current, node)) return;
+            if (eliminatePush(node)) return;
+            backoff(backoff);
+        }
+    }
+
+    // 栈为空时返回 null
+    public E pop() {
+        for (int backoff = 1; ; backoff = Math.min(backoff << 1, MAX_BACKOFF_SPINS)) {
+            Node<E> current = top;
+            if (current == null) return null;
+            if (TOP.compareAndSet(this, current, current.next)) return current.item;
+            E item = eliminatePop();
+            if (item != null) return item;
+            backoff(backoff);
+        }
+    }
+
+    public E peek() {
+        Node<E> current = top;
+        return current == null ? null : current.item;
+    }
+
+    public boolean isEmpty() {
+        return top == null;
+    }
+
+    // push / pop 在消除数组上直接交换的次数
+    public long eliminations() {
+        return eliminations.sum();
+    }
+
+    private boolean eliminatePush(Node<E> node) {
+        int i = ThreadLocalRandom.current().nextInt(arena.length());
+        if (!arena.compareAndSet(i, null, node)) return false;
+        for (int spin = 0; spin < WAIT_SPINS; spin++) {
+            if (arena.get(i) == TAKEN) {
+                arena.set(i, null);
+                return true;
+            }
+            Thread.onSpinWait();
+        }
+        // 撤回；失败说明 pop 刚刚拿走了
+        if (arena.compareAndSet(i, node, null)) return false;
+        arena.set(i, null);
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private E eliminatePop() {
+        int i = ThreadLocalRandom.current().nextInt(arena.length());
+        Object o = arena.get(i);
+        if (o instanceof Node && arena.compareAndSet(i, o, TAKEN)) {
+            eliminations.increment();
+            return ((Node<E>) o).item;
+        }
+        return null;
+    }
+
+    private static void backoff(int spins) {
+        int n = ThreadLocalRandom.current().nextInt(spins) + 1;
+        for (int i = 0; i < n; i++) Thread.onSpinWait();
+    }
+}
@@ -0,0 +1,192 @@
+package com.zelon.juc;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/*
+预分配事件槽位的环形缓冲区（Disruptor 风格），消息路径上不分配对象
+1. 为什么需要？
+   ProducerConsumerModelCase 每生产一条消息都要 UUID.randomUUID().toString()，LinkedList 还要分配一个节点，
+   MpmcRingBuffer 去掉了节点，但是消息对象本身还是每次新建。消息速率很高时这些短命对象让 young GC 非常频繁，
+   每次 GC 停顿都会体现为延迟抖动。
+
+2. 做法：
+   ① 创建时用 factory 把每个槽位的事件对象都分配好，之后一直复用，事件对象是可变的
+   ② 生产者 next() 领取一个序号（getAndAdd），get(seq) 拿到槽位上的事件对象，直接修改字段，publish(seq) 发布
+   ③ 消费者 poll(handler) 在槽位上原地读取事件，不复制、不出队；处理完一批之后推进自己的序号，槽位留给下一圈的生产者
+   ④ 发布标记：每个槽位一个 int，值为序号所在的圈数（seq >>> log2(capacity)），
+      多个生产者可以乱序发布，消费者只处理连续已发布的部分
+   ⑤ 等待（缓冲区满 / 空）：先自旋，再 yield，最后 parkNanos；不使用 Lock/Condition，阻塞时也不会分配 AQS 节点
+
+3. 限制：只有一个消费者（一个线程调用 poll/run）；需要多个消费者时按 key 拆成多个 EventRing，或者参考 KeyedPipeline。
+
+4. 注意：事件对象在 publish 之后归消费者，handler 返回之后就会被生产者覆盖，
+   handler 不能把事件对象的引用保存下来，需要的话复制其中的字段。
+ */
+
+public class EventRing<E> {
+
+    // 消费者的回调，endOfBatch 表示这是本批最后一个事件（可以在这里批量 flush）
+    public interface EventHandler<E> {
+        void onEvent(E event, long sequence, boolean endOfBatch);
+    }
+
+    // 生产者的回调，用于 publishEvent，避免调用方自己处理 next/get/publish；arg 用来传参，translator 不需要捕获变量
+    public interface EventTranslator<E, A> {
+        void translateTo(E event, long sequence, A arg);
+    }
+
+    private static final VarHandle CLAIMED;
+    private static final VarHandle CONSUMED;
+    private static final VarHandle PUBLISHED = MethodHandles.arrayElementVarHandle(int[].class);
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            CLAIMED = lookup.findVarHandle(EventRing.class, "claimed", long.class);
+            CONSUMED = lookup.findVarHandle(EventRing.class, "consumed", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static final int SPIN_TRIES = 100;
+    private static final int YIELD_TRIES = 100;
+    private static final long PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final Object[] entries;
+    private final int[] published;
+    private final int mask;
+    private final int shift;
+
+    // claimed 和 consumed 之间填充，避免生产者和消费者的序号落在同一个缓存行（伪共享）
+    long p01, p02, p03, p04, p05, p06, p07;
+    // 已经被生产者领取的最大序号
+    private volatile long claimed = -1;
+    long p11, p12, p13, p14, p15, p16, p17;
+    // 消费者已经处理完的最大序号
+    private volatile long consumed = -1;
+    long p21, p22, p23, p24, p25, p26, p27;
+    // 生产者缓存的 consumed，减少读取消费者缓存行的次数
+    private volatile long cachedConsumed = -1;
+    private volatile boolean halted;
+
+    public EventRing(int capacity, Supplier<? extends E> factory) {
+        if (capacity < 2 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("capacity must be in [2, 2^30]: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = size - 1;
+        this.shift = Integer.numberOfTrailingZeros(size);
+        this.entries = new Object[size];
+        this.published = new int[size];
+        for (int i = 0; i < size; i++) {
+            entries[i] = factory.get();
+            published[i] = -1; // 第 0 圈还没有发布
+        }
+    }
+
+    // 领取下一个序号，缓冲区满时等待消费者
+    public long next() {
+        long seq = (long) CLAIMED.getAndAdd(this, 1L) + 1;
+        long wrapPoint = seq - entries.length;
+        if (wrapPoint > cachedConsumed) {
+            long c;
+            for (int i = 0; wrapPoint > (c = consumed); i++) {
+                backoff(i);
+            }
+            cachedConsumed = c;
+        }
+        return seq;
+    }
+
+    // 非阻塞领取，缓冲区满时返回 -1
+    public long tryNext() {
+        for (;;) {
+            long current = claimed;
+            long seq = current + 1;
+            if (seq - entries.length > consumed) return -1;
+            if (CLAIMED.compareAndSet(this, current, seq)) return seq;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public E get(long sequence) {
+        return (E) entries[(int) (sequence & mask)];
+    }
+
+    // 发布：release 写保证消费者读到发布标记时，也能看到生产者对事件对象的修改
+    public void publish(long sequence) {
+        PUBLISHED.setRelease(published, (int) (sequence & mask), (int) (sequence >>> shift));
+    }
+
+    public <A> void publishEvent(EventTranslator<? super E, A> translator, A arg) {
+        long seq = next();
+        try {
+            translator.translateTo(get(seq), seq, arg);
+        } finally {
+            publish(seq); // 即使 translator 抛出异常也要发布，否则消费者会一直卡在这个序号
+        }
+    }
+
+    // 处理所有连续已发布的事件（单消费者），返回处理的个数；没有事件时立即返回 0
+    public int poll(EventHandler<? super E> handler) {
+        long next = consumed + 1;
+        long available = highestPublished(next, claimed);
+        if (available < next) return 0;
+        try {
+            for (long seq = next; seq <= available; seq++) {
+                handler.onEvent(get(seq), seq, seq == available);
+            }
+        } finally {
+            // handler 抛出异常时也释放这一批槽位，否则生产者会永远等待
+            CONSUMED.setRelease(this, available);
+        }
+        return (int) (available - next + 1);
+    }
+
+    // 在当前线程中循环消费，直到 halt()
+    public void run(EventHandler<? super E> handler) {
+        for (int idle = 0; !halted; ) {
+            if (poll(handler) > 0) {
+                idle = 0;
+            } else {
+                backoff(idle++);
+            }
+        }
+        poll(handler); // halt 之前已经发布的事件也处理掉
+    }
+
+    public void halt() {
+        halted = true;
+    }
+
+    public int capacity() {
+        return entries.length;
+    }
+
+    // 已发布或正在写入、还没有被消费的事件数
+    public long backlog() {
+        return claimed - consumed;
+    }
+
+    private long highestPublished(long from, long to) {
+        for (long seq = from; seq <= to; seq++) {
+            if ((int) PUBLISHED.getAcquire(published, (int) (seq & mask)) != (int) (seq >>> shift)) return seq - 1;
+        }
+        return to;
+    }
+
+    private static void backoff(int i) {
+        if (i < SPIN_TRIES) {
+            Thread.onSpinWait();
+        } else if (i < SPIN_TRIES + YIELD_TRIES) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.zelon.juc;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+EventRing 的用法，稳定状态下消息路径的分配量，以及和每条消息分配一个字符串（ProducerConsumerModelCase 的写法）的 GC 对比。
+分配量通过 com.sun.management.ThreadMXBean.getCurrentThreadAllocatedBytes() 统计：HotSpot 在每个线程的 TLAB 中累计分配的字节数，
+只统计当前线程，不受其他线程和 GC 的影响。
+ */
+
+public class EventRingTestCase {
+
+    static final class Event {
+        long id;
+        long mostSigBits, leastSigBits;
+    }
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    @Test
+    public void testPublishConsume() {
+        EventRing<Event> ring = new EventRing<>(6, Event::new);
+        System.out.println(ring.capacity()); // 8, 向上取整为 2 的幂
+
+        for (int i = 0; i < 8; i++) {
+            long seq = ring.next();
+            ring.get(seq).id = i * 10;
+            ring.publish(seq);
+        }
+        System.out.println(ring.tryNext()); // -1, 缓冲区已满
+
+        StringBuilder b = new StringBuilder();
+        int n = ring.poll((event, seq, endOfBatch) -> b.append(event.id).append(endOfBatch ? "." : ","));
+        System.out.println(n + " " + b); // 8 0,10,20,30,40,50,60,70.
+
+        // 领取了但还没发布的序号会挡住后面已经发布的序号
+        long first = ring.next();
+        long second = ring.next();
+        ring.get(second).id = 2;
+        ring.publish(second);
+        System.out.println(ring.poll((event, seq, endOfBatch) -> { })); // 0
+        ring.get(first).id = 1;
+        ring.publish(first);
+        b.setLength(0);
+        ring.poll((event, seq, endOfBatch) -> b.append(event.id).append(' '));
+        System.out.println(b); // 1 2
+
+        Event before = ring.get(first);
+        ring.publishEvent((event, seq, arg) -> event.id = arg, 42L);
+        System.out.println(ring.get(first + 8) == before); // true, 下一圈复用同一个事件对象
+    }
+
+    @Test
+    public void testZeroAllocation() throws InterruptedException {
+        int producers = 2;
+        long warmup = 1_000_000, measured = 5_000_000;
+        EventRing<Event> ring = new EventRing<>(1024, Event::new);
+        long[] allocated = new long[producers + 1];
+        long[] checksum = new long[1];
+
+        Thread consumer = new Thread(() -> {
+            long[] count = new long[1];
+            EventRing.EventHandler<Event> handler = (event, seq, endOfBatch) -> {
+                checksum[0] += event.id;
+                count[0]++;
+            };
+            long total = producers * (warmup + measured);
+            // 预热完成（JIT 编译）之后再开始统计
+            drain(ring, handler, count, producers * warmup);
+            long begin = THREADS.getCurrentThreadAllocatedBytes();
+            drain(ring, handler, count, total);
+            allocated[producers] = THREADS.getCurrentThreadAllocatedBytes() - begin;
+        });
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            int index = p;
+            threads[p] = new Thread(() -> {
+                publish(ring, 0, warmup);
+                long begin = THREADS.getCurrentThreadAllocatedBytes();
+                publish(ring, warmup, measured);
+                allocated[index] = THREADS.getCurrentThreadAllocatedBytes() - begin;
+            });
+        }
+        consumer.start();
+        for (Thread t : threads) t.start();
+        for (Thread t : threads) t.join();
+        consumer.join();
+
+        for (int p = 0; p < producers; p++) {
+            System.out.println("生产者" + p + " 分配: " + allocated[p] + " 字节"); // 生产者0 分配: 0 字节
+        }
+        System.out.println("消费者分配: " + allocated[producers] + " 字节"); // 消费者分配: 0 字节
+        System.out.println(checksum[0] == producers * (warmup + measured) * (warmup + measured - 1) / 2); // true
+    }
+
+    // 消费到 count 达到 total 为止；没有事件时让出 CPU，否则单核机器上空转的消费者会占满时间片，生产者无法发布
+    private static void drain(EventRing<Event> ring, EventRing.EventHandler<Event> handler, long[] count, long total) {
+        while (count[0] < total) {
+            if (ring.poll(handler) == 0) Thread.yield();
+        }
+    }
+
+    // 发布 id 为 [from, from + count) 的事件
+    private static void publish(EventRing<Event> ring, long from, long count) {
+        for (long id = from; id < from + count; id++) {
+            long seq = ring.next();
+            Event event = ring.get(seq);
+            event.id = id;
+            event.mostSigBits = ThreadLocalRandom.current().nextLong();
+            event.leastSigBits = ThreadLocalRandom.current().nextLong();
+            ring.publish(seq);
+        }
+    }
+
+    @Test
+    public void testGcComparison() throws InterruptedException {
+        int messages = 2_000_000;
+        for (int round = 0; round < 2; round++) { // 第一轮用于预热
+            System.out.println("---------- round " + round + " ----------");
+            System.gc();
+            gcReport("MpmcRingBuffer<String>", () -> runStrings(messages));
+            System.gc();
+            gcReport("EventRing", () -> runSlots(messages));
+        }
+        // MpmcRingBuffer<String>: 分配 150MB 左右（每条消息约 80 字节，主要是 String 和它的 byte[]），GC 6 次，次数取决于堆的大小
+        // EventRing: 分配 0MB, GC 0 次, 耗时也更短
+    }
+
+    // 和 ProducerConsumerModelCase 一样每条消息生成一个 UUID 字符串（用 ThreadLocalRandom 代替 SecureRandom，只比较分配的影响）
+    private static long runStrings(int messages) throws InterruptedException {
+        MpmcRingBuffer<String> queue = new MpmcRingBuffer<>(1024, MpmcRingBuffer.WaitStrategy.TIMED);
+        AtomicLong allocated = new AtomicLong();
+        Thread producer = new Thread(() -> {
+            long begin = THREADS.getCurrentThreadAllocatedBytes();
+            try {
+                for (int i = 0; i < messages; i++) {
+                    ThreadLocalRandom r = ThreadLocalRandom.current();
+                    queue.put(new UUID(r.nextLong(), r.nextLong()).toString());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            allocated.addAndGet(THREADS.getCurrentThreadAllocatedBytes() - begin);
+        });
+        Thread consumer = new Thread(() -> {
+            long begin = THREADS.getCurrentThreadAllocatedBytes();
+            long sum = 0;
+            try {
+                for (int i = 0; i < messages; i++) {
+                    sum += queue.take().length();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            allocated.addAndGet(THREADS.getCurrentThreadAllocatedBytes() - begin);
+            if (sum != 36L * messages) throw new IllegalStateException();
+        });
+        producer.start();
+        consumer.start();
+        producer.join();
+        consumer.join();
+        return allocated.get();
+    }
+
+    private static long runSlots(int messages) throws InterruptedException {
+        EventRing<Event> ring = new EventRing<>(1024, Event::new);
+        AtomicLong allocated = new AtomicLong();
+        Thread producer = new Thread(() -> {
+            long begin = THREADS.getCurrentThreadAllocatedBytes();
+            publish(ring, 0, messages);
+            allocated.addAndGet(THREADS.getCurrentThreadAllocatedBytes() - begin);
+        });
+        Thread consumer = new Thread(() -> {
+            long begin = THREADS.getCurrentThreadAllocatedBytes();
+            long[] count = new long[1];
+            EventRing.EventHandler<Event> handler = (event, seq, endOfBatch) -> count[0]++;
+            drain(ring, handler, count, messages);
+            allocated.addAndGet(THREADS.getCurrentThreadAllocatedBytes() - begin);
+        });
+        producer.start();
+        consumer.start();
+        producer.join();
+        consumer.join();
+        return allocated.get();
+    }
+
+    interface Run {
+        long run() throws InterruptedException;
+    }
+
+    private static void gcReport(String name, Run run) throws InterruptedException {
+        long count = 0, time = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count -= gc.getCollectionCount();
+            time -= gc.getCollectionTime();
+        }
+        long begin = System.nanoTime();
+        long allocated = run.run();
+        long elapsed = System.nanoTime() - begin;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += gc.getCollectionCount();
+            time += gc.getCollectionTime();
+        }
+        System.out.println(name + ": 分配 " + allocated / (1 << 20) + "MB, GC " + count + " 次 / " + time + "ms, 耗时 "
+                + TimeUnit.NANOSECONDS.toMillis(elapsed) + "ms");
+    }
+}
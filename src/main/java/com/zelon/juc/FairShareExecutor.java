@@ -0,0 +1,423 @@
+package com.zelon.juc;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+多租户按权重公平分享的线程池
+1. 为什么需要？
+   所有租户共用一个 ThreadPool.main 那样的 ThreadPoolExecutor(5, 10, ..., LinkedBlockingQueue(500)) 时，
+   一个租户突然提交大量任务就能占满 500 个槽位，其他租户的任务要排在它后面，甚至直接被拒绝。
+
+2. 结构：
+   ① 每个租户一个子队列（有界），队列满时只拒绝这个租户，其他租户不受影响
+   ② 一组共享的工作线程，按加权赤字轮转（Deficit Round Robin）从各个租户的子队列中取任务：
+      轮到一个租户时给它的赤字（deficit）加上 quantum × weight，赤字为正就可以取任务，
+      每个任务按执行时间扣减赤字（取任务时先按这个租户的平均执行时间预扣，执行完再按实际时间修正），
+      所以分到的是按权重比例的线程时间，而不是按任务个数：一个租户的任务执行得慢，它能执行的任务就少
+   ③ 每个租户可以限制并发数（maxConcurrency），达到上限时轮转跳过它，不会占满所有工作线程
+   ④ 子队列排空时赤字清零，空闲的租户不能攒下额度之后一下子占满线程池（DRR 的标准做法）
+
+3. 锁分段：租户按名字的哈希分到 stripes 个分段，每个分段一把锁、一个轮转队列，提交和取任务只锁一个分段，调度器本身不会成为瓶颈。
+   ① 分段内部按上面的赤字轮转调度
+   ② 分段之间按虚拟时间调度：每个分段记录一个虚拟时间，执行一个任务就加上 执行时间 / 派发时分段内活跃租户的权重之和
+      （派发时按预扣的时间加，执行完再按同一个除数修正），工作线程优先从有排队任务的分段中虚拟时间最小的那个取任务，
+      所以每个分段分到的线程时间和它的活跃权重成正比；空闲的分段重新变为活跃时虚拟时间追上其他活跃的分段，不会攒下额度
+   ③ 虚拟时间最小的分段的租户都达到了并发上限时，从不同的起点依次尝试其他分段，不同的工作线程起点不同
+
+4. 指标（tenantMetrics()）：每个租户的排队数、执行中的任务数、提交 / 完成 / 拒绝次数、排队时间和执行时间的分布。
+
+5. 空闲的工作线程 park，提交任务时 unpark 一个；达到并发上限的租户的任务只有它自己的任务执行完才可能变得可以执行，
+   而执行完的工作线程会继续取任务，所以不需要额外唤醒。
+ */
+
+public class FairShareExecutor {
+
+    @Value
+    @Builder
+    public static class Options {
+        @Builder.Default int threads = Runtime.getRuntime().availableProcessors();
+        @Builder.Default int stripes = 4;
+        // 每轮给权重为 1 的租户的线程时间
+        @Builder.Default long quantumMicros = 1_000;
+        // 没有注册的租户使用的默认配置
+        @Builder.Default TenantOptions defaultTenant = TenantOptions.builder().build();
+    }
+
+    @Value
+    @Builder
+    public static class TenantOptions {
+        @Builder.Default int weight = 1;
+        @Builder.Default int maxConcurrency = Integer.MAX_VALUE;
+        @Builder.Default int queueCapacity = 500;
+    }
+
+    @Value
+    public static class TenantMetrics {
+        String tenant;
+        int weight;
+        int queued;
+        int running;
+        long submitted;
+        long completed;
+        long rejected;
+        LatencyHistogram.Snapshot queueWait;
+        LatencyHistogram.Snapshot execution;
+
+        @Override
+        public String toString() {
+            return String.format("%s[weight=%d, queued=%d, running=%d, submitted=%d, completed=%d, rejected=%d, wait p99=%.1fms, exec mean=%.2fms]",
+                    tenant, weight, queued, running, submitted, completed, rejected,
+                    queueWait.percentile(0.99, TimeUnit.MICROSECONDS) / 1000, execution.meanNanos() / 1e6);
+        }
+    }
+
+    private static final class Task {
+        final Tenant tenant;
+        final Runnable command;
+        final long submitNanos;
+        long charged; // 取任务时预扣的赤字
+        int weightAtDispatch; // 取任务时分段的活跃权重，虚拟时间的预扣和修正都除以它
+
+        Task(Tenant tenant, Runnable command, long submitNanos) {
+            this.tenant = tenant;
+            this.command = command;
+            this.submitNanos = submitNanos;
+        }
+    }
+
+    private static final class Tenant {
+        final String name;
+        final Shard shard;
+        // 以下字段由 shard.lock 保护
+        TenantOptions options;
+        final ArrayDeque<Task> queue = new ArrayDeque<>();
+        long deficit;
+        int activeWeight; // 计入 shard.activeWeight 的权重
+        boolean active; // 在 shard.active 中
+        boolean turn; // 这一轮已经加过 quantum
+        int running;
+        long avgExecNanos;
+        // 指标
+        final LongAdder submitted = new LongAdder();
+        final LongAdder completed = new LongAdder();
+        final LongAdder rejected = new LongAdder();
+        final LatencyHistogram queueWait = new LatencyHistogram();
+        final LatencyHistogram execution = new LatencyHistogram();
+
+        Tenant(String name, TenantOptions options, Shard shard) {
+            this.name = name;
+            this.options = options;
+            this.shard = shard;
+        }
+    }
+
+    private final class Shard {
+        final ReentrantLock lock = new ReentrantLock();
+        // 有排队任务的租户，按轮转顺序
+        final ArrayDeque<Tenant> active = new ArrayDeque<>();
+        // 排队的任务数，工作线程不加锁读取，跳过空的分段
+        volatile int queued;
+        // 分段的虚拟时间：执行时间 / 分段内活跃租户的权重之和，工作线程优先从虚拟时间最小的分段取任务
+        volatile long vtime;
+        int activeWeight;
+
+        boolean offer(Tenant t, Task task) {
+            lock.lock();
+            try {
+                if (t.queue.size() >= t.options.getQueueCapacity()) return false;
+                t.queue.addLast(task);
+                if (!t.active) {
+                    t.active = true;
+                    t.turn = false;
+                    t.activeWeight = t.options.getWeight();
+                    if (active.isEmpty()) {
+                        // 分段从空闲变为活跃：虚拟时间追上其他活跃的分段，空闲期间不攒额度
+                        vtime = Math.max(vtime, minActiveVtime(this));
+                    }
+                    activeWeight += t.activeWeight;
+                    active.addLast(t);
+                }
+                queued++;
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // 加权赤字轮转
+        Task poll() {
+            lock.lock();
+            try {
+                int n = active.size();
+                Tenant fallback = null;
+                // 每个租户最多看两次：第一次可能只是给它加上这一轮的 quantum
+                for (int i = 0; i < 2 * n; i++) {
+                    Tenant t = active.peekFirst();
+                    if (t.running >= t.options.getMaxConcurrency()) {
+                        rotate(t);
+                        continue;
+                    }
+                    if (!t.turn) {
+                        t.turn = true;
+                        t.deficit += quantum * t.options.getWeight();
+                    }
+                    if (t.deficit > 0) return dispatch(t);
+                    // 额度用完了，轮到下一个租户；记录欠得最少的，全部都在欠账时由它执行（线程不能空闲）
+                    if (fallback == null || t.deficit * fallback.options.getWeight() > fallback.deficit * t.options.getWeight()) {
+                        fallback = t;
+                    }
+                    rotate(t);
+                }
+                return fallback != null && fallback.running < fallback.options.getMaxConcurrency() ? dispatch(fallback) : null;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // t 是队首
+        private void rotate(Tenant t) {
+            active.pollFirst();
+            t.turn = false;
+            active.addLast(t);
+        }
+
+        private Task dispatch(Tenant t) {
+            Task task = t.queue.pollFirst();
+            queued--;
+            t.running++;
+            task.charged = Math.max(1, t.avgExecNanos);
+            task.weightAtDispatch = Math.max(1, activeWeight);
+            t.deficit -= task.charged;
+            vtime += task.charged / task.weightAtDispatch;
+            if (t.queue.isEmpty()) deactivate(t);
+            return task;
+        }
+
+        // 队列排空：离开轮转，赤字清零（欠的账保留，避免执行时间很长的租户靠排空来逃账）
+        private void deactivate(Tenant t) {
+            active.remove(t);
+            t.active = false;
+            activeWeight -= t.activeWeight;
+            t.deficit = Math.min(0, t.deficit);
+        }
+
+        // 把还没有被取走的任务移出队列，返回 false 表示已经被工作线程取走了
+        boolean remove(Task task) {
+            Tenant t = task.tenant;
+            lock.lock();
+            try {
+                if (!t.queue.remove(task)) return false;
+                queued--;
+                if (t.queue.isEmpty()) deactivate(t);
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void complete(Task task, long execNanos) {
+            Tenant t = task.tenant;
+            lock.lock();
+            try {
+                t.running--;
+                t.deficit -= execNanos - task.charged;
+                vtime += (execNanos - task.charged) / task.weightAtDispatch;
+                t.avgExecNanos = t.avgExecNanos == 0 ? execNanos : (t.avgExecNanos * 7 + execNanos) / 8;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        TenantMetrics metrics(Tenant t) {
+            lock.lock();
+            try {
+                return new TenantMetrics(t.name, t.options.getWeight(), t.queue.size(), t.running,
+                        t.submitted.sum(), t.completed.sum(), t.rejected.sum(), t.queueWait.snapshot(), t.execution.snapshot());
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private final Options options;
+    private final long quantum;
+    private final Shard[] shards;
+    private final ConcurrentHashMap<String, Tenant> tenants = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Thread> idle = new ConcurrentLinkedQueue<>();
+    private final Thread[] workers;
+    private final AtomicInteger alive;
+    private volatile boolean shutdown;
+
+    public FairShareExecutor(Options options) {
+        if (options.getThreads() < 1) throw new IllegalArgumentException("threads: " + options.getThreads());
+        if (options.getStripes() < 1) throw new IllegalArgumentException("stripes: " + options.getStripes());
+        this.options = options;
+        this.quantum = TimeUnit.MICROSECONDS.toNanos(options.getQuantumMicros());
+        this.shards = new Shard[options.getStripes()];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new Shard();
+        }
+        this.workers = new Thread[options.getThreads()];
+        this.alive = new AtomicInteger(workers.length);
+        for (int i = 0; i < workers.length; i++) {
+            int id = i;
+            workers[i] = new Thread(() -> work(id), "fair-share-" + i);
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    // 注册或者修改租户的配置，已经注册的租户保留队列和指标，新的配置对之后的调度生效
+    public void register(String tenant, TenantOptions tenantOptions) {
+        if (tenantOptions.getWeight() < 1) throw new IllegalArgumentException("weight: " + tenantOptions.getWeight());
+        if (tenantOptions.getMaxConcurrency() < 1) throw new IllegalArgumentException("maxConcurrency: " + tenantOptions.getMaxConcurrency());
+        Tenant t = tenants.computeIfAbsent(tenant, name -> new Tenant(name, tenantOptions, shardFor(name)));
+        t.shard.lock.lock();
+        try {
+            t.options = tenantOptions;
+        } finally {
+            t.shard.lock.unlock();
+        }
+    }
+
+    public void execute(String tenant, Runnable command) {
+        Objects.requireNonNull(command);
+        if (shutdown) throw new RejectedExecutionException("executor has been shut down");
+        Tenant t = tenants.computeIfAbsent(tenant, name -> new Tenant(name, options.getDefaultTenant(), shardFor(name)));
+        t.submitted.increment();
+        Task task = new Task(t, command, System.nanoTime());
+        if (!t.shard.offer(t, task)) {
+            t.rejected.increment();
+            throw new RejectedExecutionException("tenant " + tenant + " queue is full");
+        }
+        // 和 ThreadPoolExecutor.execute() 一样入队后再检查一次：shutdown() 发生在第一次检查之后时，
+        // 工作线程可能已经看到队列为空退出了，任务还没被取走就移出队列并拒绝，不会留在没有线程处理的队列里
+        if (shutdown && t.shard.remove(task)) {
+            t.rejected.increment();
+            throw new RejectedExecutionException("executor has been shut down");
+        }
+        Thread worker = idle.poll();
+        if (worker != null) LockSupport.unpark(worker);
+    }
+
+    // 绑定到一个租户的 Executor，可以传给 CompletableFuture 等
+    public Executor forTenant(String tenant) {
+        return command -> execute(tenant, command);
+    }
+
+    public Map<String, TenantMetrics> tenantMetrics() {
+        Map<String, TenantMetrics> result = new TreeMap<>();
+        tenants.forEach((name, t) -> result.put(name, t.shard.metrics(t)));
+        return result;
+    }
+
+    // 不再接受新任务，已经排队的任务执行完之后工作线程退出
+    public void shutdown() {
+        shutdown = true;
+        for (Thread worker : workers) LockSupport.unpark(worker);
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (Thread worker : workers) {
+            long millis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (millis <= 0) return alive.get() == 0;
+            worker.join(millis);
+        }
+        return alive.get() == 0;
+    }
+
+    private Shard shardFor(String tenant) {
+        int h = tenant.hashCode();
+        return shards[Math.floorMod(h ^ (h >>> 16), shards.length)];
+    }
+
+    private void work(int id) {
+        Thread self = Thread.currentThread();
+        try {
+            for (int next = id; ; next++) {
+                Task task = poll(next);
+                if (task == null) {
+                    if (shutdown && queuedTotal() == 0) return;
+                    // 先登记为空闲再检查一次，避免和 execute() 之间丢失唤醒
+                    idle.add(self);
+                    task = poll(next);
+                    if (task == null && !(shutdown && queuedTotal() == 0)) {
+                        LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(10));
+                    }
+                    idle.remove(self);
+                    if (task == null) continue;
+                }
+                run(task);
+            }
+        } finally {
+            alive.decrementAndGet();
+        }
+    }
+
+    // 先从虚拟时间最小的分段取，按权重在分段之间分享线程时间；
+    // 这个分段的租户都达到了并发上限时，从第 start 个分段开始依次尝试其他分段，不同的工作线程从不同的分段开始
+    private Task poll(int start) {
+        Shard first = null;
+        for (int i = 0; i < shards.length; i++) {
+            Shard shard = shards[Math.floorMod(start + i, shards.length)];
+            if (shard.queued > 0 && (first == null || shard.vtime < first.vtime)) first = shard;
+        }
+        if (first == null) return null;
+        Task task = first.poll();
+        if (task != null) return task;
+        for (int i = 0; i < shards.length; i++) {
+            Shard shard = shards[Math.floorMod(start + i, shards.length)];
+            if (shard == first || shard.queued == 0) continue;
+            task = shard.poll();
+            if (task != null) return task;
+        }
+        return null;
+    }
+
+    private long minActiveVtime(Shard except) {
+        long min = Long.MAX_VALUE;
+        for (Shard shard : shards) {
+            if (shard != except && shard.queued > 0) min = Math.min(min, shard.vtime);
+        }
+        return min == Long.MAX_VALUE ? 0 : min;
+    }
+
+    private int queuedTotal() {
+        int sum = 0;
+        for (Shard shard : shards) sum += shard.queued;
+        return sum;
+    }
+
+    private void run(Task task) {
+        Tenant t = task.tenant;
+        long begin = System.nanoTime();
+        t.queueWait.record(begin - task.submitNanos);
+        try {
+            task.command.run();
+        } catch (RuntimeException | Error e) {
+            Thread self = Thread.currentThread();
+            self.getUncaughtExceptionHandler().uncaughtException(self, e);
+        } finally {
+            long exec = System.nanoTime() - begin;
+            t.execution.record(exec);
+            t.completed.increment();
+            t.shard.complete(task, exec);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.zelon.juc;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+FairShareExecutor：按权重分享线程时间、每个租户的并发上限、吵闹的租户只会把自己的队列占满，
+以及和 ThreadPool.main 那样共用一个 LinkedBlockingQueue(500) 的对比。
+ */
+
+public class FairShareExecutorTestCase {
+
+    @Test
+    public void testWeightedShare() throws InterruptedException {
+        FairShareExecutor executor = new FairShareExecutor(FairShareExecutor.Options.builder().threads(1).build());
+        executor.register("gold", FairShareExecutor.TenantOptions.builder().weight(3).queueCapacity(10_000).build());
+        executor.register("bronze", FairShareExecutor.TenantOptions.builder().weight(1).queueCapacity(10_000).build());
+        Map<String, LongAdder> busyNanos = new ConcurrentHashMap<>();
+        // 两个租户一直有积压，bronze 的任务执行时间是 gold 的两倍
+        for (int i = 0; i < 2_000; i++) {
+            executor.execute("gold", spin(busyNanos, "gold", 200_000));
+            executor.execute("bronze", spin(busyNanos, "bronze", 400_000));
+        }
+        Thread.sleep(500);
+        double gold = busyNanos.get("gold").sum(), bronze = busyNanos.get("bronze").sum();
+        System.out.printf("gold : bronze 线程时间 = %.1f : 1%n", gold / bronze); // gold : bronze 线程时间 = 3.0 : 1
+        Map<String, FairShareExecutor.TenantMetrics> metrics = executor.tenantMetrics();
+        // 按线程时间分享，所以 gold 完成的任务数大约是 bronze 的 6 倍（整数除法，加上还在执行的任务，5 或 6）
+        System.out.println(metrics.get("gold").getCompleted() / Math.max(1, metrics.get("bronze").getCompleted())); // 5
+        executor.shutdown();
+        executor.awaitTermination(30, TimeUnit.SECONDS);
+    }
+
+    private static Runnable spin(Map<String, LongAdder> busyNanos, String tenant, long nanos) {
+        return () -> {
+            long begin = System.nanoTime();
+            while (System.nanoTime() - begin < nanos) Thread.onSpinWait();
+            busyNanos.computeIfAbsent(tenant, k -> new LongAdder()).add(System.nanoTime() - begin);
+        };
+    }
+
+    @Test
+    public void testConcurrencyCap() throws InterruptedException {
+        FairShareExecutor executor = new FairShareExecutor(FairShareExecutor.Options.builder().threads(4).build());
+        executor.register("batch", FairShareExecutor.TenantOptions.builder().maxConcurrency(1).build());
+        AtomicInteger running = new AtomicInteger(), maxRunning = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(20);
+        for (int i = 0; i < 20; i++) {
+            executor.execute("batch", () -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                sleep(2);
+                running.decrementAndGet();
+                done.countDown();
+            });
+        }
+        // 其他租户不受影响，可以用剩下的线程
+        CountDownLatch other = new CountDownLatch(1);
+        executor.execute("web", other::countDown);
+        System.out.println(other.await(1, TimeUnit.SECONDS)); // true
+        done.await();
+        System.out.println(maxRunning.get()); // 1
+        executor.shutdown();
+    }
+
+    @Test
+    public void testNoisyNeighbor() throws InterruptedException {
+        FairShareExecutor executor = new FairShareExecutor(FairShareExecutor.Options.builder().threads(4).build());
+        int rejected = 0;
+        for (int i = 0; i < 600; i++) {
+            try {
+                executor.execute("noisy", () -> sleep(1));
+            } catch (RejectedExecutionException e) {
+                rejected++;
+            }
+        }
+        System.out.println(rejected > 0); // true, 只有 noisy 自己的队列满了
+        CountDownLatch quiet = new CountDownLatch(1);
+        long begin = System.nanoTime();
+        executor.execute("quiet", quiet::countDown);
+        quiet.await();
+        // quiet 不用排在 noisy 的 500 个任务后面，下一个空出来的线程就执行它
+        System.out.println(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin) < 20); // true
+        executor.shutdown();
+        System.out.println(executor.awaitTermination(10, TimeUnit.SECONDS)); // true, 已经排队的任务执行完才退出
+        executor.tenantMetrics().values().forEach(System.out::println);
+        // noisy[weight=1, queued=0, running=0, submitted=600, completed=500, rejected=100, wait p99=..., exec mean=1.1ms]
+        // quiet[weight=1, queued=0, running=0, submitted=1, completed=1, rejected=0, wait p99=0.x ms, exec mean=0.00ms]
+    }
+
+    @Test
+    public void testSkewedLoad() throws InterruptedException {
+        int threads = 4;
+        ThreadPoolExecutor shared = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(500), new ThreadPoolExecutor.AbortPolicy());
+        FairShareExecutor fair = new FairShareExecutor(FairShareExecutor.Options.builder().threads(threads).build());
+        System.out.println("共用 LinkedBlockingQueue(500) 轻租户: " + skewed((tenant, task) -> shared.execute(task)));
+        System.out.println("FairShareExecutor 轻租户: " + skewed(fair::execute));
+        // 共用 LinkedBlockingQueue(500) 轻租户: p99 1000.0ms, 拒绝 200 个左右（共 360 个）, 队列被重租户占满，大部分请求被拒绝，没被拒绝的也要排在几百个任务后面
+        // FairShareExecutor 轻租户: p99 2ms 以内, 拒绝 0 个, 只和重租户分享线程
+        shared.shutdown();
+        fair.shutdown();
+    }
+
+    @Test
+    public void testShutdownRace() throws InterruptedException {
+        // 提交和 shutdown() 并发：每个被接受的任务都要执行，不能留在没有工作线程的队列里
+        int lost = 0;
+        for (int round = 0; round < 200; round++) {
+            FairShareExecutor executor = new FairShareExecutor(FairShareExecutor.Options.builder().threads(2).build());
+            AtomicInteger accepted = new AtomicInteger();
+            AtomicInteger ran = new AtomicInteger();
+            Thread submitter = new Thread(() -> {
+                try {
+                    for (;;) {
+                        executor.execute("t" + (accepted.get() & 3), ran::incrementAndGet);
+                        accepted.incrementAndGet();
+                    }
+                } catch (RejectedExecutionException ignored) {
+                    // 已经 shutdown 或者队列满了
+                }
+            });
+            submitter.start();
+            Thread.yield();
+            executor.shutdown();
+            submitter.join();
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+            lost += accepted.get() - ran.get();
+        }
+        System.out.println("lost: " + lost); // lost: 0
+    }
+
+        interface TenantExecutor {
+        void execute(String tenant, Runnable task);
+    }
+
+    // 重租户不停地提交 1ms 的任务直到被拒绝，4 个轻租户每 10ms 各提交一个任务，统计轻租户从提交到完成的延迟
+    private static String skewed(TenantExecutor executor) throws InterruptedException {
+        LatencyHistogram light = new LatencyHistogram();
+        int rejected = 0;
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        Thread heavy = new Thread(() -> {
+            while (System.nanoTime() < end) {
+                try {
+                    executor.execute("heavy", () -> sleep(1));
+                } catch (RejectedExecutionException e) {
+                    sleep(1);
+                }
+            }
+        });
+        heavy.start();
+        Thread.sleep(100); // 先让重租户把队列填满
+        while (System.nanoTime() < end) {
+            for (int i = 0; i < 4; i++) {
+                long submit = System.nanoTime();
+                try {
+                    executor.execute("light-" + i, () -> light.record(System.nanoTime() - submit));
+                } catch (RejectedExecutionException e) {
+                    light.record(TimeUnit.SECONDS.toNanos(1)); // 被拒绝按 1 秒计
+                    rejected++;
+                }
+            }
+            Thread.sleep(10);
+        }
+        heavy.join();
+        Thread.sleep(600); // 等积压的任务执行完
+        return String.format("p99 %.1fms, 拒绝 %d 个", light.snapshot().percentile(0.99, TimeUnit.MICROSECONDS) / 1000, rejected);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,388 @@
+package com.zelon.juc;
+
+import lombok.Value;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+可观测的线程池
+1. 为什么需要？
+   线程池的 p99 延迟升高时，ThreadPoolExecutor 自身只能看到 getActiveCount()、getQueue().size() 这种瞬时值，
+   无法区分任务是在 LinkedBlockingQueue 里排队太久，还是执行本身变慢了。
+
+2. 怎么实现？
+   ① execute(): 把任务包装为 TimedTask，记录提交时间（submit() 内部也是调用 execute()，同样会被包装）
+   ② beforeExecute(): 工作线程取到任务，开始时间 - 提交时间 = 排队时间
+   ③ afterExecute(): 结束时间 - 开始时间 = 执行时间
+   ④ 拒绝策略被包装为 CountingRejectedExecutionHandler，按策略类名统计拒绝次数
+   ⑤ 活跃线程数通过 AtomicInteger 计数并记录峰值，不调用 getActiveCount()（需要加 mainLock）；
+     排队数直接取 getQueue().size()，入队之后记录一次峰值。不另外维护精确的排队计数：任务还会被 DiscardOldestPolicy、purge()、
+     getQueue().remove() 等绕过线程池的路径移出队列，影子计数器跟不上这些路径，时间长了会漂移。
+     pendingTasks 只是排队数的上界（execute() 加一，开始执行、被拒绝、被 SheddingQueue 丢弃时减一，绕过线程池移出的任务不减，
+     所以只会偏大），只用来判断要不要读取队列：上界没有超过已记录的峰值时，排队数也不可能超过，不用调用 getQueue().size()
+   ⑥ submit() 提交的 FutureTask 被包装为 TimedFuture，转发 isCancelled() / cancel()，purge() 才能识别并移除已取消的任务
+
+3. 开销：每个任务两次 System.nanoTime()、一次包装对象分配、两次直方图记录（无锁），可以在生产环境常开。
+   getQueue().size() 的开销取决于队列：LinkedBlockingQueue（包括 AdaptiveThreadPoolExecutor 的 EagerTaskQueue）和 SheddingQueue
+   只读一个计数字段；ArrayBlockingQueue、PriorityBlockingQueue 等需要加队列锁，会和工作线程取任务竞争同一把锁。
+   排队数创新高的那些提交才会读取（见 2. ⑤），pendingTasks 漂移得越多读取得越频繁，最差和每次提交都读取一样。
+   JFR 录制开启时，排队或执行超过阈值的任务、被拒绝的任务还会输出 com.zelon.juc.TaskQueueWait / TaskExecution / TaskRejected 事件，
+   事件名中的线程池名取 registerMBean() 的参数（见 JfrEvents）。
+
+4. 指标读取：
+   ① snapshot(): 进程内直接读取，返回不可变的快照
+   ② registerMBean(poolName): 注册为 JMX MBean，线程池 terminated 后自动注销
+ */
+
+public class InstrumentedThreadPoolExecutor extends ThreadPoolExecutor {
+
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+    private final LatencyHistogram execution = new LatencyHistogram();
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final ConcurrentHashMap<String, LongAdder> rejections = new ConcurrentHashMap<>();
+    private final AtomicInteger activeThreads = new AtomicInteger();
+    private final AtomicInteger peakActiveThreads = new AtomicInteger();
+    private final AtomicInteger peakQueuedTasks = new AtomicInteger();
+    private final AtomicInteger pendingTasks = new AtomicInteger();
+    private volatile ObjectName mbeanName;
+    private volatile String poolName = "pool@" + Integer.toHexString(System.identityHashCode(this));
+
+    public InstrumentedThreadPoolExecutor(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit,
+                                          BlockingQueue<Runnable> workQueue) {
+        this(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, Executors.defaultThreadFactory(), new AbortPolicy());
+    }
+
+    public InstrumentedThreadPoolExecutor(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit,
+                                          BlockingQueue<Runnable> workQueue, RejectedExecutionHandler handler) {
+        this(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, Executors.defaultThreadFactory(), handler);
+    }
+
+    public InstrumentedThreadPoolExecutor(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit,
+                                          BlockingQueue<Runnable> workQueue, ThreadFactory threadFactory,
+                                          RejectedExecutionHandler handler) {
+        super(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, threadFactory, handler);
+        // 父类构造方法直接给字段赋值，不会调用 setRejectedExecutionHandler，这里再包装一次
+        setRejectedExecutionHandler(handler);
+        if (workQueue instanceof SheddingQueue shedding) {
+            shedding.bind(this);
+        }
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (command == null) throw new NullPointerException();
+        submitted.increment();
+        long now = System.nanoTime();
+        TimedTask task = command instanceof Future<?> future ? new TimedFuture(command, future, now) : new TimedTask(command, now);
+        if (JfrEvents.TASK_QUEUE_WAIT.isEnabled()) {
+            task.queueWaitEvent = new JfrEvents.TaskQueueWait();
+            task.queueWaitEvent.submitter = Thread.currentThread();
+            task.queueWaitEvent.begin();
+        }
+        int pending = pendingTasks.incrementAndGet();
+        super.execute(task);
+        if (pending > peakQueuedTasks.get()) {
+            updatePeak(peakQueuedTasks, getQueue().size());
+        }
+    }
+
+    @Override
+    protected void beforeExecute(Thread t, Runnable r) {
+        pendingTasks.decrementAndGet();
+        if (r instanceof TimedTask task) {
+            task.startNanos = System.nanoTime();
+            queueWait.record(task.startNanos - task.submitNanos);
+            JfrEvents.TaskQueueWait event = task.queueWaitEvent;
+            if (event != null) {
+                event.end();
+                if (event.shouldCommit()) {
+                    event.pool = poolName;
+                    event.task = task.delegate.getClass().getName();
+                    event.commit();
+                }
+            }
+            if (JfrEvents.TASK_EXECUTION.isEnabled()) {
+                task.executionEvent = new JfrEvents.TaskExecution();
+                task.executionEvent.begin();
+            }
+        }
+        updatePeak(peakActiveThreads, activeThreads.incrementAndGet());
+        super.beforeExecute(t, r);
+    }
+
+    @Override
+    protected void afterExecute(Runnable r, Throwable t) {
+        super.afterExecute(r, t);
+        activeThreads.decrementAndGet();
+        if (r instanceof TimedTask task) {
+            execution.record(System.nanoTime() - task.startNanos);
+            JfrEvents.TaskExecution event = task.executionEvent;
+            if (event != null) {
+                event.end();
+                if (event.shouldCommit()) {
+                    event.pool = poolName;
+                    event.task = task.delegate.getClass().getName();
+                    event.queueWait = task.startNanos - task.submitNanos;
+                    event.failed = t != null;
+                    event.commit();
+                }
+            }
+        }
+        // submit() 提交的任务异常被 FutureTask 吃掉了，t 为 null，这里只能统计 execute() 的异常
+        if (t != null) {
+            failed.increment();
+        } else {
+            completed.increment();
+        }
+    }
+
+    @Override
+    public boolean remove(Runnable task) {
+        // 队列中存放的是包装后的任务，需要按原始任务查找
+        for (Runnable r : getQueue()) {
+            if (r instanceof TimedTask timed && timed.delegate == task && super.remove(r)) {
+                pendingTasks.decrementAndGet();
+                return true;
+            }
+        }
+        if (!super.remove(task)) return false;
+        pendingTasks.decrementAndGet();
+        return true;
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> tasks = super.shutdownNow();
+        tasks.replaceAll(r -> r instanceof TimedTask timed ? timed.delegate : r);
+        return tasks;
+    }
+
+    @Override
+    public void setRejectedExecutionHandler(RejectedExecutionHandler handler) {
+        if (handler instanceof CountingRejectedExecutionHandler) {
+            super.setRejectedExecutionHandler(handler);
+        } else {
+            super.setRejectedExecutionHandler(new CountingRejectedExecutionHandler(handler));
+        }
+    }
+
+    @Override
+    public RejectedExecutionHandler getRejectedExecutionHandler() {
+        RejectedExecutionHandler handler = super.getRejectedExecutionHandler();
+        return handler instanceof CountingRejectedExecutionHandler counting ? counting.delegate : handler;
+    }
+
+    @Override
+    protected void terminated() {
+        super.terminated();
+        unregisterMBean();
+    }
+
+    public PoolMetricsSnapshot snapshot() {
+        Map<String, Long> rejected = new TreeMap<>();
+        rejections.forEach((policy, count) -> rejected.put(policy, count.sum()));
+        return new PoolMetricsSnapshot(
+                getPoolSize(), getCorePoolSize(), getMaximumPoolSize(), getLargestPoolSize(),
+                activeThreads.get(), peakActiveThreads.get(),
+                getQueue().size(), peakQueuedTasks.get(),
+                submitted.sum(), completed.sum(), failed.sum(), rejected,
+                queueWait.snapshot(), execution.snapshot());
+    }
+
+    // 子类扩展点：任务被拒绝时是否重新放回队列，返回 true 表示已处理，不再交给拒绝策略
+    protected boolean requeueRejected(Runnable task) {
+        return false;
+    }
+
+    // SheddingQueue 丢弃了一个排队中的任务，按丢弃原因计入拒绝次数
+    void recordShed(String reason) {
+        pendingTasks.decrementAndGet();
+        rejections.computeIfAbsent(reason, k -> new LongAdder()).increment();
+    }
+
+    // 已经入队但还没有执行完的任务数（排队 + 执行中），不包括正在 execute() 中入队的任务；
+    // EagerTaskQueue.offer() 每次都会调用，它是 LinkedBlockingQueue，size() 不加锁
+    int inFlightTasks() {
+        return getQueue().size() + activeThreads.get();
+    }
+
+    // 峰值从当前值重新开始统计，便于按采集周期观察
+    public void resetPeaks() {
+        peakActiveThreads.set(activeThreads.get());
+        peakQueuedTasks.set(getQueue().size());
+    }
+
+    public ObjectName registerMBean(String poolName) {
+        try {
+            ObjectName name = new ObjectName("com.zelon.juc:type=ThreadPool,name=" + ObjectName.quote(poolName));
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(new ThreadPoolMetrics(this), name);
+            mbeanName = name;
+            this.poolName = poolName;
+            return name;
+        } catch (JMException e) {
+            throw new IllegalStateException("register mbean failed: " + poolName, e);
+        }
+    }
+
+    public void unregisterMBean() {
+        ObjectName name = mbeanName;
+        if (name == null) return;
+        mbeanName = null;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (JMException ignored) {
+            // 已经被注销
+        }
+    }
+
+    private static void updatePeak(AtomicInteger peak, int value) {
+        int p;
+        while (value > (p = peak.get()) && !peak.compareAndSet(p, value)) {
+            // 只在超过峰值时才 CAS
+        }
+    }
+
+    static class TimedTask implements Runnable {
+        final Runnable delegate;
+        final long submitNanos;
+        long startNanos; // 只被执行它的工作线程读写
+        // 没有录制在收集这两类事件时为 null；queueWaitEvent 在入队之前写入，入队保证工作线程可见
+        JfrEvents.TaskQueueWait queueWaitEvent;
+        JfrEvents.TaskExecution executionEvent;
+
+        TimedTask(Runnable delegate, long submitNanos) {
+            this.delegate = delegate;
+            this.submitNanos = submitNanos;
+        }
+
+        @Override
+        public void run() {
+            delegate.run();
+        }
+    }
+
+    // submit() 提交的任务：ThreadPoolExecutor.purge() 只移除 "是 Future 并且已取消" 的队列元素，包装之后要把取消状态转发出来
+    static final class TimedFuture extends TimedTask implements Future<Object> {
+        private final Future<?> future;
+
+        TimedFuture(Runnable delegate, Future<?> future, long submitNanos) {
+            super(delegate, submitNanos);
+            this.future = future;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return future.cancel(mayInterruptIfRunning);
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return future.isCancelled();
+        }
+
+        @Override
+        public boolean isDone() {
+            return future.isDone();
+        }
+
+        @Override
+        public Object get() throws InterruptedException, ExecutionException {
+            return future.get();
+        }
+
+        @Override
+        public Object get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            return future.get(timeout, unit);
+        }
+    }
+
+    final class CountingRejectedExecutionHandler implements RejectedExecutionHandler {
+        final RejectedExecutionHandler delegate;
+        final LongAdder counter;
+
+        CountingRejectedExecutionHandler(RejectedExecutionHandler delegate) {
+            this.delegate = delegate;
+            this.counter = rejections.computeIfAbsent(delegate.getClass().getSimpleName(), k -> new LongAdder());
+        }
+
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            if (!executor.isShutdown() && requeueRejected(r)) {
+                return; // 子类重新放回了队列，不算拒绝
+            }
+            counter.increment();
+            pendingTasks.decrementAndGet();
+            // 交给原始拒绝策略时还原为用户提交的任务，例如 CallerRunsPolicy 直接执行、DiscardOldestPolicy 重新提交
+            Runnable task = r instanceof TimedTask timed ? timed.delegate : r;
+            JfrEvents.TaskRejected event = new JfrEvents.TaskRejected();
+            if (event.shouldCommit()) {
+                event.pool = poolName;
+                event.task = task.getClass().getName();
+                event.policy = delegate.getClass().getSimpleName();
+                event.queueSize = executor.getQueue().size();
+                event.commit();
+            }
+            delegate.rejectedExecution(task, executor);
+        }
+    }
+
+    @Value
+    public static class PoolMetricsSnapshot {
+        int poolSize;
+        int corePoolSize;
+        int maximumPoolSize;
+        int largestPoolSize;
+        int activeThreads;
+        int peakActiveThreads;
+        int queueDepth;
+        int peakQueueDepth;
+        long submittedTasks;
+        long completedTasks;
+        long failedTasks;
+        Map<String, Long> rejections;
+        LatencyHistogram.Snapshot queueWait;
+        LatencyHistogram.Snapshot execution;
+    }
+
+    static final class ThreadPoolMetrics implements ThreadPoolMetricsMXBean {
+        private final InstrumentedThreadPoolExecutor executor;
+
+        ThreadPoolMetrics(InstrumentedThreadPoolExecutor executor) {
+            this.executor = executor;
+        }
+
+        @Override public int getPoolSize() { return executor.getPoolSize(); }
+        @Override public int getCorePoolSize() { return executor.getCorePoolSize(); }
+        @Override public int getMaximumPoolSize() { return executor.getMaximumPoolSize(); }
+        @Override public int getLargestPoolSize() { return executor.getLargestPoolSize(); }
+        @Override public int getActiveThreads() { return executor.activeThreads.get(); }
+        @Override public int getPeakActiveThreads() { return executor.peakActiveThreads.get(); }
+        @Override public int getQueueDepth() { return executor.getQueue().size(); }
+        @Override public int getPeakQueueDepth() { return executor.peakQueuedTasks.get(); }
+        @Override public long getSubmittedTasks() { return executor.submitted.sum(); }
+        @Override public long getCompletedTasks() { return executor.completed.sum(); }
+        @Override public long getFailedTasks() { return executor.failed.sum(); }
+        @Override public Map<String, Long> getRejections() { return executor.snapshot().getRejections(); }
+        @Override public double getQueueWaitMeanMicros() { return executor.queueWait.snapshot().meanNanos() / 1000.0; }
+        @Override public double getQueueWaitP50Micros() { return executor.queueWait.snapshot().percentile(0.5, TimeUnit.MICROSECONDS); }
+        @Override public double getQueueWaitP99Micros() { return executor.queueWait.snapshot().percentile(0.99, TimeUnit.MICROSECONDS); }
+        @Override public double getQueueWaitMaxMicros() { return executor.queueWait.snapshot().maxNanos() / 1000.0; }
+        @Override public double getExecutionMeanMicros() { return executor.execution.snapshot().meanNanos() / 1000.0; }
+        @Override public double getExecutionP50Micros() { return executor.execution.snapshot().percentile(0.5, TimeUnit.MICROSECONDS); }
+        @Override public double getExecutionP99Micros() { return executor.execution.snapshot().percentile(0.99, TimeUnit.MICROSECONDS); }
+        @Override public double getExecutionMaxMicros() { return executor.execution.snapshot().maxNanos() / 1000.0; }
+        @Override public void resetPeaks() { executor.resetPeaks(); }
+    }
+}
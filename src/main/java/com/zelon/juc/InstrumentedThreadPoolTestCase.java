@@ -0,0 +1,151 @@
+package com.zelon.juc;
+
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.*;
+
+public class InstrumentedThreadPoolTestCase {
+
+    @Test
+    public void testSnapshot() throws Exception {
+        // 与 ThreadPool.main 的参数一致，只是队列小一些，方便观察排队
+        InstrumentedThreadPoolExecutor executor = new InstrumentedThreadPoolExecutor(
+                2, 2, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(20));
+
+        for (int i = 0; i < 20; i++) {
+            executor.execute(() -> sleep(10));
+        }
+        Future<Integer> future = executor.submit(() -> 1 / 0);
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            System.out.println(e.getCause()); // java.lang.ArithmeticException: / by zero
+        }
+
+        executor.shutdown();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+
+        InstrumentedThreadPoolExecutor.PoolMetricsSnapshot snapshot = executor.snapshot();
+        System.out.println(snapshot.getSubmittedTasks() + ", " + snapshot.getCompletedTasks()); // 21, 21
+        System.out.println(snapshot.getPeakActiveThreads()); // 2
+        System.out.println(snapshot.getPeakQueueDepth()); // 约 19-21
+        // 2 个线程处理 20 个 10ms 的任务，排队时间 p99 约 100ms，执行时间 p99 约 10ms
+        System.out.println("queueWait: " + snapshot.getQueueWait());
+        System.out.println("execution: " + snapshot.getExecution());
+    }
+
+    @Test
+    public void testRejections() throws InterruptedException {
+        InstrumentedThreadPoolExecutor executor = new InstrumentedThreadPoolExecutor(
+                1, 1, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(2), new ThreadPoolExecutor.DiscardPolicy());
+        for (int i = 0; i < 10; i++) {
+            executor.execute(() -> sleep(50));
+        }
+        // 1 个执行 + 2 个排队，其余 7 个被丢弃
+        System.out.println(executor.snapshot().getRejections()); // {DiscardPolicy=7}
+
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        for (int i = 0; i < 3; i++) {
+            executor.execute(() -> sleep(50));
+        }
+        System.out.println(executor.snapshot().getRejections()); // {CallerRunsPolicy=1~3, DiscardPolicy=7}
+        System.out.println(executor.getRejectedExecutionHandler().getClass().getSimpleName()); // CallerRunsPolicy
+        executor.shutdown();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testPurgeAndDiscardOldest() throws InterruptedException {
+        InstrumentedThreadPoolExecutor executor = new InstrumentedThreadPoolExecutor(
+                1, 1, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(4), new ThreadPoolExecutor.DiscardOldestPolicy());
+        CountDownLatch release = new CountDownLatch(1);
+        executor.execute(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        while (executor.inFlightTasks() < 1) Thread.yield(); // 等工作线程开始执行第一个任务
+
+        Future<?> a = executor.submit(() -> sleep(1));
+        Future<?> b = executor.submit(() -> sleep(1));
+        executor.submit(() -> sleep(1));
+        a.cancel(false);
+        b.cancel(false);
+        executor.purge(); // 包装后的 TimedFuture 转发 isCancelled()，purge() 能识别
+        System.out.println(executor.getQueue().size() + ", " + executor.inFlightTasks()); // 1, 2
+
+        for (int i = 0; i < 6; i++) {
+            executor.execute(() -> sleep(1)); // 队列满了之后 DiscardOldestPolicy 丢掉队头再重新提交
+        }
+        System.out.println(executor.getQueue().size() + ", " + executor.inFlightTasks()); // 4, 5 排队数不会因为丢弃而漂移
+        executor.getQueue().clear();
+        System.out.println(executor.inFlightTasks()); // 1
+
+        release.countDown();
+        executor.shutdown();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+        System.out.println(executor.inFlightTasks() + ", " + executor.snapshot().getPeakQueueDepth()); // 0, 4
+    }
+
+    @Test
+    public void testMBean() throws Exception {
+        InstrumentedThreadPoolExecutor executor = new InstrumentedThreadPoolExecutor(
+                2, 4, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(500));
+        ObjectName name = executor.registerMBean("test-pool");
+        for (int i = 0; i < 100; i++) {
+            executor.execute(() -> sleep(1));
+        }
+        executor.shutdown();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        // 线程池 terminated 后 MBean 自动注销
+        System.out.println(server.isRegistered(name)); // false
+
+        name = executor.registerMBean("test-pool");
+        System.out.println(server.getAttribute(name, "CompletedTasks")); // 100
+        System.out.println(server.getAttribute(name, "ExecutionP99Micros")); // 约 1000 以上
+        executor.unregisterMBean();
+    }
+
+    @Test
+    public void testOverhead() {
+        int tasks = 1_000_000;
+        for (int round = 0; round < 3; round++) { // 前两轮预热
+            long plain = run(new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>()), tasks);
+            long instrumented = run(new InstrumentedThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>()), tasks);
+            // 空任务的场景下，每个任务的额外开销约几百纳秒，相比真实任务的执行时间（通常是毫秒级）可以忽略
+            System.out.printf("ThreadPoolExecutor: %dns/task, InstrumentedThreadPoolExecutor: %dns/task%n",
+                    plain / tasks, instrumented / tasks);
+        }
+    }
+
+    private static long run(ThreadPoolExecutor executor, int tasks) {
+        CountDownLatch done = new CountDownLatch(tasks);
+        long start = System.nanoTime();
+        for (int i = 0; i < tasks; i++) {
+            executor.execute(done::countDown);
+        }
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+        long cost = System.nanoTime() - start;
+        executor.shutdown();
+        return cost;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.zelon.juc;
+
+import jdk.jfr.*;
+
+/*
+自定义 JFR（Java Flight Recorder）事件：锁、线程池任务、队列等待
+1. 为什么需要？
+   JFR 自带的 jdk.ThreadPark 只能看到 "线程在 LockSupport.park() 上停了多久"，
+   ProfiledLock 等锁、线程池的工作线程等任务、MpmcRingBuffer 的 put / take 等空位，在录制里都是一样的 park；
+   jdk.JavaMonitorWait 也只知道有线程在 que.wait()，不知道等的是队列满还是队列空。
+   这里按语义定义事件，字段里带上锁的 site、线程池名、队列操作，在 JMC 中按 JUC 分类查看。
+
+2. 事件（名称前缀 com.zelon.juc.）：
+   ① LockAcquire: ProfiledLock 在竞争路径上等待锁的时间，以及开始等待时的持有者，默认阈值 1 ms
+   ② LockHold: ProfiledLock 最外层加锁到最外层解锁（Condition.await() 期间不算），默认阈值 10 ms
+   ③ TaskQueueWait: InstrumentedThreadPoolExecutor 的任务从提交到开始执行（submit → start），默认阈值 10 ms
+   ④ TaskExecution: 任务从开始到结束（start → end），默认阈值 10 ms
+   ⑤ TaskRejected: 任务被拒绝，没有阈值（拒绝本身就不是常态），带提交线程的调用栈
+   ⑥ QueueStall: 队列满时 put、队列空时 take 的等待，默认阈值 1 ms
+
+3. 快速路径不产生事件：
+   ① 没有竞争的 tryLock()、不满 / 不空的 offer / poll 不创建事件对象，只有真正进入等待时才创建
+   ② 持有时间和任务事件要在开始时创建、结束时提交，开始前先问一下探针（LOCK_HOLD 等）有没有录制在收集这类事件，
+      没有录制时不分配事件对象，只多一次静态布尔值的读取
+   ③ 低于阈值的事件在 shouldCommit() 中被丢弃，不写入录制缓冲区
+
+4. 调整阈值：录制配置（.jfc）中的 threshold，或者 Recording.enable("com.zelon.juc.LockAcquire").withThreshold(...)；
+   没有配置时使用下面注解中的默认值。
+   查看：jfr print --events com.zelon.juc.LockAcquire recording.jfr
+ */
+
+public final class JfrEvents {
+
+    private JfrEvents() {
+    }
+
+    @Name("com.zelon.juc.LockAcquire")
+    @Label("Lock Acquire")
+    @Category({"JUC", "Lock"})
+    @Description("ProfiledLock 竞争路径上的等待")
+    @Threshold("1 ms")
+    @StackTrace(true)
+    static final class LockAcquire extends Event {
+        @Label("Site")
+        String site;
+        @Label("Owner")
+        @Description("开始等待时的持有者")
+        Thread owner;
+        @Label("Acquired")
+        @Description("tryLock(timeout) 超时时为 false")
+        boolean acquired;
+    }
+
+    @Name("com.zelon.juc.LockHold")
+    @Label("Lock Hold")
+    @Category({"JUC", "Lock"})
+    @Description("ProfiledLock 从最外层加锁到最外层解锁")
+    @Threshold("10 ms")
+    @StackTrace(true)
+    static final class LockHold extends Event {
+        @Label("Site")
+        String site;
+    }
+
+    @Name("com.zelon.juc.TaskQueueWait")
+    @Label("Task Queue Wait")
+    @Category({"JUC", "Thread Pool"})
+    @Description("任务从提交到开始执行")
+    @Threshold("10 ms")
+    @StackTrace(false) // 事件在工作线程上 commit，记录的调用栈是工作线程的，没有意义，提交线程放在 submitter 字段中
+    static final class TaskQueueWait extends Event {
+        @Label("Pool")
+        String pool;
+        @Label("Task")
+        String task;
+        @Label("Submitter")
+        Thread submitter;
+    }
+
+    @Name("com.zelon.juc.TaskExecution")
+    @Label("Task Execution")
+    @Category({"JUC", "Thread Pool"})
+    @Description("任务从开始执行到结束")
+    @Threshold("10 ms")
+    @StackTrace(false)
+    static final class TaskExecution extends Event {
+        @Label("Pool")
+        String pool;
+        @Label("Task")
+        String task;
+        @Label("Queue Wait")
+        @Timespan(Timespan.NANOSECONDS)
+        long queueWait;
+        @Label("Failed")
+        boolean failed;
+    }
+
+    @Name("com.zelon.juc.TaskRejected")
+    @Label("Task Rejected")
+    @Category({"JUC", "Thread Pool"})
+    @StackTrace(true)
+    static final class TaskRejected extends Event {
+        @Label("Pool")
+        String pool;
+        @Label("Task")
+        String task;
+        @Label("Policy")
+        String policy;
+        @Label("Queue Size")
+        int queueSize;
+    }
+
+    @Name("com.zelon.juc.QueueStall")
+    @Label("Queue Stall")
+    @Category({"JUC", "Queue"})
+    @Description("队列满时 put、队列空时 take 的等待")
+    @Threshold("1 ms")
+    @StackTrace(true)
+    static final class QueueStall extends Event {
+        @Label("Queue")
+        String queue;
+        @Label("Operation")
+        String operation;
+        @Label("Capacity")
+        int capacity;
+    }
+
+    // 探针：isEnabled() 表示当前有录制在收集这类事件，开始计时之前用它判断要不要创建事件对象
+    static final LockHold LOCK_HOLD = new LockHold();
+    static final TaskQueueWait TASK_QUEUE_WAIT = new TaskQueueWait();
+    static final TaskExecution TASK_EXECUTION = new TaskExecution();
+
+    // 只在确实要等待时调用，快速路径上不创建事件对象
+    static QueueStall beginQueueStall(String queue, String operation, int capacity) {
+        QueueStall event = new QueueStall();
+        event.queue = queue;
+        event.operation = operation;
+        event.capacity = capacity;
+        event.begin();
+        return event;
+    }
+
+    static void commit(QueueStall event) {
+        event.end();
+        if (event.shouldCommit()) event.commit();
+    }
+}
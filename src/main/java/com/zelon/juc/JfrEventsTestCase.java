@@ -0,0 +1,273 @@
+package com.zelon.juc;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedThread;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/*
+JfrEvents 的录制测试和开销测量
+1. 录制：用 jdk.jfr.Recording 在进程内开始录制，只打开 com.zelon.juc 的事件，dump 到临时文件，用 RecordingFile 读回来按类型计数：
+   ① 快速路径（没有竞争的加锁、很快的任务、不满不空的队列）单独录制，阈值提高到 100ms，一个事件都没有。
+     不和慢路径放在一个录制中：单核机器上线程被抢占 10ms 以上时，快速路径上也会有真实超过默认阈值的 LockHold / TaskQueueWait
+   ② 慢路径用注解上的默认阈值，每种事件恰好一个（QueueStall 是 put、take 各一个）。
+     线程池先 prestartAllCoreThreads()，否则第一个任务的排队时间包括创建工作线程，也可能超过阈值
+2. 开销：同样的快速路径操作，分别在不录制和录制中各跑一遍，比较每次操作的耗时。
+ */
+
+public class JfrEventsTestCase {
+
+    private static final List<String> EVENTS = List.of(
+            "com.zelon.juc.LockAcquire", "com.zelon.juc.LockHold",
+            "com.zelon.juc.TaskQueueWait", "com.zelon.juc.TaskExecution", "com.zelon.juc.TaskRejected",
+            "com.zelon.juc.QueueStall");
+
+    private static Recording startRecording() {
+        return startRecording(null);
+    }
+
+    // threshold 为 null 时使用注解上的默认阈值
+    private static Recording startRecording(Duration threshold) {
+        Recording recording = new Recording();
+        for (String name : EVENTS) {
+            if (threshold == null) recording.enable(name);
+            else recording.enable(name).withThreshold(threshold);
+        }
+        recording.start();
+        return recording;
+    }
+
+    private interface Workload {
+        void run() throws Exception;
+    }
+
+    // 录制 workload 期间的事件，按类型计数，print 为 true 时打印每个事件
+    private static Map<String, Integer> record(Duration threshold, Workload workload, boolean print) throws Exception {
+        Path file = Files.createTempFile("juc-events", ".jfr");
+        try (Recording recording = startRecording(threshold)) {
+            workload.run();
+            recording.stop();
+            recording.dump(file);
+        }
+        Map<String, Integer> counts = new TreeMap<>();
+        for (String name : EVENTS) counts.put(name.substring("com.zelon.juc.".length()), 0);
+        for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+            String name = event.getEventType().getName().substring("com.zelon.juc.".length());
+            counts.merge(name, 1, Integer::sum);
+            if (print) System.out.println(describe(name, event));
+        }
+        Files.delete(file);
+        return counts;
+    }
+
+    @Test
+    public void recordingTest() throws Exception {
+        Map<String, Integer> fast = record(Duration.ofMillis(100), () -> fastPaths(10_000), true);
+        System.out.println(fast);
+        assertEquals(Map.of("LockAcquire", 0, "LockHold", 0, "QueueStall", 0, "TaskExecution", 0,
+                "TaskQueueWait", 0, "TaskRejected", 0), fast);
+        // {LockAcquire=0, LockHold=0, QueueStall=0, TaskExecution=0, TaskQueueWait=0, TaskRejected=0}
+        // 快速路径上的 10000 次加锁、10000 个任务、10000 次 offer / poll 都没有产生事件
+
+        Map<String, Integer> slow = record(null, () -> {
+            slowLock();
+            slowTasks();
+            slowQueue();
+        }, true);
+        System.out.println(slow);
+        assertEquals(Map.of("LockAcquire", 1, "LockHold", 1, "QueueStall", 2, "TaskExecution", 1,
+                "TaskQueueWait", 1, "TaskRejected", 1), slow);
+        // 各个线程的缓冲区分别刷出，事件的顺序和耗时每次不同：
+        // LockAcquire site=jfr.test 等待 24ms, 持有者 holder, acquired=true
+        // TaskRejected pool=jfr.test policy=AbortPolicy queueSize=1
+        // LockHold site=jfr.test 持有 31ms, 线程 holder
+        // TaskExecution pool=jfr.test 执行 30ms, 排队 0ms, failed=false
+        // TaskQueueWait pool=jfr.test 排队 30ms, 提交线程 main
+        // QueueStall queue=MpmcRingBuffer take 等待 15ms
+        // QueueStall queue=MpmcRingBuffer put 等待 30ms
+        // {LockAcquire=1, LockHold=1, QueueStall=2, TaskExecution=1, TaskQueueWait=1, TaskRejected=1}
+    }
+
+    private static String describe(String name, RecordedEvent e) {
+        long ms = e.getDuration().toMillis();
+        return switch (name) {
+            case "LockAcquire" -> name + " site=" + e.getString("site") + " 等待 " + ms + "ms, 持有者 "
+                    + threadName(e.getThread("owner")) + ", acquired=" + e.getBoolean("acquired");
+            case "LockHold" -> name + " site=" + e.getString("site") + " 持有 " + ms + "ms, 线程 " + threadName(e.getThread());
+            case "TaskQueueWait" -> name + " pool=" + e.getString("pool") + " 排队 " + ms + "ms, 提交线程 "
+                    + threadName(e.getThread("submitter"));
+            case "TaskExecution" -> name + " pool=" + e.getString("pool") + " 执行 " + ms + "ms, 排队 "
+                    + e.getDuration("queueWait").toMillis() + "ms, failed=" + e.getBoolean("failed");
+            case "TaskRejected" -> name + " pool=" + e.getString("pool") + " policy=" + e.getString("policy")
+                    + " queueSize=" + e.getInt("queueSize");
+            case "QueueStall" -> name + " queue=" + e.getString("queue") + " " + e.getString("operation") + " 等待 " + ms + "ms";
+            default -> name;
+        };
+    }
+
+    private static String threadName(RecordedThread thread) {
+        return thread == null ? null : thread.getJavaName();
+    }
+
+    // 快速路径：没有竞争的加锁、立即执行完的任务、不满不空的队列
+    private static void fastPaths(int n) throws Exception {
+        ProfiledLock lock = new LockProfiler().lock("jfr.fast", new ReentrantLock());
+        for (int i = 0; i < n; i++) {
+            lock.lock();
+            lock.unlock();
+        }
+        InstrumentedThreadPoolExecutor pool = new InstrumentedThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+        pool.prestartAllCoreThreads();
+        runBatches(pool, n);
+        pool.shutdown();
+        pool.awaitTermination(10, TimeUnit.SECONDS);
+        MpmcRingBuffer<Integer> ring = new MpmcRingBuffer<>(16);
+        for (int i = 0; i < n; i++) {
+            ring.put(i);
+            ring.take();
+        }
+    }
+
+    // 每次提交 100 个空任务，等它们执行完再提交下一批，排队时间远低于阈值（一次提交上万个任务时排在后面的会真的排队超过 10ms）
+    private static void runBatches(InstrumentedThreadPoolExecutor pool, int tasks) throws InterruptedException {
+        for (int i = 0; i < tasks; i += 100) {
+            CountDownLatch done = new CountDownLatch(100);
+            for (int j = 0; j < 100; j++) pool.execute(done::countDown);
+            done.await();
+        }
+    }
+
+    // 持有者拿着锁 30ms，main 线程在竞争路径上等待
+    private static void slowLock() throws InterruptedException {
+        ProfiledLock lock = new LockProfiler().lock("jfr.test", new ReentrantLock());
+        CountDownLatch held = new CountDownLatch(1);
+        Thread holder = new Thread(() -> {
+            lock.lock();
+            try {
+                held.countDown();
+                sleep(30);
+            } finally {
+                lock.unlock();
+            }
+        }, "holder");
+        holder.start();
+        held.await();
+        lock.lock(); // 等待 30ms，自己只持有一瞬间，不超过 LockHold 的阈值
+        lock.unlock();
+        holder.join();
+    }
+
+    // 一个线程、队列容量 1：第一个任务执行 30ms，第二个任务排队 30ms，第三个任务被拒绝
+    private static void slowTasks() throws InterruptedException {
+        InstrumentedThreadPoolExecutor pool = new InstrumentedThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new ArrayBlockingQueue<>(1));
+        pool.registerMBean("jfr.test");
+        pool.prestartAllCoreThreads(); // 工作线程已经在等任务，第一个任务的排队时间不包括创建线程
+        CountDownLatch started = new CountDownLatch(1);
+        pool.execute(() -> {
+            started.countDown();
+            sleep(30);
+        });
+        started.await(); // 等工作线程从队列中取走第一个任务，第二个任务才能排进容量为 1 的队列
+        pool.execute(() -> {
+        });
+        try {
+            pool.execute(() -> {
+            });
+        } catch (RejectedExecutionException ignored) {
+            // AbortPolicy
+        }
+        pool.shutdown();
+        pool.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    // 队列空时 take 等 30ms 之后才放入的元素；队列满时 put 等 30ms 之后才取走的空位
+    private static void slowQueue() throws InterruptedException {
+        MpmcRingBuffer<Integer> ring = new MpmcRingBuffer<>(2);
+        Thread producer = new Thread(() -> {
+            sleep(30);
+            ring.offer(1);
+        });
+        producer.start();
+        ring.take();
+        producer.join();
+
+        ring.offer(1);
+        ring.offer(2);
+        Thread consumer = new Thread(() -> {
+            sleep(30);
+            ring.poll();
+        });
+        consumer.start();
+        ring.put(3);
+        consumer.join();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    public void overheadTest() throws Exception {
+        int n = 1_000_000;
+        for (int round = 0; round < 3; round++) { // 前两轮预热
+            String off = measure(n);
+            String on;
+            try (Recording recording = startRecording()) {
+                on = measure(n);
+            }
+            if (round == 2) {
+                System.out.println("不录制: " + off);
+                System.out.println("录制中: " + on);
+            }
+        }
+        // 不录制: 加锁 166 ns/次, 任务 386 ns/个, 队列 36 ns/次
+        // 录制中: 加锁 257 ns/次, 任务 599 ns/个, 队列 38 ns/次
+        // 单核机器上的一次结果，误差较大，更准确的数字见 JfrEventsBenchmark。队列的快速路径不碰事件对象，录制与否没有差别；
+        // 加锁和任务在录制中要为持有时间、排队时间、执行时间创建事件对象并读两次时钟，
+        // 低于阈值的事件在 shouldCommit() 中被丢弃，不会写入录制文件；不录制时只多一次探针读取
+    }
+
+    private static String measure(int n) throws Exception {
+        ProfiledLock lock = new LockProfiler().lock("jfr.overhead", new ReentrantLock());
+        long start = System.nanoTime();
+        for (int i = 0; i < n; i++) {
+            lock.lock();
+            lock.unlock();
+        }
+        long lockNanos = (System.nanoTime() - start) / n;
+
+        int tasks = n / 10;
+        InstrumentedThreadPoolExecutor pool = new InstrumentedThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+        pool.prestartAllCoreThreads();
+        start = System.nanoTime();
+        runBatches(pool, tasks);
+        long taskNanos = (System.nanoTime() - start) / tasks;
+        pool.shutdown();
+
+        MpmcRingBuffer<Integer> ring = new MpmcRingBuffer<>(16);
+        Integer value = 1;
+        start = System.nanoTime();
+        for (int i = 0; i < n; i++) {
+            ring.put(value);
+            ring.take();
+        }
+        long queueNanos = (System.nanoTime() - start) / n;
+        return "加锁 " + lockNanos + " ns/次, 任务 " + taskNanos + " ns/个, 队列 " + queueNanos + " ns/次";
+    }
+}
@@ -0,0 +1,293 @@
+package com.zelon.juc;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/*
+多阶段、按 key 保序、带背压的流水线
+1. 为什么需要？
+   ProducerConsumerModelCase 只有一个消费者线程，不管有多少个生产者，消费速度最多只有一个核；
+   直接加消费者线程又会打乱同一个 key（例如同一个订单）的消息顺序。
+
+2. 结构：
+   ① 流水线由若干阶段（stage）串联，每个阶段有 N 个工作线程，每个工作线程有自己的有界队列（MpmcRingBuffer）
+   ② 消息按 key 的哈希值分配到工作线程：同一个 key 在每个阶段都由同一个线程按 FIFO 顺序处理，所以同一个 key 的顺序不变，
+      不同的 key 并行处理
+   ③ 工作线程一次从队列中批量取出消息（drainTo），处理完放入下一个阶段对应工作线程的队列
+   ④ 消息在阶段之间传递的是同一个信封对象（key + value），每经过一个阶段只替换 value，不再分配新对象
+
+3. 背压：队列都是有界的，下一个阶段处理不过来时队列满，上一个阶段的 put() 阻塞，
+   一级一级向上传递，最后 submit() 阻塞，生产者自然慢下来，而不是无限制地堆积在内存中。
+
+4. 指标（metrics()）：每个阶段处理的消息数、失败数、平均吞吐量、每个工作线程的队列深度，
+   以及上游因为这个阶段的队列满而阻塞的累计时间（backpressure），哪个阶段是瓶颈一目了然。
+
+5. 异常：阶段函数抛出异常时计入 failed，消息被丢弃，不影响后面的消息；函数返回 null 表示过滤掉这条消息。
+
+6. 关闭：close() 不再接受新消息，向第一个阶段的每个工作线程发送结束标记，
+   一个阶段的所有工作线程都处理完结束标记之前的消息后，再向下一个阶段发送，所以 close() 返回时所有已提交的消息都已处理完。
+ */
+
+public final class KeyedPipeline<I> implements AutoCloseable {
+
+    @Value
+    @Builder
+    public static class Options {
+        // 每个工作线程的队列容量
+        @Builder.Default int queueCapacity = 1024;
+        // 工作线程一次最多取出的消息数
+        @Builder.Default int batchSize = 64;
+        @Builder.Default MpmcRingBuffer.WaitStrategy waitStrategy = MpmcRingBuffer.WaitStrategy.BLOCKING;
+    }
+
+    @Value
+    public static class StageMetrics {
+        String name;
+        int workers;
+        long processed;
+        long failed;
+        // 从流水线启动到现在的平均吞吐量
+        long throughputPerSecond;
+        int[] queueDepths;
+        int queueCapacity;
+        // 上游向这个阶段放入消息时因为队列满而阻塞的累计时间
+        long backpressureNanos;
+
+        public int totalQueued() {
+            int sum = 0;
+            for (int depth : queueDepths) sum += depth;
+            return sum;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s[workers=%d, processed=%d, failed=%d, %d/s, queued=%d/%d, backpressure=%dms]",
+                    name, workers, processed, failed, throughputPerSecond, totalQueued(), workers * queueCapacity,
+                    TimeUnit.NANOSECONDS.toMillis(backpressureNanos));
+        }
+    }
+
+    // 流水线的构建：每调用一次 stage() 增加一个阶段，O 是当前最后一个阶段的输出类型
+    public static final class StageBuilder<I, O> {
+        private final Function<? super I, ?> keyFunction;
+        private final Options options;
+        private final List<StageSpec> specs;
+
+        private StageBuilder(Function<? super I, ?> keyFunction, Options options, List<StageSpec> specs) {
+            this.keyFunction = keyFunction;
+            this.options = options;
+            this.specs = specs;
+        }
+
+        @SuppressWarnings("unchecked")
+        public <R> StageBuilder<I, R> stage(String name, int workers, Function<? super O, ? extends R> fn) {
+            Objects.requireNonNull(fn);
+            specs.add(new StageSpec(name, workers, (Function<Object, Object>) fn));
+            return new StageBuilder<>(keyFunction, options, specs);
+        }
+
+        // 最后一个阶段，构建并启动流水线
+        public KeyedPipeline<I> sink(String name, int workers, Consumer<? super O> consumer) {
+            Objects.requireNonNull(consumer);
+            specs.add(new StageSpec(name, workers, value -> {
+                @SuppressWarnings("unchecked") O o = (O) value;
+                consumer.accept(o);
+                return null;
+            }));
+            return new KeyedPipeline<>(keyFunction, options, specs);
+        }
+    }
+
+    public static <I> StageBuilder<I, I> builder(Function<? super I, ?> keyFunction) {
+        return builder(keyFunction, Options.builder().build());
+    }
+
+    public static <I> StageBuilder<I, I> builder(Function<? super I, ?> keyFunction, Options options) {
+        return new StageBuilder<>(Objects.requireNonNull(keyFunction), options, new ArrayList<>());
+    }
+
+    private record StageSpec(String name, int workers, Function<Object, Object> fn) {
+    }
+
+    // 在阶段之间传递的信封，同一时刻只属于一个工作线程
+    private static final class Envelope {
+        final Object key;
+        Object value;
+
+        Envelope(Object key, Object value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    // 结束标记
+    private static final Envelope POISON = new Envelope(null, null);
+
+    private final Function<? super I, ?> keyFunction;
+    private final Options options;
+    private final Stage[] stages;
+    private final long startNanos = System.nanoTime();
+    // 正在 submit() 中的线程数，close() 等它们都放入队列之后才发送结束标记
+    private final AtomicInteger submitting = new AtomicInteger();
+    private volatile boolean closed;
+
+    @SuppressWarnings("unchecked")
+    private KeyedPipeline(Function<? super I, ?> keyFunction, Options options, List<StageSpec> specs) {
+        if (options.getQueueCapacity() < 2) throw new IllegalArgumentException("queueCapacity: " + options.getQueueCapacity());
+        if (options.getBatchSize() < 1) throw new IllegalArgumentException("batchSize: " + options.getBatchSize());
+        this.keyFunction = keyFunction;
+        this.options = options;
+        this.stages = (Stage[]) new KeyedPipeline.Stage[specs.size()];
+        for (int i = 0; i < stages.length; i++) {
+            StageSpec spec = specs.get(i);
+            if (spec.workers() < 1) throw new IllegalArgumentException(spec.name() + " workers: " + spec.workers());
+            stages[i] = new Stage(i, spec);
+        }
+        for (Stage stage : stages) stage.start();
+    }
+
+    // 放入第一个阶段，队列满时阻塞（背压）
+    public void submit(I item) throws InterruptedException {
+        Objects.requireNonNull(item);
+        submitting.incrementAndGet();
+        try {
+            if (closed) throw new IllegalStateException("pipeline is closed");
+            Object key = keyFunction.apply(item);
+            stages[0].put(new Envelope(key, item));
+        } finally {
+            submitting.decrementAndGet();
+        }
+    }
+
+    public List<StageMetrics> metrics() {
+        long elapsed = Math.max(1, System.nanoTime() - startNanos);
+        List<StageMetrics> result = new ArrayList<>(stages.length);
+        for (Stage stage : stages) {
+            int[] depths = new int[stage.queues.length];
+            for (int i = 0; i < depths.length; i++) {
+                depths[i] = stage.queues[i].size();
+            }
+            long processed = stage.processed.sum();
+            result.add(new StageMetrics(stage.name, stage.queues.length, processed, stage.failed.sum(),
+                    processed * TimeUnit.SECONDS.toNanos(1) / elapsed, depths,
+                    stage.queues[0].capacity(), stage.backpressureNanos.sum()));
+        }
+        return result;
+    }
+
+    // 不再接受新消息，等所有已提交的消息处理完，所有工作线程退出
+    @Override
+    public void close() throws InterruptedException {
+        if (closed) {
+            awaitTermination();
+            return;
+        }
+        closed = true;
+        while (submitting.get() > 0) {
+            Thread.yield();
+        }
+        stages[0].poison();
+        awaitTermination();
+    }
+
+    private void awaitTermination() throws InterruptedException {
+        for (Stage stage : stages) {
+            for (Thread worker : stage.workers) {
+                worker.join();
+            }
+        }
+    }
+
+    private final class Stage {
+        final String name;
+        final int index;
+        final Function<Object, Object> fn;
+        final MpmcRingBuffer<Envelope>[] queues;
+        final Thread[] workers;
+        final LongAdder processed = new LongAdder();
+        final LongAdder failed = new LongAdder();
+        final LongAdder backpressureNanos = new LongAdder();
+        // 还没有收到结束标记的工作线程数，最后一个收到的负责通知下一个阶段
+        final AtomicInteger running;
+
+        @SuppressWarnings("unchecked")
+        Stage(int index, StageSpec spec) {
+            this.name = spec.name();
+            this.index = index;
+            this.fn = spec.fn();
+            this.queues = new MpmcRingBuffer[spec.workers()];
+            this.workers = new Thread[spec.workers()];
+            this.running = new AtomicInteger(spec.workers());
+            for (int i = 0; i < queues.length; i++) {
+                queues[i] = new MpmcRingBuffer<>(options.getQueueCapacity(), options.getWaitStrategy());
+                int w = i;
+                workers[i] = new Thread(() -> work(w), "pipeline-" + name + "-" + i);
+                workers[i].setDaemon(true);
+            }
+        }
+
+        void start() {
+            for (Thread worker : workers) worker.start();
+        }
+
+        // 同一个 key 总是进入同一个工作线程的队列
+        void put(Envelope e) throws InterruptedException {
+            int h = Objects.hashCode(e.key);
+            MpmcRingBuffer<Envelope> queue = queues[Math.floorMod(h ^ (h >>> 16), queues.length)];
+            if (queue.offer(e)) return;
+            long begin = System.nanoTime();
+            queue.put(e);
+            backpressureNanos.add(System.nanoTime() - begin);
+        }
+
+        void poison() throws InterruptedException {
+            for (MpmcRingBuffer<Envelope> queue : queues) queue.put(POISON);
+        }
+
+        private void work(int w) {
+            MpmcRingBuffer<Envelope> queue = queues[w];
+            Stage next = index + 1 < stages.length ? stages[index + 1] : null;
+            List<Envelope> batch = new ArrayList<>(options.getBatchSize());
+            try {
+                for (;;) {
+                    batch.add(queue.take());
+                    queue.drainTo(batch, options.getBatchSize() - 1);
+                    for (Envelope e : batch) {
+                        if (e == POISON) {
+                            // 结束标记之前的消息都已经处理完并放入了下一个阶段
+                            if (running.decrementAndGet() == 0 && next != null) next.poison();
+                            return;
+                        }
+                        process(e, next);
+                    }
+                    batch.clear();
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void process(Envelope e, Stage next) throws InterruptedException {
+            Object out;
+            try {
+                out = fn.apply(e.value);
+            } catch (RuntimeException ex) {
+                failed.increment();
+                return;
+            }
+            processed.increment();
+            if (out == null || next == null) return;
+            e.value = out;
+            next.put(e);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.zelon.juc;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+KeyedPipeline 的用法：多个工作线程下同一个 key 的顺序、慢阶段产生的背压、异常与过滤、指标。
+ */
+
+public class KeyedPipelineTestCase {
+
+    record Order(int account, int seq) {
+    }
+
+    @Test
+    public void testPerKeyOrder() throws InterruptedException {
+        int accounts = 100, perAccount = 1_000;
+        // 每个账户最后一次看到的序号，乱序时记录下来
+        Map<Integer, Integer> lastSeq = new ConcurrentHashMap<>();
+        AtomicInteger outOfOrder = new AtomicInteger();
+        AtomicLong total = new AtomicLong();
+
+        KeyedPipeline<Order> pipeline = KeyedPipeline.<Order>builder(Order::account)
+                .stage("validate", 4, o -> o)
+                .stage("enrich", 3, o -> new Order(o.account(), o.seq()))
+                .sink("store", 4, o -> {
+                    Integer prev = lastSeq.put(o.account(), o.seq());
+                    if (prev != null && prev + 1 != o.seq()) outOfOrder.incrementAndGet();
+                    total.incrementAndGet();
+                });
+        // 两个生产者交替提交不同账户的消息，同一个账户的消息由同一个生产者按顺序提交
+        Thread[] producers = new Thread[2];
+        for (int p = 0; p < producers.length; p++) {
+            int first = p;
+            producers[p] = new Thread(() -> {
+                try {
+                    for (int seq = 0; seq < perAccount; seq++) {
+                        for (int account = first; account < accounts; account += 2) {
+                            pipeline.submit(new Order(account, seq));
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            producers[p].start();
+        }
+        for (Thread producer : producers) producer.join();
+        pipeline.close();
+
+        System.out.println(total.get()); // 100000, close() 返回时全部处理完
+        System.out.println(outOfOrder.get()); // 0
+        for (KeyedPipeline.StageMetrics m : pipeline.metrics()) {
+            System.out.println(m.getName() + ": " + m.getProcessed() + ", queued = " + m.totalQueued()); // validate: 100000, queued = 0, enrich、store 相同
+        }
+    }
+
+    @Test
+    public void testBackpressure() throws InterruptedException {
+        KeyedPipeline.Options options = KeyedPipeline.Options.builder().queueCapacity(16).batchSize(4).build();
+        KeyedPipeline<Integer> pipeline = KeyedPipeline.<Integer>builder(i -> i, options)
+                .stage("fast", 2, i -> i)
+                .sink("slow", 2, i -> sleep(1));
+
+        long begin = System.nanoTime();
+        int maxQueued = 0;
+        for (int i = 0; i < 400; i++) {
+            pipeline.submit(i);
+            if (i % 50 == 0) {
+                for (KeyedPipeline.StageMetrics m : pipeline.metrics()) maxQueued = Math.max(maxQueued, m.totalQueued());
+            }
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+        // 慢阶段每秒只能处理约 2000 个（两个线程，每个 1ms），submit() 被拖慢，而不是一下子放完
+        System.out.println("提交耗时: " + elapsed + "ms"); // 提交耗时: 170ms 左右
+        System.out.println(maxQueued <= 2 * 16); // true, 每个阶段排队的消息不会超过队列容量
+        for (KeyedPipeline.StageMetrics m : pipeline.metrics()) {
+            System.out.println(m); // slow 阶段排满, 两个 fast 线程阻塞的时间之和 350ms 左右; fast 阶段的队列也被填满, submit() 阻塞 170ms 左右
+        }
+        pipeline.close();
+    }
+
+    @Test
+    public void testFailuresAndFilter() throws InterruptedException {
+        AtomicInteger stored = new AtomicInteger();
+        KeyedPipeline<Integer> pipeline = KeyedPipeline.<Integer>builder(i -> i % 4)
+                .stage("parse", 2, i -> {
+                    if (i % 10 == 0) throw new IllegalArgumentException("bad message " + i);
+                    return i;
+                })
+                .stage("filter", 2, i -> i % 2 == 0 ? null : String.valueOf(i))
+                .sink("store", 1, s -> stored.incrementAndGet());
+        for (int i = 0; i < 100; i++) {
+            pipeline.submit(i);
+        }
+        pipeline.close();
+        for (KeyedPipeline.StageMetrics m : pipeline.metrics()) {
+            System.out.println(m.getName() + ": processed = " + m.getProcessed() + ", failed = " + m.getFailed());
+            // parse: processed = 90, failed = 10
+            // filter: processed = 90, failed = 0
+            // store: processed = 50, failed = 0
+        }
+        System.out.println(stored.get()); // 50
+
+        try {
+            pipeline.submit(1);
+        } catch (IllegalStateException e) {
+            System.out.println(e.getMessage()); // pipeline is closed
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.zelon.juc;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+无锁延迟直方图（纳秒）
+1. 桶的划分：对数 + 线性（类似 HdrHistogram）
+   ① 小于 16ns 的值每个值一个桶
+   ② 大于等于 16ns 的值，按 2 的幂分段，每段再平均分为 8 个子桶，相对误差不超过 12.5%
+   一共 488 个桶，可以覆盖 long 的全部范围，内存固定，不随记录次数增长。
+2. record() 只有一次 AtomicLongArray 自增 + 一次 LongAdder 累加，最大值只在变大时才 CAS，
+   不加锁、不分配对象，可以在生产环境常开。
+3. snapshot() 拷贝当前所有桶得到一个快照，两个快照相减即为这段时间窗口内的分布。
+ */
+
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 3;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int LINEAR_LIMIT = SUB_COUNT << 1; // 16
+    static final int BUCKET_COUNT = LINEAR_LIMIT + (63 - (SUB_BITS + 1)) * SUB_COUNT; // 488
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        buckets.getAndIncrement(bucketIndex(nanos));
+        sum.add(nanos);
+        long m;
+        while (nanos > (m = max.get()) && !max.compareAndSet(m, nanos)) {
+            // 只在出现更大的值时才 CAS
+        }
+    }
+
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets.get(i);
+        }
+        return new Snapshot(counts, sum.sum(), max.get());
+    }
+
+    static int bucketIndex(long value) {
+        if (value < LINEAR_LIMIT) return (int) value;
+        int exp = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exp - SUB_BITS)) & (SUB_COUNT - 1);
+        return LINEAR_LIMIT + (exp - SUB_BITS - 1) * SUB_COUNT + sub;
+    }
+
+    // 桶的上界（包含）
+    static long bucketUpperBound(int index) {
+        if (index < LINEAR_LIMIT) return index;
+        int exp = (index - LINEAR_LIMIT) / SUB_COUNT + SUB_BITS + 1;
+        int sub = (index - LINEAR_LIMIT) % SUB_COUNT;
+        long width = 1L << (exp - SUB_BITS);
+        long lower = (long) (SUB_COUNT + sub) << (exp - SUB_BITS);
+        return lower + width - 1;
+    }
+
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        Snapshot(long[] counts, long sum, long max) {
+            this.counts = counts;
+            long c = 0;
+            for (long n : counts) c += n;
+            this.count = c;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long count() {
+            return count;
+        }
+
+        public long meanNanos() {
+            return count == 0 ? 0 : sum / count;
+        }
+
+        public long maxNanos() {
+            return max;
+        }
+
+        // q 取值 0~1，例如 0.99 表示 p99，返回所在桶的上界
+        public long percentileNanos(double q) {
+            if (count == 0) return 0;
+            long rank = (long) Math.ceil(q * count);
+            if (rank < 1) rank = 1;
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) return Math.min(bucketUpperBound(i), max);
+            }
+            return max;
+        }
+
+        public double percentile(double q, TimeUnit unit) {
+            return (double) percentileNanos(q) / unit.toNanos(1);
+        }
+
+        // 两个快照相减，得到 earlier 之后这段时间的分布；窗口内的最大值取最高非空桶的上界
+        public Snapshot minus(Snapshot earlier) {
+            long[] diff = new long[counts.length];
+            long windowMax = 0;
+            for (int i = 0; i < counts.length; i++) {
+                diff[i] = counts[i] - earlier.counts[i];
+                if (diff[i] > 0) windowMax = Math.min(bucketUpperBound(i), max);
+            }
+            return new Snapshot(diff, sum - earlier.sum, windowMax);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("count=%d, mean=%.1fus, p50=%.1fus, p90=%.1fus, p99=%.1fus, max=%.1fus",
+                    count, meanNanos() / 1000.0, percentileNanos(0.5) / 1000.0, percentileNanos(0.9) / 1000.0,
+                    percentileNanos(0.99) / 1000.0, max / 1000.0);
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.zelon.juc;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/*
+按 key 懒加载的注册表：把 VolatileTestCase 中 Singleton 的双重检查锁推广到成千上万个 key（每个租户的连接池、编译好的模板等）
+1. 为什么不用 synchronized(Singleton.class)？所有租户共用一把锁，一个租户初始化很慢时，其他租户全部被阻塞。
+   为什么不用 ConcurrentHashMap.computeIfAbsent()？计算期间会锁住整个桶，同一个桶中其他 key 的写入也被阻塞，
+   计算函数中不能再修改这个 map，并且计算失败时没有退避，每个请求都会重新尝试。
+
+2. 每个 key 对应一个 Holder，Holder 中只有一个 volatile 的 state：
+   ① null: 还没有初始化
+   ② Flight: 正在初始化，后来的线程等待同一个 CompletableFuture（single-flight，同一个 key 只会初始化一次）
+   ③ Failure: 初始化失败，记录失败次数和下次允许重试的时间，退避期间的请求直接失败，不会让大量请求同时重试
+   ④ 其他: 初始化好的值
+   状态之间通过 CAS 切换，不同 key 的 Holder 互不影响。
+
+3. 初始化之后的读取：handle(key) 返回的 Holder 可以保存下来，之后每次 get() 只有一次 volatile 读 + 一次类型判断，
+   比 Singleton.getInstance() 还少一次（它判断和返回各读一次 instance）；registry.get(key) 多一次 ConcurrentHashMap 查找。
+
+4. 失败不缓存：Failure 只在退避时间内生效，之后第一个请求重新初始化，退避时间按失败次数指数增长（带随机抖动），有上限。
+ */
+
+public class LazyRegistry<K, V> {
+
+    private final ConcurrentHashMap<K, Holder<K, V>> holders = new ConcurrentHashMap<>();
+    private final Function<? super K, ? extends V> factory;
+    private final long initialBackoffNanos;
+    private final long maxBackoffNanos;
+
+    public LazyRegistry(Function<? super K, ? extends V> factory) {
+        this(factory, 100, 30_000, TimeUnit.MILLISECONDS);
+    }
+
+    public LazyRegistry(Function<? super K, ? extends V> factory, long initialBackoff, long maxBackoff, TimeUnit unit) {
+        this.factory = Objects.requireNonNull(factory);
+        this.initialBackoffNanos = unit.toNanos(initialBackoff);
+        this.maxBackoffNanos = unit.toNanos(maxBackoff);
+    }
+
+    // 获取 key 对应的值，没有初始化就初始化；初始化失败或者处于退避期间抛出 IllegalStateException
+    public V get(K key) {
+        return handle(key).get();
+    }
+
+    // 返回 key 对应的 Holder，调用方可以保存下来，避免每次都查找 ConcurrentHashMap
+    public Holder<K, V> handle(K key) {
+        Holder<K, V> holder = holders.get(key);
+        if (holder != null) return holder;
+        return holders.computeIfAbsent(key, k -> new Holder<>(this, k)); // 只是创建 Holder，很快，不会长时间锁住桶
+    }
+
+    // 已经初始化好的值，没有初始化或者正在初始化都返回 null，不会触发初始化
+    public V getIfReady(K key) {
+        Holder<K, V> holder = holders.get(key);
+        return holder == null ? null : holder.getIfReady();
+    }
+
+    // 删除 key，返回已经初始化好的值（例如需要关闭的连接池），之前保存的 Holder 不再属于这个注册表
+    public V remove(K key) {
+        Holder<K, V> holder = holders.remove(key);
+        return holder == null ? null : holder.getIfReady();
+    }
+
+    public int size() {
+        return holders.size();
+    }
+
+    private long backoffNanos(int failures) {
+        long backoff = initialBackoffNanos << Math.min(failures - 1, 30);
+        if (backoff <= 0 || backoff > maxBackoffNanos) backoff = maxBackoffNanos;
+        // 50% ~ 100% 之间的随机抖动，避免多个 key 同时到期一起重试
+        return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+    }
+
+    public static final class Holder<K, V> {
+        private static final VarHandle STATE;
+
+        static {
+            try {
+                STATE = MethodHandles.lookup().findVarHandle(Holder.class, "state", Object.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        private final LazyRegistry<K, V> registry;
+        private final K key;
+        private volatile Object state;
+
+        Holder(LazyRegistry<K, V> registry, K key) {
+            this.registry = registry;
+            this.key = key;
+        }
+
+        @SuppressWarnings("unchecked")
+        public V get() {
+            Object s = state;
+            if (s != null && !(s instanceof Pending)) return (V) s; // 快路径：一次 volatile 读
+            return getSlow();
+        }
+
+        @SuppressWarnings("unchecked")
+        public V getIfReady() {
+            Object s = state;
+            return s != null && !(s instanceof Pending) ? (V) s : null;
+        }
+
+        public K key() {
+            return key;
+        }
+
+        @SuppressWarnings("unchecked")
+        private V getSlow() {
+            for (;;) {
+                Object s = state;
+                if (s == null || s instanceof Failure f && System.nanoTime() - f.retryAt >= 0) {
+                    int failures = s == null ? 0 : ((Failure) s).failures;
+                    Flight flight = new Flight(failures);
+                    if (STATE.compareAndSet(this, s, flight)) {
+                        return initialize(flight);
+                    }
+                } else if (s instanceof Flight flight) {
+                    try {
+                        return (V) flight.future.join();
+                    } catch (CompletionException e) {
+                        throw failed(e.getCause(), flight.failures + 1);
+                    }
+                } else if (s instanceof Failure f) {
+                    // 退避期间直接失败
+                    throw failed(f.cause, f.failures);
+                } else {
+                    return (V) s;
+                }
+            }
+        }
+
+        private V initialize(Flight flight) {
+            V value;
+            try {
+                value = registry.factory.apply(key);
+                if (value == null) throw new NullPointerException("factory returned null for " + key);
+            } catch (Throwable e) {
+                int failures = flight.failures + 1;
+                state = new Failure(e, failures, System.nanoTime() + registry.backoffNanos(failures));
+                flight.future.completeExceptionally(e);
+                throw failed(e, failures);
+            }
+            state = value;
+            flight.future.complete(value);
+            return value;
+        }
+
+        private IllegalStateException failed(Throwable cause, int failures) {
+            return new IllegalStateException("initialization of " + key + " failed (" + failures + " times)", cause);
+        }
+    }
+
+    // 中间状态的公共父类，用于和初始化好的值区分
+    private abstract static class Pending {
+        final int failures;
+
+        Pending(int failures) {
+            this.failures = failures;
+        }
+    }
+
+    private static final class Flight extends Pending {
+        final CompletableFuture<Object> future = new CompletableFuture<>();
+
+        Flight(int failures) {
+            super(failures);
+        }
+    }
+
+    private static final class Failure extends Pending {
+        final Throwable cause;
+        final long retryAt;
+
+        Failure(Throwable cause, int failures, long retryAt) {
+            super(failures);
+            this.cause = cause;
+            this.retryAt = retryAt;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.zelon.juc;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+LazyRegistry 的用法：同一个 key 只初始化一次、不同 key 互不阻塞、失败后退避重试。
+ */
+
+public class LazyRegistryTestCase {
+
+    @Test
+    public void testSingleFlight() throws InterruptedException {
+        AtomicInteger created = new AtomicInteger();
+        LazyRegistry<String, String> pools = new LazyRegistry<>(tenant -> {
+            created.incrementAndGet();
+            sleep(100); // 模拟创建连接池
+            return "pool-" + tenant;
+        });
+
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            Thread t = new Thread(() -> {
+                await(start);
+                pools.get("tenant-a");
+            });
+            t.start();
+            threads.add(t);
+        }
+        start.countDown();
+        for (Thread t : threads) t.join();
+
+        System.out.println(pools.get("tenant-a")); // pool-tenant-a
+        System.out.println("初始化次数: " + created.get()); // 1, 100 个线程共享同一次初始化
+    }
+
+    @Test
+    public void testKeysDoNotBlockEachOther() throws InterruptedException {
+        LazyRegistry<String, String> templates = new LazyRegistry<>(name -> {
+            if (name.equals("slow")) sleep(1000);
+            return "compiled-" + name;
+        });
+        Thread slow = new Thread(() -> templates.get("slow"));
+        slow.start();
+        Thread.sleep(50); // 确保 slow 已经开始初始化
+
+        long begin = System.nanoTime();
+        System.out.println(templates.get("fast")); // compiled-fast
+        System.out.println("fast 耗时: " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin) + "ms"); // 0ms, 不会等 slow
+        System.out.println("slow 是否完成: " + (templates.getIfReady("slow") != null)); // false
+        slow.join();
+    }
+
+    @Test
+    public void testRetryWithBackoff() throws InterruptedException {
+        AtomicInteger attempts = new AtomicInteger();
+        LazyRegistry<String, String> registry = new LazyRegistry<>(key -> {
+            if (attempts.incrementAndGet() <= 2) throw new IllegalArgumentException("database unavailable");
+            return "ok";
+        }, 100, 1000, TimeUnit.MILLISECONDS);
+
+        tryGet(registry); // 第 1 次失败
+        tryGet(registry); // 退避期间直接失败, 不会调用 factory
+        System.out.println("attempts = " + attempts.get()); // 1
+
+        Thread.sleep(110); // 第 1 次失败的退避时间为 50 ~ 100ms
+        tryGet(registry); // 第 2 次失败, 退避时间翻倍
+        Thread.sleep(210);
+        tryGet(registry); // ok
+        System.out.println("attempts = " + attempts.get()); // 3
+    }
+
+    private static void tryGet(LazyRegistry<String, String> registry) {
+        try {
+            System.out.println(registry.get("tenant-b"));
+        } catch (IllegalStateException e) {
+            System.out.println(e.getMessage() + ": " + e.getCause().getMessage());
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,417 @@
+package com.zelon.juc;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/*
+内存模型的 litmus 测试工具（思路和 OpenJDK 的 jcstress 相同，但是只有一个类，不需要单独的 JVM 和注解处理器）
+1. VolatileTestCase.OrderlinessTest 原来的写法的问题：
+   ① 每次迭代向线程池提交两个任务，时间几乎都花在提交、唤醒线程上，两个任务几乎不会真的同时执行
+   ② 主线程在两个任务执行完之前就读取 a、b，读到的是上一次甚至更早的结果
+   ③ 某个结果一直没出现（例如单核机器上不可能出现重排），while 循环永远不会结束
+
+2. 做法：
+   ① 两个 actor 线程提前启动，整个测试期间一直复用
+   ② 按轮（round）执行：每一轮控制线程准备 batchSize 个全新的状态对象，增加 epoch，
+      两个 actor 线程自旋等到 epoch 变化后，按相同的顺序在这 batchSize 个状态对象上执行各自的代码，
+      它们几乎同时开始，同一时刻操作的是同一个状态对象，竞争窗口最大；一轮只同步一次，每秒可以执行数百万次迭代
+   ③ actor 把观察到的值写入 Result（r1、r2），一轮结束后控制线程统计每种结果出现的次数（直方图）
+   ④ 每种结果事先声明为 ACCEPTABLE（正确的结果）、INTERESTING（允许但是值得注意，例如重排）、FORBIDDEN（出现就是 bug），
+      没有声明的结果按 FORBIDDEN 处理
+   ⑤ 达到迭代次数或者时间上限就结束，不会因为某个结果不出现而死循环；最后一轮只执行剩下的次数，不会超过 maxIterations
+   ⑥ actor 抛出的异常由 actor 线程捕获并记录，这一轮照常计为完成，控制线程在这一轮结束后重新抛出；
+      某一轮超过 roundTimeoutMillis 还没有结束（例如 actor 死循环）就报超时，不会一直等下去；run 返回前两个 actor 线程都会退出
+
+3. 终止性测试（runTermination，对应 VolatileTestCase.visibilityTest）：
+   一个线程循环等待条件成立（done），另一个线程修改状态，看循环能不能结束；超时没有结束记为 STALE。
+   ① 循环由 harness 执行：while (!done.test(s))，done 通过一个 static final 的 MutableCallSite 调用，
+      JIT 会把 done 内联进循环，和手写的 while (!s.flag) 一样可能把读取提到循环外面
+   ② STALE 的线程停不下来（Thread.stop() 已经不支持），但是修改 MutableCallSite 的 target 会让 JVM 把依赖它的已编译代码
+      反优化（deoptimize），正在执行的循环回到解释执行，重新调用 done，改成永远返回 true 之后循环就结束了，
+      线程不会在测试结束后继续空转占用 CPU（jcstress 的做法是在单独的 JVM 中运行，结束后整个进程退出）
+   ③ 这个 MutableCallSite 是全局唯一的，所以同一时刻只能有一个终止性测试在运行；出现 STALE 之后循环已经被编译成死循环，
+      后面的迭代结果都一样，直接结束测试
+
+4. 注意：能不能观察到重排、可见性问题取决于 CPU 核数、CPU 架构（x86 只允许 store-load 重排）和 JIT 编译，
+   没有观察到 INTERESTING 的结果不代表代码是正确的；只有一个核的机器上两个 actor 轮流执行，基本观察不到。
+ */
+
+public class LitmusHarness {
+
+    @Value
+    @Builder
+    public static class Options {
+        // 每一轮每个 actor 执行的次数
+        @Builder.Default int batchSize = 1024;
+        @Builder.Default long maxIterations = 10_000_000;
+        @Builder.Default long timeLimitMillis = 2_000;
+        // 一轮超过这个时间还没有结束就认为 actor 卡住了
+        @Builder.Default long roundTimeoutMillis = 5_000;
+    }
+
+    public enum Expect {
+        ACCEPTABLE, INTERESTING, FORBIDDEN
+    }
+
+    // actor 观察到的值，每个状态对象对应一个
+    public static final class Result {
+        public int r1, r2;
+    }
+
+    public interface Actor<S> {
+        void act(S state, Result result);
+    }
+
+    @Value
+    public static class Outcome {
+        String value;
+        long count;
+        Expect expect;
+        String description;
+    }
+
+    @Value
+    public static class Report {
+        String name;
+        long iterations;
+        long elapsedNanos;
+        List<Outcome> outcomes;
+
+        // 没有出现 FORBIDDEN 的结果
+        public boolean passed() {
+            return count(Expect.FORBIDDEN) == 0;
+        }
+
+        public long count(Expect expect) {
+            long sum = 0;
+            for (Outcome o : outcomes) {
+                if (o.expect == expect) sum += o.count;
+            }
+            return sum;
+        }
+
+        public long iterationsPerSecond() {
+            return elapsedNanos == 0 ? 0 : iterations * TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder b = new StringBuilder();
+            b.append(name).append(": ").append(passed() ? "OK" : "FAILED")
+                    .append(", ").append(iterations).append(" iterations, ").append(iterationsPerSecond()).append("/s\n");
+            for (Outcome o : outcomes) {
+                b.append(String.format("  %-12s %12d  %-11s %s%n", o.value, o.count, o.expect, o.description));
+            }
+            return b.toString();
+        }
+    }
+
+    // 一个 litmus 测试：状态、两个 actor、可选的 arbiter，以及每种结果的含义
+    public static final class LitmusTest<S> {
+        private final String name;
+        private final Supplier<S> state;
+        private Actor<S> actor1, actor2;
+        // 两个 actor 都结束之后，在控制线程中执行，用于读取最终状态
+        private Actor<S> arbiter;
+        private final List<Expectation> expectations = new ArrayList<>();
+
+        private LitmusTest(String name, Supplier<S> state) {
+            this.name = name;
+            this.state = state;
+        }
+
+        public LitmusTest<S> actor1(Actor<S> actor) {
+            this.actor1 = actor;
+            return this;
+        }
+
+        public LitmusTest<S> actor2(Actor<S> actor) {
+            this.actor2 = actor;
+            return this;
+        }
+
+        public LitmusTest<S> arbiter(Actor<S> arbiter) {
+            this.arbiter = arbiter;
+            return this;
+        }
+
+        public LitmusTest<S> outcome(int r1, int r2, Expect expect, String description) {
+            expectations.add(new Expectation(key(r1, r2), expect, description));
+            return this;
+        }
+    }
+
+    private record Expectation(long key, Expect expect, String description) {
+    }
+
+    public static <S> LitmusTest<S> test(String name, Supplier<S> state) {
+        return new LitmusTest<>(name, state);
+    }
+
+    // 终止性测试循环调用的 done，见 3. ①②
+    private static final MutableCallSite DONE = new MutableCallSite(MethodType.methodType(boolean.class, Object.class));
+    private static final MethodHandle DONE_INVOKER = DONE.dynamicInvoker();
+    private static final MethodHandle PREDICATE_TEST;
+    private static final MethodHandle ALWAYS_DONE =
+            MethodHandles.dropArguments(MethodHandles.constant(boolean.class, true), 0, Object.class);
+
+    static {
+        try {
+            PREDICATE_TEST = MethodHandles.lookup().findVirtual(Predicate.class, "test",
+                    MethodType.methodType(boolean.class, Object.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+        DONE.setTarget(ALWAYS_DONE);
+    }
+
+    private final Options options;
+
+    public LitmusHarness() {
+        this(Options.builder().build());
+    }
+
+    public LitmusHarness(Options options) {
+        this.options = options;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <S> Report run(LitmusTest<S> test) throws InterruptedException {
+        if (test.actor1 == null || test.actor2 == null) throw new IllegalStateException("both actors are required");
+        int n = options.getBatchSize();
+        Object[] states = new Object[n];
+        Result[] results = new Result[n];
+        for (int i = 0; i < n; i++) {
+            results[i] = new Result();
+        }
+        Histogram histogram = new Histogram();
+        Round round = new Round(states, results);
+        Thread t1 = round.start(test.name + "-actor1", (Actor<Object>) test.actor1);
+        Thread t2 = round.start(test.name + "-actor2", (Actor<Object>) test.actor2);
+
+        long begin = System.nanoTime();
+        long deadline = begin + TimeUnit.MILLISECONDS.toNanos(options.getTimeLimitMillis());
+        long roundTimeout = TimeUnit.MILLISECONDS.toNanos(options.getRoundTimeoutMillis());
+        long iterations = 0;
+        try {
+            while (iterations < options.getMaxIterations() && System.nanoTime() - deadline < 0) {
+                int size = (int) Math.min(n, options.getMaxIterations() - iterations);
+                for (int i = 0; i < size; i++) {
+                    states[i] = test.state.get();
+                    results[i].r1 = 0;
+                    results[i].r2 = 0;
+                }
+                round.runOnce(size, roundTimeout);
+                for (int i = 0; i < size; i++) {
+                    if (test.arbiter != null) test.arbiter.act((S) states[i], results[i]);
+                    histogram.add(key(results[i].r1, results[i].r2));
+                }
+                iterations += size;
+            }
+        } finally {
+            // 正常情况下 actor 看到 stopped 马上退出；卡在 actor 代码里的线程等不到，它们是守护线程，不会阻止 JVM 退出
+            round.stop();
+            t1.join(options.getRoundTimeoutMillis());
+            t2.join(options.getRoundTimeoutMillis());
+        }
+        long elapsed = System.nanoTime() - begin;
+        return new Report(test.name, iterations, elapsed, histogram.outcomes(test.expectations));
+    }
+
+    // 终止性测试：actor 循环等待 done 成立，signal 修改状态让它结束，timeout 内没有结束记为 STALE
+    public <S> Report runTermination(String name, Supplier<S> state, Predicate<S> done, Consumer<S> signal,
+                                     int iterations, long timeout, TimeUnit unit, Expect staleExpect) throws InterruptedException {
+        long terminated = 0, stale = 0;
+        long begin = System.nanoTime();
+        synchronized (DONE) {
+            DONE.setTarget(PREDICATE_TEST.bindTo(done));
+            try {
+                for (int i = 0; i < iterations; i++) {
+                    S s = state.get();
+                    Thread t = new Thread(() -> spinUntilDone(s), name + "-actor");
+                    t.setDaemon(true);
+                    t.start();
+                    // 等 actor 进入循环再发信号，否则可能还没开始循环就已经看到了新值
+                    Thread.sleep(1);
+                    signal.accept(s);
+                    t.join(unit.toMillis(timeout));
+                    if (t.isAlive()) {
+                        stale++;
+                        // 反优化正在执行的循环，让它结束
+                        DONE.setTarget(ALWAYS_DONE);
+                        t.join();
+                        break;
+                    }
+                    terminated++;
+                }
+            } finally {
+                DONE.setTarget(ALWAYS_DONE);
+            }
+        }
+        List<Outcome> outcomes = new ArrayList<>();
+        outcomes.add(new Outcome("TERMINATED", terminated, Expect.ACCEPTABLE, "actor saw the update"));
+        outcomes.add(new Outcome("STALE", stale, staleExpect, "actor never saw the update"));
+        return new Report(name, terminated + stale, System.nanoTime() - begin, outcomes);
+    }
+
+    private static void spinUntilDone(Object state) {
+        try {
+            while (!(boolean) DONE_INVOKER.invokeExact(state)) {
+                // 空循环
+            }
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static long key(int r1, int r2) {
+        return ((long) r1 << 32) | (r2 & 0xFFFFFFFFL);
+    }
+
+    // 两个 actor 线程和控制线程之间每一轮的同步
+    private static final class Round {
+        private final Object[] states;
+        private final Result[] results;
+        // 本轮每个 actor 执行的次数，在写 epoch 之前写入
+        private int size;
+        private volatile int epoch;
+        private volatile boolean stopped;
+        private final AtomicInteger finished = new AtomicInteger();
+        // actor 抛出的第一个异常
+        private volatile Throwable failure;
+
+        Round(Object[] states, Result[] results) {
+            this.states = states;
+            this.results = results;
+        }
+
+        Thread start(String name, Actor<Object> actor) {
+            Thread t = new Thread(() -> {
+                int seen = 0;
+                for (;;) {
+                    int e = awaitEpochChange(seen);
+                    if (e < 0) return;
+                    seen = e;
+                    Object[] s = states;
+                    Result[] r = results;
+                    int size = this.size;
+                    try {
+                        for (int i = 0; i < size; i++) {
+                            actor.act(s[i], r[i]);
+                        }
+                    } catch (Throwable ex) {
+                        if (failure == null) failure = ex;
+                    }
+                    finished.incrementAndGet();
+                }
+            }, name);
+            t.setDaemon(true);
+            t.start();
+            return t;
+        }
+
+        // 开始一轮并等待两个 actor 都执行完，volatile 写 epoch 保证 actor 看到新准备的状态对象和 size
+        void runOnce(int size, long timeoutNanos) {
+            this.size = size;
+            finished.set(0);
+            epoch++;
+            long start = System.nanoTime();
+            int spins = 0;
+            while (finished.get() < 2) {
+                // 自旋阶段不调用 nanoTime，开始让出 CPU 之后再检查超时
+                if (spins >= 1_000 && System.nanoTime() - start > timeoutNanos) {
+                    throw new IllegalStateException("actors did not finish a round of " + size + " iterations in "
+                            + TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + "ms");
+                }
+                spins = backoff(spins);
+            }
+            Throwable t = failure;
+            if (t != null) throw new IllegalStateException("actor failed", t);
+        }
+
+        void stop() {
+            stopped = true;
+        }
+
+        private int awaitEpochChange(int seen) {
+            int spins = 0;
+            for (;;) {
+                if (stopped) return -1;
+                int e = epoch;
+                if (e != seen) return e;
+                spins = backoff(spins);
+            }
+        }
+
+        // 先自旋，两个 actor 几乎同时看到 epoch 变化；等太久（例如只有一个核）再让出 CPU
+        private static int backoff(int spins) {
+            if (spins < 1_000) {
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+            return spins + 1;
+        }
+    }
+
+    // 结果直方图，结果的种类通常只有几个，线性查找即可
+    private static final class Histogram {
+        private long[] keys = new long[8];
+        private long[] counts = new long[8];
+        private int size;
+
+        void add(long key) {
+            for (int i = 0; i < size; i++) {
+                if (keys[i] == key) {
+                    counts[i]++;
+                    return;
+                }
+            }
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                counts = Arrays.copyOf(counts, size * 2);
+            }
+            keys[size] = key;
+            counts[size++] = 1;
+        }
+
+        // 先列出声明过的结果（包括没有出现的），再列出没有声明的（按 FORBIDDEN 处理）
+        List<Outcome> outcomes(List<Expectation> expectations) {
+            List<Outcome> result = new ArrayList<>();
+            boolean[] declared = new boolean[size];
+            for (Expectation e : expectations) {
+                long count = 0;
+                for (int i = 0; i < size; i++) {
+                    if (keys[i] == e.key()) {
+                        count = counts[i];
+                        declared[i] = true;
+                    }
+                }
+                result.add(new Outcome(format(e.key()), count, e.expect(), e.description()));
+            }
+            for (int i = 0; i < size; i++) {
+                if (!declared[i]) result.add(new Outcome(format(keys[i]), counts[i], Expect.FORBIDDEN, "unexpected"));
+            }
+            return result;
+        }
+
+        private static String format(long key) {
+            return (int) (key >>> 32) + ", " + (int) key;
+        }
+    }
+}
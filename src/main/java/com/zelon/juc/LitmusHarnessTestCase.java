@@ -0,0 +1,60 @@
+package com.zelon.juc;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class LitmusHarnessTestCase {
+
+    static class Counter {
+        int value;
+    }
+
+    @Test
+    public void testMaxIterations() throws InterruptedException {
+        LitmusHarness harness = new LitmusHarness(LitmusHarness.Options.builder()
+                .batchSize(1024).maxIterations(10_000).timeLimitMillis(60_000).build());
+        LitmusHarness.Report report = harness.run(LitmusHarness.test("exact", Counter::new)
+                .actor1((s, r) -> r.r1 = 1)
+                .actor2((s, r) -> r.r2 = 1)
+                .outcome(1, 1, LitmusHarness.Expect.ACCEPTABLE, "both actors ran"));
+        // 最后一轮只执行剩下的 784 次
+        System.out.println(report.getIterations() + ", " + report.count(LitmusHarness.Expect.ACCEPTABLE)); // 10000, 10000
+    }
+
+    @Test
+    public void testActorFailure() throws InterruptedException {
+        LitmusHarness harness = new LitmusHarness();
+        try {
+            harness.run(LitmusHarness.test("failing", Counter::new)
+                    .actor1((s, r) -> r.r1 = 1 / s.value)
+                    .actor2((s, r) -> r.r2 = 1));
+        } catch (IllegalStateException e) {
+            System.out.println(e.getMessage() + ": " + e.getCause()); // actor failed: java.lang.ArithmeticException: / by zero
+        }
+    }
+
+    @Test
+    public void testStuckActor() throws InterruptedException {
+        LitmusHarness harness = new LitmusHarness(LitmusHarness.Options.builder().roundTimeoutMillis(200).build());
+        CountDownLatch release = new CountDownLatch(1);
+        long start = System.nanoTime();
+        try {
+            harness.run(LitmusHarness.test("stuck", Counter::new)
+                    .actor1((s, r) -> {
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    })
+                    .actor2((s, r) -> r.r2 = 1));
+        } catch (IllegalStateException e) {
+            System.out.println(e.getMessage()); // actors did not finish a round of 1024 iterations in 200ms
+        }
+        // 超时 200ms + 等待卡住的 actor 退出 200ms
+        System.out.println(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms"); // 约 400ms
+        release.countDown();
+    }
+}
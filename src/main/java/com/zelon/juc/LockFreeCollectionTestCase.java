@@ -0,0 +1,235 @@
+package com.zelon.juc;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+
+/*
+TreiberStack、MichaelScottQueue、EliminationBackoffStack 的压力测试和线性一致性（linearizability）检查
+1. 守恒：多个线程同时 push / offer 不重复的值，同时 pop / poll，每个值恰好被取出一次（不丢失、不重复）；
+   队列还要求同一个生产者的值被同一个消费者按放入的顺序取出。
+2. 线性一致性：每一轮 3 个线程各执行 3 个随机操作，记录每个操作的调用时间、返回时间和结果，
+   穷举所有满足实时顺序（一个操作返回之后才调用的操作必须排在它后面）的排列，
+   只要有一个排列能被顺序执行的栈 / 队列（ArrayDeque）解释，这段历史就是线性一致的。
+   单核机器上操作很少真正重叠，重叠的轮数会打印出来；jcstress 在这个环境中不可用。
+ */
+
+public class LockFreeCollectionTestCase {
+
+    // 三种结构的统一接口，add = push / offer，remove = pop / poll
+    interface Container {
+        void add(int value);
+
+        Integer remove();
+    }
+
+    static Container treiber() {
+        TreiberStack<Integer> stack = new TreiberStack<>();
+        return new Container() {
+            public void add(int value) { stack.push(value); }
+            public Integer remove() { return stack.pop(); }
+        };
+    }
+
+    static Container elimination() {
+        EliminationBackoffStack<Integer> stack = new EliminationBackoffStack<>(2);
+        return new Container() {
+            public void add(int value) { stack.push(value); }
+            public Integer remove() { return stack.pop(); }
+        };
+    }
+
+    static Container msQueue() {
+        MichaelScottQueue<Integer> queue = new MichaelScottQueue<>();
+        return new Container() {
+            public void add(int value) { queue.offer(value); }
+            public Integer remove() { return queue.poll(); }
+        };
+    }
+
+    @Test
+    public void testSequential() {
+        TreiberStack<String> stack = new TreiberStack<>();
+        stack.push("a");
+        stack.push("b");
+        System.out.println(stack.peek() + " " + stack.pop() + " " + stack.pop() + " " + stack.pop()); // b b a null
+        System.out.println(stack.stamp()); // 4, 每次修改版本号加一
+
+        MichaelScottQueue<String> queue = new MichaelScottQueue<>();
+        queue.offer("a");
+        queue.offer("b");
+        System.out.println(queue.peek() + " " + queue.poll() + " " + queue.poll() + " " + queue.poll()); // a a b null
+        System.out.println(queue.isEmpty()); // true
+
+        EliminationBackoffStack<String> eb = new EliminationBackoffStack<>();
+        eb.push("a");
+        eb.push("b");
+        System.out.println(eb.pop() + " " + eb.pop() + " " + eb.pop()); // b a null
+    }
+
+    @Test
+    public void testConservation() throws InterruptedException {
+        System.out.println("treiber: " + conservation(treiber(), false)); // treiber: 丢失 0, 重复 0
+        System.out.println("elimination: " + conservation(elimination(), false)); // elimination: 丢失 0, 重复 0
+        System.out.println("msQueue: " + conservation(msQueue(), true)); // msQueue: 丢失 0, 重复 0, 乱序 0
+    }
+
+    // 4 个生产者各放入 250000 个值（生产者编号 × perProducer + 序号），4 个消费者一起取出
+    private static String conservation(Container c, boolean fifo) throws InterruptedException {
+        int producers = 4, consumers = 4, perProducer = 250_000, total = producers * perProducer;
+        AtomicLongArray seen = new AtomicLongArray(total);
+        AtomicInteger removed = new AtomicInteger();
+        AtomicInteger outOfOrder = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            int base = p * perProducer;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < perProducer; i++) c.add(base + i);
+            }));
+        }
+        for (int k = 0; k < consumers; k++) {
+            threads.add(new Thread(() -> {
+                int[] last = new int[producers];
+                Arrays.fill(last, -1);
+                while (removed.get() < total) {
+                    Integer v = c.remove();
+                    if (v == null) {
+                        Thread.yield();
+                        continue;
+                    }
+                    removed.incrementAndGet();
+                    seen.incrementAndGet(v);
+                    int p = v / perProducer;
+                    if (v <= last[p]) outOfOrder.incrementAndGet();
+                    last[p] = v;
+                }
+            }));
+        }
+        for (Thread t : threads) t.start();
+        for (Thread t : threads) t.join();
+        int lost = 0, duplicated = 0;
+        for (int i = 0; i < total; i++) {
+            if (seen.get(i) == 0) lost++;
+            if (seen.get(i) > 1) duplicated++;
+        }
+        return "丢失 " + lost + ", 重复 " + duplicated + (fifo ? ", 乱序 " + outOfOrder.get() : "");
+    }
+
+    // 一次操作的记录：value 是 add 的参数或者 remove 的结果（null 表示为空）
+    record Op(int thread, boolean add, Integer value, long invoke, long response) {
+    }
+
+    @Test
+    public void testLinearizability() throws InterruptedException {
+        System.out.println("treiber: " + checkRounds(LockFreeCollectionTestCase::treiber, false));
+        System.out.println("elimination: " + checkRounds(LockFreeCollectionTestCase::elimination, false));
+        System.out.println("msQueue: " + checkRounds(LockFreeCollectionTestCase::msQueue, true));
+        // treiber: 1000 轮, 不一致 0 轮, 有重叠操作的 16 轮（单核上只有线程被切换时才会重叠，数量每次不同，多核上会多得多）
+        // elimination: 1000 轮, 不一致 0 轮, 有重叠操作的 15 轮
+        // msQueue: 1000 轮, 不一致 0 轮, 有重叠操作的 16 轮
+
+        // 对照：push(1) 返回之后才调用的 pop() 返回了空，任何排列都解释不了，检查器必须判定为不一致
+        List<Op> bad = List.of(new Op(0, true, 1, 0, 10), new Op(1, false, null, 20, 30));
+        System.out.println(linearizable(bad, false)); // false
+        // 两个操作重叠时 pop() 可以排在 push(1) 前面，返回空是合法的
+        List<Op> overlapping = List.of(new Op(0, true, 1, 0, 30), new Op(1, false, null, 10, 20));
+        System.out.println(linearizable(overlapping, false)); // true
+    }
+
+    private static String checkRounds(Supplier<Container> factory, boolean fifo) throws InterruptedException {
+        int rounds = 1_000, threads = 3, opsPerThread = 3;
+        int violations = 0, overlappingRounds = 0;
+        for (int round = 0; round < rounds; round++) {
+            Container c = factory.get();
+            // 先放入一个值，让 remove 不总是返回空
+            c.add(-1);
+            List<Op>[] histories = recordRound(c, threads, opsPerThread);
+            List<Op> history = new ArrayList<>();
+            history.add(new Op(-1, true, -1, Long.MIN_VALUE, Long.MIN_VALUE + 1));
+            for (List<Op> h : histories) history.addAll(h);
+            if (overlaps(history)) overlappingRounds++;
+            if (!linearizable(history, fifo)) violations++;
+        }
+        return rounds + " 轮, 不一致 " + violations + " 轮, 有重叠操作的 " + overlappingRounds + " 轮";
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Op>[] recordRound(Container c, int threads, int opsPerThread) throws InterruptedException {
+        List<Op>[] histories = new List[threads];
+        AtomicInteger ready = new AtomicInteger();
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            histories[t] = new ArrayList<>(opsPerThread);
+            workers[t] = new Thread(() -> {
+                ready.incrementAndGet();
+                while (ready.get() < threads) Thread.yield();
+                ThreadLocalRandom r = ThreadLocalRandom.current();
+                for (int i = 0; i < opsPerThread; i++) {
+                    if (r.nextBoolean()) {
+                        int value = id * 100 + i;
+                        long invoke = System.nanoTime();
+                        c.add(value);
+                        histories[id].add(new Op(id, true, value, invoke, System.nanoTime()));
+                    } else {
+                        long invoke = System.nanoTime();
+                        Integer value = c.remove();
+                        histories[id].add(new Op(id, false, value, invoke, System.nanoTime()));
+                    }
+                }
+            });
+        }
+        for (Thread w : workers) w.start();
+        for (Thread w : workers) w.join();
+        return histories;
+    }
+
+    private static boolean overlaps(List<Op> history) {
+        for (Op a : history) {
+            for (Op b : history) {
+                if (a.thread() != b.thread() && a.invoke() < b.response() && b.invoke() < a.response()) return true;
+            }
+        }
+        return false;
+    }
+
+    // 穷举满足实时顺序的排列，用 ArrayDeque 顺序执行，看结果能否一致
+    static boolean linearizable(List<Op> history, boolean fifo) {
+        return search(history, new boolean[history.size()], 0, new ArrayDeque<>(), fifo);
+    }
+
+    private static boolean search(List<Op> history, boolean[] done, int count, ArrayDeque<Integer> model, boolean fifo) {
+        if (count == history.size()) return true;
+        for (int i = 0; i < history.size(); i++) {
+            if (done[i] || !minimal(history, done, i)) continue;
+            Op op = history.get(i);
+            ArrayDeque<Integer> next = model.clone();
+            if (op.add()) {
+                next.addLast(op.value());
+            } else {
+                Integer expected = fifo ? next.pollFirst() : next.pollLast();
+                if (!Objects.equals(expected, op.value())) continue;
+            }
+            done[i] = true;
+            if (search(history, done, count + 1, next, fifo)) return true;
+            done[i] = false;
+        }
+        return false;
+    }
+
+    // 没有尚未排入的操作在 i 调用之前就已经返回，i 才能排在下一个
+    private static boolean minimal(List<Op> history, boolean[] done, int i) {
+        for (int j = 0; j < history.size(); j++) {
+            if (!done[j] && j != i && history.get(j).response() < history.get(i).invoke()) return false;
+        }
+        return true;
+    }
+}
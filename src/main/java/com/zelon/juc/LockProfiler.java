@@ -0,0 +1,222 @@
+package com.zelon.juc;
+
+import lombok.Value;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+
+/*
+锁竞争分析：按 "锁的位置（site）" 汇总等待时间、持有时间、竞争线程数和持有者的调用栈，输出按总等待时间排序的热点锁报告
+1. 两类锁：
+   ① java.util.concurrent.locks.Lock: 用 lock(site, delegate) 包装为 ProfiledLock，精确记录每次获取的等待时间和持有时间
+   ② synchronized: 字节码层面无法包装，用 MonitorSampler 周期性采样：
+      通过 JOL 读取对象头的 mark word 判断当前是无锁 / 轻量级锁 / 重量级锁（膨胀），
+      通过 ThreadMXBean 找到 BLOCKED 在这个对象上的线程数和持有者的调用栈；
+      等待时间 = 采样到的阻塞线程数 × 采样间隔（采样估算，不是精确值）
+2. 同一个 site 可以对应多个锁对象（例如每个 Product 一把锁），统计按 site 合并。
+3. 持有者调用栈：等待超过 ownerSampleThresholdNanos 时抓取一次持有者线程的调用栈，
+   getStackTrace() 开销较大，每个 site 每 ownerSampleIntervalNanos 最多抓取一次。
+ */
+
+public class LockProfiler {
+
+    public enum Kind {
+        LOCK, MONITOR
+    }
+
+    private static final int STACK_DEPTH = 6;
+    private static final int MAX_DISTINCT_STACKS = 64;
+
+    private final Map<String, Site> sites = new ConcurrentHashMap<>();
+    private final long ownerSampleThresholdNanos;
+    private final long ownerSampleIntervalNanos;
+
+    public LockProfiler() {
+        this(TimeUnit.MICROSECONDS.toNanos(100), TimeUnit.MILLISECONDS.toNanos(10));
+    }
+
+    public LockProfiler(long ownerSampleThresholdNanos, long ownerSampleIntervalNanos) {
+        this.ownerSampleThresholdNanos = ownerSampleThresholdNanos;
+        this.ownerSampleIntervalNanos = ownerSampleIntervalNanos;
+    }
+
+    public ProfiledLock lock(String site, Lock delegate) {
+        return new ProfiledLock(this, site(site, Kind.LOCK), delegate);
+    }
+
+    Site site(String name, Kind kind) {
+        Site site = sites.computeIfAbsent(name, n -> new Site(n, kind));
+        if (site.kind != kind) throw new IllegalArgumentException("site " + name + " is already registered as " + site.kind);
+        return site;
+    }
+
+    public void reset() {
+        sites.clear();
+    }
+
+    // 按总等待时间从高到低排序
+    public List<LockReport> ranked() {
+        List<LockReport> reports = new ArrayList<>();
+        for (Site site : sites.values()) {
+            reports.add(site.report());
+        }
+        reports.sort(Comparator.comparingLong(LockReport::getTotalWaitNanos).reversed()
+                .thenComparing(Comparator.comparingLong(LockReport::getContended).reversed()));
+        return reports;
+    }
+
+    public String report(int top) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-4s %-28s %-7s %10s %9s %10s %10s %10s %6s  %s%n",
+                "rank", "site", "kind", "acquires", "contended", "wait(ms)", "waitP99us", "holdP99us", "maxCon", "state"));
+        List<LockReport> ranked = ranked();
+        for (int i = 0; i < Math.min(top, ranked.size()); i++) {
+            LockReport r = ranked.get(i);
+            sb.append(String.format("%-4d %-28s %-7s %10d %8.1f%% %10.1f %10.1f %10.1f %6d  %s%n",
+                    i + 1, r.getSite(), r.getKind(), r.getAcquisitions(),
+                    r.getAcquisitions() == 0 ? 0 : r.getContended() * 100.0 / r.getAcquisitions(),
+                    r.getTotalWaitNanos() / 1e6,
+                    r.getWait() == null ? Double.NaN : r.getWait().percentileNanos(0.99) / 1e3,
+                    r.getHold() == null ? Double.NaN : r.getHold().percentileNanos(0.99) / 1e3,
+                    r.getMaxContenders(), r.getState() == null ? "-" : r.getState()));
+            if (!r.getTopOwnerStack().isEmpty()) {
+                sb.append("     owner: ").append(r.getTopOwnerStack().replace("\n", "\n            ")).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    // 一行报告，LOCK 和 MONITOR 共用；MONITOR 没有精确的等待/持有时间直方图，对应字段为 null
+    @Value
+    public static class LockReport {
+        String site;
+        Kind kind;
+        long acquisitions;
+        long contended;
+        long totalWaitNanos;
+        int maxContenders;
+        LatencyHistogram.Snapshot wait;
+        LatencyHistogram.Snapshot hold;
+        // MONITOR: 各状态的采样次数和膨胀情况，例如 "unlocked=10 thin=3 fat=87 inflated=2/2"
+        String state;
+        String topOwnerStack;
+    }
+
+    // 一个 site 的统计，ProfiledLock 和 MonitorSampler 直接更新
+    static final class Site {
+        final String name;
+        final Kind kind;
+        final LatencyHistogram wait = new LatencyHistogram();
+        final LatencyHistogram hold = new LatencyHistogram();
+        final LongAdder acquisitions = new LongAdder();
+        final LongAdder contended = new LongAdder();
+        final LongAdder totalWaitNanos = new LongAdder();
+        final AtomicInteger waiting = new AtomicInteger();
+        final AtomicInteger maxContenders = new AtomicInteger();
+        final Map<String, LongAdder> ownerStacks = new ConcurrentHashMap<>();
+        // 保证第一次一定可以采样
+        final AtomicLong lastOwnerSample = new AtomicLong(System.nanoTime() - TimeUnit.DAYS.toNanos(1));
+        // MonitorSampler 写入的状态描述
+        volatile String monitorState;
+
+        Site(String name, Kind kind) {
+            this.name = name;
+            this.kind = kind;
+        }
+
+        // 返回当前等待的线程数（包括自己）
+        int enterWait() {
+            int n = waiting.incrementAndGet();
+            updateMaxContenders(n);
+            return n;
+        }
+
+        void exitWait() {
+            waiting.decrementAndGet();
+        }
+
+        void updateMaxContenders(int n) {
+            int m;
+            while (n > (m = maxContenders.get()) && !maxContenders.compareAndSet(m, n)) {
+                // 只在变大时 CAS
+            }
+        }
+
+        void recordWait(long nanos, boolean wasContended) {
+            acquisitions.increment();
+            if (wasContended) {
+                contended.increment();
+                totalWaitNanos.add(nanos);
+                wait.record(nanos);
+            } else {
+                wait.record(0);
+            }
+        }
+
+        // 每个 site 每隔 intervalNanos 最多返回一次 true
+        boolean shouldSampleOwner(long now, long intervalNanos) {
+            long last = lastOwnerSample.get();
+            return now - last >= intervalNanos && lastOwnerSample.compareAndSet(last, now);
+        }
+
+        void recordOwnerStack(StackTraceElement[] stack) {
+            if (stack == null || stack.length == 0) return;
+            String key = format(stack);
+            LongAdder count = ownerStacks.get(key);
+            if (count == null) {
+                if (ownerStacks.size() >= MAX_DISTINCT_STACKS) return;
+                count = ownerStacks.computeIfAbsent(key, k -> new LongAdder());
+            }
+            count.increment();
+        }
+
+        LockReport report() {
+            String topStack = "";
+            long topCount = 0;
+            for (Map.Entry<String, LongAdder> e : ownerStacks.entrySet()) {
+                long c = e.getValue().sum();
+                if (c > topCount) {
+                    topCount = c;
+                    topStack = "(" + c + " samples) " + e.getKey();
+                }
+            }
+            boolean lock = kind == Kind.LOCK;
+            return new LockReport(name, kind, acquisitions.sum(), contended.sum(), totalWaitNanos.sum(),
+                    maxContenders.get(), lock ? wait.snapshot() : null, lock ? hold.snapshot() : null,
+                    monitorState, topStack);
+        }
+    }
+
+    // 跳过 JDK 内部和分析器自身的栈帧，保留最多 STACK_DEPTH 个业务栈帧
+    static String format(StackTraceElement[] stack) {
+        StringBuilder sb = new StringBuilder();
+        int n = 0;
+        for (StackTraceElement frame : stack) {
+            String cls = frame.getClassName();
+            if (cls.startsWith("java.") || cls.startsWith("jdk.") || cls.startsWith("sun.")
+                    || cls.startsWith(ProfiledLock.class.getName()) || cls.contains("$$Lambda")) {
+                continue;
+            }
+            if (n > 0) sb.append('\n');
+            sb.append(cls).append('.').append(frame.getMethodName()).append(':').append(frame.getLineNumber());
+            if (++n == STACK_DEPTH) break;
+        }
+        return sb.toString();
+    }
+
+    long ownerSampleThresholdNanos() {
+        return ownerSampleThresholdNanos;
+    }
+
+    long ownerSampleIntervalNanos() {
+        return ownerSampleIntervalNanos;
+    }
+}
@@ -0,0 +1,153 @@
+package com.zelon.juc;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+LockProfiler 的用法：同时分析 ReentrantLock（ProfiledLock 包装）和 synchronized（MonitorSampler 采样），输出热点锁排名
+ */
+
+public class LockProfilerTestCase {
+
+    @Test
+    public void testProfiledLock() throws InterruptedException {
+        LockProfiler profiler = new LockProfiler();
+        Lock hot = profiler.lock("Inventory.hot", new ReentrantLock());
+        Lock cold = profiler.lock("Config.cold", new ReentrantLock());
+        Lock queue = profiler.lock("Queue.condition", new ReentrantLock());
+        Condition notEmpty = queue.newCondition();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            threads.add(start(() -> {
+                for (int j = 0; j < 50; j++) {
+                    hot.lock();
+                    try {
+                        hold(200); // 持有 200us
+                    } finally {
+                        hot.unlock();
+                    }
+                }
+            }));
+        }
+        threads.add(start(() -> {
+            for (int j = 0; j < 1000; j++) {
+                cold.lock();
+                cold.unlock();
+            }
+        }));
+        threads.add(start(() -> {
+            queue.lock();
+            try {
+                // await 期间锁被释放，不计入持有时间
+                notEmpty.await(50, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                queue.unlock();
+            }
+        }));
+        for (Thread t : threads) t.join();
+
+        System.out.println(profiler.report(10));
+        /*
+        Inventory.hot 排第一：200 次获取中有相当一部分发生竞争，等待时间 p99 是持有时间的数倍，owner 指向持有锁的 lambda；
+        Config.cold 没有竞争，等待时间为 0；Queue.condition 的持有时间很短，await 的 50ms 不计入
+         */
+    }
+
+    @Test
+    public void testAwaitWithoutOwnership() throws InterruptedException {
+        LockProfiler profiler = new LockProfiler();
+        Lock lock = profiler.lock("Await.misuse", new ReentrantLock());
+        Condition condition = lock.newCondition();
+        CountDownLatch held = new CountDownLatch(1);
+        CountDownLatch misused = new CountDownLatch(1);
+        Thread owner = start(() -> {
+            lock.lock();
+            lock.lock(); // 重入两层
+            try {
+                held.countDown();
+                misused.await();
+                hold(20_000); // 再持有 20ms
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                lock.unlock();
+                lock.unlock();
+            }
+        });
+        held.await();
+        try {
+            condition.await(); // 没有持有锁
+        } catch (IllegalMonitorStateException e) {
+            System.out.println("IllegalMonitorStateException"); // IllegalMonitorStateException
+        } finally {
+            misused.countDown();
+        }
+        owner.join();
+        LockProfiler.LockReport report = profiler.ranked().get(0);
+        // 持有者的统计不受影响：只有一次持有，持续 20ms 以上；误用的线程没有被当作持有者
+        System.out.println(report.getHold().count() + ", " + (report.getHold().maxNanos() >= TimeUnit.MILLISECONDS.toNanos(20))); // 1, true
+        System.out.println(lock.tryLock()); // true, 两层都已经释放
+        lock.unlock();
+    }
+
+    @Test
+    public void testMonitorSampling() throws InterruptedException {
+        LockProfiler profiler = new LockProfiler();
+        MonitorSampler sampler = new MonitorSampler(profiler, 2, TimeUnit.MILLISECONDS);
+        Object hotMonitor = new Object();
+        Object coldMonitor = new Object();
+        sampler.watch("Order.hotMonitor", hotMonitor);
+        sampler.watch("Audit.coldMonitor", coldMonitor);
+        sampler.start();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            threads.add(start(() -> {
+                for (int j = 0; j < 100; j++) {
+                    synchronized (hotMonitor) {
+                        hold(500);
+                    }
+                }
+            }));
+        }
+        threads.add(start(() -> {
+            for (int j = 0; j < 200; j++) {
+                synchronized (coldMonitor) {
+                    hold(100);
+                }
+                hold(400);
+            }
+        }));
+        for (Thread t : threads) t.join();
+        sampler.sample();
+        sampler.close();
+
+        System.out.println(profiler.report(10));
+        /*
+        Order.hotMonitor 排第一：多个线程同时竞争，monitor 膨胀为重量级锁（inflated=1/1），之后一直是 fat，不会降级；
+        Audit.coldMonitor 只有一个线程使用，在 thin 和 unlocked 之间切换，inflated=0/1
+         */
+    }
+
+    private static Thread start(Runnable task) {
+        Thread t = new Thread(task);
+        t.start();
+        return t;
+    }
+
+    // 在临界区内停留 micros 微秒（模拟 IO），期间让出 CPU，单核机器上其他线程也能进来竞争
+    private static void hold(long micros) {
+        LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(micros));
+    }
+}
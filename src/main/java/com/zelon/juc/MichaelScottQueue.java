@@ -0,0 +1,111 @@
+package com.zelon.juc;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicStampedReference;
+
+/*
+Michael-Scott 队列：无锁的并发 FIFO 队列（ConcurrentLinkedQueue 也是基于这个算法）
+1. 结构：单链表，head 指向哨兵节点（dummy），第一个元素是 head.next；tail 指向最后一个节点或者倒数第二个节点。
+   ① offer：把新节点 CAS 到最后一个节点的 next（null → node），再把 tail CAS 到新节点；
+      第二步失败没关系，其他线程看到 tail.next 不为 null 时会帮忙把 tail 推进（helping），所以不会因为一个线程被挂起而卡住
+   ② poll：读 head、tail、head.next，head == tail 且 next 不为 null 时先帮忙推进 tail，
+      否则读出 next 中的元素，把 head CAS 到 next，next 成为新的哨兵
+
+2. ABA：论文中 head、tail 和 next 都是带计数的指针（counted pointer），因为节点会被回收到空闲链表中复用。
+   这里 head 和 tail 使用 AtomicStampedReference（原理见 TreiberStack）；
+   next 只会从 null 变为某个节点一次，之后不再修改，不会出现 A → B → A，所以用普通的 VarHandle CAS。
+
+3. 代价：每次成功修改 head / tail 都要分配一个 Pair，每次 offer 最多分配两个 Pair，poll 一个。
+ */
+
+public class MichaelScottQueue<E> {
+
+    private static final class Node<E> {
+        E item;
+        volatile Node<E> next;
+
+        Node(E item) {
+            this.item = item;
+        }
+    }
+
+    private static final VarHandle NEXT;
+
+    static {
+        try {
+            NEXT = MethodHandles.lookup().findVarHandle(Node.class, "next", Node.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final AtomicStampedReference<Node<E>> head;
+    private final AtomicStampedReference<Node<E>> tail;
+
+    public MichaelScottQueue() {
+        Node<E> dummy = new Node<>(null);
+        head = new AtomicStampedReference<>(dummy, 0);
+        tail = new AtomicStampedReference<>(dummy, 0);
+    }
+
+    public void offer(E item) {
+        if (item == null) throw new NullPointerException();
+        Node<E> node = new Node<>(item);
+        int[] stamp = new int[1];
+        for (;;) {
+            Node<E> last = tail.get(stamp);
+            Node<E> next = last.next;
+            if (last != tail.getReference()) continue; // tail 已经变了，重新读
+            if (next == null) {
+                if (NEXT.compareAndSet(last, (Node<E>) null, node)) {
+                    // 推进 tail，失败说明其他线程已经帮忙推进了
+                    tail.compareAndSet(last, node, stamp[0], stamp[0] + 1);
+                    return;
+                }
+            } else {
+                // tail 落后了，帮忙推进
+                tail.compareAndSet(last, next, stamp[0], stamp[0] + 1);
+            }
+        }
+    }
+
+    // 队列为空时返回 null
+    public E poll() {
+        int[] headStamp = new int[1];
+        int[] tailStamp = new int[1];
+        for (;;) {
+            Node<E> first = head.get(headStamp);
+            Node<E> last = tail.get(tailStamp);
+            Node<E> next = first.next;
+            if (first != head.getReference()) continue;
+            if (first == last) {
+                if (next == null) return null;
+                // 有新节点但 tail 还没推进，帮忙推进之后再试
+                tail.compareAndSet(last, next, tailStamp[0], tailStamp[0] + 1);
+            } else {
+                // 先读元素再 CAS：CAS 成功之后 next 成为哨兵，它的 item 可以被清空
+                E item = next.item;
+                if (head.compareAndSet(first, next, headStamp[0], headStamp[0] + 1)) {
+                    next.item = null; // 哨兵不再持有元素，便于 GC
+                    return item;
+                }
+            }
+        }
+    }
+
+    public E peek() {
+        for (;;) {
+            Node<E> first = head.getReference();
+            Node<E> next = first.next;
+            if (next == null) return null;
+            E item = next.item;
+            // item 为 null 说明 next 已经成为哨兵，重新读
+            if (item != null && first == head.getReference()) return item;
+        }
+    }
+
+    public boolean isEmpty() {
+        return head.getReference().next == null;
+    }
+}
@@ -0,0 +1,170 @@
+package com.zelon.juc;
+
+import org.openjdk.jol.vm.VM;
+import org.openjdk.jol.vm.VirtualMachine;
+
+import java.lang.management.LockInfo;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/*
+synchronized 锁的采样分析器，统计结果写入 LockProfiler，和 ProfiledLock 的结果一起排序
+1. 为什么是采样？synchronized 由 JVM 实现，无法像 ProfiledLock 那样包装每一次加锁。
+2. 每个采样周期：
+   ① 通过 JOL 读取每个被观察对象的 mark word，最低两位是锁标志位（见 SyncLockUpgrade）：
+      01 无锁、00 轻量级锁（thin lock）、10 重量级锁（fat lock，已膨胀为 monitor）、11 GC 标记
+      记录各状态的采样次数、状态切换次数，以及有多少个对象膨胀过
+   ② 通过 ThreadMXBean 获取所有 BLOCKED 线程等待的锁（LockInfo 中的 identityHashCode）和锁的持有者，
+      得到每个对象上的竞争线程数和持有者的调用栈
+3. 对应到 LockReport：acquisitions = 采样次数，contended = 有线程阻塞的采样次数，
+   totalWaitNanos ≈ 阻塞线程数 × 采样间隔（估算）
+4. 注意：
+   ① watch() 时会调用 System.identityHashCode()，把哈希码写入对象头，用来和 LockInfo 匹配，
+      对无锁状态的对象来说之后不能再偏向（JDK 15 之后偏向锁已废弃，没有影响）
+   ② 读取 mark word 依赖 JDK 21 默认的 LM_LEGACY 加锁方式，新的 LM_LIGHTWEIGHT 方式下轻量级锁不再写入对象头
+   ③ 对象用弱引用保存，不影响回收
+ */
+
+public class MonitorSampler implements AutoCloseable {
+
+    private static final String[] STATE_NAMES = {"thin", "unlocked", "fat", "marked"};
+    private static final int STACK_DEPTH = 16;
+
+    private final LockProfiler profiler;
+    private final long intervalNanos;
+    private final CopyOnWriteArrayList<Watched> watched = new CopyOnWriteArrayList<>();
+    private final Map<String, SiteState> states = new HashMap<>(); // 只在采样线程中访问
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final VirtualMachine vm = VM.current();
+    private ScheduledExecutorService scheduler;
+
+    public MonitorSampler(LockProfiler profiler, long interval, TimeUnit unit) {
+        this.profiler = profiler;
+        this.intervalNanos = unit.toNanos(interval);
+    }
+
+    public void watch(String site, Object monitor) {
+        watched.add(new Watched(profiler.site(site, LockProfiler.Kind.MONITOR), monitor));
+    }
+
+    public synchronized void start() {
+        if (scheduler != null) return;
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "monitor-sampler");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleAtFixedRate(this::sample, 0, intervalNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    // 采样一次，start() 之后由采样线程周期性调用，也可以直接调用
+    synchronized void sample() {
+        Map<Integer, Contention> contention = blockedThreads();
+        for (SiteState state : states.values()) {
+            state.alive = 0;
+        }
+        for (Watched w : watched) {
+            Object monitor = w.ref.get();
+            if (monitor == null) {
+                watched.remove(w); // CopyOnWriteArrayList 遍历期间可以删除
+                continue;
+            }
+            SiteState state = states.computeIfAbsent(w.site.name, n -> new SiteState());
+            state.alive++;
+
+            int lockBits = (int) (vm.getLong(monitor, 0) & 3);
+            state.stateSamples[lockBits]++;
+            if (w.lastBits >= 0 && w.lastBits != lockBits) state.transitions++;
+            if (lockBits == 2 && !w.inflated) {
+                w.inflated = true;
+                state.inflated++;
+            }
+            w.lastBits = lockBits;
+
+            w.site.acquisitions.increment();
+            Contention c = contention.get(w.hash);
+            if (c != null && c.className.equals(monitor.getClass().getName())) {
+                w.site.contended.increment();
+                w.site.totalWaitNanos.add(c.blocked * intervalNanos);
+                w.site.updateMaxContenders(c.blocked);
+                if (c.ownerStack != null) w.site.recordOwnerStack(c.ownerStack);
+            }
+        }
+        for (Map.Entry<String, SiteState> e : states.entrySet()) {
+            SiteState s = e.getValue();
+            profiler.site(e.getKey(), LockProfiler.Kind.MONITOR).monitorState = String.format(
+                    "%s=%d %s=%d %s=%d inflated=%d/%d transitions=%d",
+                    STATE_NAMES[1], s.stateSamples[1], STATE_NAMES[0], s.stateSamples[0], STATE_NAMES[2], s.stateSamples[2],
+                    s.inflated, s.alive, s.transitions);
+        }
+    }
+
+    // identityHashCode -> 阻塞在这个对象上的线程数和持有者调用栈
+    private Map<Integer, Contention> blockedThreads() {
+        Map<Integer, Contention> result = new HashMap<>();
+        ThreadInfo[] infos = threads.getThreadInfo(threads.getAllThreadIds(), STACK_DEPTH);
+        Map<Long, ThreadInfo> byId = new HashMap<>();
+        for (ThreadInfo info : infos) {
+            if (info != null) byId.put(info.getThreadId(), info);
+        }
+        for (ThreadInfo info : infos) {
+            if (info == null || info.getThreadState() != Thread.State.BLOCKED) continue;
+            LockInfo lock = info.getLockInfo();
+            if (lock == null) continue;
+            Contention c = result.computeIfAbsent(lock.getIdentityHashCode(), h -> new Contention(lock.getClassName()));
+            c.blocked++;
+            if (c.ownerStack == null) {
+                ThreadInfo owner = byId.get(info.getLockOwnerId());
+                if (owner != null) c.ownerStack = owner.getStackTrace();
+            }
+        }
+        return result;
+    }
+
+    private static final class Watched {
+        final LockProfiler.Site site;
+        final WeakReference<Object> ref;
+        final int hash;
+        int lastBits = -1;
+        boolean inflated;
+
+        Watched(LockProfiler.Site site, Object monitor) {
+            this.site = site;
+            this.ref = new WeakReference<>(monitor);
+            this.hash = System.identityHashCode(monitor);
+        }
+    }
+
+    private static final class SiteState {
+        final long[] stateSamples = new long[4];
+        long transitions;
+        int inflated;
+        int alive;
+    }
+
+    private static final class Contention {
+        final String className;
+        int blocked;
+        StackTraceElement[] ownerStack;
+
+        Contention(String className) {
+            this.className = className;
+        }
+    }
+}
@@ -0,0 +1,310 @@
+package com.zelon.juc;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/*
+有界多生产者多消费者（MPMC）无锁环形队列
+1. 为什么不用 synchronized + wait()/notifyAll()？
+   ProducerConsumerModelCase 中所有生产者、消费者都竞争同一个 que 的 monitor，每次 put/take 都 notifyAll()，
+   大部分被唤醒的线程发现条件仍不满足又继续 wait()，白白产生上下文切换，monitor 也很快膨胀为重量级锁。
+
+2. 原理（参考 Dmitry Vyukov 的 bounded MPMC queue）：
+   ① 数组长度为 2 的幂，下标通过 pos & mask 计算，避免取模
+   ② 每个槽位有一个序号 sequence，初始值为槽位下标：
+      sequence == pos        表示槽位空闲，生产者可以写入
+      sequence == pos + 1    表示数据已发布，消费者可以读取
+      消费者读完后把 sequence 设为 pos + capacity，留给下一圈的生产者
+   ③ 生产者 CAS 推进 tail，消费者 CAS 推进 head，抢到位置之后只操作自己的槽位，不需要加锁
+   ④ 元素通过普通写入，sequence 的 volatile 写保证元素对消费者可见（happens-before）
+
+3. 等待策略（队列满/空时）：
+   ① SPINNING: 忙等 + Thread.onSpinWait()，延迟最低，但一直占用 CPU
+   ② TIMED: 先自旋，再 yield，最后 parkNanos 指数退避，不需要唤醒方配合
+   ③ BLOCKING: 使用 ReentrantLock + Condition 阻塞，只有确实有线程在等待时才加锁唤醒，避免无谓的 notifyAll
+
+4. drainTo(batch, max): 一次 CAS 领取 head 后面连续已发布的多个槽位，批量消费，减少 CAS 次数
+
+5. put / take 以及带超时的 offer / poll 真正进入等待时输出 JFR 事件 com.zelon.juc.QueueStall（超过 1 ms 才记录，见 JfrEvents），
+   在录制中和其他 park 区分开；不需要等待的调用不创建事件对象
+ */
+
+public class MpmcRingBuffer<E> {
+
+    public enum WaitStrategy {
+        SPINNING, TIMED, BLOCKING
+    }
+
+    private static final AtomicLongFieldUpdater<MpmcRingBuffer> HEAD =
+            AtomicLongFieldUpdater.newUpdater(MpmcRingBuffer.class, "head");
+    private static final AtomicLongFieldUpdater<MpmcRingBuffer> TAIL =
+            AtomicLongFieldUpdater.newUpdater(MpmcRingBuffer.class, "tail");
+
+    private static final int SPIN_TRIES = 100;
+    private static final int YIELD_TRIES = 100;
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final int capacity;
+    private final int mask;
+    private final Object[] buffer;
+    private final AtomicLongArray sequences;
+    private final WaitStrategy waitStrategy;
+
+    // head 和 tail 之间填充，避免生产者和消费者的游标落在同一个缓存行（伪共享）
+    long p01, p02, p03, p04, p05, p06, p07;
+    private volatile long head;
+    long p11, p12, p13, p14, p15, p16, p17;
+    private volatile long tail;
+    long p21, p22, p23, p24, p25, p26, p27;
+
+    // 只有 BLOCKING 策略使用
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final AtomicInteger notEmptyWaiters = new AtomicInteger();
+    private final AtomicInteger notFullWaiters = new AtomicInteger();
+
+    public MpmcRingBuffer(int capacity) {
+        this(capacity, WaitStrategy.BLOCKING);
+    }
+
+    public MpmcRingBuffer(int capacity, WaitStrategy waitStrategy) {
+        if (capacity < 2 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("capacity must be in [2, 2^30]: " + capacity);
+        }
+        // 向上取整为 2 的幂
+        this.capacity = Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = this.capacity - 1;
+        this.buffer = new Object[this.capacity];
+        this.sequences = new AtomicLongArray(this.capacity);
+        for (int i = 0; i < this.capacity; i++) {
+            sequences.set(i, i);
+        }
+        this.waitStrategy = waitStrategy;
+    }
+
+    // 非阻塞写入，队列满时返回 false
+    public boolean offer(E e) {
+        if (e == null) throw new NullPointerException();
+        long pos = tail;
+        for (;;) {
+            int index = (int) (pos & mask);
+            long dif = sequences.get(index) - pos;
+            if (dif == 0) {
+                if (TAIL.compareAndSet(this, pos, pos + 1)) {
+                    buffer[index] = e;
+                    sequences.set(index, pos + 1); // 发布
+                    signal(notEmpty, notEmptyWaiters);
+                    return true;
+                }
+                pos = tail;
+            } else if (dif < 0) {
+                return false; // 槽位还没被上一圈的消费者释放，队列已满
+            } else {
+                pos = tail; // 被其他生产者抢先了
+            }
+        }
+    }
+
+    // 非阻塞读取，队列为空时返回 null
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        long pos = head;
+        for (;;) {
+            int index = (int) (pos & mask);
+            long dif = sequences.get(index) - (pos + 1);
+            if (dif == 0) {
+                if (HEAD.compareAndSet(this, pos, pos + 1)) {
+                    E e = (E) buffer[index];
+                    buffer[index] = null;
+                    sequences.set(index, pos + capacity); // 释放给下一圈的生产者
+                    signal(notFull, notFullWaiters);
+                    return e;
+                }
+                pos = head;
+            } else if (dif < 0) {
+                return null; // 数据还没发布，队列为空
+            } else {
+                pos = head;
+            }
+        }
+    }
+
+    public void put(E e) throws InterruptedException {
+        if (offer(e)) return;
+        JfrEvents.QueueStall stall = JfrEvents.beginQueueStall("MpmcRingBuffer", "put", capacity);
+        try {
+            while (!offer(e)) {
+                await(notFull, notFullWaiters, this::isFull, 0L, false);
+            }
+        } finally {
+            JfrEvents.commit(stall);
+        }
+    }
+
+    public E take() throws InterruptedException {
+        E e = poll();
+        if (e != null) return e;
+        JfrEvents.QueueStall stall = JfrEvents.beginQueueStall("MpmcRingBuffer", "take", capacity);
+        try {
+            while ((e = poll()) == null) {
+                await(notEmpty, notEmptyWaiters, this::isEmpty, 0L, false);
+            }
+        } finally {
+            JfrEvents.commit(stall);
+        }
+        return e;
+    }
+
+    public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+        if (offer(e)) return true;
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        JfrEvents.QueueStall stall = JfrEvents.beginQueueStall("MpmcRingBuffer", "offer", capacity);
+        try {
+            while (!offer(e)) {
+                if (!await(notFull, notFullWaiters, this::isFull, deadline, true)) {
+                    return offer(e);
+                }
+            }
+        } finally {
+            JfrEvents.commit(stall);
+        }
+        return true;
+    }
+
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        E e = poll();
+        if (e != null) return e;
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        JfrEvents.QueueStall stall = JfrEvents.beginQueueStall("MpmcRingBuffer", "poll", capacity);
+        try {
+            while ((e = poll()) == null) {
+                if (!await(notEmpty, notEmptyWaiters, this::isEmpty, deadline, true)) {
+                    return poll();
+                }
+            }
+        } finally {
+            JfrEvents.commit(stall);
+        }
+        return e;
+    }
+
+    // 批量读取最多 max 个元素到 batch 中，只做一次 CAS，返回实际读取的个数
+    @SuppressWarnings("unchecked")
+    public int drainTo(Collection<? super E> batch, int max) {
+        if (max <= 0) return 0;
+        for (;;) {
+            long pos = head;
+            int n = 0;
+            // 统计 head 之后连续已发布的槽位
+            while (n < max && sequences.get((int) ((pos + n) & mask)) == pos + n + 1) {
+                n++;
+            }
+            if (n == 0) {
+                if (sequences.get((int) (pos & mask)) - (pos + 1) < 0) return 0;
+                continue; // head 已被其他消费者推进，重试
+            }
+            if (HEAD.compareAndSet(this, pos, pos + n)) {
+                for (int i = 0; i < n; i++) {
+                    int index = (int) ((pos + i) & mask);
+                    batch.add((E) buffer[index]);
+                    buffer[index] = null;
+                    sequences.set(index, pos + i + capacity);
+                }
+                signal(notFull, notFullWaiters);
+                return n;
+            }
+        }
+    }
+
+    public int size() {
+        // 先读 head 再读 tail，保证结果不会是负数
+        long h = head;
+        long t = tail;
+        return (int) Math.max(0, Math.min(capacity, t - h));
+    }
+
+    public boolean isEmpty() {
+        return tail == head;
+    }
+
+    public boolean isFull() {
+        return tail - head >= capacity;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public WaitStrategy waitStrategy() {
+        return waitStrategy;
+    }
+
+    // 等待队列状态变化，timed 为 true 时最多等到 deadline；返回 false 表示已超时
+    private boolean await(Condition condition, AtomicInteger waiters, BooleanSupplier blocked,
+                          long deadline, boolean timed) throws InterruptedException {
+        switch (waitStrategy) {
+            case SPINNING -> {
+                if (Thread.interrupted()) throw new InterruptedException();
+                if (timed && System.nanoTime() - deadline >= 0) return false;
+                Thread.onSpinWait();
+            }
+            case TIMED -> {
+                for (int i = 0; blocked.getAsBoolean(); i++) {
+                    if (Thread.interrupted()) throw new InterruptedException();
+                    if (timed && System.nanoTime() - deadline >= 0) return false;
+                    if (i < SPIN_TRIES) {
+                        Thread.onSpinWait();
+                    } else if (i < SPIN_TRIES + YIELD_TRIES) {
+                        Thread.yield();
+                    } else {
+                        // 指数退避，最多睡 1ms
+                        LockSupport.parkNanos(Math.min(MAX_PARK_NANOS, 1L << Math.min(20, i - SPIN_TRIES - YIELD_TRIES + 10)));
+                    }
+                }
+            }
+            case BLOCKING -> {
+                lock.lockInterruptibly();
+                try {
+                    // 先登记等待者，再检查条件；唤醒方先发布数据，再检查等待者，二者至少有一方能看到对方
+                    waiters.incrementAndGet();
+                    try {
+                        while (blocked.getAsBoolean()) {
+                            if (!timed) {
+                                condition.await();
+                            } else {
+                                long nanos = deadline - System.nanoTime();
+                                if (nanos <= 0) return false;
+                                condition.awaitNanos(nanos);
+                            }
+                        }
+                    } finally {
+                        waiters.decrementAndGet();
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+        return !timed || System.nanoTime() - deadline < 0;
+    }
+
+    private void signal(Condition condition, AtomicInteger waiters) {
+        // 没有等待者时不加锁，这是相对于每次都 notifyAll() 的主要收益
+        if (waitStrategy == WaitStrategy.BLOCKING && waiters.get() > 0) {
+            lock.lock();
+            try {
+                condition.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
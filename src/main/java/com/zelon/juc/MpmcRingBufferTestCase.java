@@ -0,0 +1,171 @@
+package com.zelon.juc;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/*
+MpmcRingBuffer 的用法以及与 wait()/notifyAll() 版本、ArrayBlockingQueue 的吞吐量对比。
+吞吐量测试模拟 ProducerConsumerModelCase 的场景：5 个生产者，1 个消费者，队列容量 16。
+ */
+
+public class MpmcRingBufferTestCase {
+
+    @Test
+    public void testOfferPoll() {
+        MpmcRingBuffer<String> ring = new MpmcRingBuffer<>(10);
+        System.out.println(ring.capacity()); // 16, 向上取整为 2 的幂
+
+        for (int i = 0; i < 16; i++) {
+            ring.offer("m" + i);
+        }
+        System.out.println(ring.offer("m16")); // false, 队列已满
+        System.out.println(ring.size()); // 16
+
+        System.out.println(ring.poll()); // m0, 先进先出
+        System.out.println(ring.offer("m16")); // true, 槽位被释放, 可以进入下一圈
+
+        List<String> batch = new ArrayList<>();
+        System.out.println(ring.drainTo(batch, 10)); // 10, 一次 CAS 批量领取
+        System.out.println(batch.get(0) + " ~ " + batch.get(9)); // m1 ~ m10
+        System.out.println(ring.drainTo(batch, 100)); // 6
+        System.out.println(ring.poll()); // null, 队列为空
+    }
+
+    @Test
+    public void testTimedWait() throws InterruptedException {
+        for (MpmcRingBuffer.WaitStrategy strategy : MpmcRingBuffer.WaitStrategy.values()) {
+            MpmcRingBuffer<Integer> ring = new MpmcRingBuffer<>(2, strategy);
+            long start = System.nanoTime();
+            Integer value = ring.poll(100, TimeUnit.MILLISECONDS);
+            long cost = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            System.out.println(strategy + " poll 超时: " + value + ", 等待约 " + cost + "ms"); // null, 约 100ms
+
+            ring.offer(1);
+            ring.offer(2);
+            System.out.println(strategy + " offer 超时: " + ring.offer(3, 50, TimeUnit.MILLISECONDS)); // false
+
+            Thread consumer = new Thread(() -> {
+                try {
+                    Thread.sleep(50);
+                    ring.take();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            consumer.start();
+            // 消费者取走一个之后，阻塞的生产者被唤醒
+            ring.put(3);
+            consumer.join();
+            System.out.println(strategy + " put 被唤醒, size = " + ring.size()); // 2
+        }
+    }
+
+    @Test
+    public void testThroughput() throws InterruptedException {
+        int producers = 5;
+        int messages = 200_000;
+        for (int round = 0; round < 2; round++) { // 第一轮用于预热
+            System.out.println("---------- round " + round + " ----------");
+            report("synchronized + wait/notifyAll", messages, run(new MonitorQueue<>(16), producers, messages));
+            report("ArrayBlockingQueue", messages, run(new ArrayBlockingQueue<>(16), producers, messages));
+            for (MpmcRingBuffer.WaitStrategy strategy : MpmcRingBuffer.WaitStrategy.values()) {
+                if (strategy == MpmcRingBuffer.WaitStrategy.SPINNING && Runtime.getRuntime().availableProcessors() <= producers) {
+                    // 忙等的线程不会让出 CPU，核数不够时消费者可能长时间抢不到时间片
+                    System.out.println("MpmcRingBuffer(SPINNING) 需要核数 > 生产者数, 跳过");
+                    continue;
+                }
+                MpmcRingBuffer<Integer> ring = new MpmcRingBuffer<>(16, strategy);
+                report("MpmcRingBuffer(" + strategy + ")", messages, run(new Channel<>() {
+                    public void put(Integer e) throws InterruptedException { ring.put(e); }
+                    public Integer take() throws InterruptedException { return ring.take(); }
+                }, producers, messages));
+            }
+        }
+        /*
+        结果与机器核数相关，多核下趋势大致为：
+        MpmcRingBuffer(SPINNING) > MpmcRingBuffer(TIMED) > MpmcRingBuffer(BLOCKING) > ArrayBlockingQueue > synchronized + wait/notifyAll
+        单核时线程基本是轮流执行的，锁几乎没有竞争，monitor 版本的差距会小很多
+         */
+    }
+
+    private static void report(String name, int messages, long nanos) {
+        System.out.printf("%-32s %8d msg/ms%n", name, messages * 1_000_000L / nanos);
+    }
+
+    private static long run(ArrayBlockingQueue<Integer> queue, int producers, int messages) throws InterruptedException {
+        return run(new Channel<>() {
+            public void put(Integer e) throws InterruptedException { queue.put(e); }
+            public Integer take() throws InterruptedException { return queue.take(); }
+        }, producers, messages);
+    }
+
+    private static long run(Channel<Integer> channel, int producers, int messages) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        int perProducer = messages / producers;
+        for (int i = 0; i < producers; i++) {
+            Thread producer = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int j = 0; j < perProducer; j++) {
+                        channel.put(j);
+                    }
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            producer.setDaemon(true);
+            producer.start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (int i = 0; i < perProducer * producers; i++) {
+            channel.take();
+        }
+        return System.nanoTime() - begin;
+    }
+
+    interface Channel<E> {
+        void put(E e) throws InterruptedException;
+
+        E take() throws InterruptedException;
+    }
+}
+
+// 与 ProducerConsumerModelCase 中 que 的用法一致：synchronized + wait()/notifyAll()
+class MonitorQueue<E> implements MpmcRingBufferTestCase.Channel<E> {
+    private final LinkedList<E> que = new LinkedList<>();
+    private final int maxSize;
+
+    MonitorQueue(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    @Override
+    public void put(E e) throws InterruptedException {
+        synchronized (que) {
+            while (que.size() >= maxSize) {
+                que.wait();
+            }
+            que.addLast(e);
+            que.notifyAll();
+        }
+    }
+
+    @Override
+    public E take() throws InterruptedException {
+        synchronized (que) {
+            while (que.isEmpty()) {
+                que.wait();
+            }
+            E e = que.pollFirst();
+            que.notifyAll();
+            return e;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.zelon.juc;
+
+import org.junit.jupiter.api.Test;
+import org.openjdk.jol.info.ClassLayout;
+import org.openjdk.jol.vm.VM;
+import org.openjdk.jol.vm.VirtualMachine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+PaddedAtomic*Array 和 StripedCounterArray 的内存布局与用法。
+布局通过 JOL 验证：元素相对于数组起始地址的偏移 = arrayBaseOffset + 下标 × arrayIndexScale，
+数组起始地址按 8 字节对齐而不是按 64 字节对齐，所以只看偏移量之差：相邻元素相差 >= 128 字节就不会落在同一个（或相邻的一对）缓存行中。
+ */
+
+public class PaddedAtomicArrayTestCase {
+
+    private static final VirtualMachine VM_ = VM.current();
+
+    @Test
+    public void testLayout() {
+        long[] plain = new long[4];
+        long base = VM_.arrayBaseOffset("long");
+        long scale = VM_.arrayIndexScale("long");
+        System.out.println("long[] 元素偏移: " + base + ", " + (base + scale) + ", " + (base + 2 * scale)); // 16, 24, 32, 和 AtomicLongArray 内部的数组一样, 相邻元素在同一个缓存行
+        System.out.println(ClassLayout.parseInstance(plain).instanceSize()); // 48
+
+        PaddedAtomicLongArray longs = new PaddedAtomicLongArray(4);
+        System.out.println("long 元素偏移: " + offsets(base, scale, longs.index(0), longs.index(1), longs.index(3))); // 144, 272, 528
+        System.out.println("首元素之前: " + (base + longs.index(0) * scale) + " 字节, 末元素之后: "
+                + (longs.array().length - longs.index(3) - 1) * scale + " 字节"); // 首元素之前: 144 字节, 末元素之后: 120 字节
+        System.out.println(ClassLayout.parseInstance(longs.array()).instanceSize()); // 656
+
+        PaddedAtomicIntegerArray ints = new PaddedAtomicIntegerArray(4);
+        long intBase = VM_.arrayBaseOffset("int");
+        long intScale = VM_.arrayIndexScale("int");
+        System.out.println("int 元素偏移: " + offsets(intBase, intScale, ints.index(0), ints.index(1), ints.index(3))); // 144, 272, 528
+
+        PaddedAtomicReferenceArray<String> refs = new PaddedAtomicReferenceArray<>(4);
+        long refBase = VM_.arrayBaseOffset("java.lang.Object");
+        long refScale = VM_.arrayIndexScale("java.lang.Object");
+        // 压缩指针开启时引用 4 字节, 间隔 128 字节；关闭时 8 字节, 间隔 256 字节
+        System.out.println("引用大小: " + refScale + ", 元素偏移: " + offsets(refBase, refScale, refs.index(0), refs.index(1), refs.index(3))); // 引用大小: 4, 元素偏移: 144, 272, 528
+
+        // StripedCounterArray: 同一行中的 key 相邻（同一个线程写），行与行之间间隔 >= 128 字节
+        StripedCounterArray counters = new StripedCounterArray(4, 2);
+        System.out.println("行 0: " + offsets(base, scale, counters.index(0, 0), counters.index(0, 3))
+                + ", 行 1: " + offsets(base, scale, counters.index(1, 0), counters.index(1, 3))); // 行 0: 144, 168, 行 1: 304, 328
+        System.out.println("内存: " + ClassLayout.parseInstance(counters.array()).instanceSize()
+                + " vs PaddedAtomicLongArray(4): " + ClassLayout.parseInstance(new PaddedAtomicLongArray(4).array()).instanceSize()); // 内存: 464 vs PaddedAtomicLongArray(4): 656
+    }
+
+    @Test
+    public void testAtomicOperations() throws InterruptedException {
+        PaddedAtomicLongArray longs = new PaddedAtomicLongArray(3);
+        longs.set(0, 5);
+        System.out.println(longs.getAndSet(0, 7)); // 5
+        System.out.println(longs.incrementAndGet(0)); // 8
+        System.out.println(longs.addAndGet(0, 2)); // 10
+        System.out.println(longs.compareAndSet(1, 0, 42)); // true
+        System.out.println(longs); // [10, 42, 0]
+
+        PaddedAtomicIntegerArray ints = new PaddedAtomicIntegerArray(new int[]{1, 2, 3});
+        System.out.println(ints.decrementAndGet(2)); // 2
+        System.out.println(ints); // [1, 2, 2]
+
+        PaddedAtomicReferenceArray<String> refs = new PaddedAtomicReferenceArray<>(2);
+        refs.set(0, "a");
+        System.out.println(refs.updateAndGet(0, s -> s + "b")); // ab
+        System.out.println(refs); // [ab, null]
+
+        try {
+            longs.get(3);
+        } catch (IndexOutOfBoundsException e) {
+            System.out.println(e.getMessage()); // Index 3 out of bounds for length 3
+        }
+
+        // 4 个线程各自累加自己的下标, 结果和 AtomicLongArray 相同
+        AtomicLongArray expected = new AtomicLongArray(4);
+        PaddedAtomicLongArray padded = new PaddedAtomicLongArray(4);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int slot = t;
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 100_000; i++) {
+                    expected.incrementAndGet(slot);
+                    padded.incrementAndGet(slot);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) thread.join();
+        System.out.println(expected + " " + padded); // [100000, 100000, 100000, 100000] [100000, 100000, 100000, 100000]
+    }
+
+    @Test
+    public void testStripedCounters() throws InterruptedException {
+        // 8 个状态码，8 个线程都在写, 其中 key 0 是热点
+        StripedCounterArray counters = new StripedCounterArray(8, 8);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 100_000; i++) {
+                    counters.increment(0);
+                    counters.add(i & 7, 2);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) thread.join();
+        System.out.println(counters.sum(0)); // 1000000 = 8 × 100000 + 8 × 12500 × 2
+        System.out.println(counters); // [1000000, 200000, 200000, 200000, 200000, 200000, 200000, 200000]
+        System.out.println(counters.sumThenReset(1) + " " + counters.sum(1)); // 200000 0
+    }
+
+    private static String offsets(long base, long scale, int... indexes) {
+        StringBuilder b = new StringBuilder();
+        for (int index : indexes) {
+            if (b.length() > 0) b.append(", ");
+            b.append(base + index * scale);
+        }
+        return b.toString();
+    }
+}
@@ -0,0 +1,97 @@
+package com.zelon.juc;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Objects;
+
+/*
+每个元素独占缓存行的 AtomicIntegerArray，填充方式见 PaddedAtomicLongArray：
+int 只有 4 字节，一个 64 字节的缓存行放得下 16 个，伪共享比 long 更严重，元素之间同样间隔 128 字节。
+ */
+
+public class PaddedAtomicIntegerArray {
+
+    // 128 字节 / 4 字节
+    static final int PAD = 32;
+    private static final VarHandle AA = MethodHandles.arrayElementVarHandle(int[].class);
+
+    private final int[] array;
+    private final int length;
+
+    public PaddedAtomicIntegerArray(int length) {
+        if (length < 0) throw new IllegalArgumentException("length: " + length);
+        this.length = length;
+        this.array = new int[Math.multiplyExact(length + 1, PAD)];
+    }
+
+    // 和 AtomicIntegerArray(int[]) 一样复制原数组，之后的修改不影响原数组
+    public PaddedAtomicIntegerArray(int[] values) {
+        this(values.length);
+        for (int i = 0; i < values.length; i++) {
+            array[index(i)] = values[i];
+        }
+        VarHandle.releaseFence(); // 和 final 字段一样，保证构造完成后其他线程看到复制的值
+    }
+
+    public final int length() {
+        return length;
+    }
+
+    public final int get(int i) {
+        return (int) AA.getVolatile(array, index(i));
+    }
+
+    public final void set(int i, int newValue) {
+        AA.setVolatile(array, index(i), newValue);
+    }
+
+    public final void lazySet(int i, int newValue) {
+        AA.setRelease(array, index(i), newValue);
+    }
+
+    public final int getAndSet(int i, int newValue) {
+        return (int) AA.getAndSet(array, index(i), newValue);
+    }
+
+    public final boolean compareAndSet(int i, int expectedValue, int newValue) {
+        return AA.compareAndSet(array, index(i), expectedValue, newValue);
+    }
+
+    public final int getAndAdd(int i, int delta) {
+        return (int) AA.getAndAdd(array, index(i), delta);
+    }
+
+    public final int addAndGet(int i, int delta) {
+        return (int) AA.getAndAdd(array, index(i), delta) + delta;
+    }
+
+    public final int getAndIncrement(int i) {
+        return getAndAdd(i, 1);
+    }
+
+    public final int incrementAndGet(int i) {
+        return addAndGet(i, 1);
+    }
+
+    public final int decrementAndGet(int i) {
+        return addAndGet(i, -1);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder b = new StringBuilder("[");
+        for (int i = 0; i < length; i++) {
+            if (i > 0) b.append(", ");
+            b.append(get(i));
+        }
+        return b.append(']').toString();
+    }
+
+    final int index(int i) {
+        return (Objects.checkIndex(i, length) + 1) * PAD;
+    }
+
+    final int[] array() {
+        return array;
+    }
+}
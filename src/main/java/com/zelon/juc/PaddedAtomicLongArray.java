@@ -0,0 +1,105 @@
+package com.zelon.juc;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Objects;
+
+/*
+每个元素独占缓存行的 AtomicLongArray
+1. AtomicLongArray 的问题：伪共享（false sharing）
+   AtomicTestCase.atomicIntegerArrayTest 中的原子数组，相邻元素在内存中是连续的，一个 64 字节的缓存行放得下 8 个 long（16 个 int）。
+   不同线程各自修改不同下标（例如每个分片一个计数器），逻辑上没有竞争，
+   但是 CPU 缓存一致性协议（MESI）以缓存行为单位：一个核写入后，其他核中整个缓存行失效，
+   这些核下一次访问必须重新从其他核加载，多个核轮流写同一个缓存行，吞吐量随核数增加反而下降。
+
+2. 为什么不用 @Contended？
+   jdk.internal.vm.annotation.Contended 只能用于字段，不能用于数组元素，
+   并且 JDK 之外的类需要 -XX:-RestrictContended 才生效。数组也没法像 StripedStock.Cell 那样用继承的字段填充。
+
+3. 手动填充：实际数组长度为 (length + 1) × PAD，第 i 个元素放在下标 (i + 1) × PAD，相邻元素之间间隔 128 字节
+   ① 128 而不是 64 字节：Intel 的相邻行预取（spatial prefetcher）会成对加载两个缓存行
+   ② 第一个元素之前也留一段填充，避免和数组对象头（以及堆中紧挨着的其他对象）共享缓存行，最后一个元素之后同理
+   ③ 通过 MethodHandles.arrayElementVarHandle 原子访问，语义和 AtomicLongArray 相同
+   代价：每个元素占 128 字节，只适合元素个数不多、写入频繁的场景（分片计数器、每个线程一个槽位）。
+   元素很多的按 key 统计见 StripedCounterArray。
+ */
+
+public class PaddedAtomicLongArray {
+
+    // 128 字节 / 8 字节
+    static final int PAD = 16;
+    private static final VarHandle AA = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final long[] array;
+    private final int length;
+
+    public PaddedAtomicLongArray(int length) {
+        if (length < 0) throw new IllegalArgumentException("length: " + length);
+        this.length = length;
+        this.array = new long[Math.multiplyExact(length + 1, PAD)];
+    }
+
+    public final int length() {
+        return length;
+    }
+
+    public final long get(int i) {
+        return (long) AA.getVolatile(array, index(i));
+    }
+
+    public final void set(int i, long newValue) {
+        AA.setVolatile(array, index(i), newValue);
+    }
+
+    // 和 AtomicLongArray.lazySet 相同，只保证之前的写入不会重排到它之后
+    public final void lazySet(int i, long newValue) {
+        AA.setRelease(array, index(i), newValue);
+    }
+
+    public final long getAndSet(int i, long newValue) {
+        return (long) AA.getAndSet(array, index(i), newValue);
+    }
+
+    public final boolean compareAndSet(int i, long expectedValue, long newValue) {
+        return AA.compareAndSet(array, index(i), expectedValue, newValue);
+    }
+
+    public final long getAndAdd(int i, long delta) {
+        return (long) AA.getAndAdd(array, index(i), delta);
+    }
+
+    public final long addAndGet(int i, long delta) {
+        return (long) AA.getAndAdd(array, index(i), delta) + delta;
+    }
+
+    public final long getAndIncrement(int i) {
+        return getAndAdd(i, 1);
+    }
+
+    public final long incrementAndGet(int i) {
+        return addAndGet(i, 1);
+    }
+
+    public final long decrementAndGet(int i) {
+        return addAndGet(i, -1);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder b = new StringBuilder("[");
+        for (int i = 0; i < length; i++) {
+            if (i > 0) b.append(", ");
+            b.append(get(i));
+        }
+        return b.append(']').toString();
+    }
+
+    // 第 i 个元素在内部数组中的下标
+    final int index(int i) {
+        return (Objects.checkIndex(i, length) + 1) * PAD;
+    }
+
+    final long[] array() {
+        return array;
+    }
+}
@@ -0,0 +1,82 @@
+package com.zelon.juc;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Objects;
+import java.util.function.UnaryOperator;
+
+/*
+每个元素独占缓存行的 AtomicReferenceArray，填充方式见 PaddedAtomicLongArray。
+引用在开启压缩指针（默认，堆小于 32G）时占 4 字节，否则 8 字节，按 4 字节计算间隔，保证两种情况下都至少间隔 128 字节。
+填充的槽位一直是 null，不会额外引用任何对象。
+ */
+
+public class PaddedAtomicReferenceArray<E> {
+
+    static final int PAD = 32;
+    private static final VarHandle AA = MethodHandles.arrayElementVarHandle(Object[].class);
+
+    private final Object[] array;
+    private final int length;
+
+    public PaddedAtomicReferenceArray(int length) {
+        if (length < 0) throw new IllegalArgumentException("length: " + length);
+        this.length = length;
+        this.array = new Object[Math.multiplyExact(length + 1, PAD)];
+    }
+
+    public final int length() {
+        return length;
+    }
+
+    @SuppressWarnings("unchecked")
+    public final E get(int i) {
+        return (E) AA.getVolatile(array, index(i));
+    }
+
+    public final void set(int i, E newValue) {
+        AA.setVolatile(array, index(i), newValue);
+    }
+
+    public final void lazySet(int i, E newValue) {
+        AA.setRelease(array, index(i), newValue);
+    }
+
+    @SuppressWarnings("unchecked")
+    public final E getAndSet(int i, E newValue) {
+        return (E) AA.getAndSet(array, index(i), newValue);
+    }
+
+    public final boolean compareAndSet(int i, E expectedValue, E newValue) {
+        return AA.compareAndSet(array, index(i), expectedValue, newValue);
+    }
+
+    // CAS 失败时重新读取再计算，fn 可能被调用多次，不能有副作用
+    public final E updateAndGet(int i, UnaryOperator<E> fn) {
+        int index = index(i);
+        for (;;) {
+            @SuppressWarnings("unchecked")
+            E prev = (E) AA.getVolatile(array, index);
+            E next = fn.apply(prev);
+            if (AA.compareAndSet(array, index, prev, next)) return next;
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder b = new StringBuilder("[");
+        for (int i = 0; i < length; i++) {
+            if (i > 0) b.append(", ");
+            b.append(get(i));
+        }
+        return b.append(']').toString();
+    }
+
+    final int index(int i) {
+        return (Objects.checkIndex(i, length) + 1) * PAD;
+    }
+
+    final Object[] array() {
+        return array;
+    }
+}
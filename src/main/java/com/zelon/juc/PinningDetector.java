@@ -0,0 +1,153 @@
+package com.zelon.juc;
+
+import jdk.jfr.consumer.RecordedClass;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.Value;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+虚拟线程 pinning 检测
+1. 原理：通过 JFR 的 RecordingStream 在进程内订阅以下事件（不需要落盘），只保留发生在虚拟线程上的：
+   ① jdk.VirtualThreadPinned: 虚拟线程在 synchronized 内 sleep / park / IO 时无法卸载，阻塞超过阈值时产生
+   ② jdk.JavaMonitorWait: JDK 21 中虚拟线程调用 Object.wait() 一定会钉住载体线程，而且不会产生 ① 事件
+   ③ jdk.JavaMonitorEnter: 虚拟线程进入 synchronized 时被阻塞，同样会钉住载体线程
+   ②③ 事件中带有 monitor 的类型，①没有 monitor 信息。
+2. 聚合：按 原因 + monitor 类型 + 调用栈中前两个业务代码帧（跳过 java.* / jdk.* 等 JDK 内部帧）聚合，
+   统计次数、总时长、最长时长，第一个业务代码帧通常就在 synchronized 代码块内。
+3. 开销：事件只在阻塞超过阈值时才产生，阈值默认 1ms，没有 pinning 时几乎没有开销。
+   也可以用 -Djdk.tracePinnedThreads=full 打印到标准输出，但只适合排查问题，不适合常开。
+ */
+
+public class PinningDetector implements AutoCloseable {
+
+    public enum Reason {
+        PARK("jdk.VirtualThreadPinned"),
+        WAIT("jdk.JavaMonitorWait"),
+        MONITOR_ENTER("jdk.JavaMonitorEnter");
+
+        final String event;
+
+        Reason(String event) {
+            this.event = event;
+        }
+    }
+
+    private final RecordingStream stream;
+    private final ConcurrentHashMap<String, SiteStats> sites = new ConcurrentHashMap<>();
+
+    public PinningDetector() {
+        this(Duration.ofMillis(1));
+    }
+
+    public PinningDetector(Duration threshold) {
+        stream = new RecordingStream();
+        for (Reason reason : Reason.values()) {
+            stream.enable(reason.event).withThreshold(threshold).withStackTrace();
+            stream.onEvent(reason.event, event -> onEvent(reason, event));
+        }
+        stream.startAsync();
+    }
+
+    private void onEvent(Reason reason, RecordedEvent event) {
+        // 平台线程上的 monitor 等待不涉及载体线程，忽略
+        if (reason != Reason.PARK && (event.getThread() == null || !event.getThread().isVirtual())) return;
+        String monitor = reason == Reason.PARK ? null : monitorClass(event);
+        String site = pinnedSite(event.getStackTrace());
+        String key = reason + "|" + monitor + "|" + site;
+        sites.computeIfAbsent(key, k -> new SiteStats(reason, monitor, site)).record(event.getDuration().toNanos());
+    }
+
+    private static String monitorClass(RecordedEvent event) {
+        RecordedClass monitorClass = event.getClass("monitorClass");
+        return monitorClass == null ? "<unknown>" : monitorClass.getName();
+    }
+
+    private static String pinnedSite(RecordedStackTrace stackTrace) {
+        if (stackTrace == null || stackTrace.getFrames().isEmpty()) return "<unknown>";
+        List<String> userFrames = new ArrayList<>(2);
+        for (RecordedFrame frame : stackTrace.getFrames()) {
+            String type = frame.getMethod().getType().getName();
+            if (!isJdkFrame(type)) {
+                userFrames.add(type + "." + frame.getMethod().getName() + ":" + frame.getLineNumber());
+                if (userFrames.size() == 2) break;
+            }
+        }
+        if (userFrames.isEmpty()) {
+            RecordedFrame top = stackTrace.getFrames().get(0);
+            return top.getMethod().getType().getName() + "." + top.getMethod().getName();
+        }
+        return String.join(" <- ", userFrames);
+    }
+
+    private static boolean isJdkFrame(String type) {
+        // lambda 生成的隐藏类也跳过
+        return type.startsWith("java.") || type.startsWith("jdk.") || type.startsWith("sun.") || type.contains("$$Lambda");
+    }
+
+    // 按总钉住时长从高到低排序
+    public List<PinnedSite> report() {
+        List<PinnedSite> result = new ArrayList<>();
+        sites.values().forEach(stats -> result.add(new PinnedSite(stats.reason, stats.monitorClass, stats.site,
+                stats.count.sum(), Duration.ofNanos(stats.totalNanos.sum()), Duration.ofNanos(stats.maxNanos.get()))));
+        result.sort(Comparator.comparing(PinnedSite::getTotal).reversed());
+        return result;
+    }
+
+    // 停止订阅，等待已经产生的事件处理完，返回最终报告
+    public List<PinnedSite> stopAndReport() {
+        stream.stop();
+        return report();
+    }
+
+    @Override
+    public void close() {
+        stream.close();
+    }
+
+    @Value
+    public static class PinnedSite {
+        Reason reason;
+        String monitorClass; // PARK 事件没有 monitor 信息，为 null
+        String site;
+        long count;
+        Duration total;
+        Duration max;
+
+        @Override
+        public String toString() {
+            return String.format("%-13s %s  %s  count=%d, total=%dms, max=%dms", reason,
+                    monitorClass == null ? "-" : monitorClass, site, count, total.toMillis(), max.toMillis());
+        }
+    }
+
+    private static final class SiteStats {
+        final Reason reason;
+        final String monitorClass;
+        final String site;
+        final LongAdder count = new LongAdder();
+        final LongAdder totalNanos = new LongAdder();
+        final AtomicLong maxNanos = new AtomicLong();
+
+        SiteStats(Reason reason, String monitorClass, String site) {
+            this.reason = reason;
+            this.monitorClass = monitorClass;
+            this.site = site;
+        }
+
+        void record(long nanos) {
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+    }
+}
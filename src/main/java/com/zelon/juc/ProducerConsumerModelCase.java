@@ -1,7 +1,10 @@
 package com.zelon.juc;
 
+import java.util.ArrayList;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
 
 /*
 1. obj.wait() 让线程进入阻塞状态，obj.notify() 唤醒
@@ -13,12 +16,40 @@ import java.util.UUID;
 ① wait() 是 Object 类的方法，sleep() 是 Thread 类的方法，wait() 调用需要依赖 synchronized,
 ② wait() 释放锁，sleep() 不会释放锁,
 ③ wait() 等待时间参数是可选的，线程可以转化为 time_waiting/waiting 两种状态, sleep 只能转化为 time_waiting 状态
+
+3. wait()/notifyAll() 版本的问题？
+所有生产者和消费者都竞争 que 的 monitor，每次 notifyAll() 都会唤醒全部线程，大部分唤醒都是无效的，
+5 个生产者并发时 monitor 会膨胀为重量级锁。启动参数传入 ring 时改用无锁环形队列 MpmcRingBuffer，
+生产者、消费者只在队列满/空时才阻塞，吞吐量对比见 MpmcRingBufferTestCase。
+
+4. 每条消息都要分配一个 UUID 字符串（ring 模式下 LinkedList 的节点没有了，但消息对象还在），消息速率高时 young GC 非常频繁。
+启动参数传入 slots 时改用 EventRing：槽位上的 Message 对象预先分配好，生产者原地写入 UUID 的两个 long，
+消费者原地读取，消息路径上不再分配对象（打印本身除外），分配量和 GC 次数对比见 EventRingTestCase。
+
+5. 用 JFR 录制时，que.wait() 只会显示为 jdk.JavaMonitorWait，看不出是队列空还是队列满，
+这里在 wait() 前后加了 com.zelon.juc.QueueStall 事件（take 表示消费者等队列空，put 表示生产者等队列满），
+超过 1 ms 才记录；ring 模式下 MpmcRingBuffer 的 put / take 也会输出同样的事件，见 JfrEvents。
  */
 
 public class ProducerConsumerModelCase {
     private static final LinkedList<String> que = new LinkedList<>();
     private static final int MAX_SIZE = 10;
+    // 容量会向上取整为 2 的幂，即 16
+    private static final MpmcRingBuffer<String> ring = new MpmcRingBuffer<>(MAX_SIZE);
+    // 可变的消息对象，每个槽位一个，一直复用
+    static final class Message {
+        long mostSigBits, leastSigBits;
+    }
+    private static final EventRing<Message> slots = new EventRing<>(MAX_SIZE, Message::new);
     public static void main(String[] args) {
+        if(args.length > 0 && "ring".equals(args[0])){
+            ringBufferModel();
+            return;
+        }
+        if(args.length > 0 && "slots".equals(args[0])){
+            eventSlotModel();
+            return;
+        }
 
         // 生产者
         for(int i = 0; i < 5; i++){
@@ -35,11 +66,14 @@ public class ProducerConsumerModelCase {
                         System.out.println(Thread.currentThread().getName() + " 消费消息：" + message);
                         que.notifyAll(); // 唤醒生产者, 可以生产消息了
                     }else{
+                        JfrEvents.QueueStall stall = JfrEvents.beginQueueStall("ProducerConsumerModelCase.que", "take", MAX_SIZE);
                         try {
                             System.out.println("队列已空，消费者先休息");
                             que.wait(); // 阻塞当前线程，并释放锁
                         } catch (InterruptedException e) {
                             que.notifyAll(); // 如果出现异常，则手动唤醒其他线程
+                        } finally {
+                            JfrEvents.commit(stall);
                         }
                     }
                 }
@@ -60,11 +94,14 @@ public class ProducerConsumerModelCase {
                         System.out.println(Thread.currentThread().getName() + " 生产消息：" + message);
                         que.notifyAll(); // 唤醒消费者，让他们继续消费
                     }else{
+                        JfrEvents.QueueStall stall = JfrEvents.beginQueueStall("ProducerConsumerModelCase.que", "put", MAX_SIZE);
                         try {
                             System.out.println("队列已饱和，" + Thread.currentThread().getName() + "先休息");
                             que.wait();
                         } catch (InterruptedException e) {
                             que.notifyAll();
+                        } finally {
+                            JfrEvents.commit(stall);
                         }
                     }
                 }
@@ -73,4 +110,64 @@ public class ProducerConsumerModelCase {
         producer.setName("生产者" + i);
         return producer;
     }
-}
\ No newline at end of file
+
+    private static void ringBufferModel() {
+        for(int i = 0; i < 5; i++){
+            Thread producer = new Thread(() -> {
+                try {
+                    while(true){
+                        String message = UUID.randomUUID().toString();
+                        ring.put(message); // 队列满时才阻塞，不需要 synchronized
+                        System.out.println(Thread.currentThread().getName() + " 生产消息：" + message);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            producer.setName("生产者" + i);
+            producer.start();
+        }
+
+        Thread consumer = new Thread(() -> {
+            List<String> batch = new ArrayList<>(MAX_SIZE);
+            try {
+                while(true){
+                    batch.add(ring.take()); // 队列为空时阻塞
+                    ring.drainTo(batch, MAX_SIZE - 1); // 顺便把已发布的消息批量取走
+                    for (String message : batch) {
+                        System.out.println(Thread.currentThread().getName() + " 消费消息：" + message);
+                    }
+                    batch.clear();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        consumer.setName("消费者");
+        consumer.start();
+    }
+
+    private static void eventSlotModel() {
+        for(int i = 0; i < 5; i++){
+            Thread producer = new Thread(() -> {
+                while(true){
+                    long seq = slots.next(); // 领取槽位，缓冲区满时等待
+                    Message message = slots.get(seq);
+                    // 和 UUID.randomUUID() 一样的 128 位随机数，直接写入槽位上的对象
+                    message.mostSigBits = ThreadLocalRandom.current().nextLong();
+                    message.leastSigBits = ThreadLocalRandom.current().nextLong();
+                    slots.publish(seq);
+                }
+            });
+            producer.setName("生产者" + i);
+            producer.start();
+        }
+
+        Thread consumer = new Thread(() -> slots.run((message, seq, endOfBatch) -> {
+            // 原地读取；只有打印时才转成字符串
+            System.out.println(Thread.currentThread().getName() + " 消费消息：" + new UUID(message.mostSigBits, message.leastSigBits));
+        }));
+        consumer.setName("消费者");
+        consumer.start();
+    }
+}
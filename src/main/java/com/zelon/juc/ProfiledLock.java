@@ -0,0 +1,300 @@
+package com.zelon.juc;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+
+/*
+带统计的 Lock 包装（由 LockProfiler.lock(site, delegate) 创建）
+1. 获取锁：
+   ① 先 tryLock()，成功说明没有竞争，只记录一次获取
+   ② 失败则进入竞争路径：等待线程数 + 1，先 tryLock(阈值) 等待一小段时间，
+      还拿不到说明持有者占用时间较长，这时持有者还没释放，抓取它的调用栈（按 site 限频），然后再阻塞等待
+2. 持有时间：最外层加锁到最外层解锁（可重入时只统计一次），Condition.await() 期间锁被释放，不计入持有时间
+   JFR 录制开启时，超过阈值的等待和持有同时输出 com.zelon.juc.LockAcquire / LockHold 事件（见 JfrEvents），
+   没有竞争的获取不创建事件对象
+3. 只适用于独占锁（ReentrantLock、ReentrantReadWriteLock.writeLock()），共享锁有多个持有者，持有时间没有意义
+ */
+
+public class ProfiledLock implements Lock {
+
+    private final LockProfiler profiler;
+    private final LockProfiler.Site site;
+    private final Lock delegate;
+
+    // 以下字段只由持有锁的线程写入
+    private volatile Thread owner;
+    private int holdDepth;
+    private long acquiredAt;
+    private JfrEvents.LockHold holdEvent; // 没有录制在收集 LockHold 时为 null
+
+    ProfiledLock(LockProfiler profiler, LockProfiler.Site site, Lock delegate) {
+        this.profiler = profiler;
+        this.site = site;
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void lock() {
+        if (delegate.tryLock()) {
+            acquired(0, false);
+            return;
+        }
+        long start = System.nanoTime();
+        JfrEvents.LockAcquire event = beginAcquire();
+        site.enterWait();
+        try {
+            boolean uninterrupted = true;
+            try {
+                if (!delegate.tryLock(profiler.ownerSampleThresholdNanos(), TimeUnit.NANOSECONDS)) {
+                    sampleOwner();
+                    delegate.lock();
+                }
+            } catch (InterruptedException e) {
+                // lock() 不响应中断，恢复中断标记后继续等待
+                uninterrupted = false;
+                delegate.lock();
+            }
+            if (!uninterrupted) Thread.currentThread().interrupt();
+        } finally {
+            site.exitWait();
+        }
+        commitAcquire(event, true);
+        acquired(System.nanoTime() - start, true);
+    }
+
+    @Override
+    public void lockInterruptibly() throws InterruptedException {
+        if (Thread.interrupted()) throw new InterruptedException();
+        if (delegate.tryLock()) {
+            acquired(0, false);
+            return;
+        }
+        long start = System.nanoTime();
+        JfrEvents.LockAcquire event = beginAcquire();
+        site.enterWait();
+        try {
+            if (!delegate.tryLock(profiler.ownerSampleThresholdNanos(), TimeUnit.NANOSECONDS)) {
+                sampleOwner();
+                delegate.lockInterruptibly();
+            }
+        } finally {
+            site.exitWait();
+        }
+        commitAcquire(event, true);
+        acquired(System.nanoTime() - start, true);
+    }
+
+    @Override
+    public boolean tryLock() {
+        if (delegate.tryLock()) {
+            acquired(0, false);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+        if (delegate.tryLock()) {
+            acquired(0, false);
+            return true;
+        }
+        long start = System.nanoTime();
+        long timeout = unit.toNanos(time);
+        long threshold = profiler.ownerSampleThresholdNanos();
+        boolean locked;
+        JfrEvents.LockAcquire event = beginAcquire();
+        site.enterWait();
+        try {
+            if (timeout <= threshold) {
+                locked = delegate.tryLock(timeout, TimeUnit.NANOSECONDS);
+            } else {
+                locked = delegate.tryLock(threshold, TimeUnit.NANOSECONDS);
+                if (!locked) {
+                    sampleOwner();
+                    locked = delegate.tryLock(timeout - (System.nanoTime() - start), TimeUnit.NANOSECONDS);
+                }
+            }
+        } finally {
+            site.exitWait();
+        }
+        commitAcquire(event, locked);
+        if (locked) acquired(System.nanoTime() - start, true);
+        return locked;
+    }
+
+    @Override
+    public void unlock() {
+        if (owner == Thread.currentThread() && --holdDepth == 0) {
+            site.hold.record(System.nanoTime() - acquiredAt);
+            endHold();
+            owner = null;
+        }
+        delegate.unlock();
+    }
+
+    @Override
+    public Condition newCondition() {
+        return new ProfiledCondition(delegate.newCondition());
+    }
+
+    public String site() {
+        return site.name;
+    }
+
+    private void acquired(long waitNanos, boolean contended) {
+        site.recordWait(waitNanos, contended);
+        if (holdDepth++ == 0) {
+            acquiredAt = System.nanoTime();
+            owner = Thread.currentThread();
+            beginHold();
+        }
+    }
+
+    // 只在竞争路径上调用；owner 是开始等待时的持有者
+    private JfrEvents.LockAcquire beginAcquire() {
+        JfrEvents.LockAcquire event = new JfrEvents.LockAcquire();
+        event.owner = owner;
+        event.begin();
+        return event;
+    }
+
+    private void commitAcquire(JfrEvents.LockAcquire event, boolean acquired) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.site = site.name;
+            event.acquired = acquired;
+            event.commit();
+        }
+    }
+
+    private void beginHold() {
+        if (JfrEvents.LOCK_HOLD.isEnabled()) {
+            holdEvent = new JfrEvents.LockHold();
+            holdEvent.begin();
+        }
+    }
+
+    private void endHold() {
+        JfrEvents.LockHold event = holdEvent;
+        if (event == null) return;
+        holdEvent = null;
+        event.end();
+        if (event.shouldCommit()) {
+            event.site = site.name;
+            event.commit();
+        }
+    }
+
+    private void sampleOwner() {
+        Thread o = owner;
+        if (o != null && site.shouldSampleOwner(System.nanoTime(), profiler.ownerSampleIntervalNanos())) {
+            site.recordOwnerStack(o.getStackTrace());
+        }
+    }
+
+    // await() 会完全释放锁，返回前重新获取：释放前结束本次持有，返回后重新开始计时
+    private final class ProfiledCondition implements Condition {
+        private final Condition delegate;
+
+        ProfiledCondition(Condition delegate) {
+            this.delegate = delegate;
+        }
+
+        // 不是通过这个 ProfiledLock 持有锁的线程（没有持有锁，或者直接对底层锁加的锁）调用 await 时，
+        // 直接交给底层的 Condition：没有持有锁时由它抛出 IllegalMonitorStateException，不能改动持有者的统计状态
+        private boolean owned() {
+            return owner == Thread.currentThread();
+        }
+
+        // 调用前已经确认当前线程是持有者
+        private int release() {
+            int depth = holdDepth;
+            site.hold.record(System.nanoTime() - acquiredAt);
+            endHold();
+            owner = null;
+            holdDepth = 0;
+            return depth;
+        }
+
+        private void reacquired(int depth) {
+            holdDepth = depth;
+            acquiredAt = System.nanoTime();
+            owner = Thread.currentThread();
+            beginHold();
+        }
+
+        @Override
+        public void await() throws InterruptedException {
+            if (!owned()) {
+                delegate.await();
+                return;
+            }
+            int depth = release();
+            try {
+                delegate.await();
+            } finally {
+                reacquired(depth);
+            }
+        }
+
+        @Override
+        public void awaitUninterruptibly() {
+            if (!owned()) {
+                delegate.awaitUninterruptibly();
+                return;
+            }
+            int depth = release();
+            try {
+                delegate.awaitUninterruptibly();
+            } finally {
+                reacquired(depth);
+            }
+        }
+
+        @Override
+        public long awaitNanos(long nanosTimeout) throws InterruptedException {
+            if (!owned()) return delegate.awaitNanos(nanosTimeout);
+            int depth = release();
+            try {
+                return delegate.awaitNanos(nanosTimeout);
+            } finally {
+                reacquired(depth);
+            }
+        }
+
+        @Override
+        public boolean await(long time, TimeUnit unit) throws InterruptedException {
+            if (!owned()) return delegate.await(time, unit);
+            int depth = release();
+            try {
+                return delegate.await(time, unit);
+            } finally {
+                reacquired(depth);
+            }
+        }
+
+        @Override
+        public boolean awaitUntil(Date deadline) throws InterruptedException {
+            if (!owned()) return delegate.awaitUntil(deadline);
+            int depth = release();
+            try {
+                return delegate.awaitUntil(deadline);
+            } finally {
+                reacquired(depth);
+            }
+        }
+
+        @Override
+        public void signal() {
+            delegate.signal();
+        }
+
+        @Override
+        public void signalAll() {
+            delegate.signalAll();
+        }
+    }
+}
@@ -53,6 +53,11 @@ tryReleaseShared(int)：共享方式。尝试释放资源，如果释放后允
 这些方法都是 protected (并没有在 AQS 具体实现，而是直接抛出异常) 而不是 abstract 方法,
 这样子类只需要实现自己关心的抽象方法即可，不用全部实现一遍,
 比如 信号 Semaphore 只需要实现 tryAcquire 方法而不用实现其余不需要用到的模版方法：
+
+用 JFR 排查锁等待？
+lock() 拿不到锁时线程 park 在 AQS 上，JFR 录制中只有一条 jdk.ThreadPark，看不出等的是哪把锁、谁在持有。
+用 LockProfiler.lock(site, reentrantLock) 包装之后，等待超过 1 ms 输出 com.zelon.juc.LockAcquire（带 site 和持有者线程），
+持有超过 10 ms 输出 com.zelon.juc.LockHold，没有竞争的加锁不产生事件，见 JfrEvents、JfrEventsTestCase。
  */
 
 public class ReentrantLockTestCase {
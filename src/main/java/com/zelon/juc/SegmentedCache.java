@@ -0,0 +1,349 @@
+package com.zelon.juc;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+/*
+分段缓存：读多写少（99% 读）的配置 / 价格查询缓存
+1. 为什么不用一个 ReentrantReadWriteLock 保护 HashMap？
+   ReentrantLockTestCase.testReadWriteLock 中，写锁排队时后来的读线程（t5）也要等，
+   并且每次读锁都要 CAS 修改同一个 state，读线程之间也在争抢同一个缓存行。
+
+2. 结构：按 key 的哈希分为多个 Segment（类似 JDK 7 的 ConcurrentHashMap），每个 Segment 一把 StampedLock
+   ① 读：先乐观读（tryOptimisticRead），读完 validate，期间没有写入就直接返回，不写任何共享变量；
+      validate 失败说明有写入，退化为悲观读锁重新读一次
+   ② 写：Segment 的写锁，只阻塞同一个 Segment 的读写
+   ③ 链表节点的 key、hash、next 都是 final 的，删除节点时复制它前面的节点，
+      乐观读期间即使遇到并发修改，看到的也是一条完整的旧链表，不会死循环或越界，再由 validate 丢弃结果
+
+3. 容量淘汰（采样 LRU，类似 Redis 的 allkeys-lru）：
+   Segment 中的条目数超过上限时，随机采样 sampleSize 个条目，优先淘汰已过期的，否则淘汰最久没有访问的。
+   不维护 LRU 链表，命中时不需要加锁移动节点，只是把 Segment 的逻辑时钟写入节点（没变化就不写，减少缓存行失效）。
+   逻辑时钟在每次写入时加 1，而不是读取 System.nanoTime()：读路径上一次 nanoTime() 的开销比整个查找还大，
+   淘汰只发生在写入时，"在最近一次写入之后有没有被访问过" 已经足够区分冷热。
+
+4. TTL：每个条目单独设置过期时间，读到过期条目按未命中处理，由后续的写入 / 淘汰 / cleanUp() 清理。
+
+5. 统计：命中、未命中、淘汰、过期、乐观读失败次数，LongAdder 计数。
+ */
+
+public class SegmentedCache<K, V> {
+
+    @Value
+    @Builder
+    public static class Options {
+        @Builder.Default int maximumSize = 10_000;
+        // Segment 个数，向上取整为 2 的幂
+        @Builder.Default int segments = 16;
+        // 默认过期时间，0 表示不过期
+        @Builder.Default long defaultTtlMillis = 0;
+        // 淘汰时的采样个数
+        @Builder.Default int sampleSize = 8;
+    }
+
+    @Value
+    public static class Stats {
+        long hits;
+        long misses;
+        long evictions;
+        long expirations;
+        // 乐观读失败、退化为悲观读的次数
+        long optimisticFallbacks;
+
+        public double hitRate() {
+            long total = hits + misses;
+            return total == 0 ? 0 : (double) hits / total;
+        }
+    }
+
+    private final Segment<K, V>[] segments;
+    private final int segmentShift;
+    private final long defaultTtlNanos;
+    private final int sampleSize;
+
+    final LongAdder hits = new LongAdder();
+    final LongAdder misses = new LongAdder();
+    final LongAdder evictions = new LongAdder();
+    final LongAdder expirations = new LongAdder();
+    final LongAdder optimisticFallbacks = new LongAdder();
+
+    public SegmentedCache(int maximumSize) {
+        this(Options.builder().maximumSize(maximumSize).build());
+    }
+
+    @SuppressWarnings("unchecked")
+    public SegmentedCache(Options options) {
+        if (options.getMaximumSize() < 1) throw new IllegalArgumentException("maximumSize: " + options.getMaximumSize());
+        if (options.getSegments() < 1 || options.getSegments() > (1 << 16)) throw new IllegalArgumentException("segments: " + options.getSegments());
+        int n = options.getSegments() == 1 ? 1 : Integer.highestOneBit(options.getSegments() - 1) << 1;
+        this.segments = new Segment[n];
+        this.segmentShift = 32 - Integer.numberOfTrailingZeros(n);
+        int perSegment = Math.max(1, (options.getMaximumSize() + n - 1) / n);
+        for (int i = 0; i < n; i++) {
+            segments[i] = new Segment<>(this, perSegment);
+        }
+        this.defaultTtlNanos = TimeUnit.MILLISECONDS.toNanos(options.getDefaultTtlMillis());
+        this.sampleSize = Math.max(1, options.getSampleSize());
+    }
+
+    public V get(K key) {
+        int h = hash(key);
+        return segmentFor(h).get(key, h);
+    }
+
+    public V getOrDefault(K key, V defaultValue) {
+        V v = get(key);
+        return v == null ? defaultValue : v;
+    }
+
+    public V put(K key, V value) {
+        return put(key, value, defaultTtlNanos, TimeUnit.NANOSECONDS);
+    }
+
+    // ttl <= 0 表示不过期；返回旧值（旧值已过期则返回 null）
+    public V put(K key, V value, long ttl, TimeUnit unit) {
+        if (value == null) throw new NullPointerException("value");
+        int h = hash(key);
+        long now = System.nanoTime();
+        long expireAt = ttl > 0 ? now + unit.toNanos(ttl) : 0;
+        return segmentFor(h).put(key, h, value, expireAt, now);
+    }
+
+    public V remove(K key) {
+        int h = hash(key);
+        return segmentFor(h).remove(key, h, System.nanoTime());
+    }
+
+    // 包括已过期但还没有被清理的条目
+    public int size() {
+        long sum = 0;
+        for (Segment<K, V> s : segments) {
+            sum += s.count;
+        }
+        return (int) Math.min(sum, Integer.MAX_VALUE);
+    }
+
+    public void clear() {
+        for (Segment<K, V> s : segments) {
+            s.clear();
+        }
+    }
+
+    // 清理所有已过期的条目，返回清理的个数
+    public int cleanUp() {
+        int removed = 0;
+        long now = System.nanoTime();
+        for (Segment<K, V> s : segments) {
+            removed += s.removeExpired(now);
+        }
+        return removed;
+    }
+
+    public Stats stats() {
+        return new Stats(hits.sum(), misses.sum(), evictions.sum(), expirations.sum(), optimisticFallbacks.sum());
+    }
+
+    private Segment<K, V> segmentFor(int h) {
+        return segments.length == 1 ? segments[0] : segments[h >>> segmentShift];
+    }
+
+    // 高位用于选择 Segment，低位用于选择桶
+    private static int hash(Object key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    static final class Node<K, V> {
+        final K key;
+        final int hash;
+        final Node<K, V> next;
+        // 以下字段在写锁下修改，乐观读时的不一致由 validate 发现
+        V value;
+        long expireAt;
+        // 命中时不加锁写入，只用于淘汰时比较新旧，竞争写入丢失也没有关系
+        long accessTick;
+
+        Node(K key, int hash, V value, long expireAt, long accessTick, Node<K, V> next) {
+            this.key = key;
+            this.hash = hash;
+            this.value = value;
+            this.expireAt = expireAt;
+            this.accessTick = accessTick;
+            this.next = next;
+        }
+
+        boolean isExpired(long now) {
+            return expireAt != 0 && now - expireAt >= 0;
+        }
+    }
+
+    static final class Segment<K, V> {
+        private final SegmentedCache<K, V> cache;
+        private final StampedLock lock = new StampedLock();
+        private final int maxCount;
+        private Node<K, V>[] table;
+        volatile int count;
+        // 逻辑时钟，写锁下递增，读线程不加锁读取
+        private long clock;
+
+        @SuppressWarnings("unchecked")
+        Segment(SegmentedCache<K, V> cache, int maxCount) {
+            this.cache = cache;
+            this.maxCount = maxCount;
+            int cap = 4;
+            while (cap * 3 / 4 < maxCount && cap < (1 << 30)) cap <<= 1;
+            // 容量上限固定，按上限一次分配好，不需要扩容
+            this.table = new Node[cap];
+        }
+
+        V get(K key, int h) {
+            long stamp = lock.tryOptimisticRead();
+            Node<K, V> node = find(key, h);
+            V value = node == null ? null : node.value;
+            long expireAt = node == null ? 0 : node.expireAt;
+            if (!lock.validate(stamp)) {
+                // 乐观读期间有写入，退化为悲观读锁
+                cache.optimisticFallbacks.increment();
+                stamp = lock.readLock();
+                try {
+                    node = find(key, h);
+                    value = node == null ? null : node.value;
+                    expireAt = node == null ? 0 : node.expireAt;
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+            if (value == null) {
+                cache.misses.increment();
+                return null;
+            }
+            // 只有设置了 TTL 的条目才需要读取时间
+            if (expireAt != 0 && System.nanoTime() - expireAt >= 0) {
+                cache.misses.increment();
+                return null;
+            }
+            long t = clock;
+            if (node.accessTick != t) node.accessTick = t;
+            cache.hits.increment();
+            return value;
+        }
+
+        private Node<K, V> find(Object key, int h) {
+            Node<K, V>[] tab = table;
+            for (Node<K, V> e = tab[h & (tab.length - 1)]; e != null; e = e.next) {
+                if (e.hash == h && (e.key == key || e.key.equals(key))) return e;
+            }
+            return null;
+        }
+
+        V put(K key, int h, V value, long expireAt, long now) {
+            long stamp = lock.writeLock();
+            try {
+                long t = ++clock;
+                Node<K, V> node = find(key, h);
+                if (node != null) {
+                    V old = node.isExpired(now) ? null : node.value;
+                    node.value = value;
+                    node.expireAt = expireAt;
+                    node.accessTick = t;
+                    return old;
+                }
+                if (count >= maxCount) {
+                    evict(now);
+                }
+                Node<K, V>[] tab = table;
+                int i = h & (tab.length - 1);
+                tab[i] = new Node<>(key, h, value, expireAt, t, tab[i]);
+                count++;
+                return null;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        V remove(K key, int h, long now) {
+            long stamp = lock.writeLock();
+            try {
+                Node<K, V> node = find(key, h);
+                if (node == null) return null;
+                unlink(node);
+                return node.isExpired(now) ? null : node.value;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        // 采样淘汰一个条目，调用方持有写锁
+        private void evict(long now) {
+            Node<K, V>[] tab = table;
+            int mask = tab.length - 1;
+            int start = ThreadLocalRandom.current().nextInt(tab.length);
+            Node<K, V> victim = null;
+            int sampled = 0;
+            // 从随机位置开始扫描桶，直到采够 sampleSize 个条目
+            for (int i = 0; i < tab.length && sampled < cache.sampleSize; i++) {
+                for (Node<K, V> e = tab[(start + i) & mask]; e != null; e = e.next) {
+                    if (e.isExpired(now)) {
+                        unlink(e);
+                        cache.expirations.increment();
+                        return;
+                    }
+                    if (victim == null || e.accessTick < victim.accessTick) victim = e;
+                    sampled++;
+                }
+            }
+            if (victim != null) {
+                unlink(victim);
+                cache.evictions.increment();
+            }
+        }
+
+        // 删除节点：复制它前面的节点，后面的节点原样复用，调用方持有写锁
+        private void unlink(Node<K, V> node) {
+            Node<K, V>[] tab = table;
+            int i = node.hash & (tab.length - 1);
+            Node<K, V> newHead = node.next;
+            for (Node<K, V> e = tab[i]; e != node; e = e.next) {
+                newHead = new Node<>(e.key, e.hash, e.value, e.expireAt, e.accessTick, newHead);
+            }
+            tab[i] = newHead;
+            count--;
+        }
+
+        int removeExpired(long now) {
+            long stamp = lock.writeLock();
+            try {
+                int removed = 0;
+                Node<K, V>[] tab = table;
+                for (Node<K, V> head : tab) {
+                    for (Node<K, V> e = head; e != null; e = e.next) {
+                        if (e.isExpired(now)) {
+                            unlink(e);
+                            removed++;
+                        }
+                    }
+                }
+                cache.expirations.add(removed);
+                return removed;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        void clear() {
+            long stamp = lock.writeLock();
+            try {
+                table = new Node[table.length];
+                count = 0;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+    }
+}
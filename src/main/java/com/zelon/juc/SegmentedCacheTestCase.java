@@ -0,0 +1,98 @@
+package com.zelon.juc;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+SegmentedCache 的用法：TTL、容量淘汰、统计，以及读线程在写入期间不被阻塞。
+与 ReentrantReadWriteLock + HashMap、ConcurrentHashMap 的吞吐量对比见 benchmarks 中的 SegmentedCacheBenchmark。
+ */
+
+public class SegmentedCacheTestCase {
+
+    @Test
+    public void testTtlAndStats() throws InterruptedException {
+        SegmentedCache<String, Integer> prices = new SegmentedCache<>(100);
+        prices.put("apple", 5);
+        prices.put("flash-sale", 1, 50, TimeUnit.MILLISECONDS);
+        System.out.println(prices.get("apple")); // 5
+        System.out.println(prices.get("flash-sale")); // 1
+        System.out.println(prices.get("banana")); // null
+
+        Thread.sleep(80);
+        System.out.println(prices.get("flash-sale")); // null, 已过期
+        System.out.println(prices.size()); // 2, 过期条目还没有被清理
+        System.out.println(prices.cleanUp()); // 1
+        System.out.println(prices.stats()); // hits=2, misses=2, expirations=1
+    }
+
+    @Test
+    public void testSampledLruEviction() {
+        int capacity = 1_000;
+        SegmentedCache<Integer, Integer> cache = new SegmentedCache<>(SegmentedCache.Options.builder()
+                .maximumSize(capacity)
+                .segments(4)
+                .build());
+        // 10000 个 key，其中 500 个热点 key 占 90% 的访问
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < 200_000; i++) {
+            int key = random.nextInt(100) < 90 ? random.nextInt(500) : 500 + random.nextInt(9_500);
+            if (cache.get(key) == null) cache.put(key, key);
+        }
+        SegmentedCache.Stats stats = cache.stats();
+        System.out.println("size = " + cache.size()); // 1000
+        System.out.printf("hitRate = %.2f, evictions = %d%n", stats.hitRate(), stats.getEvictions());
+        // 命中率约 0.85 以上：热点 key 基本都留在缓存中，随机淘汰时命中率只有 0.7 左右
+    }
+
+    @Test
+    public void testReadsDuringWrites() throws InterruptedException {
+        // 容量留出余量：每个 Segment 的上限是 maximumSize / segments，key 分布不均匀时个别 Segment 会提前淘汰
+        SegmentedCache<Integer, long[]> cache = new SegmentedCache<>(SegmentedCache.Options.builder()
+                .maximumSize(4_000)
+                .segments(8)
+                .build());
+        for (int i = 0; i < 1_000; i++) {
+            cache.put(i, new long[]{i, -i});
+        }
+        AtomicBoolean running = new AtomicBoolean(true);
+        LongAdder reads = new LongAdder();
+        LongAdder broken = new LongAdder();
+        List<Thread> readers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread reader = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (running.get()) {
+                    int key = random.nextInt(1_000);
+                    long[] v = cache.get(key);
+                    // 写线程总是替换为一个新的数组，读到的值要么是旧数组要么是新数组，两个元素之和始终为 0
+                    if (v == null || v[0] + v[1] != 0) broken.increment();
+                    reads.increment();
+                }
+            });
+            reader.start();
+            readers.add(reader);
+        }
+        Thread writer = new Thread(() -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < 100_000; i++) {
+                int key = random.nextInt(1_000);
+                long x = random.nextLong();
+                cache.put(key, new long[]{x, -x});
+            }
+        });
+        writer.start();
+        writer.join();
+        running.set(false);
+        for (Thread reader : readers) reader.join();
+
+        System.out.println("reads = " + reads.sum() + ", broken = " + broken.sum()); // broken = 0
+        System.out.println("乐观读失败次数: " + cache.stats().getOptimisticFallbacks()); // 远小于读的次数
+    }
+}
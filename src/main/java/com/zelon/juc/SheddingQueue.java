@@ -0,0 +1,508 @@
+package com.zelon.juc;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+/*
+过载时主动丢弃任务（load shedding）的线程池队列，作为 workQueue 传给 ThreadPoolExecutor / InstrumentedThreadPoolExecutor
+1. 为什么需要？
+   ThreadPool 中的 LinkedBlockingQueue(500) 是 FIFO 的：到达速度持续超过处理速度时队列一直是满的，
+   每个任务都要先排完前面 500 个任务，等到执行的时候调用方早就超时了，线程在做没人要的工作，所有请求都变慢（goodput 接近 0）。
+   四种内置拒绝策略只在队列满的时候才起作用，而那时延迟已经不可接受了。
+   与其让所有请求都慢，不如尽早丢弃一部分，让剩下的按时完成。
+
+2. 策略（可以组合，见 Options）：
+   ① CoDel（Controlled Delay，参考 Facebook 在服务端的用法）：统计每个 interval 内任务排队时间（sojourn）的最小值，
+      最小值都超过 target 说明队列不是突发堆积而是持续过载（队列一直没有排空过），这时排队超过 target 的任务直接丢弃；
+      没有过载时只丢弃排队超过 interval 的任务。突发流量不受影响，持续过载时排队时间被限制在 target 左右
+   ② 截止时间：任务实现 Deadlined（或者 Options.queueTimeoutMillis 统一设置），取任务时跳过已经过期的，不浪费线程
+   ③ 自适应 LIFO：队列长度超过 lifoThreshold 时改为从队尾取任务，新任务还来得及按时完成，老任务留给 CoDel / 截止时间丢弃；
+      队列短时仍然是 FIFO，保证公平
+   ④ 优先级：任务实现 Prioritized（或者用 task() 包装），队列按优先级分层（0 最低），先取高优先级的；队列满时挤掉最低优先级中最新的任务，
+      低优先级的任务先被丢弃
+
+3. 丢弃的任务交给 Options.onShed 处理（默认：如果是 Future 就 cancel，调用方的 get() 会立即返回 CancellationException），
+   按原因分别计数（shedCounts()）；作为 InstrumentedThreadPoolExecutor 的 workQueue 时，构造方法会自动绑定，
+   丢弃的任务也计入它的 rejections 指标（SheddingQueue.CODEL 等），不会被当作一直在排队。
+
+4. 实现：一把 ReentrantLock + notEmpty / notFull 两个 Condition，每个优先级一个 ArrayDeque，和 LinkedBlockingQueue 相比多了排队时间的记录（每个任务一个 Entry）。
+   持有锁时丢弃的任务通过 Entry 自身的 nextShed 串成链表，释放锁之后再交给 onShed，入队、出队都不需要额外分配集合。
+   线程池只调用不阻塞的 offer()，满了交给拒绝策略；直接当作 BlockingQueue 使用时，put() 等到有空位，offer(timeout) 最多等 timeout。
+ */
+
+public class SheddingQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+
+    public enum Reason {
+        CODEL, DEADLINE, PRIORITY;
+
+        // 计入 InstrumentedThreadPoolExecutor 的 rejections 时使用的名字，提前拼好，丢弃时不用每次拼接
+        final String metricName = "SheddingQueue." + name();
+    }
+
+    // 带优先级的任务，数值越大优先级越高
+    public interface Prioritized {
+        int priority();
+    }
+
+    // 带截止时间的任务，System.nanoTime() 的时间基准
+    public interface Deadlined {
+        long deadlineNanos();
+    }
+
+    @Value
+    @Builder
+    public static class Options {
+        @Builder.Default int capacity = 500;
+        // CoDel，targetMillis <= 0 表示不启用
+        @Builder.Default long codelTargetMillis = 0;
+        @Builder.Default long codelIntervalMillis = 100;
+        // 没有实现 Deadlined 的任务的排队超时，<= 0 表示不限制
+        @Builder.Default long queueTimeoutMillis = 0;
+        // 队列长度超过这个值时改为 LIFO，<= 0 表示一直 FIFO
+        @Builder.Default int lifoThreshold = 0;
+        // 优先级的层数，任务的优先级会被限制在 [0, priorityLevels)
+        @Builder.Default int priorityLevels = 1;
+        @Builder.Default BiConsumer<Runnable, Reason> onShed = SheddingQueue::cancelFuture;
+    }
+
+    public static SheddingQueue codel(int capacity, long targetMillis, long intervalMillis) {
+        return new SheddingQueue(Options.builder().capacity(capacity)
+                .codelTargetMillis(targetMillis).codelIntervalMillis(intervalMillis).build());
+    }
+
+    public static SheddingQueue deadline(int capacity, long queueTimeoutMillis) {
+        return new SheddingQueue(Options.builder().capacity(capacity).queueTimeoutMillis(queueTimeoutMillis).build());
+    }
+
+    public static SheddingQueue adaptiveLifo(int capacity, int lifoThreshold, long queueTimeoutMillis) {
+        return new SheddingQueue(Options.builder().capacity(capacity)
+                .lifoThreshold(lifoThreshold).queueTimeoutMillis(queueTimeoutMillis).build());
+    }
+
+    public static SheddingQueue priority(int capacity, int levels) {
+        return new SheddingQueue(Options.builder().capacity(capacity).priorityLevels(levels).build());
+    }
+
+    // 给任务加上优先级和截止时间，timeout <= 0 表示没有截止时间
+    public static Runnable task(Runnable task, int priority, long timeout, TimeUnit unit) {
+        long deadline = timeout > 0 ? System.nanoTime() + unit.toNanos(timeout) : 0;
+        return new ShedTask(task, priority, deadline);
+    }
+
+    private record ShedTask(Runnable delegate, int priority, long deadline) implements Runnable, Prioritized, Deadlined {
+        @Override
+        public void run() {
+            delegate.run();
+        }
+
+        @Override
+        public long deadlineNanos() {
+            return deadline;
+        }
+    }
+
+    private static final class Entry {
+        final Runnable task;
+        final long enqueueNanos;
+        final long deadlineNanos; // 0 表示没有截止时间
+        Reason shedReason;
+        Entry nextShed; // 持有锁时丢弃的任务串成链表，释放锁之后再处理
+
+        Entry(Runnable task, long enqueueNanos, long deadlineNanos) {
+            this.task = task;
+            this.enqueueNanos = enqueueNanos;
+            this.deadlineNanos = deadlineNanos;
+        }
+    }
+
+    private final Options options;
+    private final long codelTarget;
+    private final long codelInterval;
+    private final long queueTimeout;
+    private final ArrayDeque<Entry>[] levels;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final Map<Reason, LongAdder> shed = new EnumMap<>(Reason.class);
+    private volatile InstrumentedThreadPoolExecutor executor;
+    // 只在持有锁时修改；volatile 让 size() 不加锁也能读到最新值（线程池每次提交都会调用 size()）
+    private volatile int count;
+    // 持有锁期间丢弃的任务（链表），由下一个调用 unlockAndShed() 的线程取走（在 Condition 上等待时也会释放锁，可能由其他线程通知）
+    private Entry shedHead, shedTail;
+
+    // CoDel 状态，只在持有锁时读写
+    private long intervalEnd;
+    private long minSojourn = Long.MAX_VALUE;
+    private boolean overloaded;
+
+    @SuppressWarnings("unchecked")
+    public SheddingQueue(Options options) {
+        if (options.getCapacity() < 1) throw new IllegalArgumentException("capacity: " + options.getCapacity());
+        if (options.getPriorityLevels() < 1) throw new IllegalArgumentException("priorityLevels: " + options.getPriorityLevels());
+        this.options = options;
+        this.codelTarget = TimeUnit.MILLISECONDS.toNanos(options.getCodelTargetMillis());
+        this.codelInterval = TimeUnit.MILLISECONDS.toNanos(options.getCodelIntervalMillis());
+        this.queueTimeout = TimeUnit.MILLISECONDS.toNanos(options.getQueueTimeoutMillis());
+        this.levels = new ArrayDeque[options.getPriorityLevels()];
+        for (int i = 0; i < levels.length; i++) {
+            levels[i] = new ArrayDeque<>();
+        }
+        for (Reason reason : Reason.values()) {
+            shed.put(reason, new LongAdder());
+        }
+    }
+
+    // InstrumentedThreadPoolExecutor 的构造方法中绑定，丢弃的任务计入它的指标
+    void bind(InstrumentedThreadPoolExecutor executor) {
+        this.executor = executor;
+    }
+
+    public Map<Reason, Long> shedCounts() {
+        Map<Reason, Long> result = new EnumMap<>(Reason.class);
+        shed.forEach((reason, adder) -> result.put(reason, adder.sum()));
+        return result;
+    }
+
+    public boolean isOverloaded() {
+        lock.lock();
+        try {
+            return overloaded;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean offer(Runnable task) {
+        Objects.requireNonNull(task);
+        int level = levelOf(task);
+        long deadline = deadlineOf(task);
+        lock.lock();
+        try {
+            return enqueue(task, level, deadline);
+        } finally {
+            unlockAndShed();
+        }
+    }
+
+    @Override
+    public void put(Runnable task) throws InterruptedException {
+        Objects.requireNonNull(task);
+        int level = levelOf(task);
+        long deadline = deadlineOf(task);
+        lock.lockInterruptibly();
+        try {
+            while (!enqueue(task, level, deadline)) {
+                notFull.await();
+            }
+        } finally {
+            unlockAndShed();
+        }
+    }
+
+    @Override
+    public boolean offer(Runnable task, long timeout, TimeUnit unit) throws InterruptedException {
+        Objects.requireNonNull(task);
+        int level = levelOf(task);
+        long deadline = deadlineOf(task);
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (!enqueue(task, level, deadline)) {
+                if (nanos <= 0) return false;
+                nanos = notFull.awaitNanos(nanos);
+            }
+            return true;
+        } finally {
+            unlockAndShed();
+        }
+    }
+
+    private int levelOf(Runnable task) {
+        return unwrap(task) instanceof Prioritized p ? Math.max(0, Math.min(levels.length - 1, p.priority())) : 0;
+    }
+
+    // 截止时间从提交时算起，put() / offer(timeout) 等待空位的时间也算在内
+    private long deadlineOf(Runnable task) {
+        return unwrap(task) instanceof Deadlined d && d.deadlineNanos() != 0 ? d.deadlineNanos()
+                : queueTimeout > 0 ? System.nanoTime() + queueTimeout : 0;
+    }
+
+    // 持有锁时调用：队列满并且挤不掉更低优先级的任务时返回 false，挤掉的任务记为丢弃
+    private boolean enqueue(Runnable task, int level, long deadline) {
+        if (count >= options.getCapacity()) {
+            // 队列满：挤掉优先级更低的任务中最新的一个（它等得最少，挤掉它对已经排队的任务最公平）
+            int lowest = lowestNonEmpty();
+            if (lowest < 0 || lowest >= level) return false;
+            Entry e = levels[lowest].pollLast();
+            markShed(e, Reason.PRIORITY);
+            count--;
+        }
+        levels[level].addLast(new Entry(task, System.nanoTime(), deadline));
+        count++;
+        notEmpty.signal();
+        return true;
+    }
+
+    @Override
+    public Runnable take() throws InterruptedException {
+        Runnable task;
+        lock.lockInterruptibly();
+        try {
+            while ((task = dequeue()) == null) {
+                notEmpty.await();
+            }
+        } finally {
+            unlockAndShed();
+        }
+        return task;
+    }
+
+    @Override
+    public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        Runnable task;
+        lock.lockInterruptibly();
+        try {
+            while ((task = dequeue()) == null) {
+                if (nanos <= 0) return null;
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+        } finally {
+            unlockAndShed();
+        }
+        return task;
+    }
+
+    @Override
+    public Runnable poll() {
+        lock.lock();
+        try {
+            return dequeue();
+        } finally {
+            unlockAndShed();
+        }
+    }
+
+    // 持有锁时调用：取出下一个要执行的任务，途中遇到的应当丢弃的任务记为丢弃
+    private Runnable dequeue() {
+        for (;;) {
+            int level = highestNonEmpty();
+            if (level < 0) {
+                // 队列排空过，说明没有持续过载
+                overloaded = false;
+                minSojourn = Long.MAX_VALUE;
+                return null;
+            }
+            ArrayDeque<Entry> deque = levels[level];
+            Entry e = lifo() ? deque.pollLast() : deque.pollFirst();
+            count--;
+            notFull.signal();
+            long now = System.nanoTime();
+            if (e.deadlineNanos != 0 && now - e.deadlineNanos > 0) {
+                markShed(e, Reason.DEADLINE);
+                continue;
+            }
+            if (codelTarget > 0 && codelDrop(now - e.enqueueNanos, now)) {
+                markShed(e, Reason.CODEL);
+                continue;
+            }
+            return e.task;
+        }
+    }
+
+    // CoDel：每个 interval 结束时，根据这段时间内最小的排队时间判断是否过载
+    private boolean codelDrop(long sojourn, long now) {
+        if (intervalEnd == 0) intervalEnd = now + codelInterval;
+        minSojourn = Math.min(minSojourn, sojourn);
+        if (now - intervalEnd > 0) {
+            overloaded = minSojourn > codelTarget;
+            minSojourn = Long.MAX_VALUE;
+            intervalEnd = now + codelInterval;
+        }
+        return sojourn > (overloaded ? codelTarget : codelInterval);
+    }
+
+    // 持有锁时调用：队列长度超过 lifoThreshold 时从队尾取
+    private boolean lifo() {
+        return options.getLifoThreshold() > 0 && count > options.getLifoThreshold();
+    }
+
+    private int highestNonEmpty() {
+        for (int i = levels.length - 1; i >= 0; i--) {
+            if (!levels[i].isEmpty()) return i;
+        }
+        return -1;
+    }
+
+    private int lowestNonEmpty() {
+        for (int i = 0; i < levels.length; i++) {
+            if (!levels[i].isEmpty()) return i;
+        }
+        return -1;
+    }
+
+    // 持有锁时调用：丢弃的任务按丢弃的顺序串到链表尾部
+    private void markShed(Entry e, Reason reason) {
+        e.shedReason = reason;
+        if (shedHead == null) {
+            shedHead = e;
+        } else {
+            shedTail.nextShed = e;
+        }
+        shedTail = e;
+    }
+
+    // 取走持有锁期间丢弃的任务，释放锁之后再通知，onShed 可能比较慢（例如完成 Future 时执行回调）
+    private void unlockAndShed() {
+        Entry e = shedHead;
+        shedHead = shedTail = null;
+        lock.unlock();
+        while (e != null) {
+            Entry next = e.nextShed;
+            e.nextShed = null;
+            shed(e.task, e.shedReason);
+            e = next;
+        }
+    }
+
+    private void shed(Runnable task, Reason reason) {
+        shed.get(reason).increment();
+        InstrumentedThreadPoolExecutor e = executor;
+        if (e != null) e.recordShed(reason.metricName);
+        options.getOnShed().accept(unwrap(task), reason);
+    }
+
+    private static Runnable unwrap(Runnable task) {
+        return task instanceof InstrumentedThreadPoolExecutor.TimedTask timed ? timed.delegate : task;
+    }
+
+    // 默认的丢弃处理：Future（例如 execute(task(futureTask, ...))）取消掉，调用方不会一直阻塞在 get() 上
+    static void cancelFuture(Runnable task, Reason reason) {
+        Runnable r = task instanceof ShedTask shedTask ? shedTask.delegate() : task;
+        if (r instanceof Future<?> future) future.cancel(false);
+    }
+
+    @Override
+    public Runnable peek() {
+        lock.lock();
+        try {
+            int level = highestNonEmpty();
+            if (level < 0) return null;
+            // 和 poll() 取同一端
+            return (lifo() ? levels[level].peekLast() : levels[level].peekFirst()).task;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return options.getCapacity() - size();
+    }
+
+    // ThreadPoolExecutor.remove() / purge() 使用
+    @Override
+    public boolean remove(Object o) {
+        lock.lock();
+        try {
+            for (ArrayDeque<Entry> deque : levels) {
+                Iterator<Entry> it = deque.iterator();
+                while (it.hasNext()) {
+                    if (it.next().task.equals(o)) {
+                        it.remove();
+                        count--;
+                        notFull.signal();
+                        return true;
+                    }
+                }
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int drainTo(Collection<? super Runnable> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    // shutdownNow() 使用，不做任何丢弃判断
+    @Override
+    public int drainTo(Collection<? super Runnable> c, int maxElements) {
+        lock.lock();
+        try {
+            int n = 0;
+            for (int level = levels.length - 1; level >= 0 && n < maxElements; level--) {
+                Entry e;
+                while (n < maxElements && (e = levels[level].pollFirst()) != null) {
+                    c.add(e.task);
+                    count--;
+                    n++;
+                }
+            }
+            if (n > 0) notFull.signalAll();
+            return n;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 快照迭代器（与 ArrayBlockingQueue 一样是弱一致的），remove() 按对象删除
+    @Override
+    public Iterator<Runnable> iterator() {
+        List<Runnable> snapshot = new ArrayList<>();
+        lock.lock();
+        try {
+            for (int level = levels.length - 1; level >= 0; level--) {
+                for (Entry e : levels[level]) snapshot.add(e.task);
+            }
+        } finally {
+            lock.unlock();
+        }
+        Iterator<Runnable> it = snapshot.iterator();
+        return new Iterator<>() {
+            Runnable last;
+
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public Runnable next() {
+                return last = it.next();
+            }
+
+            @Override
+            public void remove() {
+                if (last == null) throw new IllegalStateException();
+                SheddingQueue.this.remove(last);
+                last = null;
+            }
+        };
+    }
+}
@@ -0,0 +1,190 @@
+package com.zelon.juc;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/*
+SheddingQueue 的各个策略，以及过载模拟：到达速度是处理能力的 1.5 倍，持续 2 秒，
+比较 ThreadPool 中的 LinkedBlockingQueue(500) 和各个策略的 goodput（在客户端超时之内完成的请求数 / 秒）和延迟 p99。
+ */
+
+public class SheddingQueueTestCase {
+
+    @Test
+    public void testDeadlineAndLifo() {
+        SheddingQueue queue = SheddingQueue.adaptiveLifo(10, 3, 0);
+        List<String> ran = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            String name = "t" + i;
+            queue.offer(() -> ran.add(name));
+        }
+        // 长度超过 3 时从队尾取，降到 3 以内恢复 FIFO；peek() 和 poll() 取同一端
+        boolean peekMatches = true;
+        for (int i = 0; i < 5; i++) {
+            Runnable next = queue.peek();
+            Runnable task = queue.poll();
+            peekMatches &= next == task;
+            task.run();
+        }
+        System.out.println(ran + " " + peekMatches); // [t4, t3, t0, t1, t2] true
+
+        queue.offer(SheddingQueue.task(() -> ran.add("expired"), 0, 1, TimeUnit.NANOSECONDS));
+        queue.offer(SheddingQueue.task(() -> ran.add("fresh"), 0, 1, TimeUnit.SECONDS));
+        LockSupport.parkNanos(1000);
+        queue.poll().run();
+        System.out.println(ran.get(ran.size() - 1) + " " + queue.shedCounts()); // fresh {CODEL=0, DEADLINE=1, PRIORITY=0}
+    }
+
+    @Test
+    public void testPriority() throws Exception {
+        SheddingQueue queue = SheddingQueue.priority(3, 2);
+        FutureTask<String> low1 = new FutureTask<>(() -> "low1");
+        FutureTask<String> low2 = new FutureTask<>(() -> "low2");
+        queue.offer(SheddingQueue.task(low1, 0, 0, TimeUnit.SECONDS));
+        queue.offer(SheddingQueue.task(low2, 0, 0, TimeUnit.SECONDS));
+        queue.offer(SheddingQueue.task(() -> { }, 1, 0, TimeUnit.SECONDS));
+        // 队列满：高优先级的任务挤掉最新的低优先级任务，低优先级的任务进不来
+        System.out.println(queue.offer(SheddingQueue.task(() -> { }, 1, 0, TimeUnit.SECONDS))); // true
+        System.out.println(queue.offer(SheddingQueue.task(() -> { }, 0, 0, TimeUnit.SECONDS))); // false
+        System.out.println(low2.isCancelled() + " " + low1.isCancelled()); // true false, 被挤掉的 Future 已取消
+        queue.poll();
+        queue.poll();
+        queue.poll().run(); // 先取完高优先级的
+        System.out.println(low1.get()); // low1
+    }
+
+    @Test
+    public void testCodel() throws InterruptedException {
+        SheddingQueue queue = SheddingQueue.codel(100, 5, 20);
+        // 一个很慢的消费者，队列一直没有排空，排队时间持续超过 target
+        for (int i = 0; i < 50; i++) queue.offer(() -> { });
+        long begin = System.nanoTime();
+        int taken = 0;
+        boolean overloaded = false;
+        while (System.nanoTime() - begin < TimeUnit.MILLISECONDS.toNanos(200)) {
+            if (queue.poll() != null) taken++;
+            overloaded |= queue.isOverloaded();
+            Thread.sleep(2);
+            queue.offer(() -> { });
+            queue.offer(() -> { });
+        }
+        System.out.println(overloaded); // true
+        System.out.println(queue.shedCounts().get(SheddingQueue.Reason.CODEL) > 0); // true, 排队超过 5ms 的任务被丢弃
+        System.out.println(taken > 0); // true
+    }
+
+    @Test
+    public void testBlockingPut() throws InterruptedException {
+        // 直接当作 BlockingQueue 使用：满了之后 put() 等待空位，offer(timeout) 最多等 timeout
+        SheddingQueue queue = SheddingQueue.priority(2, 1);
+        queue.put(() -> { });
+        queue.put(() -> { });
+        long begin = System.nanoTime();
+        System.out.println(queue.offer(() -> { }, 50, TimeUnit.MILLISECONDS)); // false
+        System.out.println(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin) >= 50); // true, 等满了 timeout 才返回
+
+        Thread consumer = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+                queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        consumer.start();
+        begin = System.nanoTime();
+        queue.put(() -> { }); // 阻塞到消费者取走一个
+        System.out.println(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin) >= 40 ? "等到了空位" : "没有等待"); // 等到了空位
+        System.out.println(queue.size()); // 2
+        consumer.join();
+    }
+
+    @Test
+    public void testOverloadSimulation() throws InterruptedException {
+        int threads = 4;
+        long serviceMillis = 2, timeoutMillis = 50;
+        int ratePerSecond = 3_000; // 处理能力是 4 / 2ms = 2000/s
+        // 排队超时是最晚开始时间：客户端超时减去执行时间的余量，过了这个时间再开始执行也来不及了
+        long queueTimeoutMillis = timeoutMillis - 10;
+        List<Policy> policies = List.of(
+                new Policy("LinkedBlockingQueue(500)", () -> new LinkedBlockingQueue<>(500)),
+                new Policy("CoDel(5ms, 100ms)", () -> SheddingQueue.codel(500, 5, 100)),
+                new Policy("deadline(40ms)", () -> SheddingQueue.deadline(500, queueTimeoutMillis)),
+                new Policy("adaptiveLifo(50)", () -> SheddingQueue.adaptiveLifo(500, 50, queueTimeoutMillis)),
+                new Policy("priority(20% high)", () -> SheddingQueue.priority(500, 2)));
+        simulate(policies.get(0), threads, serviceMillis, timeoutMillis, ratePerSecond, 500, false); // 预热
+        for (Policy policy : policies) {
+            simulate(policy, threads, serviceMillis, timeoutMillis, ratePerSecond, 2_000, true);
+        }
+        /*
+        单核机器上的一次结果（CoDel 的 goodput 在几次运行之间从 1350/s 到 1560/s 不等，其他策略的差别在 5% 以内）：
+        LinkedBlockingQueue(500)   goodput   126/s, late  4088, shed/rejected  1660, p99  265ms, high priority on time   4%
+        CoDel(5ms, 100ms)          goodput  1550/s, late   770, shed/rejected  2130, p99   80ms, high priority on time  51%
+        deadline(40ms)             goodput  1963/s, late     0, shed/rejected  2075, p99   44ms, high priority on time  65%
+        adaptiveLifo(50)           goodput  1930/s, late     0, shed/rejected  2141, p99   13ms, high priority on time  64%
+        priority(20% high)         goodput   658/s, late  3016, shed/rejected  1668, p99  380ms, high priority on time 100%
+         */
+        // LinkedBlockingQueue(500): 几乎每个请求都要排完 500 个任务, 全部超时
+        // CoDel: 第一个 interval（100ms）之内还没有判断出过载, 这段时间的请求超时, 之后排队时间被限制在 5ms 左右
+        // deadline: goodput 接近处理能力 2000/s, 没有超时的请求, p99 接近 40ms + 执行时间
+        // adaptiveLifo: goodput 接近 2000/s, 没有超时的请求, 大部分请求从队尾取到, p99 只有 20ms 以内
+        // priority: 只按优先级挤掉任务, 高优先级的请求 100% 按时完成, 低优先级的请求仍然排很久, 需要和截止时间组合使用
+    }
+
+    private record Policy(String name, Supplier<BlockingQueue<Runnable>> queue) {
+    }
+
+    private static void simulate(Policy policy, int threads, long serviceMillis, long timeoutMillis,
+                                 int ratePerSecond, long durationMillis, boolean print) throws InterruptedException {
+        InstrumentedThreadPoolExecutor pool = new InstrumentedThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                policy.queue().get(), new ThreadPoolExecutor.DiscardPolicy());
+        pool.prestartAllCoreThreads();
+        LatencyHistogram latency = new LatencyHistogram();
+        AtomicLong good = new AtomicLong(), late = new AtomicLong(), goodHigh = new AtomicLong();
+        long timeout = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        long interval = TimeUnit.SECONDS.toNanos(1) / ratePerSecond;
+        long requests = durationMillis * ratePerSecond / 1000, high = 0;
+
+        long start = System.nanoTime();
+        for (long i = 0; i < requests; i++) {
+            long arrival = start + i * interval;
+            long wait = arrival - System.nanoTime();
+            if (wait > 0) LockSupport.parkNanos(wait);
+            boolean isHigh = i % 5 == 0;
+            if (isHigh) high++;
+            Runnable request = () -> {
+                try {
+                    Thread.sleep(serviceMillis);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long elapsed = System.nanoTime() - arrival;
+                latency.record(elapsed);
+                if (elapsed <= timeout) {
+                    good.incrementAndGet();
+                    if (isHigh) goodHigh.incrementAndGet();
+                } else {
+                    late.incrementAndGet();
+                }
+            };
+            // 只带优先级；截止时间由 deadline / adaptiveLifo 策略的 queueTimeout 统一设置
+            pool.execute(SheddingQueue.task(request, isHigh ? 1 : 0, 0, TimeUnit.MILLISECONDS));
+        }
+        pool.shutdown();
+        pool.awaitTermination(10, TimeUnit.SECONDS);
+        if (!print) return;
+
+        double seconds = durationMillis / 1000.0;
+        InstrumentedThreadPoolExecutor.PoolMetricsSnapshot metrics = pool.snapshot();
+        System.out.printf("%-26s goodput %5.0f/s, late %5d, shed/rejected %5d, p99 %4.0fms, high priority on time %3.0f%%%n",
+                policy.name(), good.get() / seconds, late.get(),
+                metrics.getRejections().values().stream().mapToLong(Long::longValue).sum(),
+                latency.snapshot().percentile(0.99, TimeUnit.MILLISECONDS), 100.0 * goodHigh.get() / high);
+    }
+}
@@ -0,0 +1,124 @@
+package com.zelon.juc;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Objects;
+
+/*
+按 key（下标）统计的分段计数器数组，例如每个接口、每个分片、每个状态码的调用次数
+1. 为什么不用 AtomicLongArray / PaddedAtomicLongArray？
+   ① AtomicLongArray：热点 key 上所有线程 CAS 同一个元素（真共享），相邻 key 之间还有伪共享
+   ② PaddedAtomicLongArray：消除了伪共享，但热点 key 的真共享还在，而且每个 key 占 128 字节，key 多了内存扛不住
+   ③ 每个 key 一个 LongAdder：每个 LongAdder 都是单独的对象，key 多时对象和 Cell 数量巨大
+
+2. 思路：和 LongAdder、StripedStock 一样按线程分段，但是把同一段的所有 key 放在一起
+   ① 内部是一个 long 数组，分为 stripes 行，每行 length 个计数器，行与行之间填充 128 字节
+   ② 线程按线程 ID 哈希到一行，只写自己那一行：
+      同一行中相邻的 key 基本上只被同一个线程写，没有伪共享；不同线程写不同的行，热点 key 也没有真共享
+   ③ 读取时把所有行中这个 key 的计数加起来，和 LongAdder.sum() 一样，并发写入时是近似值
+   内存：stripes × length × 8 字节，而不是 length × 128 字节（PaddedAtomicLongArray）
+   或者 length × (LongAdder 对象 + Cell 数组 + 每个 Cell 128 字节)。
+
+3. 不同线程可能哈希到同一行，所以写入还是要用原子的 getAndAdd，只是基本上没有竞争。
+ */
+
+public class StripedCounterArray {
+
+    private static final int PAD = PaddedAtomicLongArray.PAD;
+    private static final VarHandle AA = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final long[] cells;
+    private final int length;
+    private final int stripes;
+    private final int mask;
+    // 每行的长度（包含行尾的填充）
+    private final int rowStride;
+
+    public StripedCounterArray(int length) {
+        this(length, Runtime.getRuntime().availableProcessors());
+    }
+
+    public StripedCounterArray(int length, int stripes) {
+        if (length < 0) throw new IllegalArgumentException("length: " + length);
+        if (stripes < 1 || stripes > (1 << 16)) throw new IllegalArgumentException("stripes: " + stripes);
+        this.length = length;
+        this.stripes = stripes == 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+        this.mask = this.stripes - 1;
+        this.rowStride = Math.addExact(length, PAD);
+        // 第一行之前也填充，避免和数组对象头共享缓存行
+        this.cells = new long[Math.addExact(PAD, Math.multiplyExact(this.stripes, rowStride))];
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public int stripes() {
+        return stripes;
+    }
+
+    public void increment(int key) {
+        add(key, 1);
+    }
+
+    public void add(int key, long delta) {
+        AA.getAndAdd(cells, index(stripeOfCurrentThread(), Objects.checkIndex(key, length)), delta);
+    }
+
+    // key 的总计数，并发写入时不是某一时刻的精确值
+    public long sum(int key) {
+        Objects.checkIndex(key, length);
+        long sum = 0;
+        for (int s = 0; s < stripes; s++) {
+            sum += (long) AA.getVolatile(cells, index(s, key));
+        }
+        return sum;
+    }
+
+    // 所有 key 的计数，按行顺序读取，比逐个 key 调用 sum() 的访存更连续
+    public long[] snapshot() {
+        long[] result = new long[length];
+        for (int s = 0; s < stripes; s++) {
+            int base = index(s, 0);
+            for (int k = 0; k < length; k++) {
+                result[k] += (long) AA.getVolatile(cells, base + k);
+            }
+        }
+        return result;
+    }
+
+    // 返回 key 的总计数并清零，例如每个统计周期结束时调用；清零期间的并发写入不会丢失，会计入下一个周期
+    public long sumThenReset(int key) {
+        Objects.checkIndex(key, length);
+        long sum = 0;
+        for (int s = 0; s < stripes; s++) {
+            sum += (long) AA.getAndSet(cells, index(s, key), 0L);
+        }
+        return sum;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder b = new StringBuilder("[");
+        long[] values = snapshot();
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) b.append(", ");
+            b.append(values[i]);
+        }
+        return b.append(']').toString();
+    }
+
+    final int index(int stripe, int key) {
+        return PAD + stripe * rowStride + key;
+    }
+
+    final long[] array() {
+        return cells;
+    }
+
+    final int stripeOfCurrentThread() {
+        // 和 StripedStock.homeIndex() 相同：线程 ID 乘以黄金分割数打散，取高位
+        long h = Thread.currentThread().threadId() * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 32) & mask;
+    }
+}
@@ -0,0 +1,222 @@
+package com.zelon.juc;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+分段库存计数器（秒杀场景）
+1. 为什么不直接用 AtomicIntegerFieldUpdater 更新 Product.stock？
+   所有购买线程 CAS 同一个字段，竞争激烈时大量 CAS 失败重试，同时这个字段所在的缓存行在各个 CPU 核之间来回失效，吞吐量急剧下降。
+
+2. 思路（类似 LongAdder，但是要保证库存不能扣成负数）：
+   ① 把库存拆分到多个 Cell 中，每个 Cell 前后填充，独占一个缓存行，避免伪共享
+   ② 每个线程根据线程 ID 哈希到一个 home Cell，优先从 home Cell 扣减，不同线程基本不会竞争同一个 Cell
+   ③ home Cell 不够时，尝试从其他 Cell 偷取（steal）
+   ④ 单个 Cell 都不够时，走慢路径：冻结所有 Cell，汇总库存，够就扣减并把剩余库存重新平均分配，不够则失败
+   ⑤ 慢路径失败时把当时的总库存记到 knownAvailable，之后 n 超过它的请求直接失败，不再扫描 Cell、加锁、冻结；
+     库存只会在 release() 时增加，release() 加回 Cell 之后再把 knownAvailable 清掉，所以售罄后的失败请求几乎没有开销
+   每个 Cell 都只在 value >= n 时才 CAS 扣减，所以任何时刻总库存都不会为负数，不会超卖。
+
+3. 冻结：把 value 的最高位（符号位）设为 1，表示这个 Cell 正在被慢路径处理，其他线程看到负数就等待解冻后再重试。
+   所有 Cell 都被冻结的那一刻，各 Cell 的值之和就是精确的总库存，availableExact() 也是这样实现的；
+   available() 只是不加冻结直接求和，并发修改时只是一个近似值。
+ */
+
+public class StripedStock {
+
+    private static final int FROZEN = Integer.MIN_VALUE;
+    private static final int VALUE_MASK = Integer.MAX_VALUE;
+    private static final int UNKNOWN = Integer.MAX_VALUE;
+
+    private static final AtomicIntegerFieldUpdater<CellValue> VALUE =
+            AtomicIntegerFieldUpdater.newUpdater(CellValue.class, "value");
+
+    private final Cell[] cells;
+    private final int mask;
+    // 慢路径（冻结所有 Cell）同一时刻只允许一个线程执行
+    private final ReentrantLock slowLock = new ReentrantLock();
+    // 上一次慢路径失败时的总库存（之后只减不增，直到 release），UNKNOWN 表示没有记录
+    private volatile int knownAvailable = UNKNOWN;
+
+    public StripedStock(int stock) {
+        this(stock, Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    public StripedStock(int stock, int cellCount) {
+        if (stock < 0) throw new IllegalArgumentException("stock < 0: " + stock);
+        if (cellCount < 1 || cellCount > (1 << 16)) throw new IllegalArgumentException("cellCount: " + cellCount);
+        int n = cellCount == 1 ? 1 : Integer.highestOneBit(cellCount - 1) << 1;
+        this.cells = new Cell[n];
+        this.mask = n - 1;
+        for (int i = 0; i < n; i++) {
+            cells[i] = new Cell();
+        }
+        distribute(stock);
+    }
+
+    // 扣减 n 个库存，库存不足返回 false
+    public boolean tryReserve(int n) {
+        if (n <= 0) throw new IllegalArgumentException("n <= 0: " + n);
+        if (n > knownAvailable) return false; // 已知库存不足（例如售罄），直接失败
+        int home = homeIndex();
+        for (;;) {
+            // ① home Cell
+            int r = tryTake(cells[home], n);
+            if (r > 0) return true;
+            boolean sawFrozen = r < 0;
+            // ② 从其他 Cell 偷取
+            for (int i = 1; i < cells.length; i++) {
+                r = tryTake(cells[(home + i) & mask], n);
+                if (r > 0) return true;
+                sawFrozen |= r < 0;
+            }
+            if (sawFrozen) {
+                // 有慢路径正在重新分配库存，等它结束后重新尝试
+                Thread.yield();
+                continue;
+            }
+            // ③ 慢路径：汇总所有 Cell
+            return reserveSlow(n);
+        }
+    }
+
+    // 归还 n 个库存（例如订单取消），加回 home Cell
+    public void release(int n) {
+        if (n <= 0) throw new IllegalArgumentException("n <= 0: " + n);
+        Cell cell = cells[homeIndex()];
+        for (;;) {
+            int v = cell.value;
+            if (v < 0) {
+                Thread.yield(); // 被冻结，等待解冻
+                continue;
+            }
+            if (VALUE.compareAndSet(cell, v, Math.addExact(v, n))) {
+                // 必须在加回 Cell 之后再清除：慢路径只在冻结期间写 knownAvailable，不会覆盖这次清除
+                if (knownAvailable != UNKNOWN) knownAvailable = UNKNOWN;
+                return;
+            }
+        }
+    }
+
+    // 近似值：不冻结 Cell，直接求和，并发修改时可能不是某一时刻的真实库存
+    public int available() {
+        long sum = 0;
+        for (Cell cell : cells) {
+            sum += cell.value & VALUE_MASK;
+        }
+        return (int) Math.min(sum, Integer.MAX_VALUE);
+    }
+
+    // 精确值：冻结所有 Cell 后求和，期间扣减/归还的线程会短暂等待
+    public int availableExact() {
+        slowLock.lock();
+        try {
+            long sum = freezeAll();
+            unfreezeAll(cellValues());
+            return (int) Math.min(sum, Integer.MAX_VALUE);
+        } finally {
+            slowLock.unlock();
+        }
+    }
+
+    // 取走全部库存并返回，用于秒杀结束后把库存写回 Product
+    public int drain() {
+        slowLock.lock();
+        try {
+            long sum = freezeAll();
+            knownAvailable = 0;
+            for (Cell cell : cells) {
+                cell.value = 0;
+            }
+            return (int) Math.min(sum, Integer.MAX_VALUE);
+        } finally {
+            slowLock.unlock();
+        }
+    }
+
+    int cellCount() {
+        return cells.length;
+    }
+
+    // 返回 1 表示成功，0 表示库存不足，-1 表示 Cell 被冻结
+    private static int tryTake(Cell cell, int n) {
+        for (;;) {
+            int v = cell.value;
+            if (v < 0) return -1;
+            if (v < n) return 0;
+            if (VALUE.compareAndSet(cell, v, v - n)) return 1;
+        }
+    }
+
+    private boolean reserveSlow(int n) {
+        slowLock.lock();
+        try {
+            long sum = freezeAll();
+            if (sum < n) {
+                knownAvailable = (int) sum; // 所有 Cell 仍处于冻结状态，release() 无法在这之前加回库存
+                unfreezeAll(cellValues());
+                return false;
+            }
+            // 扣减后把剩余库存重新平均分配，后续线程又可以走 home Cell 的快路径
+            distribute(sum - n);
+            return true;
+        } finally {
+            slowLock.unlock();
+        }
+    }
+
+    private long freezeAll() {
+        long sum = 0;
+        for (Cell cell : cells) {
+            int v;
+            do {
+                v = cell.value;
+            } while (!VALUE.compareAndSet(cell, v, v | FROZEN));
+            sum += v;
+        }
+        return sum;
+    }
+
+    private int[] cellValues() {
+        int[] values = new int[cells.length];
+        for (int i = 0; i < cells.length; i++) {
+            values[i] = cells[i].value & VALUE_MASK;
+        }
+        return values;
+    }
+
+    private void unfreezeAll(int[] values) {
+        for (int i = 0; i < cells.length; i++) {
+            cells[i].value = values[i]; // 冻结期间其他线程不会修改，直接写入即可
+        }
+    }
+
+    private void distribute(long stock) {
+        int each = (int) (stock / cells.length);
+        int remainder = (int) (stock % cells.length);
+        for (int i = 0; i < cells.length; i++) {
+            cells[i].value = each + (i < remainder ? 1 : 0);
+        }
+    }
+
+    private int homeIndex() {
+        // 线程 ID 乘以黄金分割数打散，取高位
+        long h = Thread.currentThread().threadId() * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 32) & mask;
+    }
+
+    // 左右各填充 64 字节，保证 value 独占一个缓存行；
+    // 左侧的 int 用来占住对象头后面的 4 字节空隙，否则 value 可能被排到那里
+    static class CellPadLeft {
+        int p00;
+        long p01, p02, p03, p04, p05, p06, p07, p08;
+    }
+
+    static class CellValue extends CellPadLeft {
+        volatile int value;
+    }
+
+    static final class Cell extends CellValue {
+        long p11, p12, p13, p14, p15, p16, p17, p18;
+    }
+}
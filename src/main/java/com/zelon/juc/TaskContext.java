@@ -0,0 +1,251 @@
+package com.zelon.juc;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.*;
+
+/*
+任务上下文：替代 "每个业务一个 ThreadLocal" 的写法，在线程池中传递请求级别的数据（traceId、用户等）
+1. ThreadLocal 在线程池中的问题（见 ThreadLocalTestCase）：
+   ① 线程被复用，上一个任务 set 的值没有 remove()，下一个任务会读到（1-10 一直累加）
+   ② 每个 ThreadLocal 对象在每个线程的 ThreadLocalMap 中占一个 entry，ThreadLocal 对象被回收后 key 变为 null，
+      value 仍然被线程强引用，直到后续的 get/set 碰巧扫描到才会清理（expunge），既泄露内存，又拖慢查找
+   ③ 提交任务的线程中的值不会自动传到执行任务的线程
+
+2. 思路（类似 JDK 21 中还是预览特性的 ScopedValue）：
+   ① 整个上下文是一个不可变对象，with() 返回新的上下文，不修改原来的，可以被多个线程安全共享
+   ② 所有 Key 共用一个 static final ThreadLocal 槽位，每个线程的 ThreadLocalMap 中最多只有这一个 entry，不会增长
+   ③ 提交任务时捕获（capture）提交线程的上下文，任务执行期间绑定到执行线程，结束后恢复执行线程原来的上下文，
+      原来没有上下文就直接 remove()，线程池中的线程空闲时不持有任何任务的数据
+   ④ Key 是对象身份比较，不需要哈希，上下文中通常只有几个值，数组线性查找与一次 ThreadLocal.get() 开销相当（见 TaskContextBenchmark）
+
+3. 传播方式：
+   ① ThreadPoolExecutor / 虚拟线程执行器: propagating(executor) 包装，execute/submit/invokeAll 都会捕获上下文
+   ② ForkJoinPool: 提交的任务同样可以用 propagating(pool)；fork() 出去的子任务不经过 execute，
+      继承 RecursiveContextTask，在构造时捕获上下文
+   ③ 单独启动的线程（包括虚拟线程）: Thread.ofVirtual().start(TaskContext.wrap(task))
+ */
+
+public final class TaskContext {
+
+    private static final TaskContext EMPTY = new TaskContext(new Key<?>[0], new Object[0]);
+    // 所有 Key 共用的唯一一个槽位
+    private static final ThreadLocal<TaskContext> CURRENT = new ThreadLocal<>();
+
+    private final Key<?>[] keys;
+    private final Object[] values;
+
+    private TaskContext(Key<?>[] keys, Object[] values) {
+        this.keys = keys;
+        this.values = values;
+    }
+
+    public static final class Key<T> {
+        private final String name;
+
+        private Key(String name) {
+            this.name = name;
+        }
+
+        public static <T> Key<T> named(String name) {
+            return new Key<>(Objects.requireNonNull(name));
+        }
+
+        // 当前线程上下文中的值，没有绑定返回 null
+        public T get() {
+            return current().get(this);
+        }
+
+        public T orElse(T other) {
+            T value = get();
+            return value == null ? other : value;
+        }
+
+        public boolean isBound() {
+            return current().contains(this);
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    public static TaskContext empty() {
+        return EMPTY;
+    }
+
+    public static TaskContext current() {
+        TaskContext context = CURRENT.get();
+        return context == null ? EMPTY : context;
+    }
+
+    // 在当前上下文的基础上增加一个绑定，类似 ScopedValue.where(key, value)
+    public static <T> TaskContext where(Key<T> key, T value) {
+        return current().with(key, value);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T get(Key<T> key) {
+        Key<?>[] ks = keys;
+        for (int i = 0; i < ks.length; i++) {
+            if (ks[i] == key) return (T) values[i];
+        }
+        return null;
+    }
+
+    public boolean contains(Key<?> key) {
+        return indexOf(key) >= 0;
+    }
+
+    public int size() {
+        return keys.length;
+    }
+
+    // 返回新的上下文，当前对象不变
+    public <T> TaskContext with(Key<T> key, T value) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value, "value");
+        int i = indexOf(key);
+        if (i >= 0) {
+            if (values[i] == value) return this;
+            Object[] vs = values.clone();
+            vs[i] = value;
+            return new TaskContext(keys, vs);
+        }
+        Key<?>[] ks = Arrays.copyOf(keys, keys.length + 1);
+        Object[] vs = Arrays.copyOf(values, values.length + 1);
+        ks[keys.length] = key;
+        vs[values.length] = value;
+        return new TaskContext(ks, vs);
+    }
+
+    // 在这个上下文中执行 task，结束后恢复原来的上下文
+    public void run(Runnable task) {
+        TaskContext previous = attach();
+        try {
+            task.run();
+        } finally {
+            detach(previous);
+        }
+    }
+
+    public <V> V call(Callable<V> task) throws Exception {
+        TaskContext previous = attach();
+        try {
+            return task.call();
+        } finally {
+            detach(previous);
+        }
+    }
+
+    // 包内可见：JMH 基准在 @Setup 中绑定上下文、@TearDown 中恢复，测量 Key.get() 的线程槽位查找；业务代码用 run / call
+    TaskContext attach() {
+        TaskContext previous = CURRENT.get();
+        if (previous != this) {
+            if (this == EMPTY) CURRENT.remove();
+            else CURRENT.set(this);
+        }
+        return previous;
+    }
+
+    void detach(TaskContext previous) {
+        if (previous == this) return;
+        // 线程原来没有上下文（线程池中的线程通常如此）直接 remove，不留下任何引用
+        if (previous == null) CURRENT.remove();
+        else CURRENT.set(previous);
+    }
+
+    private int indexOf(Key<?> key) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] == key) return i;
+        }
+        return -1;
+    }
+
+    // 捕获当前线程的上下文，返回的任务在哪个线程执行都使用这个上下文
+    public static Runnable wrap(Runnable task) {
+        TaskContext captured = current();
+        return () -> captured.run(task);
+    }
+
+    public static <V> Callable<V> wrap(Callable<V> task) {
+        TaskContext captured = current();
+        return () -> captured.call(task);
+    }
+
+    public static Executor propagating(Executor executor) {
+        return command -> executor.execute(wrap(command));
+    }
+
+    public static ExecutorService propagating(ExecutorService executor) {
+        return new PropagatingExecutorService(executor);
+    }
+
+    // AbstractExecutorService 的 submit/invokeAll/invokeAny 最终都在提交线程中调用 execute()，只需要在 execute 中捕获
+    private static final class PropagatingExecutorService extends AbstractExecutorService {
+        private final ExecutorService delegate;
+
+        PropagatingExecutorService(ExecutorService delegate) {
+            this.delegate = Objects.requireNonNull(delegate);
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            delegate.execute(wrap(command));
+        }
+
+        @Override
+        public void shutdown() {
+            delegate.shutdown();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return delegate.shutdownNow();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return delegate.isShutdown();
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return delegate.isTerminated();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            return delegate.awaitTermination(timeout, unit);
+        }
+    }
+
+    // fork() 出去的子任务不经过 execute，在创建任务（也就是父任务执行）时捕获上下文
+    public abstract static class RecursiveContextTask<V> extends RecursiveTask<V> {
+        private final TaskContext captured = current();
+
+        protected abstract V computeInContext();
+
+        @Override
+        protected final V compute() {
+            TaskContext previous = captured.attach();
+            try {
+                return computeInContext();
+            } finally {
+                captured.detach(previous);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("TaskContext{");
+        for (int i = 0; i < keys.length; i++) {
+            if (i > 0) sb.append(", ");
+            sb.append(keys[i]).append('=').append(values[i]);
+        }
+        return sb.append('}').toString();
+    }
+}
@@ -0,0 +1,133 @@
+package com.zelon.juc;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.*;
+
+/*
+TaskContext 与 ThreadLocalTestCase 中直接使用 ThreadLocal 的对比：
+① 线程复用时不会串值
+② 跨 ThreadPoolExecutor、ForkJoinPool（包括 fork 出去的子任务）、虚拟线程传播
+③ 线程池中残留的堆内存
+ */
+
+public class TaskContextTestCase {
+
+    private static final TaskContext.Key<Integer> COUNTER = TaskContext.Key.named("counter");
+    private static final TaskContext.Key<String> TRACE_ID = TaskContext.Key.named("traceId");
+
+    @Test
+    public void testNoLeakOnReusedThread() throws InterruptedException {
+        ExecutorService executor = TaskContext.propagating(new ThreadPoolExecutor(1, 1, 60, TimeUnit.MINUTES, new LinkedBlockingQueue<>(500)));
+        for (int i = 0; i < 10; i++) {
+            executor.execute(() -> {
+                // 与 ThreadLocalTestCase 相同的 "读出来 + 1" 写法，只在本任务的作用域内生效
+                int value = COUNTER.orElse(0);
+                TaskContext.where(COUNTER, value + 1).run(() ->
+                        System.out.println(Thread.currentThread().getName() + ": " + COUNTER.get())); // 始终为 1
+            });
+        }
+        executor.execute(() -> System.out.println("任务结束后: " + TaskContext.current())); // TaskContext{}
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testPropagation() throws Exception {
+        ExecutorService pool = TaskContext.propagating(new ThreadPoolExecutor(2, 2, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>()));
+        ForkJoinPool forkJoinPool = new ForkJoinPool(4);
+        ExecutorService virtual = TaskContext.propagating(Executors.newVirtualThreadPerTaskExecutor());
+
+        TaskContext.where(TRACE_ID, "req-1").call(() -> {
+            System.out.println("ThreadPoolExecutor: " + pool.submit(TRACE_ID::get).get()); // req-1
+            System.out.println("虚拟线程执行器: " + virtual.submit(TRACE_ID::get).get()); // req-1
+            Thread thread = Thread.ofVirtual().start(TaskContext.wrap(() ->
+                    System.out.println("Thread.ofVirtual(): " + TRACE_ID.get()))); // req-1
+            thread.join();
+            // fork 出去的子任务也能读到提交时的上下文
+            System.out.println("ForkJoinPool: " + forkJoinPool.invoke(new CountTraced(0, 10_000))); // 10000
+            return null;
+        });
+
+        // 上下文外提交的任务读不到
+        System.out.println("上下文之外: " + pool.submit(TRACE_ID::get).get()); // null
+        pool.shutdown();
+        virtual.shutdown();
+        forkJoinPool.shutdown();
+    }
+
+    // 统计 [from, to) 中能读到 traceId 的下标个数
+    static class CountTraced extends TaskContext.RecursiveContextTask<Integer> {
+        private final int from, to;
+
+        CountTraced(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Integer computeInContext() {
+            if (to - from <= 100) {
+                int count = 0;
+                for (int i = from; i < to; i++) {
+                    if ("req-1".equals(TRACE_ID.get())) count++;
+                }
+                return count;
+            }
+            int mid = (from + to) >>> 1;
+            CountTraced left = new CountTraced(from, mid);
+            left.fork();
+            return new CountTraced(mid, to).compute() + left.join();
+        }
+    }
+
+    @Test
+    public void testRetainedHeap() throws InterruptedException {
+        int tasks = 10_000;
+        int payload = 1024;
+        /*
+        常见的错误写法：每个请求 new 一个 ThreadLocal（或者在对象中持有非 static 的 ThreadLocal），用完没有 remove()。
+        ThreadLocal 对象很快被回收，但 ThreadLocalMap 中的 value 仍然被线程强引用，只有以后 set/get 扫描到 key 为 null 的 entry 才会清理
+         */
+        ThreadPoolExecutor raw = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+        long before = usedHeap();
+        for (int i = 0; i < tasks; i++) {
+            raw.execute(() -> {
+                ThreadLocal<byte[]> local = new ThreadLocal<>();
+                local.set(new byte[payload]);
+            });
+        }
+        drain(raw);
+        long rawRetained = usedHeap() - before;
+
+        ExecutorService context = TaskContext.propagating(new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>()));
+        TaskContext.Key<byte[]> key = TaskContext.Key.named("payload");
+        before = usedHeap();
+        for (int i = 0; i < tasks; i++) {
+            context.execute(() -> TaskContext.where(key, new byte[payload]).run(() -> {
+            }));
+        }
+        drain(context);
+        long contextRetained = usedHeap() - before;
+
+        System.out.println("ThreadLocal 残留: " + rawRetained / 1024 + " KB"); // 约 10000 KB（tasks * payload），ThreadLocal 早已被回收，value 还在
+        System.out.println("TaskContext 残留: " + contextRetained / 1024 + " KB"); // 接近 0
+        raw.shutdown();
+        context.shutdown();
+    }
+
+    // 等待队列中已有的任务全部执行完，线程保持存活（存活的线程才会继续持有 ThreadLocalMap）
+    private static void drain(ExecutorService executor) throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        executor.execute(latch::countDown);
+        latch.await();
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
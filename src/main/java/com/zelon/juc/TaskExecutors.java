@@ -0,0 +1,62 @@
+package com.zelon.juc;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/*
+执行器门面：通过配置在 "平台线程池" 和 "每个任务一个虚拟线程" 之间切换，业务代码只依赖 ExecutorService
+1. PLATFORM_POOL: 固定数量的平台线程 + 有界队列（InstrumentedThreadPoolExecutor），适合 CPU 密集型任务，
+   队列默认容量 DEFAULT_QUEUE_CAPACITY，队列满时用 CallerRunsPolicy 让提交线程自己执行任务，提交速度随之降下来（背压），
+   不会像无界队列那样无限堆积任务直到 OOM，也不会像 AbortPolicy 那样在突发流量时直接抛异常。
+   在提交线程中执行的任务计入 InstrumentedThreadPoolExecutor.snapshot().getRejections() 的 CallerRunsPolicy；
+   一次性提交一批任务（例如 VirtualThreadBenchmark）时用 create(mode, name, threads, queueCapacity) 按任务数设置容量，
+   否则提交线程会被自己执行的任务阻塞，和虚拟线程比较的就不只是线程池本身了
+2. VIRTUAL_PER_TASK: Executors.newThreadPerTaskExecutor()，每个任务一个虚拟线程，适合大量阻塞 IO 的任务，
+   虚拟线程阻塞时会从载体线程（carrier，ForkJoinPool 中的平台线程）上卸载，不占用平台线程。
+
+配置方式：-Djuc.executor.mode=VIRTUAL_PER_TASK（默认 PLATFORM_POOL）
+
+注意：JDK 21 中，虚拟线程在 synchronized 代码块内阻塞（sleep、IO、Object.wait()）时无法卸载，
+会把载体线程一起 "钉住"（pinning），载体线程数量默认等于 CPU 核数，大量 pinning 会让虚拟线程退化为很小的线程池。
+SyncLockUpgrade、ProducerConsumerModelCase 中 synchronized + wait() 的写法就是典型场景，
+可以用 PinningDetector 找出钉住载体线程的代码位置，改为 ReentrantLock。
+ */
+
+public final class TaskExecutors {
+
+    public static final String MODE_PROPERTY = "juc.executor.mode";
+    public static final int DEFAULT_QUEUE_CAPACITY = 10_000;
+
+    public enum ExecutionMode {
+        PLATFORM_POOL, VIRTUAL_PER_TASK
+    }
+
+    private TaskExecutors() {
+    }
+
+    public static ExecutionMode configuredMode() {
+        return ExecutionMode.valueOf(System.getProperty(MODE_PROPERTY, ExecutionMode.PLATFORM_POOL.name()).trim().toUpperCase());
+    }
+
+    // 按配置创建执行器，平台线程池的线程数默认为 CPU 核数的 2 倍
+    public static ExecutorService create(String name) {
+        return create(configuredMode(), name, Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    public static ExecutorService create(ExecutionMode mode, String name, int platformThreads) {
+        return create(mode, name, platformThreads, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    // queueCapacity 只对 PLATFORM_POOL 有效，虚拟线程每个任务一个线程，没有队列
+    public static ExecutorService create(ExecutionMode mode, String name, int platformThreads, int queueCapacity) {
+        return switch (mode) {
+            case PLATFORM_POOL -> new InstrumentedThreadPoolExecutor(
+                    platformThreads, platformThreads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(queueCapacity),
+                    Thread.ofPlatform().name(name + "-", 0).factory(), new ThreadPoolExecutor.CallerRunsPolicy());
+            case VIRTUAL_PER_TASK -> Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 0).factory());
+        };
+    }
+}
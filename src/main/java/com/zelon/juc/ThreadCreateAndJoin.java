@@ -22,6 +22,10 @@ public class ThreadCreateAndJoin {
     ③ 传入实现 callable FutureTask 的方式，也是先调用 Runnable run() 方法，然后转化为调用 FutureTask call()
 
     t1.join(): 当前线程等待t1线程执行结束后才继续执行，默认一直等，也可以设置超时时间
+
+    4. JDK 21 之后还可以创建虚拟线程：Thread.ofVirtual().start(runnable)，或者 Executors.newVirtualThreadPerTaskExecutor()，
+       虚拟线程由 JVM 调度到少量载体线程上执行，阻塞时自动卸载，适合大量阻塞 IO 的任务，
+       平台线程池 / 虚拟线程的切换见 TaskExecutors，synchronized 钉住载体线程的问题见 PinningDetector
      */
 
     public static void main(String[] args) {
@@ -40,5 +40,6 @@ public class ThreadLocalTestCase {
             });
         }
         // 当使用ThreadLocal时，如果数据不再使用，要调用remove()方法删除，否则可能会造成内存泄露，尤其是使用线程池时。
+        // 这里只有 1 个线程，所以任务之间不需要同步；需要多个线程又想保留这个性质时，可以按 key 分到单线程的 lane 上，见 AffinityExecutor。
     }
 }
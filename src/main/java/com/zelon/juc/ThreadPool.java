@@ -51,9 +51,34 @@ public class ThreadPool {
     出现异常，线程会停止，将异常往外抛，然后重新添加一个新的线程到线程池中。
     个人认为这是 官方想保留 UncaughtExceptionHandler 机制，只有往外抛，才能执行这个机制。
 
+    10. 怎么观察线程池的运行情况？
+    ThreadPoolExecutor 预留了 beforeExecute()、afterExecute()、terminated() 三个钩子方法，
+    InstrumentedThreadPoolExecutor 通过这几个钩子统计排队时间、执行时间、拒绝次数、活跃线程峰值等指标，
+    可以通过 snapshot() 在进程内读取，也可以注册为 JMX MBean。
+
+    11. future.get() 会阻塞调用线程，一个请求扇出多个子任务再逐个 get() 时，请求线程全程都在等待，
+    可以改用 AsyncStage 以回调的方式组合（扇出 / 汇总、超时、firstSuccess），没有线程阻塞在 get() 上。
+
+    12. 过载时怎么办？
+    上面四种拒绝策略只在队列满时才起作用，LinkedBlockingQueue(500) 持续满着的时候每个任务都要排完 500 个才能执行，
+    所有请求都变慢、都超时。可以把 workQueue 换成 SheddingQueue，尽早丢弃一部分任务，让剩下的按时完成：
+    ① CoDel：持续过载时丢弃排队超过 target 的任务
+    ② 截止时间：取任务时跳过已经过期的
+    ③ 自适应 LIFO：队列太长时先执行新任务
+    ④ 优先级：队列满时先挤掉低优先级的任务
+    各个策略的 goodput、p99 对比见 SheddingQueueTestCase。
+
+    13. 多个租户共用一个线程池时，一个租户就能占满 500 个槽位，其他租户的任务排在后面或者被拒绝。
+    FairShareExecutor 给每个租户一个子队列，按权重轮转分配线程时间，还可以限制每个租户的并发数。
+
+    14. 用 JFR 录制时，任务在 workQueue 中排队和工作线程等任务都只显示为 park，
+    InstrumentedThreadPoolExecutor 会输出 com.zelon.juc.TaskQueueWait / TaskExecution / TaskRejected 事件，
+    只记录排队或执行超过阈值的任务，见 JfrEvents、JfrEventsTestCase。
+
      */
     public static void main(String[] args) {
-        try (ThreadPoolExecutor executor = new ThreadPoolExecutor(5, 10, 60, TimeUnit.MINUTES, new LinkedBlockingQueue<>(500))) {
+        try (InstrumentedThreadPoolExecutor executor = new InstrumentedThreadPoolExecutor(5, 10, 60, TimeUnit.MINUTES, new LinkedBlockingQueue<>(500))) {
+            executor.registerMBean("ThreadPool.main");
 
             // 通过 execute() 方法执行线程
             executor.execute(() -> {
@@ -0,0 +1,52 @@
+package com.zelon.juc;
+
+import java.util.Map;
+
+/*
+InstrumentedThreadPoolExecutor 暴露给 JMX 的指标，注册名：com.zelon.juc:type=ThreadPool,name={poolName}
+可以通过 jconsole / VisualVM 或者任意 JMX 采集器读取，延迟单位均为微秒。
+ */
+
+public interface ThreadPoolMetricsMXBean {
+    int getPoolSize();
+
+    int getCorePoolSize();
+
+    int getMaximumPoolSize();
+
+    int getLargestPoolSize();
+
+    int getActiveThreads();
+
+    int getPeakActiveThreads();
+
+    int getQueueDepth();
+
+    int getPeakQueueDepth();
+
+    long getSubmittedTasks();
+
+    long getCompletedTasks();
+
+    long getFailedTasks();
+
+    Map<String, Long> getRejections();
+
+    double getQueueWaitMeanMicros();
+
+    double getQueueWaitP50Micros();
+
+    double getQueueWaitP99Micros();
+
+    double getQueueWaitMaxMicros();
+
+    double getExecutionMeanMicros();
+
+    double getExecutionP50Micros();
+
+    double getExecutionP99Micros();
+
+    double getExecutionMaxMicros();
+
+    void resetPeaks();
+}
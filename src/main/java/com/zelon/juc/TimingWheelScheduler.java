@@ -0,0 +1,325 @@
+package com.zelon.juc;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+分层时间轮（hierarchical timing wheel）：大量超时任务（每个请求一个超时）的定时器
+1. 为什么不用 ScheduledThreadPoolExecutor？
+   ReentrantLockTestCase 中的 tryLock(5, TimeUnit.SECONDS)、ThreadSleepInterrupt 中的 sleep 轮询，
+   在服务中对应的是每个请求一个超时。ScheduledThreadPoolExecutor 用堆（DelayedWorkQueue）保存任务，
+   插入、取消都是 O(log n) 并且要加锁；而绝大多数超时都会在到期之前被取消（请求正常返回）。
+
+2. 时间轮：像钟表一样，把时间分成 tick（默认 1ms），第 0 层有 wheelSize 个槽（bucket），第 i 个槽放第 i 个 tick 到期的任务
+   ① 插入：根据到期的 tick 直接算出槽的下标，挂到槽的双向链表末尾，O(1)
+   ② 取消：只修改任务的状态（CAS），由时间轮线程在下一个 tick 从链表中摘除，O(1)
+   ③ 每个 tick 时间轮线程处理一个槽，把到期的任务批量交给 executor 执行（一批一个 Runnable，减少提交次数）
+
+3. 分层：一层只能表示 wheelSize 个 tick，更远的任务放到上一层（每个槽代表 wheelSize 个 tick），以此类推；
+   下一层转完一圈时，把上一层当前槽中的任务重新插入（cascade），它们会落到更低的层，最终落到第 0 层到期。
+   层在需要时才创建（overflow wheel），wheelSize = 512 时，4 层就能表示 512^4 ms ≈ 2 年。
+
+4. 线程模型：只有时间轮线程读写槽和链表，不需要加锁：
+   schedule() 把任务放入无锁队列（ConcurrentLinkedQueue），时间轮线程每个 tick 先把新任务插入到槽中；
+   cancel() 把任务放入另一个无锁队列，时间轮线程每个 tick 把它们从链表中摘除，被取消的任务不会一直占着内存等到期。
+
+5. 精度：到期时间向上取整到 tick，任务不会提前执行，最多晚一个 tick（加上 executor 的排队时间）。
+ */
+
+public class TimingWheelScheduler {
+
+    @Value
+    @Builder
+    public static class Options {
+        @Builder.Default long tickNanos = TimeUnit.MILLISECONDS.toNanos(1);
+        // 每层的槽数，向上取整为 2 的幂
+        @Builder.Default int wheelSize = 512;
+        // 每个 tick 到期的任务按这个大小分批交给 executor
+        @Builder.Default int dispatchBatchSize = 1024;
+    }
+
+    // schedule() 返回的句柄
+    public static final class Timeout {
+        private static final int PENDING = 0, CANCELLED = 1, EXPIRED = 2;
+        private static final VarHandle STATE;
+
+        static {
+            try {
+                STATE = MethodHandles.lookup().findVarHandle(Timeout.class, "state", int.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        private final TimingWheelScheduler scheduler;
+        private final Runnable task;
+        final long deadlineTick;
+        private volatile int state;
+        // 以下字段只在时间轮线程中访问
+        Bucket bucket;
+        Timeout prev, next;
+
+        Timeout(TimingWheelScheduler scheduler, Runnable task, long deadlineTick) {
+            this.scheduler = scheduler;
+            this.task = task;
+            this.deadlineTick = deadlineTick;
+        }
+
+        // 返回 false 表示已经到期执行或者已经取消
+        public boolean cancel() {
+            if (!STATE.compareAndSet(this, PENDING, CANCELLED)) return false;
+            scheduler.pending.decrementAndGet();
+            scheduler.cancelled.add(this);
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return state == CANCELLED;
+        }
+
+        public boolean isExpired() {
+            return state == EXPIRED;
+        }
+
+        boolean expire() {
+            return STATE.compareAndSet(this, PENDING, EXPIRED);
+        }
+    }
+
+    // 槽：双向链表
+    static final class Bucket {
+        Timeout head, tail;
+
+        void add(Timeout t) {
+            t.bucket = this;
+            t.prev = tail;
+            t.next = null;
+            if (tail == null) head = t;
+            else tail.next = t;
+            tail = t;
+        }
+
+        void remove(Timeout t) {
+            if (t.prev == null) head = t.next;
+            else t.prev.next = t.next;
+            if (t.next == null) tail = t.prev;
+            else t.next.prev = t.prev;
+            t.prev = t.next = null;
+            t.bucket = null;
+        }
+
+        // 取出整条链表，槽变为空
+        Timeout drain() {
+            Timeout h = head;
+            head = tail = null;
+            return h;
+        }
+    }
+
+    private final Executor executor;
+    private static final long MAX_DELAY_NANOS = Long.MAX_VALUE >> 1;
+    // deadlineTick - currentTick 不会溢出，分层计算也不会超出 63 位
+    private static final long MAX_TICK = Long.MAX_VALUE >> 1;
+    private final long tickNanos;
+    private final int bits;
+    private final int mask;
+    private final int dispatchBatchSize;
+    private final long startNanos;
+    // wheels[level][slot]，上层在需要时才创建
+    private Bucket[][] wheels = new Bucket[0][];
+    // 已经处理到的 tick，只有时间轮线程修改
+    private long currentTick;
+
+    private final ConcurrentLinkedQueue<Timeout> scheduled = new ConcurrentLinkedQueue<>();
+    final ConcurrentLinkedQueue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+    final AtomicLong pending = new AtomicLong();
+    private final Thread worker;
+    private volatile boolean shutdown;
+
+    public TimingWheelScheduler(Executor executor) {
+        this(executor, Options.builder().build());
+    }
+
+    public TimingWheelScheduler(Executor executor, Options options) {
+        if (options.getTickNanos() <= 0) throw new IllegalArgumentException("tickNanos: " + options.getTickNanos());
+        if (options.getWheelSize() < 2 || options.getWheelSize() > (1 << 20)) throw new IllegalArgumentException("wheelSize: " + options.getWheelSize());
+        this.executor = Objects.requireNonNull(executor);
+        this.tickNanos = options.getTickNanos();
+        int size = Integer.highestOneBit(options.getWheelSize() - 1) << 1;
+        this.bits = Integer.numberOfTrailingZeros(size);
+        this.mask = size - 1;
+        this.dispatchBatchSize = Math.max(1, options.getDispatchBatchSize());
+        this.startNanos = System.nanoTime();
+        this.worker = new Thread(this::run, "timing-wheel");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    // delay 之后在 executor 中执行 task，O(1)
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        Objects.requireNonNull(task);
+        if (shutdown) throw new RejectedExecutionException("scheduler has been shut down");
+        // 和 ScheduledThreadPoolExecutor.triggerTime 一样把延迟限制在 Long.MAX_VALUE >> 1（约 146 年），
+        // 相当于 "永不到期"，加上已经过去的时间也不会溢出成负数而变成立即执行
+        long delayNanos = Math.min(unit.toNanos(Math.max(0, delay)), MAX_DELAY_NANOS);
+        // 相对于 startNanos 计算，向上取整，保证不会提前执行
+        long tick = Math.max(1, Math.ceilDiv(System.nanoTime() - startNanos + delayNanos, tickNanos));
+        Timeout t = new Timeout(this, task, Math.min(tick, MAX_TICK));
+        pending.incrementAndGet();
+        scheduled.add(t);
+        return t;
+    }
+
+    // 等待到期的任务数（不包括已取消的）
+    public long pendingCount() {
+        return pending.get();
+    }
+
+    // 停止时间轮线程，返回还没有到期的任务
+    public List<Runnable> shutdown() throws InterruptedException {
+        shutdown = true;
+        LockSupport.unpark(worker);
+        worker.join();
+        List<Runnable> remaining = new ArrayList<>();
+        for (Bucket[] wheel : wheels) {
+            for (Bucket b : wheel) {
+                for (Timeout t = b.head; t != null; t = t.next) {
+                    if (t.state == Timeout.PENDING) remaining.add(t.task);
+                }
+            }
+        }
+        for (Timeout t : scheduled) {
+            if (t.state == Timeout.PENDING) remaining.add(t.task);
+        }
+        return remaining;
+    }
+
+    private void run() {
+        List<Timeout> expired = new ArrayList<>();
+        while (!shutdown) {
+            long nextTickAt = startNanos + (currentTick + 1) * tickNanos;
+            long wait = nextTickAt - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(this, wait);
+                continue;
+            }
+            // 落后时（GC 停顿、线程没有及时调度）连续处理多个 tick，追上当前时间
+            currentTick++;
+            unlinkCancelled();
+            transferScheduled(expired);
+            cascade(expired);
+            Bucket b = wheels.length == 0 ? null : wheels[0][(int) (currentTick & mask)];
+            if (b != null) collect(b.drain(), expired);
+            if (!expired.isEmpty()) {
+                dispatch(expired);
+                expired = new ArrayList<>();
+            }
+        }
+    }
+
+    private void unlinkCancelled() {
+        Timeout t;
+        while ((t = cancelled.poll()) != null) {
+            if (t.bucket != null) t.bucket.remove(t);
+        }
+    }
+
+    private void transferScheduled(List<Timeout> expired) {
+        Timeout t;
+        while ((t = scheduled.poll()) != null) {
+            if (t.state == Timeout.PENDING) place(t, expired);
+        }
+    }
+
+    // 根据距离到期还有多少 tick 选择层和槽；已经到期的直接加入 expired
+    private void place(Timeout t, List<Timeout> expired) {
+        long remaining = t.deadlineTick - currentTick;
+        if (remaining <= 0) {
+            expired.add(t);
+            return;
+        }
+        int level = 0;
+        while (level < 63 / bits && (remaining >>> (bits * (level + 1))) != 0) {
+            level++;
+        }
+        ensureLevel(level);
+        wheels[level][(int) ((t.deadlineTick >>> (bits * level)) & mask)].add(t);
+    }
+
+    // 下一层转完一圈时，把上一层当前槽中的任务重新插入，它们会落到更低的层
+    private void cascade(List<Timeout> expired) {
+        for (int level = 1; level < wheels.length; level++) {
+            if (((currentTick >>> (bits * (level - 1))) & mask) != 0) return;
+            Timeout t = wheels[level][(int) ((currentTick >>> (bits * level)) & mask)].drain();
+            while (t != null) {
+                Timeout next = t.next;
+                t.prev = t.next = null;
+                t.bucket = null;
+                if (t.state == Timeout.PENDING) place(t, expired);
+                t = next;
+            }
+        }
+    }
+
+    private void collect(Timeout t, List<Timeout> expired) {
+        while (t != null) {
+            Timeout next = t.next;
+            t.prev = t.next = null;
+            t.bucket = null;
+            expired.add(t);
+            t = next;
+        }
+    }
+
+    // 分批提交，每批一个 Runnable
+    private void dispatch(List<Timeout> expired) {
+        for (int from = 0; from < expired.size(); from += dispatchBatchSize) {
+            List<Timeout> batch = expired.subList(from, Math.min(expired.size(), from + dispatchBatchSize));
+            try {
+                executor.execute(() -> {
+                    for (Timeout t : batch) {
+                        if (!t.expire()) continue; // 已经被取消
+                        pending.decrementAndGet();
+                        try {
+                            t.task.run();
+                        } catch (RuntimeException e) {
+                            Thread th = Thread.currentThread();
+                            th.getUncaughtExceptionHandler().uncaughtException(th, e);
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // executor 已经关闭，这一批任务丢弃
+                for (Timeout t : batch) {
+                    if (t.expire()) pending.decrementAndGet();
+                }
+            }
+        }
+    }
+
+    private void ensureLevel(int level) {
+        if (level < wheels.length) return;
+        Bucket[][] grown = new Bucket[level + 1][];
+        System.arraycopy(wheels, 0, grown, 0, wheels.length);
+        for (int i = wheels.length; i <= level; i++) {
+            Bucket[] wheel = new Bucket[mask + 1];
+            for (int j = 0; j < wheel.length; j++) {
+                wheel[j] = new Bucket();
+            }
+            grown[i] = wheel;
+        }
+        wheels = grown;
+    }
+}
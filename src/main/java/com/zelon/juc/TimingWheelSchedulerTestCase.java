@@ -0,0 +1,114 @@
+package com.zelon.juc;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+TimingWheelScheduler 的用法：到期精度、取消、经过多层的长延迟，以及一百万个等待中的超时。
+ */
+
+public class TimingWheelSchedulerTestCase {
+
+    @Test
+    public void testAccuracy() throws Exception {
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        TimingWheelScheduler scheduler = new TimingWheelScheduler(pool);
+        long begin = System.nanoTime();
+        CompletableFuture<Long> fired = new CompletableFuture<>();
+        scheduler.schedule(() -> fired.complete(System.nanoTime() - begin), 50, TimeUnit.MILLISECONDS);
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(fired.get());
+        System.out.println(elapsed >= 50); // true, 不会提前执行
+        System.out.println("延迟: " + elapsed + "ms"); // 延迟: 50ms 多一点, 第一次执行包含类加载和时间轮线程启动的时间
+        scheduler.shutdown();
+        pool.shutdown();
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        TimingWheelScheduler scheduler = new TimingWheelScheduler(pool);
+        AtomicInteger fired = new AtomicInteger();
+        TimingWheelScheduler.Timeout a = scheduler.schedule(fired::incrementAndGet, 20, TimeUnit.MILLISECONDS);
+        TimingWheelScheduler.Timeout b = scheduler.schedule(fired::incrementAndGet, 20, TimeUnit.MILLISECONDS);
+        System.out.println(a.cancel() + " " + a.cancel()); // true false, 第二次取消没有效果
+        System.out.println(scheduler.pendingCount()); // 1
+
+        Thread.sleep(100);
+        System.out.println(fired.get()); // 1
+        System.out.println(a.isCancelled() + " " + b.isExpired()); // true true
+        System.out.println(b.cancel()); // false, 已经执行过
+        scheduler.shutdown();
+        pool.shutdown();
+    }
+
+    @Test
+    public void testHugeDelay() throws Exception {
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        TimingWheelScheduler scheduler = new TimingWheelScheduler(pool);
+        AtomicInteger fired = new AtomicInteger();
+        // 换算成纳秒再加上当前时间会溢出，不能变成 "马上执行"
+        scheduler.schedule(fired::incrementAndGet, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        scheduler.schedule(fired::incrementAndGet, Long.MAX_VALUE, TimeUnit.DAYS);
+        scheduler.schedule(fired::incrementAndGet, Long.MAX_VALUE - System.nanoTime() / 2, TimeUnit.NANOSECONDS);
+        Thread.sleep(100);
+        System.out.println(fired.get() + ", " + scheduler.pendingCount()); // 0, 3
+        System.out.println(scheduler.shutdown().size()); // 3
+        pool.shutdown();
+    }
+
+    @Test
+    public void testOverflowWheels() throws Exception {
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        // 每层只有 8 个槽：第 0 层 8ms，第 1 层 64ms，第 2 层 512ms，1 秒的延迟要用到第 3 层
+        TimingWheelScheduler scheduler = new TimingWheelScheduler(pool, TimingWheelScheduler.Options.builder().wheelSize(8).build());
+        long begin = System.nanoTime();
+        List<CompletableFuture<Long>> fired = new ArrayList<>();
+        for (long delay : new long[]{5, 60, 300, 1000}) {
+            CompletableFuture<Long> f = new CompletableFuture<>();
+            scheduler.schedule(() -> f.complete(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin)), delay, TimeUnit.MILLISECONDS);
+            fired.add(f);
+        }
+        for (CompletableFuture<Long> f : fired) System.out.print(f.get() + " "); // 5 60 300 1000, 允许晚一两个 ms
+        System.out.println();
+        System.out.println(scheduler.shutdown().size()); // 0
+        pool.shutdown();
+    }
+
+    @Test
+    public void testMillionTimeouts() throws Exception {
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        TimingWheelScheduler scheduler = new TimingWheelScheduler(pool);
+        AtomicInteger fired = new AtomicInteger();
+        int n = 1_000_000;
+        List<TimingWheelScheduler.Timeout> timeouts = new ArrayList<>(n);
+
+        // 每个请求一个 30 秒的超时，请求在超时之前正常返回，超时被取消
+        long begin = System.nanoTime();
+        for (int i = 0; i < n; i++) {
+            timeouts.add(scheduler.schedule(fired::incrementAndGet, 30_000 + (i & 1023), TimeUnit.MILLISECONDS));
+        }
+        long scheduled = System.nanoTime() - begin;
+        System.out.println("等待中: " + scheduler.pendingCount()); // 等待中: 1000000
+
+        begin = System.nanoTime();
+        for (int i = 0; i < n - 10; i++) {
+            timeouts.get(i).cancel();
+        }
+        long cancelled = System.nanoTime() - begin;
+        System.out.println("等待中: " + scheduler.pendingCount()); // 等待中: 10
+
+        // 没有取消的 10 个还要等 30 秒，不影响新的短超时按时到期
+        for (int i = 0; i < 100; i++) {
+            scheduler.schedule(fired::incrementAndGet, 10, TimeUnit.MILLISECONDS);
+        }
+        Thread.sleep(200);
+        System.out.println(fired.get()); // 100
+        System.out.println("schedule: " + scheduled / n + "ns/op, cancel: " + cancelled / (n - 10) + "ns/op"); // schedule: 300ns/op 左右, cancel: 200ns/op 左右, 都与等待中的超时数量无关
+        System.out.println(scheduler.shutdown().size()); // 10
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,178 @@
+package com.zelon.juc;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.AbstractQueuedLongSynchronizer;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+基于 AQS 的令牌桶限流器
+1. 为什么不用 Semaphore + 定时补充令牌的线程？
+   ① 需要一个后台线程每隔一段时间 release()，补充的粒度受定时器精度限制（1ms 补一次，限流就是一格一格的）
+   ② 补充线程被 GC、CPU 饱和拖慢时，令牌跟着变少，限流结果不准
+   ③ 每个限流器一个线程，成千上万个租户的限流器无法承受
+
+2. 懒补充：不保存令牌数，只保存一个时间点（GCRA，Generic Cell Rate Algorithm）
+   state = TAT（theoretical arrival time），表示按照限定速率，之前发放的令牌 "理论上" 要到什么时候才算用完：
+   ① 获取 n 个令牌：newTat = max(TAT, now) + n × interval，interval = 1 秒 / 速率
+   ② newTat - now <= burst × interval 时允许，CAS 把 state 改为 newTat，否则令牌不够
+   ③ 当前可用令牌数 = (burst × interval - (max(TAT, now) - now)) / interval
+   整个状态只有一个 long，获取就是一次 CAS，调用方之间不加锁、不排队，和 AtomicTestCase 中的 CAS 自增一样。
+
+3. 基于 AQS 的模板方法（见 ReentrantLockTestCase 的 AQS 说明），使用 AbstractQueuedLongSynchronizer（state 是 long）：
+   ① tryAcquireShared(permits): 上面的 GCRA 判断，返回剩余令牌数，负数表示令牌不够
+   ② 令牌不够时不进 AQS 的同步队列，而是预约：直接 CAS 把 TAT 推到 newTat（允许超过 burst × interval），
+      超出的部分 newTat - now - burst × interval 就是这个线程的令牌到期还要等的时间，定时 park 这么久之后直接返回，不用再抢。
+      如果都定时 park 到 "下一个令牌到期" 的时间点再 CAS，补充一个令牌就会唤醒所有等待线程，只有一个能抢到，
+      其他线程再次 park（惊群）；预约之后每个线程只在自己的令牌到期时醒来一次，按预约的顺序拿到令牌
+   ③ 预约的令牌已经计入 TAT，新来的线程 tryAcquire() 不能插队抢走等待线程的令牌
+   ④ 等待期间被中断时把预约的令牌还回去（TAT 减去 n × interval），后面的线程仍然按原来的时间点醒来，还回去的令牌给新来的线程用
+
+4. burst（桶容量）：空闲一段时间之后最多攒下 burst 个令牌，允许短时间的突发，一次最多获取 burst 个令牌。
+ */
+
+public class TokenBucketRateLimiter {
+
+    private final Sync sync;
+    private final long intervalNanos;
+    private final int burst;
+    // 预约了令牌、正在等待的线程数
+    private final AtomicInteger waiters = new AtomicInteger();
+
+    // permitsPerSecond: 每秒发放的令牌数，burst: 桶容量
+    public TokenBucketRateLimiter(double permitsPerSecond, int burst) {
+        if (!(permitsPerSecond > 0)) throw new IllegalArgumentException("permitsPerSecond: " + permitsPerSecond);
+        if (burst < 1) throw new IllegalArgumentException("burst: " + burst);
+        this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+        this.burst = burst;
+        this.sync = new Sync(intervalNanos, burst);
+    }
+
+    // 阻塞直到获取 permits 个令牌，等待期间可以被中断
+    public void acquire(int permits) throws InterruptedException {
+        checkPermits(permits);
+        if (Thread.interrupted()) throw new InterruptedException();
+        awaitReserved(permits, sync.reserve(permits, Long.MAX_VALUE));
+    }
+
+    public void acquire() throws InterruptedException {
+        acquire(1);
+    }
+
+    // 立即返回，令牌不够返回 false
+    public boolean tryAcquire(int permits) {
+        checkPermits(permits);
+        return sync.tryAcquireShared(permits) >= 0;
+    }
+
+    public boolean tryAcquire() {
+        return tryAcquire(1);
+    }
+
+    // 最多等待 timeout，如果等到超时也攒不够令牌，直接返回 false，不会白等
+    public boolean tryAcquire(int permits, long timeout, TimeUnit unit) throws InterruptedException {
+        checkPermits(permits);
+        if (Thread.interrupted()) throw new InterruptedException();
+        long wait = sync.reserve(permits, unit.toNanos(timeout));
+        if (wait < 0) return false;
+        awaitReserved(permits, wait);
+        return true;
+    }
+
+    // 当前可用的令牌数
+    public int availablePermits() {
+        return (int) Math.max(0, sync.available(System.nanoTime()));
+    }
+
+    public double getRate() {
+        return (double) TimeUnit.SECONDS.toNanos(1) / intervalNanos;
+    }
+
+    public int getBurst() {
+        return burst;
+    }
+
+    // 正在等待令牌的线程数（估计值）
+    public int getQueueLength() {
+        return waiters.get();
+    }
+
+    // 已经预约了 permits 个令牌，等到它们到期
+    private void awaitReserved(int permits, long waitNanos) throws InterruptedException {
+        if (waitNanos == 0) return;
+        long due = System.nanoTime() + waitNanos;
+        waiters.incrementAndGet();
+        try {
+            for (long remaining = waitNanos; remaining > 0; remaining = due - System.nanoTime()) {
+                LockSupport.parkNanos(this, remaining);
+                if (Thread.interrupted()) {
+                    sync.refund(permits);
+                    throw new InterruptedException();
+                }
+            }
+        } finally {
+            waiters.decrementAndGet();
+        }
+    }
+
+    private void checkPermits(int permits) {
+        if (permits < 1 || permits > burst) {
+            throw new IllegalArgumentException("permits must be in [1, " + burst + "]: " + permits);
+        }
+    }
+
+    private static final class Sync extends AbstractQueuedLongSynchronizer {
+        private final long intervalNanos;
+        private final long capacityNanos;
+        // 时间都相对于 base，初始 TAT = 0 表示桶是满的
+        private final long base = System.nanoTime() - 1;
+
+        Sync(long intervalNanos, int burst) {
+            this.intervalNanos = intervalNanos;
+            this.capacityNanos = Math.multiplyExact(intervalNanos, (long) burst);
+        }
+
+        @Override
+        protected long tryAcquireShared(long permits) {
+            long cost = permits * intervalNanos;
+            for (;;) {
+                long tat = getState();
+                long now = System.nanoTime() - base;
+                long newTat = Math.max(tat, now) + cost;
+                long debt = newTat - now;
+                if (debt > capacityNanos) return -1;
+                if (compareAndSetState(tat, newTat)) {
+                    // 剩余的令牌数
+                    return (capacityNanos - debt) / intervalNanos;
+                }
+            }
+        }
+
+        // 预约 permits 个令牌，返回还要等多久才到期（0 表示现在就有），要等的时间超过 maxWaitNanos 时不预约，返回 -1
+        long reserve(long permits, long maxWaitNanos) {
+            long cost = permits * intervalNanos;
+            for (;;) {
+                long tat = getState();
+                long now = System.nanoTime() - base;
+                long newTat = Math.max(tat, now) + cost;
+                long wait = newTat - now - capacityNanos;
+                if (wait > maxWaitNanos) return -1;
+                if (compareAndSetState(tat, newTat)) return Math.max(0, wait);
+            }
+        }
+
+        // 归还预约了但是没有用的令牌
+        void refund(long permits) {
+            long cost = permits * intervalNanos;
+            long tat;
+            do {
+                tat = getState();
+            } while (!compareAndSetState(tat, tat - cost));
+        }
+
+        long available(long nanoTime) {
+            long now = nanoTime - base;
+            return (capacityNanos - (Math.max(getState(), now) - now)) / intervalNanos;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.zelon.juc;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+TokenBucketRateLimiter 的用法：突发、按速率补充、带超时的获取，以及多线程下的实际速率。
+ */
+
+public class TokenBucketRateLimiterTestCase {
+
+    @Test
+    public void testBurstAndRefill() throws InterruptedException {
+        // 每秒 10 个令牌，桶容量 5
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(10, 5);
+        System.out.println(limiter.availablePermits()); // 5, 初始时桶是满的
+
+        int granted = 0;
+        for (int i = 0; i < 8; i++) {
+            if (limiter.tryAcquire()) granted++;
+        }
+        System.out.println("突发获取: " + granted); // 5, 超过桶容量的请求直接失败
+
+        Thread.sleep(250); // 没有后台线程，再次获取时按经过的时间计算补充了多少
+        System.out.println(limiter.availablePermits()); // 2
+
+        Thread.sleep(1000);
+        System.out.println(limiter.availablePermits()); // 5, 最多攒下 burst 个
+    }
+
+    @Test
+    public void testTryAcquireWithTimeout() throws InterruptedException {
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(10, 3);
+        limiter.tryAcquire(3);
+
+        long begin = System.nanoTime();
+        // 3 个令牌需要 300ms 才能补满，等 100ms 肯定等不到，立即返回 false 而不是白等 100ms
+        System.out.println(limiter.tryAcquire(3, 100, TimeUnit.MILLISECONDS)); // false
+        System.out.println("耗时: " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin) + "ms"); // 0ms
+
+        begin = System.nanoTime();
+        System.out.println(limiter.tryAcquire(2, 500, TimeUnit.MILLISECONDS)); // true
+        System.out.println("耗时: " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin) + "ms"); // 200ms 左右
+
+        try {
+            limiter.tryAcquire(4);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage()); // permits must be in [1, 3]: 4
+        }
+    }
+
+    @Test
+    public void testRateUnderContention() throws InterruptedException {
+        // 每秒 200 个令牌，桶容量 1，8 个线程一直在抢
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(200, 1);
+        AtomicInteger acquired = new AtomicInteger();
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            Thread t = new Thread(() -> {
+                try {
+                    while (System.nanoTime() < end) {
+                        limiter.acquire();
+                        acquired.incrementAndGet();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            t.start();
+            threads.add(t);
+        }
+        for (Thread t : threads) t.join();
+        System.out.println("1 秒内获取: " + acquired.get()); // 200 左右（多出最后一轮等待中的几个）
+    }
+
+    @Test
+    public void testAcquireInterruptibly() throws InterruptedException {
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(0.1, 1); // 10 秒一个令牌
+        limiter.tryAcquire();
+        Thread t = new Thread(() -> {
+            try {
+                limiter.acquire();
+                System.out.println("获取到令牌");
+            } catch (InterruptedException e) {
+                System.out.println("等待令牌时被打断"); // ✔
+            }
+        });
+        t.start();
+        Thread.sleep(100);
+        System.out.println("等待线程数: " + limiter.getQueueLength()); // 1
+        t.interrupt();
+        t.join();
+        System.out.println("等待线程数: " + limiter.getQueueLength()); // 0
+    }
+
+    @Test
+    public void testWaitersWakeInReservationOrder() throws InterruptedException {
+        // 每秒 20 个令牌，桶容量 1：5 个等待线程各自预约一个令牌，只在自己的令牌到期时醒来一次，间隔 50ms 依次拿到
+        TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(20, 1);
+        limiter.tryAcquire();
+        long begin = System.nanoTime();
+        long[] acquiredAt = new long[5];
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < acquiredAt.length; i++) {
+            int id = i;
+            Thread t = new Thread(() -> {
+                try {
+                    limiter.acquire();
+                    acquiredAt[id] = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            t.start();
+            t.join(10); // 按顺序预约
+            threads.add(t);
+        }
+        for (Thread t : threads) t.join();
+        System.out.println(Arrays.toString(acquiredAt)); // [50, 100, 150, 200, 250] 左右
+        System.out.println(limiter.tryAcquire()); // false, 预约的令牌已经计入，新来的线程不能插队
+    }
+}
@@ -0,0 +1,70 @@
+package com.zelon.juc;
+
+import java.util.concurrent.atomic.AtomicStampedReference;
+
+/*
+Treiber 栈：无锁的并发栈
+1. 结构：单链表，top 指向栈顶，push / pop 都是 "读 top → 准备新的 top → CAS top"，CAS 失败说明被其他线程抢先了，重试。
+   没有锁，一个线程被挂起不会阻塞其他线程（lock-free：总有线程在前进）。
+
+2. ABA 问题：
+   线程 1 pop 时读到 top = A、A.next = B，准备 CAS(A → B)，这时被挂起；
+   线程 2 pop 出 A 和 B，再 push 回 A（节点被复用，例如对象池、或者 C/C++ 中释放后重新分配到同一个地址），top 又是 A；
+   线程 1 恢复，CAS(A → B) 成功，可是 B 已经不在栈中了，栈被破坏。
+   只比较引用的 CAS 分辨不出 "A 没变" 和 "A 被拿走又放回来了"。
+   AtomicStampedReference 同时比较引用和版本号（stamp），每次修改版本号加一，A 放回来时版本号已经变了，线程 1 的 CAS 失败重试。
+
+3. 代价：AtomicStampedReference 把引用和版本号放在一个不可变的 Pair 对象中，CAS 的是 Pair 的引用，
+   所以每次成功的修改都要分配一个 Pair（加上节点本身，每次 push 分配两个对象，每次 pop 分配一个）。
+   Java 中节点不复用时，GC 保证一个节点只要还被某个线程引用就不会被回收、也就不会以同一个身份回到栈中，ABA 不会发生，
+   这时可以不用版本号，见 EliminationBackoffStack。
+ */
+
+public class TreiberStack<E> {
+
+    private static final class Node<E> {
+        final E item;
+        Node<E> next; // 在 CAS 发布之前写入，发布之后不再修改
+
+        Node(E item) {
+            this.item = item;
+        }
+    }
+
+    private final AtomicStampedReference<Node<E>> top = new AtomicStampedReference<>(null, 0);
+
+    public void push(E item) {
+        if (item == null) throw new NullPointerException();
+        Node<E> node = new Node<>(item);
+        int[] stamp = new int[1];
+        for (;;) {
+            Node<E> current = top.get(stamp);
+            node.next = current;
+            if (top.compareAndSet(current, node, stamp[0], stamp[0] + 1)) return;
+        }
+    }
+
+    // 栈为空时返回 null
+    public E pop() {
+        int[] stamp = new int[1];
+        for (;;) {
+            Node<E> current = top.get(stamp);
+            if (current == null) return null;
+            if (top.compareAndSet(current, current.next, stamp[0], stamp[0] + 1)) return current.item;
+        }
+    }
+
+    public E peek() {
+        Node<E> current = top.getReference();
+        return current == null ? null : current.item;
+    }
+
+    public boolean isEmpty() {
+        return top.getReference() == null;
+    }
+
+    // 修改次数，每次成功的 push / pop 加一
+    public int stamp() {
+        return top.getStamp();
+    }
+}
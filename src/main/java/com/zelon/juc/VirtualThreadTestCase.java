@@ -0,0 +1,115 @@
+package com.zelon.juc;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class VirtualThreadTestCase {
+
+    @Test
+    public void testExecutionMode() throws InterruptedException {
+        // 10000 个阻塞 100ms 的任务
+        for (TaskExecutors.ExecutionMode mode : TaskExecutors.ExecutionMode.values()) {
+            long start = System.nanoTime();
+            try (ExecutorService executor = TaskExecutors.create(mode, "io", 200)) {
+                for (int i = 0; i < 10_000; i++) {
+                    executor.execute(() -> sleep(100));
+                }
+            } // close() 等待所有任务执行结束
+            System.out.println(mode + ": " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+        }
+        // PLATFORM_POOL: 约 5000ms（200 个线程，每个线程串行执行 50 个任务）
+        // VIRTUAL_PER_TASK: 约 100~几百ms（所有任务同时阻塞，不占用平台线程）
+
+        System.setProperty(TaskExecutors.MODE_PROPERTY, "virtual_per_task");
+        System.out.println(TaskExecutors.configuredMode()); // VIRTUAL_PER_TASK
+        System.clearProperty(TaskExecutors.MODE_PROPERTY);
+    }
+
+    @Test
+    public void testPinningDetection() throws InterruptedException {
+        Object monitor = new Object();
+        ReentrantLock lock = new ReentrantLock();
+        Condition condition = lock.newCondition();
+
+        try (PinningDetector detector = new PinningDetector(Duration.ofMillis(5))) {
+            try (ExecutorService executor = TaskExecutors.create(TaskExecutors.ExecutionMode.VIRTUAL_PER_TASK, "pin", 0)) {
+                for (int i = 0; i < 20; i++) {
+                    // ① 与 ProducerConsumerModelCase 一样，在 synchronized 中 wait()，会钉住载体线程
+                    executor.execute(() -> {
+                        synchronized (monitor) {
+                            try {
+                                monitor.wait(20);
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                        }
+                    });
+                    // ② 在 synchronized 中 sleep()，同样会钉住载体线程
+                    executor.execute(() -> {
+                        synchronized (monitor) {
+                            sleep(10);
+                        }
+                    });
+                    // ③ 改为 ReentrantLock + Condition 之后，虚拟线程阻塞时可以正常卸载，不会产生 pinning
+                    executor.execute(() -> {
+                        lock.lock();
+                        try {
+                            condition.await(20, TimeUnit.MILLISECONDS);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        } finally {
+                            lock.unlock();
+                        }
+                    });
+                }
+            }
+            // 只会出现 ① ② 两个位置，没有 ReentrantLock 的位置：
+            // WAIT          java.lang.Object  ...lambda$testPinningDetection$1  count=20 ...   ① wait() 钉住
+            // MONITOR_ENTER java.lang.Object  ...lambda$testPinningDetection$1  count=...      ①② 抢 monitor 时钉住
+            // PARK          -  ...sleep <- ...lambda$testPinningDetection$2  count=20 ...   ② sleep() 钉住
+            detector.stopAndReport().forEach(System.out::println);
+        }
+    }
+
+    @Test
+    public void testCarrierStarvation() throws InterruptedException {
+        // 载体线程数默认等于 CPU 核数，被钉住的虚拟线程会占满载体线程，其他虚拟线程即使没有加锁也无法运行
+        int carriers = Runtime.getRuntime().availableProcessors();
+        Object[] monitors = new Object[carriers];
+        for (int i = 0; i < carriers; i++) {
+            monitors[i] = new Object();
+        }
+        CountDownLatch pinned = new CountDownLatch(carriers);
+        try (ExecutorService executor = TaskExecutors.create(TaskExecutors.ExecutionMode.VIRTUAL_PER_TASK, "starve", 0)) {
+            for (Object m : monitors) {
+                executor.execute(() -> {
+                    synchronized (m) {
+                        pinned.countDown();
+                        sleep(500);
+                    }
+                });
+            }
+            pinned.await();
+            long start = System.nanoTime();
+            executor.submit(() -> { }).get();
+            // 约 500ms：要等某个载体线程被释放，这个空任务才能被调度
+            System.out.println("空任务等待调度: " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -2,9 +2,6 @@ package com.zelon.juc;
 
 import org.junit.jupiter.api.Test;
 
-import java.util.HashSet;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 /*
@@ -44,57 +41,93 @@ CPU处理器、JIT 编译器 会遵循 as-if-serial 语义（不能改变单线
  */
 
 public class VolatileTestCase {
-    private final ThreadPoolExecutor executor = new ThreadPoolExecutor(
-            10,
-            30,
-            1000, TimeUnit.MILLISECONDS,
-            new ArrayBlockingQueue<>(1000));
+    private final LitmusHarness harness = new LitmusHarness();
 
-    boolean isPrepared = false;
-    @Test
-    public void visibilityTest() throws InterruptedException {
-
-        executor.execute(() -> {
-            // 不加 volatile 之前, 不会感知到数据变化
-            while (!isPrepared) {
-                // todo
-            }
-            System.out.println("task done");
-        });
+    static class PlainFlag {
+        boolean isPrepared;
+    }
 
-        Thread.sleep(2000);
+    static class VolatileFlag {
+        volatile boolean isPrepared;
+    }
 
-        executor.execute(() -> {
-            System.out.println("preparing ...");
-            System.out.println("prepare done");
-            // 不加 volatile 之前, isPrepared 修改不会马上写入主内存，只能等到线程结束后或者其他情况才写入主内存。
-            // 加入 volatile 之后，isPrepared 的修改会马上写入主内存中，并通知其他线程工作内存中的数据失效，重新从主内存中获取数据。
+    @Test
+    public void visibilityTest() throws InterruptedException {
+        // 不加 volatile 之前, 循环可能不会感知到数据变化：JIT 编译后把 isPrepared 的读取提到循环外面，变成 while (true)
+        // 停不下来的循环由 harness 反优化后结束，不会一直占用 CPU；出现一次 STALE 就结束
+        System.out.println(harness.runTermination("plain", PlainFlag::new,
+                s -> s.isPrepared, // harness 执行 while (!s.isPrepared) {}
+                s -> s.isPrepared = true,
+                1000, 100, TimeUnit.MILLISECONDS, LitmusHarness.Expect.INTERESTING));
+        /*
+        plain: OK, 约 10 iterations, ...
+          TERMINATED  约 10  ACCEPTABLE  actor saw the update  // 前几次循环还在解释执行，每次都从内存中读取
+          STALE       1      INTERESTING actor never saw the update  // 循环被编译之后就再也看不到修改了
+         */
+
+        // 加入 volatile 之后，每次循环都会重新读取 isPrepared，修改马上可见，永远不会 STALE
+        System.out.println(harness.runTermination("volatile", VolatileFlag::new,
+                s -> s.isPrepared, // harness 执行 while (!s.isPrepared) {}
+                s -> s.isPrepared = true,
+                1000, 100, TimeUnit.MILLISECONDS, LitmusHarness.Expect.FORBIDDEN));
+        /*
+        volatile: OK, 1000 iterations, ...
+          TERMINATED  1000  ACCEPTABLE  actor saw the update
+          STALE       0     FORBIDDEN   actor never saw the update
+         */
+    }
 
-            isPrepared = true;
-        });
+    static class PlainPair {
+        int x, y;
+    }
 
-        // 没加 volatile 之前，第一个线程会一直循环，因为 工作内存中的数据没有
-        executor.awaitTermination(1000, TimeUnit.SECONDS);
+    static class VolatilePair {
+        volatile int x, y;
     }
 
-    private int a, b, x, y;
     @Test
-    public void OrderlinessTest() {
-        HashSet<String> resultSet = new HashSet<>();
-
-        while(resultSet.size() < 4){
-            // 两个线程都可能发生指令重排
-           executor.execute(() -> {
-               a = y; // 3
-               x = 1; // 1
-           });
-           executor.execute(() -> {
-               b = x; // 4
-               y = 1; // 2
-           });
-           resultSet.add("a=" + a + ",b=" + b);
-            System.out.println(resultSet);
-        }
+    public void OrderlinessTest() throws InterruptedException {
+        // 两个线程都可能发生指令重排：a = y 和 x = 1 没有依赖关系，可以交换顺序，b = x 和 y = 1 同理
+        System.out.println(harness.run(LitmusHarness.test("plain", PlainPair::new)
+                .actor1((s, r) -> {
+                    r.r1 = s.y; // 3, a = y
+                    s.x = 1;    // 1
+                })
+                .actor2((s, r) -> {
+                    r.r2 = s.x; // 4, b = x
+                    s.y = 1;    // 2
+                })
+                .outcome(0, 0, LitmusHarness.Expect.ACCEPTABLE, "both read before both writes")
+                .outcome(0, 1, LitmusHarness.Expect.ACCEPTABLE, "actor1 ran first")
+                .outcome(1, 0, LitmusHarness.Expect.ACCEPTABLE, "actor2 ran first")
+                .outcome(1, 1, LitmusHarness.Expect.INTERESTING, "reordering: writes moved before reads")));
+        /*
+        多核机器上每秒几百万次迭代, 0, 0 / 0, 1 / 1, 0 几秒之内都会出现：
+        plain: OK, ... iterations, .../s
+          0, 0     ...  ACCEPTABLE  both read before both writes
+          0, 1     ...  ACCEPTABLE  actor1 ran first
+          1, 0     ...  ACCEPTABLE  actor2 ran first
+          1, 1     ...  INTERESTING reordering: writes moved before reads
+        1, 1 是 load buffering（读被写超越）：x86 的 TSO 内存模型不会把写重排到前面的读之前，硬件上不会出现，
+        只有 JIT 编译器交换了 a = y 和 x = 1 的顺序时才可能看到；ARM、POWER 这类弱内存模型的机器上硬件本身就允许，
+        所以在 x86 上 1, 1 的次数通常是 0，JMM 允许它出现，代码不能依赖它不出现。
+        单核机器上两个 actor 轮流执行, 基本只有 0, 1 和 1, 0
+         */
+
+        // 加上 volatile 之后，x = 1 不能重排到 a = y 之前，1, 1 不会再出现
+        System.out.println(harness.run(LitmusHarness.test("volatile", VolatilePair::new)
+                .actor1((s, r) -> {
+                    r.r1 = s.y;
+                    s.x = 1;
+                })
+                .actor2((s, r) -> {
+                    r.r2 = s.x;
+                    s.y = 1;
+                })
+                .outcome(0, 0, LitmusHarness.Expect.ACCEPTABLE, "both read before both writes")
+                .outcome(0, 1, LitmusHarness.Expect.ACCEPTABLE, "actor1 ran first")
+                .outcome(1, 0, LitmusHarness.Expect.ACCEPTABLE, "actor2 ran first")
+                .outcome(1, 1, LitmusHarness.Expect.FORBIDDEN, "reordering: writes moved before reads")));
     }
 
 }
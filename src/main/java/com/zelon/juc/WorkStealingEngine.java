@@ -0,0 +1,235 @@
+package com.zelon.juc;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.IntToLongFunction;
+
+/*
+基于 ForkJoinPool 的分治执行引擎
+1. 为什么不用 ThreadPoolExecutor？
+   ThreadPool、ThreadLocalTestCase 中的线程池所有线程共用一个 LinkedBlockingQueue，
+   递归拆分的任务（树形汇总、批量分片）会拆出大量小任务，所有线程都在争抢这个队列的锁；
+   而且父任务在线程池线程中阻塞等待子任务，线程数不够时会死锁。
+
+2. ForkJoinPool 的工作窃取（work stealing）：
+   ① 每个工作线程有自己的双端队列，fork() 的子任务放入自己队列的头部，自己也从头部取（LIFO，缓存友好），
+      空闲线程从其他线程队列的尾部偷取（FIFO，偷到的通常是较大的任务），两端操作基本不竞争
+   ② join() 时如果子任务还没执行，当前线程会直接执行它或者去帮忙执行其他任务，不会阻塞线程
+
+3. 拆分策略：
+   ① 顺序阈值（sequential cut-off）：任务规模不超过阈值时直接顺序计算，阈值默认取 size / (parallelism × 8)，
+      且不小于 minChunk，保证每个叶子任务的计算量远大于 fork/join 的开销
+   ② 自适应：当前线程队列中还有较多没被偷走的任务（getSurplusQueuedTaskCount() > surplusThreshold）时，
+      说明其他线程都很忙、拆出来也没人偷，不再继续拆分，直接顺序计算（java.util.stream 也使用类似的策略）
+
+4. 用法：
+   ① 实现 Job（规模、顺序计算、拆成两半、合并结果），交给 invoke()
+   ② 数组 / List 上的 map-reduce：mapReduce()，基本类型求和：sumLong()，避免装箱
+ */
+
+public class WorkStealingEngine {
+
+    @Value
+    @Builder
+    public static class Options {
+        // 并行度，默认 CPU 核数
+        @Builder.Default int parallelism = Runtime.getRuntime().availableProcessors();
+        // 顺序阈值的下限
+        @Builder.Default int minChunk = 1_000;
+        // 当前线程队列中未被偷走的任务超过这个数时不再拆分
+        @Builder.Default int surplusThreshold = 3;
+    }
+
+    // 分治任务：规模超过阈值时拆成两半，否则顺序计算
+    public interface Job<R> {
+        long size();
+
+        R computeSequentially();
+
+        // 拆成规模相近的两部分
+        Job<R>[] split();
+
+        R combine(R left, R right);
+    }
+
+    private final ForkJoinPool pool;
+    private final Options options;
+    private final boolean ownsPool;
+
+    public WorkStealingEngine() {
+        this(Options.builder().build());
+    }
+
+    public WorkStealingEngine(Options options) {
+        this.options = options;
+        this.pool = new ForkJoinPool(options.getParallelism());
+        this.ownsPool = true;
+    }
+
+    // 使用已有的 ForkJoinPool，例如 ForkJoinPool.commonPool()
+    public WorkStealingEngine(ForkJoinPool pool, Options options) {
+        this.options = options;
+        this.pool = pool;
+        this.ownsPool = false;
+    }
+
+    public <R> R invoke(Job<R> job) {
+        return pool.invoke(new JobTask<>(job, threshold(job.size())));
+    }
+
+    // 对 array 中每个元素执行 mapper，再用 reducer 合并，identity 是空区间的结果
+    public <T, R> R mapReduce(T[] array, Function<? super T, ? extends R> mapper, R identity, BinaryOperator<R> reducer) {
+        return invoke(new RangeJob<>(0, array.length, i -> mapper.apply(array[i]), identity, reducer));
+    }
+
+    // 非 RandomAccess 的 List（例如 LinkedList）按下标访问是 O(n)，先复制为数组
+    @SuppressWarnings("unchecked")
+    public <T, R> R mapReduce(List<T> list, Function<? super T, ? extends R> mapper, R identity, BinaryOperator<R> reducer) {
+        if (!(list instanceof RandomAccess)) {
+            return mapReduce((T[]) list.toArray(), mapper, identity, reducer);
+        }
+        return invoke(new RangeJob<>(0, list.size(), i -> mapper.apply(list.get(i)), identity, reducer));
+    }
+
+    // [0, size) 上的 mapper(i) 求和
+    public long sumLong(int size, IntToLongFunction mapper) {
+        return invoke(new SumJob(0, size, mapper));
+    }
+
+    public int parallelism() {
+        return pool.getParallelism();
+    }
+
+    // 工作窃取的次数，用于观察负载是否均衡
+    public long stealCount() {
+        return pool.getStealCount();
+    }
+
+    public void shutdown() {
+        if (ownsPool) pool.shutdown();
+    }
+
+    private long threshold(long size) {
+        return Math.max(options.getMinChunk(), size / (pool.getParallelism() * 8L));
+    }
+
+    private final class JobTask<R> extends RecursiveTask<R> {
+        private final Job<R> job;
+        private final long threshold;
+
+        JobTask(Job<R> job, long threshold) {
+            this.job = job;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected R compute() {
+            Job<R> current = job;
+            // 右半部分 fork 出去，左半部分在当前线程继续拆分，减少一半的任务对象
+            List<JobTask<R>> forked = new ArrayList<>();
+            List<Job<R>> lefts = new ArrayList<>();
+            while (current.size() > threshold
+                    && ForkJoinTask.getSurplusQueuedTaskCount() <= options.getSurplusThreshold()) {
+                Job<R>[] halves = current.split();
+                JobTask<R> right = new JobTask<>(halves[1], threshold);
+                right.fork();
+                forked.add(right);
+                lefts.add(current);
+                current = halves[0];
+            }
+            R result = current.computeSequentially();
+            // 按拆分的相反顺序合并，保证 combine 的左右顺序和原始顺序一致
+            for (int i = forked.size() - 1; i >= 0; i--) {
+                result = lefts.get(i).combine(result, forked.get(i).join());
+            }
+            return result;
+        }
+    }
+
+    private static final class RangeJob<R> implements Job<R> {
+        private final int from, to;
+        private final IntFunction<? extends R> mapper;
+        private final R identity;
+        private final BinaryOperator<R> reducer;
+
+        RangeJob(int from, int to, IntFunction<? extends R> mapper, R identity, BinaryOperator<R> reducer) {
+            this.from = from;
+            this.to = to;
+            this.mapper = mapper;
+            this.identity = identity;
+            this.reducer = reducer;
+        }
+
+        @Override
+        public long size() {
+            return to - from;
+        }
+
+        @Override
+        public R computeSequentially() {
+            R result = identity;
+            for (int i = from; i < to; i++) {
+                result = reducer.apply(result, mapper.apply(i));
+            }
+            return result;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Job<R>[] split() {
+            int mid = (from + to) >>> 1;
+            return new Job[]{new RangeJob<>(from, mid, mapper, identity, reducer), new RangeJob<>(mid, to, mapper, identity, reducer)};
+        }
+
+        @Override
+        public R combine(R left, R right) {
+            return reducer.apply(left, right);
+        }
+    }
+
+    private static final class SumJob implements Job<Long> {
+        private final int from, to;
+        private final IntToLongFunction mapper;
+
+        SumJob(int from, int to, IntToLongFunction mapper) {
+            this.from = from;
+            this.to = to;
+            this.mapper = mapper;
+        }
+
+        @Override
+        public long size() {
+            return to - from;
+        }
+
+        @Override
+        public Long computeSequentially() {
+            long sum = 0;
+            for (int i = from; i < to; i++) {
+                sum += mapper.applyAsLong(i);
+            }
+            return sum;
+        }
+
+        @Override
+        public Job<Long>[] split() {
+            int mid = (from + to) >>> 1;
+            return new SumJob[]{new SumJob(from, mid, mapper), new SumJob(mid, to, mapper)};
+        }
+
+        @Override
+        public Long combine(Long left, Long right) {
+            return left + right;
+        }
+    }
+}
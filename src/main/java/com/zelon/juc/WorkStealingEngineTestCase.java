@@ -0,0 +1,118 @@
+package com.zelon.juc;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/*
+WorkStealingEngine 的用法：自定义 Job（树形汇总）、数组 / List 上的 map-reduce。
+与 ThreadPoolExecutor 在 1..N 个线程下的对比见 benchmarks 中的 WorkStealingEngineBenchmark。
+ */
+
+public class WorkStealingEngineTestCase {
+
+    @Test
+    public void testMapReduce() {
+        WorkStealingEngine engine = new WorkStealingEngine();
+        Integer[] prices = IntStream.rangeClosed(1, 100_000).boxed().toArray(Integer[]::new);
+        System.out.println(engine.mapReduce(prices, p -> (long) p, 0L, Long::sum)); // 5000050000
+
+        List<String> words = new LinkedList<>();
+        for (int i = 0; i < 50_000; i++) words.add("w" + i);
+        // LinkedList 先复制为数组再拆分
+        System.out.println(engine.mapReduce(words, String::length, 0, Integer::sum)); // 288890
+
+        System.out.println(engine.sumLong(10_000_000, i -> i % 7)); // 29999994
+        engine.shutdown();
+    }
+
+    @Test
+    public void testTreeAggregation() {
+        // 类目树：每个节点 8 个子节点，共 6 层，汇总所有节点的商品数
+        Category root = Category.build(6, 8);
+        WorkStealingEngine engine = new WorkStealingEngine(WorkStealingEngine.Options.builder().minChunk(64).build());
+        long total = engine.invoke(new CategoryJob(List.of(root)));
+        System.out.println(total + " / " + root.countSequentially()); // 42798 / 42798
+        System.out.println("窃取次数: " + engine.stealCount()); // 空闲线程从其他线程队列偷取任务的次数，多核时明显增加
+        engine.shutdown();
+    }
+
+    static class Category {
+        final int products;
+        final List<Category> children = new ArrayList<>();
+        final int subtreeSize;
+
+        Category(int products, List<Category> children) {
+            this.products = products;
+            this.children.addAll(children);
+            int size = 1;
+            for (Category c : children) size += c.subtreeSize;
+            this.subtreeSize = size;
+        }
+
+        static Category build(int depth, int fanOut) {
+            List<Category> children = new ArrayList<>();
+            if (depth > 1) {
+                for (int i = 0; i < fanOut; i++) children.add(build(depth - 1, fanOut));
+            }
+            return new Category(depth, children);
+        }
+
+        long countSequentially() {
+            long sum = products;
+            for (Category c : children) sum += c.countSequentially();
+            return sum;
+        }
+    }
+
+    // 一组兄弟子树：节点数作为规模，拆分时把子树列表分成两半，只有一棵子树时展开它的子节点
+    static class CategoryJob implements WorkStealingEngine.Job<Long> {
+        private final List<Category> roots;
+        private final long products; // 拆分时已经展开的节点自身的商品数
+
+        CategoryJob(List<Category> roots) {
+            this(roots, 0);
+        }
+
+        CategoryJob(List<Category> roots, long products) {
+            this.roots = roots;
+            this.products = products;
+        }
+
+        @Override
+        public long size() {
+            long size = 0;
+            for (Category c : roots) size += c.subtreeSize;
+            return size;
+        }
+
+        @Override
+        public Long computeSequentially() {
+            long sum = products;
+            for (Category c : roots) sum += c.countSequentially();
+            return sum;
+        }
+
+        @Override
+        public WorkStealingEngine.Job<Long>[] split() {
+            if (roots.size() == 1) {
+                Category only = roots.get(0);
+                List<Category> children = only.children;
+                int mid = children.size() / 2;
+                return new CategoryJob[]{
+                        new CategoryJob(children.subList(0, mid), products + only.products),
+                        new CategoryJob(children.subList(mid, children.size()))};
+            }
+            int mid = roots.size() / 2;
+            return new CategoryJob[]{new CategoryJob(roots.subList(0, mid), products), new CategoryJob(roots.subList(mid, roots.size()))};
+        }
+
+        @Override
+        public Long combine(Long left, Long right) {
+            return left + right;
+        }
+    }
+}